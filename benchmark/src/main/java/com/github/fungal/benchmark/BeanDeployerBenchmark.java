@@ -0,0 +1,107 @@
+/*
+ * The Fungal kernel project
+ * Copyright (C) 2014
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package com.github.fungal.benchmark;
+
+import com.github.fungal.api.Kernel;
+import com.github.fungal.api.KernelFactory;
+import com.github.fungal.api.configuration.KernelConfiguration;
+
+import java.io.File;
+import java.net.URL;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Benchmarks for the creation and start of beans across dependency shapes
+ * @author <a href="mailto:jesper.pedersen@comcast.net">Jesper Pedersen</a>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class BeanDeployerBenchmark
+{
+   /** The dependency shape */
+   @Param({Deployments.CHAIN, Deployments.FAN_OUT, Deployments.DIAMOND})
+   public String shape;
+
+   /** The number of beans */
+   @Param({"10", "100"})
+   public int size;
+
+   /** The directory */
+   private File directory;
+
+   /** The deployment */
+   private URL url;
+
+   /** The kernel */
+   private Kernel kernel;
+
+   /**
+    * Setup
+    * @exception Throwable Thrown if an error occurs
+    */
+   @Setup
+   public void setup() throws Throwable
+   {
+      directory = Deployments.createDirectory("fungal-benchmark");
+      url = Deployments.write(new File(directory, shape + "-beans.xml"),
+                              Deployments.create(shape, "Bean", size)).toURI().toURL();
+
+      kernel = KernelFactory.create(new KernelConfiguration()
+                                    .name("benchmark")
+                                    .remoteAccess(false)
+                                    .hotDeployment(false)
+                                    .management(false));
+      kernel.startup();
+   }
+
+   /**
+    * Tear down
+    * @exception Throwable Thrown if an error occurs
+    */
+   @TearDown
+   public void tearDown() throws Throwable
+   {
+      kernel.shutdown();
+      Deployments.delete(directory);
+   }
+
+   /**
+    * Deploy and undeploy the beans
+    * @exception Throwable Thrown if an error occurs
+    */
+   @Benchmark
+   public void deployUndeploy() throws Throwable
+   {
+      kernel.getMainDeployer().deploy(url);
+      kernel.getMainDeployer().undeploy(url);
+   }
+}
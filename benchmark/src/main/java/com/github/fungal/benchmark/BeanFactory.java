@@ -0,0 +1,70 @@
+/*
+ * The Fungal kernel project
+ * Copyright (C) 2014
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package com.github.fungal.benchmark;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A factory for beans used by the benchmarks
+ * @author <a href="mailto:jesper.pedersen@comcast.net">Jesper Pedersen</a>
+ */
+public class BeanFactory
+{
+   /** Created */
+   private AtomicInteger created;
+
+   /**
+    * Constructor
+    */
+   public BeanFactory()
+   {
+      this.created = new AtomicInteger(0);
+   }
+
+   /**
+    * Create a bean
+    * @return The bean
+    */
+   public SimpleBean create()
+   {
+      created.incrementAndGet();
+
+      return new SimpleBean();
+   }
+
+   /**
+    * Create a bean
+    * @return The bean
+    */
+   public static SimpleBean createBean()
+   {
+      return new SimpleBean();
+   }
+
+   /**
+    * Get the number of beans created by this factory
+    * @return The value
+    */
+   public int getCreated()
+   {
+      return created.get();
+   }
+}
@@ -0,0 +1,121 @@
+/*
+ * The Fungal kernel project
+ * Copyright (C) 2014
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package com.github.fungal.benchmark;
+
+import com.github.fungal.api.Kernel;
+import com.github.fungal.api.classloading.ClassLoaderFactory;
+import com.github.fungal.api.classloading.KernelClassLoader;
+
+import java.net.URL;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Benchmarks for class lookups in the kernel class loaders
+ * @author <a href="mailto:jesper.pedersen@comcast.net">Jesper Pedersen</a>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ClassLoaderBenchmark
+{
+   /** A class in the archive */
+   private static final String HIT = "com.github.fungal.api.Kernel";
+
+   /** A class which doesn't exist */
+   private static final String MISS = "com.github.fungal.benchmark.Missing";
+
+   /** The class loader type */
+   @Param({"ParentFirst", "ParentLast", "Export"})
+   public String type;
+
+   /** The class loader */
+   private KernelClassLoader classLoader;
+
+   /**
+    * Setup
+    */
+   @Setup
+   public void setup()
+   {
+      int t = ClassLoaderFactory.TYPE_PARENT_FIRST;
+
+      if ("ParentLast".equals(type))
+      {
+         t = ClassLoaderFactory.TYPE_PARENT_LAST;
+      }
+      else if ("Export".equals(type))
+      {
+         t = ClassLoaderFactory.TYPE_EXPORT;
+      }
+
+      URL archive = Kernel.class.getProtectionDomain().getCodeSource().getLocation();
+
+      classLoader = ClassLoaderFactory.create(t, new URL[] {archive}, ClassLoaderBenchmark.class.getClassLoader());
+   }
+
+   /**
+    * Tear down
+    * @exception Exception Thrown if an error occurs
+    */
+   @TearDown
+   public void tearDown() throws Exception
+   {
+      classLoader.shutdown();
+   }
+
+   /**
+    * Load a class which can be found
+    * @return The class
+    * @exception Exception Thrown if an error occurs
+    */
+   @Benchmark
+   public Class<?> hit() throws Exception
+   {
+      return classLoader.loadClass(HIT);
+   }
+
+   /**
+    * Load a class which can't be found
+    * @return The class
+    */
+   @Benchmark
+   public Class<?> miss()
+   {
+      try
+      {
+         return classLoader.loadClass(MISS);
+      }
+      catch (ClassNotFoundException cnfe)
+      {
+         return null;
+      }
+   }
+}
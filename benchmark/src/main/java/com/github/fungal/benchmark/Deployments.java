@@ -0,0 +1,186 @@
+/*
+ * The Fungal kernel project
+ * Copyright (C) 2014
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package com.github.fungal.benchmark;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+/**
+ * Creates deployments with a given dependency shape for the benchmarks
+ * @author <a href="mailto:jesper.pedersen@comcast.net">Jesper Pedersen</a>
+ */
+public final class Deployments
+{
+   /** Chain: each bean depends on the previous bean */
+   public static final String CHAIN = "chain";
+
+   /** Fan-out: all beans depend on the first bean */
+   public static final String FAN_OUT = "fanout";
+
+   /** Diamond: the beans depend on the first bean, and the last bean depends on all of them */
+   public static final String DIAMOND = "diamond";
+
+   /**
+    * Constructor
+    */
+   private Deployments()
+   {
+   }
+
+   /**
+    * Create a deployment
+    * @param shape The dependency shape
+    * @param prefix The prefix of the bean names
+    * @param size The number of beans
+    * @return The deployment descriptor
+    */
+   public static String create(String shape, String prefix, int size)
+   {
+      if (!CHAIN.equals(shape) && !FAN_OUT.equals(shape) && !DIAMOND.equals(shape))
+         throw new IllegalArgumentException("Unknown shape: " + shape);
+
+      StringBuilder sb = new StringBuilder();
+      sb.append("<deployment>\n");
+
+      for (int i = 0; i < size; i++)
+      {
+         sb.append("  <bean name=\"").append(prefix).append(i).append("\" class=\"");
+         sb.append(SimpleBean.class.getName()).append("\">\n");
+
+         property(sb, "name", prefix + i);
+         property(sb, "count", Integer.toString(i));
+         property(sb, "timeout", "${benchmark.timeout:30000}");
+         property(sb, "enabled", "true");
+
+         if (i > 0)
+         {
+            if (CHAIN.equals(shape))
+            {
+               sb.append("    <property name=\"dependency\"><inject bean=\"").append(prefix).append(i - 1);
+               sb.append("\"/></property>\n");
+            }
+            else if (FAN_OUT.equals(shape) || i < size - 1)
+            {
+               sb.append("    <property name=\"dependency\"><inject bean=\"").append(prefix).append(0);
+               sb.append("\"/></property>\n");
+            }
+            else
+            {
+               for (int j = 1; j < i; j++)
+               {
+                  sb.append("    <depends>").append(prefix).append(j).append("</depends>\n");
+               }
+            }
+         }
+
+         sb.append("  </bean>\n");
+      }
+
+      sb.append("</deployment>\n");
+
+      return sb.toString();
+   }
+
+   /**
+    * Append a property
+    * @param sb The string builder
+    * @param name The name
+    * @param value The value
+    */
+   private static void property(StringBuilder sb, String name, String value)
+   {
+      sb.append("    <property name=\"").append(name).append("\">").append(value).append("</property>\n");
+   }
+
+   /**
+    * Write a file
+    * @param file The file
+    * @param content The content
+    * @return The file
+    * @exception IOException Thrown if the file can't be written
+    */
+   public static File write(File file, String content) throws IOException
+   {
+      Writer w = null;
+      try
+      {
+         w = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+         w.write(content);
+         w.flush();
+      }
+      finally
+      {
+         if (w != null)
+         {
+            try
+            {
+               w.close();
+            }
+            catch (IOException ioe)
+            {
+               // Ignore
+            }
+         }
+      }
+
+      return file;
+   }
+
+   /**
+    * Create a temporary directory
+    * @param prefix The prefix
+    * @return The directory
+    * @exception IOException Thrown if the directory can't be created
+    */
+   public static File createDirectory(String prefix) throws IOException
+   {
+      File f = File.createTempFile(prefix, "");
+
+      if (!f.delete() || !f.mkdirs())
+         throw new IOException("Could not create directory " + f.getAbsolutePath());
+
+      return f;
+   }
+
+   /**
+    * Delete a file or a directory
+    * @param f The file
+    */
+   public static void delete(File f)
+   {
+      if (f == null || !f.exists())
+         return;
+
+      File[] files = f.listFiles();
+      if (files != null)
+      {
+         for (File file : files)
+         {
+            delete(file);
+         }
+      }
+
+      f.delete();
+   }
+}
@@ -0,0 +1,283 @@
+/*
+ * The Fungal kernel project
+ * Copyright (C) 2014
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package com.github.fungal.benchmark;
+
+import com.github.fungal.api.util.FileUtil;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Enumeration;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import java.util.zip.Deflater;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Benchmarks for the copy, extraction and compression of archives in FileUtil,
+ * against the stream based and single threaded implementations
+ * @author <a href="mailto:jesper.pedersen@comcast.net">Jesper Pedersen</a>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class FileUtilBenchmark
+{
+   /** The size of each entry in the archive */
+   private static final int ENTRY_SIZE = 16384;
+
+   /** The number of entries in the archive */
+   @Param({"100", "4000"})
+   public int entries;
+
+   /** The directory */
+   private File directory;
+
+   /** The archive */
+   private File archive;
+
+   /** The copy of the archive */
+   private File copy;
+
+   /** The extracted archive */
+   private File source;
+
+   /** The file utility */
+   private FileUtil fileUtil;
+
+   /**
+    * Setup
+    * @exception Exception Thrown if an error occurs
+    */
+   @Setup
+   public void setup() throws Exception
+   {
+      directory = Deployments.createDirectory("fungal-benchmark");
+      archive = new File(directory, "archive.jar");
+      copy = new File(directory, "copy.jar");
+      fileUtil = new FileUtil();
+
+      Random random = new Random(42);
+      byte[] data = new byte[ENTRY_SIZE];
+      JarOutputStream jos = new JarOutputStream(new FileOutputStream(archive), new Manifest());
+      try
+      {
+         for (int i = 0; i < entries; i++)
+         {
+            // Half random, half repeated content for a realistic compression ratio
+            random.nextBytes(data);
+            for (int j = ENTRY_SIZE / 2; j < ENTRY_SIZE; j++)
+            {
+               data[j] = (byte)(j % 31);
+            }
+
+            jos.putNextEntry(new JarEntry("com/acme/package" + (i % 50) + "/Entry" + i + ".class"));
+            jos.write(data);
+         }
+      }
+      finally
+      {
+         jos.close();
+      }
+
+      source = fileUtil.extract(archive, new File(directory, "source"));
+   }
+
+   /**
+    * Tear down
+    */
+   @TearDown
+   public void tearDown()
+   {
+      Deployments.delete(directory);
+   }
+
+   /**
+    * Copy the archive
+    * @return The copy
+    * @exception Exception Thrown if an error occurs
+    */
+   @Benchmark
+   public File copy() throws Exception
+   {
+      fileUtil.copy(archive, copy);
+      return copy;
+   }
+
+   /**
+    * Copy the archive using streams
+    * @return The copy
+    * @exception Exception Thrown if an error occurs
+    */
+   @Benchmark
+   public File copyStreams() throws Exception
+   {
+      InputStream in = new BufferedInputStream(new FileInputStream(archive), 8192);
+      OutputStream out = new BufferedOutputStream(new FileOutputStream(copy), 8192);
+      try
+      {
+         byte[] buffer = new byte[8192];
+         int bytesRead;
+
+         while ((bytesRead = in.read(buffer)) >= 0)
+         {
+            out.write(buffer, 0, bytesRead);
+         }
+
+         out.flush();
+      }
+      finally
+      {
+         in.close();
+         out.close();
+      }
+
+      return copy;
+   }
+
+   /**
+    * Extract the archive
+    * @return The root of the extracted archive
+    * @exception Exception Thrown if an error occurs
+    */
+   @Benchmark
+   public File extract() throws Exception
+   {
+      return fileUtil.extract(archive, new File(directory, "extract"));
+   }
+
+   /**
+    * Extract the archive using streams on a single thread
+    * @return The root of the extracted archive
+    * @exception Exception Thrown if an error occurs
+    */
+   @Benchmark
+   public File extractStreams() throws Exception
+   {
+      File target = new File(new File(directory, "extract-streams"), archive.getName());
+
+      if (target.exists())
+         fileUtil.delete(target);
+
+      if (!target.mkdirs())
+         throw new IOException("Could not create " + target);
+
+      JarFile jar = new JarFile(archive);
+      try
+      {
+         Enumeration<JarEntry> e = jar.entries();
+         byte[] buffer = new byte[4096];
+
+         while (e.hasMoreElements())
+         {
+            JarEntry je = e.nextElement();
+            File f = new File(target, je.getName());
+
+            if (je.isDirectory())
+            {
+               f.mkdirs();
+               continue;
+            }
+
+            if (!f.getParentFile().exists())
+               f.getParentFile().mkdirs();
+
+            InputStream in = new BufferedInputStream(jar.getInputStream(je));
+            OutputStream out = new BufferedOutputStream(new FileOutputStream(f));
+            try
+            {
+               int nBytes;
+               while ((nBytes = in.read(buffer)) > 0)
+               {
+                  out.write(buffer, 0, nBytes);
+               }
+
+               out.flush();
+            }
+            finally
+            {
+               out.close();
+               in.close();
+            }
+         }
+      }
+      finally
+      {
+         jar.close();
+      }
+
+      return target;
+   }
+
+   /**
+    * Compress the extracted archive
+    * @return The archive
+    * @exception Exception Thrown if an error occurs
+    */
+   @Benchmark
+   public File compress() throws Exception
+   {
+      fileUtil.compress(source, copy);
+      return copy;
+   }
+
+   /**
+    * Compress the extracted archive on a single thread
+    * @return The archive
+    * @exception Exception Thrown if an error occurs
+    */
+   @Benchmark
+   public File compressSingleThread() throws Exception
+   {
+      fileUtil.compress(source, copy, Deflater.DEFAULT_COMPRESSION, 1);
+      return copy;
+   }
+
+   /**
+    * Compress the extracted archive without compression
+    * @return The archive
+    * @exception Exception Thrown if an error occurs
+    */
+   @Benchmark
+   public File compressStored() throws Exception
+   {
+      fileUtil.compress(source, copy, Deflater.NO_COMPRESSION, Runtime.getRuntime().availableProcessors());
+      return copy;
+   }
+}
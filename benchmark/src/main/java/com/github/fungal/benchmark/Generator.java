@@ -0,0 +1,469 @@
+/*
+ * The Fungal kernel project
+ * Copyright (C) 2014
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package com.github.fungal.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Generates synthetic <code>system/</code> and <code>deploy/</code> directories
+ * with a large number of beans.
+ *
+ * The beans in <code>deploy/</code> are placed on <code>depth</code> levels, where each
+ * bean depends on <code>fanIn</code> beans from the level below - spread across the
+ * earlier deployments, such that the tree can be deployed with and without parallel
+ * deployment. The beans have injected list, set and map properties, every
+ * <code>factories</code>'th bean is created through a factory and the registries
+ * in <code>system/</code> receive all beans through incallbacks.
+ * @author <a href="mailto:jesper.pedersen@comcast.net">Jesper Pedersen</a>
+ */
+public class Generator
+{
+   /** The name of the factory bean */
+   static final String FACTORY = "BeanFactory";
+
+   /** The prefix of the registry beans */
+   static final String REGISTRY = "BeanRegistry";
+
+   /** The prefix of the beans */
+   static final String BEAN = "Bean";
+
+   /** Number of deployments */
+   private int files;
+
+   /** Number of beans per deployment */
+   private int beans;
+
+   /** Dependency depth */
+   private int depth;
+
+   /** Dependencies per bean */
+   private int fanIn;
+
+   /** Number of elements in the collections */
+   private int elements;
+
+   /** Every n'th bean is created by a factory */
+   private int factories;
+
+   /** Number of registries */
+   private int registries;
+
+   /** Seed */
+   private long seed;
+
+   /**
+    * Constructor
+    */
+   public Generator()
+   {
+      files = 20;
+      beans = 100;
+      depth = 5;
+      fanIn = 2;
+      elements = 5;
+      factories = 10;
+      registries = 2;
+      seed = 42L;
+   }
+
+   /**
+    * Set the number of deployments; default <code>20</code>
+    * @param v The value
+    * @return The generator
+    */
+   public Generator files(int v)
+   {
+      this.files = v;
+
+      return this;
+   }
+
+   /**
+    * Set the number of beans per deployment; default <code>100</code>
+    * @param v The value
+    * @return The generator
+    */
+   public Generator beans(int v)
+   {
+      this.beans = v;
+
+      return this;
+   }
+
+   /**
+    * Set the dependency depth; default <code>5</code>
+    * @param v The value
+    * @return The generator
+    */
+   public Generator depth(int v)
+   {
+      this.depth = v;
+
+      return this;
+   }
+
+   /**
+    * Set the number of dependencies per bean; default <code>2</code>
+    * @param v The value
+    * @return The generator
+    */
+   public Generator fanIn(int v)
+   {
+      this.fanIn = v;
+
+      return this;
+   }
+
+   /**
+    * Set the number of elements in the injected collections; default <code>5</code>
+    * @param v The value
+    * @return The generator
+    */
+   public Generator elements(int v)
+   {
+      this.elements = v;
+
+      return this;
+   }
+
+   /**
+    * Create every n'th bean through a factory, <code>0</code> disables factories; default <code>10</code>
+    * @param v The value
+    * @return The generator
+    */
+   public Generator factories(int v)
+   {
+      this.factories = v;
+
+      return this;
+   }
+
+   /**
+    * Set the number of registries with incallbacks; default <code>2</code>
+    * @param v The value
+    * @return The generator
+    */
+   public Generator registries(int v)
+   {
+      this.registries = v;
+
+      return this;
+   }
+
+   /**
+    * Set the seed for the dependencies; default <code>42</code>
+    * @param v The value
+    * @return The generator
+    */
+   public Generator seed(long v)
+   {
+      this.seed = v;
+
+      return this;
+   }
+
+   /**
+    * Configure the generator from a command line option
+    * @param option The option, like <code>-beans</code>
+    * @param value The value
+    * @return True if the option was consumed, otherwise false
+    */
+   public boolean configure(String option, String value)
+   {
+      if ("-files".equals(option))
+      {
+         files(Integer.parseInt(value));
+      }
+      else if ("-beans".equals(option))
+      {
+         beans(Integer.parseInt(value));
+      }
+      else if ("-depth".equals(option))
+      {
+         depth(Integer.parseInt(value));
+      }
+      else if ("-fanin".equals(option))
+      {
+         fanIn(Integer.parseInt(value));
+      }
+      else if ("-elements".equals(option))
+      {
+         elements(Integer.parseInt(value));
+      }
+      else if ("-factories".equals(option))
+      {
+         factories(Integer.parseInt(value));
+      }
+      else if ("-registries".equals(option))
+      {
+         registries(Integer.parseInt(value));
+      }
+      else if ("-seed".equals(option))
+      {
+         seed(Long.parseLong(value));
+      }
+      else
+      {
+         return false;
+      }
+
+      return true;
+   }
+
+   /**
+    * Get the total number of beans which will be generated
+    * @return The value
+    */
+   public int getTotal()
+   {
+      return files * beans + (factories > 0 ? 1 : 0) + registries;
+   }
+
+   /**
+    * Generate the <code>system/</code> and <code>deploy/</code> directories
+    * @param home The kernel home
+    * @exception IOException Thrown if the deployments can't be written
+    */
+   public void generate(File home) throws IOException
+   {
+      if (files < 1 || beans < 1 || depth < 1 || fanIn < 0)
+         throw new IllegalArgumentException("Invalid configuration: " + toString());
+
+      File system = new File(home, "system");
+      File deploy = new File(home, "deploy");
+
+      if (!system.exists() && !system.mkdirs())
+         throw new IOException("Could not create directory " + system.getAbsolutePath());
+
+      if (!deploy.exists() && !deploy.mkdirs())
+         throw new IOException("Could not create directory " + deploy.getAbsolutePath());
+
+      Deployments.write(new File(system, "generated-system-beans.xml"), generateSystem());
+
+      Random random = new Random(seed);
+
+      for (int f = 0; f < files; f++)
+      {
+         StringBuilder sb = new StringBuilder();
+         sb.append("<deployment>\n");
+
+         for (int i = f * beans; i < (f + 1) * beans; i++)
+         {
+            generateBean(sb, i, random);
+         }
+
+         sb.append("</deployment>\n");
+
+         Deployments.write(new File(deploy, String.format("generated-%04d-beans.xml", Integer.valueOf(f))),
+                           sb.toString());
+      }
+   }
+
+   /**
+    * Generate the system deployment
+    * @return The deployment descriptor
+    */
+   private String generateSystem()
+   {
+      StringBuilder sb = new StringBuilder();
+      sb.append("<deployment>\n");
+
+      if (factories > 0)
+         sb.append("  <bean name=\"").append(FACTORY).append("\" class=\"").append(BeanFactory.class.getName())
+            .append("\"/>\n");
+
+      for (int i = 0; i < registries; i++)
+      {
+         sb.append("  <bean name=\"").append(REGISTRY).append(i).append("\" class=\"");
+         sb.append(BeanRegistry.class.getName()).append("\">\n");
+         sb.append("    <incallback method=\"register\"/>\n");
+         sb.append("    <uncallback method=\"unregister\"/>\n");
+         sb.append("  </bean>\n");
+      }
+
+      sb.append("</deployment>\n");
+
+      return sb.toString();
+   }
+
+   /**
+    * Generate a bean
+    * @param sb The string builder
+    * @param index The index of the bean
+    * @param random The random generator for the dependencies
+    */
+   private void generateBean(StringBuilder sb, int index, Random random)
+   {
+      sb.append("  <bean name=\"").append(BEAN).append(index).append("\" class=\"");
+      sb.append(SimpleBean.class.getName()).append("\">\n");
+
+      if (factories > 0 && index % factories == 0)
+      {
+         if ((index / factories) % 2 == 0)
+         {
+            sb.append("    <constructor factoryMethod=\"create\">\n");
+            sb.append("      <factory bean=\"").append(FACTORY).append("\"/>\n");
+            sb.append("    </constructor>\n");
+         }
+         else
+         {
+            sb.append("    <constructor factoryClass=\"").append(BeanFactory.class.getName());
+            sb.append("\" factoryMethod=\"createBean\"/>\n");
+         }
+      }
+
+      sb.append("    <property name=\"name\">").append(BEAN).append(index).append("</property>\n");
+      sb.append("    <property name=\"count\">").append(index).append("</property>\n");
+
+      List<Integer> dependencies = new ArrayList<Integer>(fanIn);
+      int level = index % depth;
+
+      if (level > 0)
+      {
+         int candidates = index / depth + 1;
+
+         for (int i = 0; i < fanIn && dependencies.size() < candidates; i++)
+         {
+            int dependency = (level - 1) + depth * random.nextInt(candidates);
+            while (dependencies.contains(Integer.valueOf(dependency)))
+            {
+               dependency = (level - 1) + depth * random.nextInt(candidates);
+            }
+            dependencies.add(Integer.valueOf(dependency));
+         }
+      }
+
+      if (dependencies.size() > 0)
+      {
+         sb.append("    <property name=\"dependency\"><inject bean=\"").append(BEAN).append(dependencies.get(0));
+         sb.append("\"/></property>\n");
+      }
+
+      if (elements > 0)
+      {
+         sb.append("    <property name=\"values\">\n");
+         sb.append("      <list elementClass=\"java.lang.String\">\n");
+         for (int i = 0; i < elements; i++)
+         {
+            sb.append("        <value>value").append(i).append("</value>\n");
+         }
+         sb.append("      </list>\n");
+         sb.append("    </property>\n");
+
+         sb.append("    <property name=\"tags\">\n");
+         sb.append("      <set elementClass=\"java.lang.Integer\">\n");
+         for (int i = 0; i < elements; i++)
+         {
+            sb.append("        <value>").append(i).append("</value>\n");
+         }
+         sb.append("      </set>\n");
+         sb.append("    </property>\n");
+
+         sb.append("    <property name=\"attributes\">\n");
+         sb.append("      <map keyClass=\"java.lang.String\" valueClass=\"java.lang.Long\">\n");
+         for (int i = 0; i < elements; i++)
+         {
+            sb.append("        <entry><key>key").append(i).append("</key><value>").append(i);
+            sb.append("</value></entry>\n");
+         }
+         sb.append("      </map>\n");
+         sb.append("    </property>\n");
+      }
+
+      for (int i = 1; i < dependencies.size(); i++)
+      {
+         sb.append("    <depends>").append(BEAN).append(dependencies.get(i)).append("</depends>\n");
+      }
+
+      sb.append("  </bean>\n");
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public String toString()
+   {
+      StringBuilder sb = new StringBuilder();
+
+      sb.append("Generator@").append(Integer.toHexString(System.identityHashCode(this)));
+      sb.append("[files=").append(files);
+      sb.append(" beans=").append(beans);
+      sb.append(" depth=").append(depth);
+      sb.append(" fanIn=").append(fanIn);
+      sb.append(" elements=").append(elements);
+      sb.append(" factories=").append(factories);
+      sb.append(" registries=").append(registries);
+      sb.append(" seed=").append(seed);
+      sb.append("]");
+
+      return sb.toString();
+   }
+
+   /**
+    * Generate the directories
+    * @param args The directory followed by the options
+    */
+   public static void main(String[] args)
+   {
+      if (args.length < 1 || args.length % 2 == 0)
+      {
+         usage();
+         System.exit(1);
+      }
+
+      try
+      {
+         Generator generator = new Generator();
+
+         for (int i = 1; i < args.length; i += 2)
+         {
+            if (!generator.configure(args[i], args[i + 1]))
+            {
+               usage();
+               System.exit(1);
+            }
+         }
+
+         generator.generate(new File(args[0]));
+
+         System.out.println("Generated " + generator.getTotal() + " beans in " + args[0]);
+      }
+      catch (Throwable t)
+      {
+         t.printStackTrace(System.err);
+         System.exit(1);
+      }
+   }
+
+   /**
+    * Usage
+    */
+   static void usage()
+   {
+      System.out.println("Usage: Generator <directory> [-files n] [-beans n] [-depth n] [-fanin n]");
+      System.out.println("                 [-elements n] [-factories n] [-registries n] [-seed n]");
+   }
+}
@@ -0,0 +1,241 @@
+/*
+ * The Fungal kernel project
+ * Copyright (C) 2014
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package com.github.fungal.benchmark;
+
+import com.github.fungal.api.util.Converter;
+import com.github.fungal.api.util.Injection;
+
+import java.math.BigDecimal;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Benchmarks for the injection of property values
+ * @author <a href="mailto:jesper.pedersen@comcast.net">Jesper Pedersen</a>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class InjectionBenchmark
+{
+   /** Injection */
+   private ValueInjection injection;
+
+   /** The bean */
+   private SimpleBean bean;
+
+   /** The class loader */
+   private ClassLoader cl;
+
+   /**
+    * Setup
+    */
+   @Setup
+   public void setup()
+   {
+      injection = new ValueInjection();
+      bean = new SimpleBean();
+      cl = InjectionBenchmark.class.getClassLoader();
+
+      Injection.registerConverter(Size.class, new Converter<Size>()
+      {
+         public Size convert(String value, ClassLoader cl)
+         {
+            return new Size(Long.parseLong(value));
+         }
+      });
+   }
+
+   /**
+    * Tear down
+    */
+   @TearDown
+   public void tearDown()
+   {
+      Injection.unregisterConverter(Size.class);
+   }
+
+   /**
+    * Inject a string
+    * @exception Exception Thrown if an error occurs
+    */
+   @Benchmark
+   public void injectString() throws Exception
+   {
+      injection.inject(bean, "name", "Bean");
+   }
+
+   /**
+    * Inject an int from a string
+    * @exception Exception Thrown if an error occurs
+    */
+   @Benchmark
+   public void injectInt() throws Exception
+   {
+      injection.inject(bean, "count", "42");
+   }
+
+   /**
+    * Inject a long from a string with a system property substitution
+    * @exception Exception Thrown if an error occurs
+    */
+   @Benchmark
+   public void injectSubstitution() throws Exception
+   {
+      injection.inject(bean, "timeout", "${benchmark.timeout:30000}");
+   }
+
+   /**
+    * Convert to an int
+    * @return The value
+    * @exception Exception Thrown if an error occurs
+    */
+   @Benchmark
+   public Object getValueInt() throws Exception
+   {
+      return injection.getValue("count", int.class, "42", cl);
+   }
+
+   /**
+    * Convert to a boolean
+    * @return The value
+    * @exception Exception Thrown if an error occurs
+    */
+   @Benchmark
+   public Object getValueBoolean() throws Exception
+   {
+      return injection.getValue("enabled", Boolean.class, "true", cl);
+   }
+
+   /**
+    * Convert to a class
+    * @return The value
+    * @exception Exception Thrown if an error occurs
+    */
+   @Benchmark
+   public Object getValueClass() throws Exception
+   {
+      return injection.getValue("type", Class.class, "java.lang.String", cl);
+   }
+
+   /**
+    * Convert to properties
+    * @return The value
+    * @exception Exception Thrown if an error occurs
+    */
+   @Benchmark
+   public Object getValueProperties() throws Exception
+   {
+      return injection.getValue("properties", Properties.class, "a=1,b=2,c=3", cl);
+   }
+
+   /**
+    * Convert using the reflective String constructor
+    * @return The value
+    * @exception Exception Thrown if an error occurs
+    */
+   @Benchmark
+   public Object getValueReflective() throws Exception
+   {
+      return injection.getValue("decimal", BigDecimal.class, "1.5", cl);
+   }
+
+   /**
+    * Convert to an enum using the cached valueOf method
+    * @return The value
+    * @exception Exception Thrown if an error occurs
+    */
+   @Benchmark
+   public Object getValueEnum() throws Exception
+   {
+      return injection.getValue("unit", TimeUnit.class, "SECONDS", cl);
+   }
+
+   /**
+    * Convert using a registered converter
+    * @return The value
+    * @exception Exception Thrown if an error occurs
+    */
+   @Benchmark
+   public Object getValueConverter() throws Exception
+   {
+      return injection.getValue("size", Size.class, "64", cl);
+   }
+
+   /**
+    * A size
+    */
+   static class Size
+   {
+      /** The number of bytes */
+      private long bytes;
+
+      /**
+       * Constructor
+       * @param bytes The number of bytes
+       */
+      Size(long bytes)
+      {
+         this.bytes = bytes;
+      }
+
+      /**
+       * Get the number of bytes
+       * @return The value
+       */
+      long getBytes()
+      {
+         return bytes;
+      }
+   }
+
+   /**
+    * Injection which exposes the value conversion
+    */
+   static class ValueInjection extends Injection
+   {
+      /**
+       * Constructor
+       */
+      ValueInjection()
+      {
+         super();
+      }
+
+      /**
+       * {@inheritDoc}
+       */
+      @Override
+      public Object getValue(String name, Class<?> clz, Object v, ClassLoader cl) throws Exception
+      {
+         return super.getValue(name, clz, v, cl);
+      }
+   }
+}
@@ -0,0 +1,95 @@
+/*
+ * The Fungal kernel project
+ * Copyright (C) 2014
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package com.github.fungal.benchmark;
+
+import com.github.fungal.api.util.JMX;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.management.DynamicMBean;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Benchmarks for the JMX management delegator
+ * @author <a href="mailto:jesper.pedersen@comcast.net">Jesper Pedersen</a>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class JMXBenchmark
+{
+   /** The bean */
+   private SimpleBean bean;
+
+   /** The MBean */
+   private DynamicMBean mbean;
+
+   /**
+    * Setup
+    */
+   @Setup
+   public void setup()
+   {
+      bean = new SimpleBean();
+      bean.setName("Bean");
+
+      mbean = JMX.createMBean(bean);
+   }
+
+   /**
+    * Get a string attribute
+    * @return The value
+    * @exception Exception Thrown if an error occurs
+    */
+   @Benchmark
+   public Object getAttribute() throws Exception
+   {
+      return mbean.getAttribute("Name");
+   }
+
+   /**
+    * Get a boolean attribute
+    * @return The value
+    * @exception Exception Thrown if an error occurs
+    */
+   @Benchmark
+   public Object getBooleanAttribute() throws Exception
+   {
+      return mbean.getAttribute("Enabled");
+   }
+
+   /**
+    * Create an MBean
+    * @return The MBean
+    */
+   @Benchmark
+   public DynamicMBean createMBean()
+   {
+      return JMX.createMBean(bean);
+   }
+}
@@ -0,0 +1,118 @@
+/*
+ * The Fungal kernel project
+ * Copyright (C) 2014
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package com.github.fungal.benchmark;
+
+import com.github.fungal.api.Kernel;
+import com.github.fungal.api.KernelFactory;
+import com.github.fungal.api.configuration.KernelConfiguration;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Benchmarks for the startup and shutdown of a kernel with
+ * <code>system/</code> and <code>deploy/</code> directories
+ * @author <a href="mailto:jesper.pedersen@comcast.net">Jesper Pedersen</a>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class KernelBenchmark
+{
+   /** The number of deployments in each directory */
+   @Param({"10"})
+   public int deployments;
+
+   /** The number of beans in each deployment */
+   @Param({"10", "100"})
+   public int size;
+
+   /** Parallel deployment */
+   @Param({"true", "false"})
+   public boolean parallelDeploy;
+
+   /** The kernel home */
+   private File home;
+
+   /**
+    * Setup
+    * @exception Exception Thrown if an error occurs
+    */
+   @Setup
+   public void setup() throws Exception
+   {
+      home = Deployments.createDirectory("fungal-benchmark");
+
+      File system = new File(home, "system");
+      File deploy = new File(home, "deploy");
+
+      if (!system.mkdirs() || !deploy.mkdirs())
+         throw new IllegalStateException("Could not create " + home.getAbsolutePath());
+
+      String[] shapes = new String[] {Deployments.CHAIN, Deployments.FAN_OUT, Deployments.DIAMOND};
+
+      for (int i = 0; i < deployments; i++)
+      {
+         Deployments.write(new File(system, "system" + i + "-beans.xml"),
+                           Deployments.create(Deployments.FAN_OUT, "System" + i + "_", size));
+
+         String shape = shapes[i % shapes.length];
+         Deployments.write(new File(deploy, shape + i + "-beans.xml"),
+                           Deployments.create(shape, "Deploy" + i + "_", size));
+      }
+   }
+
+   /**
+    * Tear down
+    */
+   @TearDown
+   public void tearDown()
+   {
+      Deployments.delete(home);
+   }
+
+   /**
+    * Start and stop the kernel
+    * @exception Throwable Thrown if an error occurs
+    */
+   @Benchmark
+   public void startupShutdown() throws Throwable
+   {
+      Kernel kernel = KernelFactory.create(new KernelConfiguration()
+                                           .name("benchmark")
+                                           .home(home.toURI().toURL())
+                                           .parallelDeploy(parallelDeploy)
+                                           .remoteAccess(false)
+                                           .hotDeployment(false));
+      kernel.startup();
+      kernel.shutdown();
+   }
+}
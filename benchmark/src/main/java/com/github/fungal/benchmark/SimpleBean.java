@@ -0,0 +1,244 @@
+/*
+ * The Fungal kernel project
+ * Copyright (C) 2014
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package com.github.fungal.benchmark;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A simple bean used by the benchmarks
+ * @author <a href="mailto:jesper.pedersen@comcast.net">Jesper Pedersen</a>
+ */
+public class SimpleBean
+{
+   /** Name */
+   private String name;
+
+   /** Count */
+   private int count;
+
+   /** Timeout */
+   private long timeout;
+
+   /** Enabled */
+   private boolean enabled;
+
+   /** Dependency */
+   private Object dependency;
+
+   /** Values */
+   private List<String> values;
+
+   /** Tags */
+   private Set<Integer> tags;
+
+   /** Attributes */
+   private Map<String, Long> attributes;
+
+   /** Started */
+   private boolean started;
+
+   /**
+    * Constructor
+    */
+   public SimpleBean()
+   {
+      this.name = null;
+      this.count = 0;
+      this.timeout = 0L;
+      this.enabled = false;
+      this.dependency = null;
+      this.values = null;
+      this.tags = null;
+      this.attributes = null;
+      this.started = false;
+   }
+
+   /**
+    * Get the name
+    * @return The value
+    */
+   public String getName()
+   {
+      return name;
+   }
+
+   /**
+    * Set the name
+    * @param v The value
+    */
+   public void setName(String v)
+   {
+      this.name = v;
+   }
+
+   /**
+    * Get the count
+    * @return The value
+    */
+   public int getCount()
+   {
+      return count;
+   }
+
+   /**
+    * Set the count
+    * @param v The value
+    */
+   public void setCount(int v)
+   {
+      this.count = v;
+   }
+
+   /**
+    * Get the timeout
+    * @return The value
+    */
+   public long getTimeout()
+   {
+      return timeout;
+   }
+
+   /**
+    * Set the timeout
+    * @param v The value
+    */
+   public void setTimeout(long v)
+   {
+      this.timeout = v;
+   }
+
+   /**
+    * Is enabled
+    * @return The value
+    */
+   public boolean isEnabled()
+   {
+      return enabled;
+   }
+
+   /**
+    * Set enabled
+    * @param v The value
+    */
+   public void setEnabled(boolean v)
+   {
+      this.enabled = v;
+   }
+
+   /**
+    * Get the dependency
+    * @return The value
+    */
+   public Object getDependency()
+   {
+      return dependency;
+   }
+
+   /**
+    * Set the dependency
+    * @param v The value
+    */
+   public void setDependency(Object v)
+   {
+      this.dependency = v;
+   }
+
+   /**
+    * Get the values
+    * @return The value
+    */
+   public List<String> getValues()
+   {
+      return values;
+   }
+
+   /**
+    * Set the values
+    * @param v The value
+    */
+   public void setValues(List<String> v)
+   {
+      this.values = v;
+   }
+
+   /**
+    * Get the tags
+    * @return The value
+    */
+   public Set<Integer> getTags()
+   {
+      return tags;
+   }
+
+   /**
+    * Set the tags
+    * @param v The value
+    */
+   public void setTags(Set<Integer> v)
+   {
+      this.tags = v;
+   }
+
+   /**
+    * Get the attributes
+    * @return The value
+    */
+   public Map<String, Long> getAttributes()
+   {
+      return attributes;
+   }
+
+   /**
+    * Set the attributes
+    * @param v The value
+    */
+   public void setAttributes(Map<String, Long> v)
+   {
+      this.attributes = v;
+   }
+
+   /**
+    * Is started
+    * @return The value
+    */
+   public boolean isStarted()
+   {
+      return started;
+   }
+
+   /**
+    * Start
+    */
+   public void start()
+   {
+      started = true;
+   }
+
+   /**
+    * Stop
+    */
+   public void stop()
+   {
+      started = false;
+   }
+}
@@ -0,0 +1,389 @@
+/*
+ * The Fungal kernel project
+ * Copyright (C) 2014
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package com.github.fungal.benchmark;
+
+import com.github.fungal.api.Kernel;
+import com.github.fungal.api.KernelFactory;
+import com.github.fungal.api.classloading.ClassLoaderFactory;
+import com.github.fungal.api.configuration.KernelConfiguration;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * End-to-end startup harness which boots kernels against a generated
+ * <code>system/</code> and <code>deploy/</code> tree and reports the startup time,
+ * shutdown time, peak number of threads and the allocation during startup
+ * for each combination of parallel deployment and class loader type.
+ *
+ * The allocation is the sum of the bytes allocated by the live threads, so
+ * threads that terminate during startup aren't accounted for.
+ * @author <a href="mailto:jesper.pedersen@comcast.net">Jesper Pedersen</a>
+ */
+public class StartupHarness
+{
+   /** The class loader types */
+   private static final String[] CLASSLOADERS = new String[] {"ParentFirst", "ParentLast", "Export"};
+
+   /** The kernel home */
+   private File home;
+
+   /** Number of warmup runs */
+   private int warmup;
+
+   /** Number of measured runs */
+   private int iterations;
+
+   /** The thread bean */
+   private ThreadMXBean threadBean;
+
+   /**
+    * Constructor
+    * @param home The kernel home
+    * @param warmup The number of warmup runs
+    * @param iterations The number of measured runs
+    */
+   public StartupHarness(File home, int warmup, int iterations)
+   {
+      this.home = home;
+      this.warmup = warmup;
+      this.iterations = iterations;
+      this.threadBean = ManagementFactory.getThreadMXBean();
+   }
+
+   /**
+    * Run a configuration
+    * @param parallelDeploy Parallel deployment
+    * @param classLoader The class loader type
+    * @return The result
+    * @exception Throwable Thrown if an error occurs
+    */
+   public Result run(boolean parallelDeploy, String classLoader) throws Throwable
+   {
+      Result result = new Result(parallelDeploy, classLoader);
+
+      for (int i = 0; i < warmup + iterations; i++)
+      {
+         KernelConfiguration kc = new KernelConfiguration()
+            .name("harness")
+            .home(home.toURI().toURL())
+            .classLoader(getType(classLoader))
+            .parallelDeploy(parallelDeploy)
+            .remoteAccess(false)
+            .hotDeployment(false);
+
+         Kernel kernel = KernelFactory.create(kc);
+
+         threadBean.resetPeakThreadCount();
+         Map<Long, Long> allocated = getAllocatedBytes();
+
+         long start = System.nanoTime();
+         kernel.startup();
+         long started = System.nanoTime();
+
+         int threads = threadBean.getPeakThreadCount();
+         long allocation = getAllocatedBytesSince(allocated);
+
+         long stop = System.nanoTime();
+         kernel.shutdown();
+         long stopped = System.nanoTime();
+
+         if (i >= warmup)
+            result.add(started - start, stopped - stop, threads, allocation);
+      }
+
+      return result;
+   }
+
+   /**
+    * Get the allocated bytes of the live threads
+    * @return The allocated bytes by thread id; <code>null</code> if not supported
+    */
+   private Map<Long, Long> getAllocatedBytes()
+   {
+      if (!(threadBean instanceof com.sun.management.ThreadMXBean))
+         return null;
+
+      com.sun.management.ThreadMXBean tmb = (com.sun.management.ThreadMXBean)threadBean;
+      if (!tmb.isThreadAllocatedMemorySupported() || !tmb.isThreadAllocatedMemoryEnabled())
+         return null;
+
+      long[] ids = tmb.getAllThreadIds();
+      long[] bytes = tmb.getThreadAllocatedBytes(ids);
+
+      Map<Long, Long> result = new HashMap<Long, Long>(ids.length);
+      for (int i = 0; i < ids.length; i++)
+      {
+         if (bytes[i] >= 0)
+            result.put(Long.valueOf(ids[i]), Long.valueOf(bytes[i]));
+      }
+
+      return result;
+   }
+
+   /**
+    * Get the bytes allocated by the live threads since a snapshot
+    * @param snapshot The snapshot
+    * @return The value; <code>-1</code> if not supported
+    */
+   private long getAllocatedBytesSince(Map<Long, Long> snapshot)
+   {
+      Map<Long, Long> current = getAllocatedBytes();
+
+      if (snapshot == null || current == null)
+         return -1L;
+
+      long result = 0L;
+      for (Map.Entry<Long, Long> entry : current.entrySet())
+      {
+         Long before = snapshot.get(entry.getKey());
+         result += entry.getValue().longValue() - (before != null ? before.longValue() : 0L);
+      }
+
+      return result;
+   }
+
+   /**
+    * Get the class loader type
+    * @param name The name
+    * @return The type
+    */
+   static int getType(String name)
+   {
+      if ("ParentFirst".equals(name))
+      {
+         return ClassLoaderFactory.TYPE_PARENT_FIRST;
+      }
+      else if ("ParentLast".equals(name))
+      {
+         return ClassLoaderFactory.TYPE_PARENT_LAST;
+      }
+      else if ("Export".equals(name))
+      {
+         return ClassLoaderFactory.TYPE_EXPORT;
+      }
+
+      throw new IllegalArgumentException("Unknown class loader: " + name);
+   }
+
+   /**
+    * The result of a configuration
+    */
+   public static class Result
+   {
+      /** Parallel deployment */
+      private boolean parallelDeploy;
+
+      /** Class loader */
+      private String classLoader;
+
+      /** Runs */
+      private int runs;
+
+      /** Total startup time */
+      private long startup;
+
+      /** Minimum startup time */
+      private long minStartup;
+
+      /** Total shutdown time */
+      private long shutdown;
+
+      /** Peak threads */
+      private int threads;
+
+      /** Total allocation */
+      private long allocation;
+
+      /**
+       * Constructor
+       * @param parallelDeploy Parallel deployment
+       * @param classLoader The class loader type
+       */
+      Result(boolean parallelDeploy, String classLoader)
+      {
+         this.parallelDeploy = parallelDeploy;
+         this.classLoader = classLoader;
+         this.runs = 0;
+         this.startup = 0L;
+         this.minStartup = Long.MAX_VALUE;
+         this.shutdown = 0L;
+         this.threads = 0;
+         this.allocation = 0L;
+      }
+
+      /**
+       * Add a run
+       * @param startupTime The startup time in nanoseconds
+       * @param shutdownTime The shutdown time in nanoseconds
+       * @param peakThreads The peak number of threads
+       * @param allocated The allocated bytes; <code>-1</code> if not supported
+       */
+      void add(long startupTime, long shutdownTime, int peakThreads, long allocated)
+      {
+         runs++;
+         startup += startupTime;
+         shutdown += shutdownTime;
+
+         if (startupTime < minStartup)
+            minStartup = startupTime;
+
+         if (peakThreads > threads)
+            threads = peakThreads;
+
+         if (allocated < 0L || allocation < 0L)
+         {
+            allocation = -1L;
+         }
+         else
+         {
+            allocation += allocated;
+         }
+      }
+
+      /**
+       * {@inheritDoc}
+       */
+      @Override
+      public String toString()
+      {
+         if (runs == 0)
+            return String.format(Locale.US, "%-8s %-12s (no runs)", Boolean.valueOf(parallelDeploy), classLoader);
+
+         return String.format(Locale.US, "%-8s %-12s %12.1f %12.1f %12.1f %8d %14.1f",
+                              Boolean.valueOf(parallelDeploy), classLoader,
+                              Double.valueOf(startup / runs / 1000000.0),
+                              Double.valueOf(minStartup / 1000000.0),
+                              Double.valueOf(shutdown / runs / 1000000.0),
+                              Integer.valueOf(threads),
+                              Double.valueOf(allocation < 0L ? -1.0 : allocation / runs / (1024.0 * 1024.0)));
+      }
+   }
+
+   /**
+    * Run the harness
+    * @param args The options
+    */
+   public static void main(String[] args)
+   {
+      if (args.length % 2 != 0)
+      {
+         usage();
+         System.exit(1);
+      }
+
+      File home = null;
+      int warmup = 1;
+      int iterations = 5;
+      String[] parallel = new String[] {"true", "false"};
+      String[] classLoaders = CLASSLOADERS;
+      Generator generator = new Generator();
+
+      for (int i = 0; i < args.length; i += 2)
+      {
+         String option = args[i];
+         String value = args[i + 1];
+
+         if ("-home".equals(option))
+         {
+            home = new File(value);
+         }
+         else if ("-warmup".equals(option))
+         {
+            warmup = Integer.parseInt(value);
+         }
+         else if ("-iterations".equals(option))
+         {
+            iterations = Integer.parseInt(value);
+         }
+         else if ("-parallel".equals(option))
+         {
+            parallel = value.split(",");
+         }
+         else if ("-classloader".equals(option))
+         {
+            classLoaders = value.split(",");
+         }
+         else if (!generator.configure(option, value))
+         {
+            usage();
+            System.exit(1);
+         }
+      }
+
+      boolean generated = false;
+      boolean failed = false;
+      try
+      {
+         if (home == null)
+         {
+            home = Deployments.createDirectory("fungal-harness");
+            generator.generate(home);
+            generated = true;
+
+            System.out.println("Generated " + generator.getTotal() + " beans: " + generator);
+         }
+
+         System.out.println("Home: " + home.getAbsolutePath());
+         System.out.println(String.format(Locale.US, "%-8s %-12s %12s %12s %12s %8s %14s",
+                                          "Parallel", "ClassLoader", "Startup(ms)", "Min(ms)",
+                                          "Shutdown(ms)", "Threads", "Allocated(MB)"));
+
+         StartupHarness harness = new StartupHarness(home, warmup, iterations);
+
+         for (String p : parallel)
+         {
+            for (String cl : classLoaders)
+            {
+               System.out.println(harness.run(Boolean.parseBoolean(p.trim()), cl.trim()));
+            }
+         }
+      }
+      catch (Throwable t)
+      {
+         t.printStackTrace(System.err);
+         failed = true;
+      }
+      finally
+      {
+         if (generated)
+            Deployments.delete(home);
+      }
+
+      if (failed)
+         System.exit(1);
+   }
+
+   /**
+    * Usage
+    */
+   static void usage()
+   {
+      System.out.println("Usage: StartupHarness [-home directory] [-warmup n] [-iterations n]");
+      System.out.println("                      [-parallel true,false] [-classloader ParentFirst,ParentLast,Export]");
+      System.out.println("                      [generator options]");
+      Generator.usage();
+   }
+}
@@ -0,0 +1,90 @@
+/*
+ * The Fungal kernel project
+ * Copyright (C) 2014
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package com.github.fungal.benchmark;
+
+import com.github.fungal.deployment.Deployment;
+import com.github.fungal.deployment.Unmarshaller;
+
+import java.io.File;
+import java.net.URL;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Benchmarks for the parsing of deployment descriptors
+ * @author <a href="mailto:jesper.pedersen@comcast.net">Jesper Pedersen</a>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class UnmarshallerBenchmark
+{
+   /** The number of beans */
+   @Param({"10", "1000"})
+   public int size;
+
+   /** The directory */
+   private File directory;
+
+   /** The deployment */
+   private URL url;
+
+   /**
+    * Setup
+    * @exception Exception Thrown if an error occurs
+    */
+   @Setup
+   public void setup() throws Exception
+   {
+      directory = Deployments.createDirectory("fungal-benchmark");
+      url = Deployments.write(new File(directory, "unmarshal-beans.xml"),
+                              Deployments.create(Deployments.DIAMOND, "Bean", size)).toURI().toURL();
+   }
+
+   /**
+    * Tear down
+    */
+   @TearDown
+   public void tearDown()
+   {
+      Deployments.delete(directory);
+   }
+
+   /**
+    * Parse the deployment
+    * @return The deployment
+    * @exception Exception Thrown if an error occurs
+    */
+   @Benchmark
+   public Deployment unmarshal() throws Exception
+   {
+      return new Unmarshaller().unmarshal(url);
+   }
+}
@@ -24,11 +24,14 @@ import com.github.fungal.api.classloading.KernelClassLoader;
 import com.github.fungal.api.deployer.MainDeployer;
 import com.github.fungal.api.deployment.Bean;
 import com.github.fungal.api.deployment.BeanDeployment;
+import com.github.fungal.api.metrics.Metrics;
+import com.github.fungal.api.util.ExtractionCache;
 import com.github.fungal.spi.deployers.Deployment;
 
 import java.net.URL;
 import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.Future;
 
 import javax.management.MBeanServer;
 
@@ -61,6 +64,18 @@ public interface Kernel
     */
    public MBeanServer getMBeanServer();
 
+   /**
+    * Get the metrics for the kernel
+    * @return The metrics
+    */
+   public Metrics getMetrics();
+
+   /**
+    * Get the extraction cache for the kernel
+    * @return The cache; <code>null</code> if the cache is disabled
+    */
+   public ExtractionCache getExtractionCache();
+
    /**
     * Get the MainDeployer for the kernel
     * @return The MainDeployer instance
@@ -116,6 +131,21 @@ public interface Kernel
     */
    public void startup() throws Throwable;
 
+   /**
+    * Startup in the background. Remote access and remote JMX access are started
+    * in parallel with the deployments
+    * @return The future that completes when the kernel has started
+    * @see #getStartupStage
+    */
+   public Future<Void> startupAsync();
+
+   /**
+    * Get the future of a startup stage
+    * @param stage The stage
+    * @return The future that completes when the stage is done
+    */
+   public Future<Void> getStartupStage(StartupStage stage);
+
    /**
     * Shutdown
     * @exception Throwable Thrown if an error occurs
@@ -26,6 +26,7 @@ import java.net.URL;
 import java.net.URLClassLoader;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Kernel class loader
@@ -50,14 +51,47 @@ public abstract class KernelClassLoader extends URLClassLoader implements Closea
       simpleTypes.put(double.class.getName(), double.class);
    }
 
+   /** The number of class load requests */
+   private AtomicLong loadRequests;
+
+   /** The number of classes defined */
+   private AtomicLong definedClasses;
+
+   /** The time spent defining classes in nanoseconds */
+   private AtomicLong defineTime;
+
    /**
     * Constructor
     * @param urls The URLs for JAR archives or directories
     * @param parent The parent class loader
     */
    protected KernelClassLoader(URL[] urls, ClassLoader parent)
+   {
+      this(urls, parent, null);
+   }
+
+   /**
+    * Constructor
+    * @param urls The URLs for JAR archives or directories
+    * @param parent The parent class loader
+    * @param statistics The class loader whose statistics are shared; <code>null</code> for own statistics
+    */
+   protected KernelClassLoader(URL[] urls, ClassLoader parent, KernelClassLoader statistics)
    {
       super(urls, parent);
+
+      if (statistics != null)
+      {
+         this.loadRequests = statistics.loadRequests;
+         this.definedClasses = statistics.definedClasses;
+         this.defineTime = statistics.defineTime;
+      }
+      else
+      {
+         this.loadRequests = new AtomicLong(0);
+         this.definedClasses = new AtomicLong(0);
+         this.defineTime = new AtomicLong(0);
+      }
    }
    
    /**
@@ -69,9 +103,66 @@ public abstract class KernelClassLoader extends URLClassLoader implements Closea
    @Override
    public Class<?> loadClass(String name) throws ClassNotFoundException
    {
+      loadRequest();
+
       return simpleTypes.get(name);
    }
 
+   /**
+    * Count a class load request. Subclasses which don't call <code>loadClass(String)</code>
+    * of this class must call this method when a request enters the class loader
+    */
+   protected void loadRequest()
+   {
+      loadRequests.incrementAndGet();
+   }
+
+   /**
+    * Find a class
+    * @param name The fully qualified class name
+    * @return The class
+    * @throws ClassNotFoundException If the class could not be found 
+    */
+   @Override
+   protected Class<?> findClass(String name) throws ClassNotFoundException
+   {
+      long start = System.nanoTime();
+
+      Class<?> result = super.findClass(name);
+
+      definedClasses.incrementAndGet();
+      defineTime.addAndGet(System.nanoTime() - start);
+
+      return result;
+   }
+
+   /**
+    * Get the number of class load requests served by this class loader
+    * @return The value
+    */
+   public long getLoadRequests()
+   {
+      return loadRequests.get();
+   }
+
+   /**
+    * Get the number of classes defined by this class loader
+    * @return The value
+    */
+   public long getDefinedClasses()
+   {
+      return definedClasses.get();
+   }
+
+   /**
+    * Get the time spent defining classes
+    * @return The value in nanoseconds
+    */
+   public long getDefineTime()
+   {
+      return defineTime.get();
+   }
+
    /**
     * Close - no operation as shutdown needs to be called explicit
     * @exception IOException Thrown if an error occurs
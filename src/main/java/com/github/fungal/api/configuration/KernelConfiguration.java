@@ -62,9 +62,21 @@ public class KernelConfiguration
    /** Repository */
    private String repository;
 
+   /** Extraction cache */
+   private String extractionCache;
+
+   /** Extraction cache size */
+   private long extractionCacheSize;
+
    /** Do parallel deployment in deploy */
    private boolean parallelDeploy;
 
+   /** Netboot connections per server */
+   private int netbootConnections;
+
+   /** Netboot placement */
+   private ArtifactPlacement netbootPlacement;
+
    /** Bind address */
    private String bindAddress;
 
@@ -104,12 +116,24 @@ public class KernelConfiguration
    /** Bean management */
    private boolean beanManagement;
 
+   /** Lazy bean management */
+   private boolean lazyBeanManagement;
+
+   /** Lazy beans */
+   private boolean lazyBeans;
+
    /** RMI registry port */
    private int rmiRegistryPort;
 
    /** RMI server port */
    private int rmiServerPort;
 
+   /** Startup report */
+   private boolean startupReport;
+
+   /** Startup snapshot */
+   private boolean startupSnapshot;
+
    /**
     * Constructor
     */
@@ -123,7 +147,11 @@ public class KernelConfiguration
       system = "system";
       deploy = "deploy";
       repository = "repository";
+      extractionCache = "cache";
+      extractionCacheSize = 1024L * 1024L * 1024L;
       parallelDeploy = true;
+      netbootConnections = 5;
+      netbootPlacement = ArtifactPlacement.COPY;
       bindAddress = null;
       threadGroup = null;
       remoteAccess = true;
@@ -136,9 +164,13 @@ public class KernelConfiguration
       management = true;
       usePlatformMBeanServer = false;
       beanManagement = false;
+      lazyBeanManagement = false;
+      lazyBeans = false;
       remoteJmxAccess = false;
       rmiRegistryPort = 1203;
       rmiServerPort = 1204;
+      startupReport = false;
+      startupSnapshot = false;
    }
 
    /**
@@ -309,6 +341,90 @@ public class KernelConfiguration
       return repository;
    }
 
+   /**
+    * Set the extraction cache directory; default <code>cache</code>
+    * @param value The value; <code>null</code> disables the cache
+    * @return The configuration
+    */
+   public KernelConfiguration extractionCache(String value)
+   {
+      this.extractionCache = value;
+
+      return this;
+   }
+
+   /**
+    * Get the extraction cache directory
+    * @return The value
+    */
+   public String getExtractionCache()
+   {
+      return extractionCache;
+   }
+
+   /**
+    * Set the maximum size of the extraction cache in bytes; default <code>1073741824</code>
+    * @param value The value
+    * @return The configuration
+    */
+   public KernelConfiguration extractionCacheSize(long value)
+   {
+      this.extractionCacheSize = value;
+
+      return this;
+   }
+
+   /**
+    * Get the maximum size of the extraction cache in bytes
+    * @return The value
+    */
+   public long getExtractionCacheSize()
+   {
+      return extractionCacheSize;
+   }
+
+   /**
+    * Set the number of concurrent netboot downloads per server; default <code>5</code>
+    * @param value The value
+    * @return The configuration
+    */
+   public KernelConfiguration netbootConnections(int value)
+   {
+      this.netbootConnections = value;
+
+      return this;
+   }
+
+   /**
+    * Get the number of concurrent netboot downloads per server
+    * @return The value
+    */
+   public int getNetbootConnections()
+   {
+      return netbootConnections;
+   }
+
+   /**
+    * Set how netboot installs the artifacts from the repository; default <code>COPY</code>
+    * @param value The value
+    * @return The configuration
+    */
+   public KernelConfiguration netbootPlacement(ArtifactPlacement value)
+   {
+      this.netbootPlacement = value;
+
+      return this;
+   }
+
+   /**
+    * Get how netboot installs the artifacts from the repository
+    * @return The value
+    */
+   public ArtifactPlacement getNetbootPlacement()
+   {
+      return netbootPlacement;
+   }
+
    /**
     * Set if the files in the system and deploy directories should deployed
     * in parallel; default <code>true</code>
@@ -620,6 +736,50 @@ public class KernelConfiguration
       return beanManagement;
    }
 
+   /**
+    * Expose the deployed beans in the MBeanServer on the first query instead of
+    * when they are started; default <code>false</code>
+    * @param v The value
+    * @return The configuration
+    */
+   public KernelConfiguration lazyBeanManagement(boolean v)
+   {
+      this.lazyBeanManagement = v;
+
+      return this;
+   }
+
+   /**
+    * Is lazy bean management enabled ?
+    * @return The value
+    */
+   public boolean isLazyBeanManagement()
+   {
+      return lazyBeanManagement;
+   }
+
+   /**
+    * Create and start the deployed beans on first use instead of when they are
+    * deployed, unless the bean specifies otherwise; default <code>false</code>
+    * @param v The value
+    * @return The configuration
+    */
+   public KernelConfiguration lazyBeans(boolean v)
+   {
+      this.lazyBeans = v;
+
+      return this;
+   }
+
+   /**
+    * Are beans lazy by default ?
+    * @return The value
+    */
+   public boolean isLazyBeans()
+   {
+      return lazyBeans;
+   }
+
    /**
     * Set the RMI registry port; default <code>1203</code>
     * @param port The port
@@ -661,4 +821,48 @@ public class KernelConfiguration
    {
       return rmiServerPort;
    }
+
+   /**
+    * Write a report of the startup, including the critical path through the bean
+    * dependencies, to the kernel home; default <code>false</code>
+    * @param v The value
+    * @return The configuration
+    */
+   public KernelConfiguration startupReport(boolean v)
+   {
+      this.startupReport = v;
+
+      return this;
+   }
+
+   /**
+    * Is the startup report enabled ?
+    * @return The value
+    */
+   public boolean isStartupReport()
+   {
+      return startupReport;
+   }
+
+   /**
+    * Keep a snapshot of the bean graph in the kernel home, and use it to schedule the
+    * beans of unchanged deployments on the next startup; default <code>false</code>
+    * @param v The value
+    * @return The configuration
+    */
+   public KernelConfiguration startupSnapshot(boolean v)
+   {
+      this.startupSnapshot = v;
+
+      return this;
+   }
+
+   /**
+    * Is the startup snapshot enabled ?
+    * @return The value
+    */
+   public boolean isStartupSnapshot()
+   {
+      return startupSnapshot;
+   }
 }
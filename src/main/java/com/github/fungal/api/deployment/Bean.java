@@ -46,6 +46,7 @@ public class Bean
    private String name;
    private String interfaze;
    private String clazz;
+   private Boolean lazy;
 
    /**
     * Constructor
@@ -71,6 +72,7 @@ public class Bean
       this.name = name;
       this.interfaze = null;
       this.clazz = null;
+      this.lazy = null;
    }
 
    /**
@@ -351,4 +353,22 @@ public class Bean
    {
       clazz = value;
    }
+
+   /**
+    * Is the bean lazy
+    * @return The value; <code>null</code> if the kernel configuration should be used
+    */
+   public Boolean isLazy()
+   {
+      return lazy;
+   }
+
+   /**
+    * Set the lazy value
+    * @param value The value
+    */
+   public void setLazy(Boolean value)
+   {
+      lazy = value;
+   }
 }
@@ -0,0 +1,84 @@
+/*
+ * The Fungal kernel project
+ * Copyright (C) 2014
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package com.github.fungal.api.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A counter
+ * @author <a href="mailto:jesper.pedersen@comcast.net">Jesper Pedersen</a>
+ */
+public class Counter
+{
+   /** The count */
+   private AtomicLong count;
+
+   /**
+    * Constructor
+    */
+   public Counter()
+   {
+      this.count = new AtomicLong(0);
+   }
+
+   /**
+    * Increment the counter
+    */
+   public void increment()
+   {
+      count.incrementAndGet();
+   }
+
+   /**
+    * Add to the counter
+    * @param v The value
+    */
+   public void add(long v)
+   {
+      count.addAndGet(v);
+   }
+
+   /**
+    * Get the count
+    * @return The value
+    */
+   public long getCount()
+   {
+      return count.get();
+   }
+
+   /**
+    * Reset the counter
+    */
+   public void reset()
+   {
+      count.set(0);
+   }
+
+   /**
+    * String representation
+    * @return The string
+    */
+   public String toString()
+   {
+      return Long.toString(count.get());
+   }
+}
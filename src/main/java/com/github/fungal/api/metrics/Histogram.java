@@ -0,0 +1,257 @@
+/*
+ * The Fungal kernel project
+ * Copyright (C) 2014
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package com.github.fungal.api.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A histogram of non-negative values, like latencies in nanoseconds.
+ *
+ * The values are counted in buckets with a fixed relative precision of 1/16 for
+ * the full <code>long</code> range, so recording a value is a few atomic operations
+ * without any allocation.
+ * @author <a href="mailto:jesper.pedersen@comcast.net">Jesper Pedersen</a>
+ */
+public class Histogram
+{
+   /** The number of bits for the sub buckets */
+   private static final int SUB_BUCKET_BITS = 4;
+
+   /** The number of sub buckets for each power of two */
+   private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+   /** The number of buckets */
+   private static final int BUCKETS = SUB_BUCKETS + (63 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+   /** The bucket counts */
+   private AtomicLongArray buckets;
+
+   /** The count */
+   private AtomicLong count;
+
+   /** The sum */
+   private AtomicLong sum;
+
+   /** The minimum value */
+   private AtomicLong min;
+
+   /** The maximum value */
+   private AtomicLong max;
+
+   /**
+    * Constructor
+    */
+   public Histogram()
+   {
+      this.buckets = new AtomicLongArray(BUCKETS);
+      this.count = new AtomicLong(0);
+      this.sum = new AtomicLong(0);
+      this.min = new AtomicLong(Long.MAX_VALUE);
+      this.max = new AtomicLong(Long.MIN_VALUE);
+   }
+
+   /**
+    * Record a value; negative values are recorded as 0
+    * @param value The value
+    */
+   public void record(long value)
+   {
+      if (value < 0)
+         value = 0;
+
+      buckets.incrementAndGet(index(value));
+      count.incrementAndGet();
+      sum.addAndGet(value);
+
+      long current = min.get();
+      while (value < current && !min.compareAndSet(current, value))
+      {
+         current = min.get();
+      }
+
+      current = max.get();
+      while (value > current && !max.compareAndSet(current, value))
+      {
+         current = max.get();
+      }
+   }
+
+   /**
+    * Record the time since a start time
+    * @param start The start time from <code>System.nanoTime()</code>
+    */
+   public void recordSince(long start)
+   {
+      record(System.nanoTime() - start);
+   }
+
+   /**
+    * Get the number of values
+    * @return The value
+    */
+   public long getCount()
+   {
+      return count.get();
+   }
+
+   /**
+    * Get the sum of the values
+    * @return The value
+    */
+   public long getSum()
+   {
+      return sum.get();
+   }
+
+   /**
+    * Get the minimum value
+    * @return The value; <code>0</code> if there are no values
+    */
+   public long getMin()
+   {
+      long v = min.get();
+      return v != Long.MAX_VALUE ? v : 0;
+   }
+
+   /**
+    * Get the maximum value
+    * @return The value; <code>0</code> if there are no values
+    */
+   public long getMax()
+   {
+      long v = max.get();
+      return v != Long.MIN_VALUE ? v : 0;
+   }
+
+   /**
+    * Get the mean value
+    * @return The value; <code>0</code> if there are no values
+    */
+   public double getMean()
+   {
+      long c = count.get();
+      return c > 0 ? (double)sum.get() / c : 0.0;
+   }
+
+   /**
+    * Get the value at a percentile. The result is the upper bound of the bucket
+    * holding the percentile, limited by the maximum value
+    * @param percentile The percentile between <code>0</code> and <code>100</code>
+    * @return The value; <code>0</code> if there are no values
+    */
+   public long getValueAtPercentile(double percentile)
+   {
+      long c = count.get();
+      if (c == 0)
+         return 0;
+
+      if (percentile < 0.0)
+         percentile = 0.0;
+
+      if (percentile > 100.0)
+         percentile = 100.0;
+
+      long target = (long)Math.ceil(c * percentile / 100.0);
+      if (target < 1)
+         target = 1;
+
+      long seen = 0;
+      for (int i = 0; i < BUCKETS; i++)
+      {
+         seen += buckets.get(i);
+         if (seen >= target)
+            return Math.min(upperBound(i), getMax());
+      }
+
+      return getMax();
+   }
+
+   /**
+    * Reset the histogram
+    */
+   public void reset()
+   {
+      for (int i = 0; i < BUCKETS; i++)
+      {
+         buckets.set(i, 0);
+      }
+
+      count.set(0);
+      sum.set(0);
+      min.set(Long.MAX_VALUE);
+      max.set(Long.MIN_VALUE);
+   }
+
+   /**
+    * String representation
+    * @return The string
+    */
+   public String toString()
+   {
+      StringBuilder sb = new StringBuilder();
+
+      sb.append("count=").append(getCount());
+      sb.append(" min=").append(getMin());
+      sb.append(" mean=").append((long)getMean());
+      sb.append(" p50=").append(getValueAtPercentile(50.0));
+      sb.append(" p90=").append(getValueAtPercentile(90.0));
+      sb.append(" p99=").append(getValueAtPercentile(99.0));
+      sb.append(" max=").append(getMax());
+
+      return sb.toString();
+   }
+
+   /**
+    * Get the bucket of a value
+    * @param value The value
+    * @return The index
+    */
+   private static int index(long value)
+   {
+      if (value < SUB_BUCKETS)
+         return (int)value;
+
+      int exponent = 63 - Long.numberOfLeadingZeros(value);
+      int sub = (int)(value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+
+      return SUB_BUCKETS + (exponent - SUB_BUCKET_BITS) * SUB_BUCKETS + sub;
+   }
+
+   /**
+    * Get the highest value of a bucket
+    * @param index The index
+    * @return The value
+    */
+   private static long upperBound(int index)
+   {
+      if (index < SUB_BUCKETS)
+         return index;
+
+      int exponent = (index - SUB_BUCKETS) / SUB_BUCKETS + SUB_BUCKET_BITS;
+      long sub = (index - SUB_BUCKETS) % SUB_BUCKETS;
+      int shift = exponent - SUB_BUCKET_BITS;
+
+      long lower = (SUB_BUCKETS + sub) << shift;
+
+      return lower + (1L << shift) - 1;
+   }
+}
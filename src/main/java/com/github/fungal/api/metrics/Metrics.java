@@ -0,0 +1,283 @@
+/*
+ * The Fungal kernel project
+ * Copyright (C) 2014
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package com.github.fungal.api.metrics;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The metrics registry of a kernel.
+ *
+ * Counters and histograms are created on first use, and should be looked up once
+ * and kept by the component that updates them. Timings are recorded in nanoseconds.
+ * @author <a href="mailto:jesper.pedersen@comcast.net">Jesper Pedersen</a>
+ */
+public class Metrics implements MetricsMBean
+{
+   /** The logger */
+   private Logger log = Logger.getLogger(Metrics.class.getName());
+
+   /** The counters */
+   private ConcurrentMap<String, Counter> counters;
+
+   /** The histograms */
+   private ConcurrentMap<String, Histogram> histograms;
+
+   /** The gauges */
+   private ConcurrentMap<String, Gauge> gauges;
+
+   /**
+    * Constructor
+    */
+   public Metrics()
+   {
+      this.counters = new ConcurrentHashMap<String, Counter>();
+      this.histograms = new ConcurrentHashMap<String, Histogram>();
+      this.gauges = new ConcurrentHashMap<String, Gauge>();
+   }
+
+   /**
+    * Get a counter; the counter is created if it doesn't exist
+    * @param name The name of the counter
+    * @return The counter
+    */
+   public Counter getCounter(String name)
+   {
+      if (name == null)
+         throw new IllegalArgumentException("Name is null");
+
+      Counter counter = counters.get(name);
+      if (counter == null)
+      {
+         counter = new Counter();
+         Counter existing = counters.putIfAbsent(name, counter);
+         if (existing != null)
+            counter = existing;
+      }
+
+      return counter;
+   }
+
+   /**
+    * Get a histogram; the histogram is created if it doesn't exist
+    * @param name The name of the histogram
+    * @return The histogram
+    */
+   public Histogram getHistogram(String name)
+   {
+      if (name == null)
+         throw new IllegalArgumentException("Name is null");
+
+      Histogram histogram = histograms.get(name);
+      if (histogram == null)
+      {
+         histogram = new Histogram();
+         Histogram existing = histograms.putIfAbsent(name, histogram);
+         if (existing != null)
+            histogram = existing;
+      }
+
+      return histogram;
+   }
+
+   /**
+    * Register a gauge
+    * @param name The name of the gauge
+    * @param gauge The gauge
+    */
+   public void registerGauge(String name, Gauge gauge)
+   {
+      if (name == null)
+         throw new IllegalArgumentException("Name is null");
+
+      if (gauge == null)
+         throw new IllegalArgumentException("Gauge is null");
+
+      gauges.put(name, gauge);
+   }
+
+   /**
+    * Unregister a gauge
+    * @param name The name of the gauge
+    */
+   public void unregisterGauge(String name)
+   {
+      if (name != null)
+         gauges.remove(name);
+   }
+
+   /**
+    * Unregister the gauges starting with a prefix
+    * @param prefix The prefix
+    */
+   public void unregisterGauges(String prefix)
+   {
+      if (prefix == null)
+         return;
+
+      Iterator<String> it = gauges.keySet().iterator();
+      while (it.hasNext())
+      {
+         if (it.next().startsWith(prefix))
+            it.remove();
+      }
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public String[] getNames()
+   {
+      Set<String> names = new TreeSet<String>();
+      names.addAll(counters.keySet());
+      names.addAll(histograms.keySet());
+      names.addAll(gauges.keySet());
+
+      return names.toArray(new String[names.size()]);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public String getReport()
+   {
+      return report(null);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public String report(String prefix)
+   {
+      Map<String, String> lines = new TreeMap<String, String>();
+
+      for (Map.Entry<String, Counter> entry : counters.entrySet())
+      {
+         if (prefix == null || entry.getKey().startsWith(prefix))
+            lines.put(entry.getKey(), entry.getValue().toString());
+      }
+
+      for (Map.Entry<String, Histogram> entry : histograms.entrySet())
+      {
+         if (prefix == null || entry.getKey().startsWith(prefix))
+            lines.put(entry.getKey(), entry.getValue().toString());
+      }
+
+      for (Map.Entry<String, Gauge> entry : gauges.entrySet())
+      {
+         if (prefix == null || entry.getKey().startsWith(prefix))
+            lines.put(entry.getKey(), Long.toString(gaugeValue(entry.getKey(), entry.getValue())));
+      }
+
+      StringBuilder sb = new StringBuilder();
+      for (Map.Entry<String, String> line : lines.entrySet())
+      {
+         sb = sb.append(line.getKey());
+         sb = sb.append(": ");
+         sb = sb.append(line.getValue());
+         sb = sb.append("\n");
+      }
+
+      return sb.toString();
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public long value(String name)
+   {
+      if (name == null)
+         return 0;
+
+      Counter counter = counters.get(name);
+      if (counter != null)
+         return counter.getCount();
+
+      Histogram histogram = histograms.get(name);
+      if (histogram != null)
+         return histogram.getCount();
+
+      Gauge gauge = gauges.get(name);
+      if (gauge != null)
+         return gaugeValue(name, gauge);
+
+      return 0;
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public long percentile(String name, double percentile)
+   {
+      if (name == null)
+         return 0;
+
+      Histogram histogram = histograms.get(name);
+      if (histogram != null)
+         return histogram.getValueAtPercentile(percentile);
+
+      return 0;
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public void reset()
+   {
+      for (Counter counter : counters.values())
+      {
+         counter.reset();
+      }
+
+      for (Histogram histogram : histograms.values())
+      {
+         histogram.reset();
+      }
+   }
+
+   /**
+    * Get the value of a gauge
+    * @param name The name of the gauge
+    * @param gauge The gauge
+    * @return The value; <code>0</code> if the gauge fails
+    */
+   private long gaugeValue(String name, Gauge gauge)
+   {
+      try
+      {
+         return gauge.getValue();
+      }
+      catch (Throwable t)
+      {
+         if (log.isLoggable(Level.FINE))
+            log.log(Level.FINE, "Gauge " + name + ": " + t.getMessage(), t);
+
+         return 0;
+      }
+   }
+}
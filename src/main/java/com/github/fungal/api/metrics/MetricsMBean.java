@@ -0,0 +1,67 @@
+/*
+ * The Fungal kernel project
+ * Copyright (C) 2014
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package com.github.fungal.api.metrics;
+
+/**
+ * The management interface of the kernel metrics
+ * @author <a href="mailto:jesper.pedersen@comcast.net">Jesper Pedersen</a>
+ */
+public interface MetricsMBean
+{
+   /**
+    * Get the names of the metrics
+    * @return The names
+    */
+   public String[] getNames();
+
+   /**
+    * Get the report of all metrics
+    * @return The report
+    */
+   public String getReport();
+
+   /**
+    * Get the report of the metrics starting with a prefix
+    * @param prefix The prefix
+    * @return The report
+    */
+   public String report(String prefix);
+
+   /**
+    * Get the value of a metric; the count of a counter or a histogram, or the value of a gauge
+    * @param name The name of the metric
+    * @return The value; <code>0</code> if the metric doesn't exist
+    */
+   public long value(String name);
+
+   /**
+    * Get the value at a percentile for a histogram
+    * @param name The name of the histogram
+    * @param percentile The percentile between <code>0</code> and <code>100</code>
+    * @return The value; <code>0</code> if the histogram doesn't exist
+    */
+   public long percentile(String name, double percentile);
+
+   /**
+    * Reset the counters and the histograms
+    */
+   public void reset();
+}
@@ -0,0 +1,586 @@
+/*
+ * The Fungal kernel project
+ * Copyright (C) 2014
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package com.github.fungal.api.remote;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The binary encoding of the multiplexed remote protocol.
+ *
+ * Each value is written as a type tag followed by a compact representation of the value.
+ * The arguments of a request are limited to the types supported by the codec, so the server
+ * never deserializes Java objects sent by a client. Results of other types are written using
+ * Java serialization.
+ * @author <a href="mailto:jesper.pedersen@comcast.net">Jesper Pedersen</a>
+ */
+final class BinaryCodec
+{
+   /** Null */
+   private static final byte TAG_NULL = 0;
+
+   /** String */
+   private static final byte TAG_STRING = 1;
+
+   /** URL */
+   private static final byte TAG_URL = 2;
+
+   /** Boolean */
+   private static final byte TAG_BOOLEAN = 3;
+
+   /** Byte */
+   private static final byte TAG_BYTE = 4;
+
+   /** Short */
+   private static final byte TAG_SHORT = 5;
+
+   /** Character */
+   private static final byte TAG_CHAR = 6;
+
+   /** Integer */
+   private static final byte TAG_INT = 7;
+
+   /** Long */
+   private static final byte TAG_LONG = 8;
+
+   /** Float */
+   private static final byte TAG_FLOAT = 9;
+
+   /** Double */
+   private static final byte TAG_DOUBLE = 10;
+
+   /** String[] */
+   private static final byte TAG_STRING_ARRAY = 11;
+
+   /** Class */
+   private static final byte TAG_CLASS = 12;
+
+   /** Class[] */
+   private static final byte TAG_CLASS_ARRAY = 13;
+
+   /** Invocation[] */
+   private static final byte TAG_INVOCATION_ARRAY = 14;
+
+   /** Serializable[] */
+   private static final byte TAG_ARRAY = 15;
+
+   /** RemoteEvent */
+   private static final byte TAG_EVENT = 16;
+
+   /** Java serialization */
+   private static final byte TAG_SERIALIZED = 127;
+
+   /** UTF-8 */
+   private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+   /** Primitive types */
+   private static final Map<String, Class<?>> PRIMITIVES = new HashMap<String, Class<?>>(9);
+
+   static
+   {
+      PRIMITIVES.put(void.class.getName(), void.class);
+      PRIMITIVES.put(boolean.class.getName(), boolean.class);
+      PRIMITIVES.put(byte.class.getName(), byte.class);
+      PRIMITIVES.put(short.class.getName(), short.class);
+      PRIMITIVES.put(char.class.getName(), char.class);
+      PRIMITIVES.put(int.class.getName(), int.class);
+      PRIMITIVES.put(long.class.getName(), long.class);
+      PRIMITIVES.put(float.class.getName(), float.class);
+      PRIMITIVES.put(double.class.getName(), double.class);
+   }
+
+   /**
+    * Constructor
+    */
+   private BinaryCodec()
+   {
+   }
+
+   /**
+    * Write a request
+    * @param invocation The invocation
+    * @return The payload
+    * @exception IOException Thrown if an error occurs
+    */
+   static byte[] writeRequest(Invocation invocation) throws IOException
+   {
+      ByteArrayOutputStream baos = new ByteArrayOutputStream();
+      DataOutputStream dos = new DataOutputStream(baos);
+
+      writeString(dos, invocation.getCommand());
+
+      Serializable[] arguments = invocation.getArguments();
+      if (arguments != null)
+      {
+         dos.writeInt(arguments.length);
+         for (Serializable argument : arguments)
+         {
+            writeValue(dos, argument, false);
+         }
+      }
+      else
+      {
+         dos.writeInt(0);
+      }
+
+      dos.flush();
+
+      return baos.toByteArray();
+   }
+
+   /**
+    * Read a request
+    * @param data The payload
+    * @return The invocation
+    * @exception IOException Thrown if an error occurs
+    * @exception ClassNotFoundException Thrown if a type can't be resolved
+    */
+   static Invocation readRequest(byte[] data) throws IOException, ClassNotFoundException
+   {
+      DataInputStream dis = new DataInputStream(new ByteArrayInputStream(data));
+
+      String command = readString(dis);
+      int length = dis.readInt();
+
+      Serializable[] arguments = null;
+      if (length > 0)
+      {
+         arguments = new Serializable[length];
+         for (int i = 0; i < length; i++)
+         {
+            arguments[i] = readValue(dis, false);
+         }
+      }
+
+      return new Invocation(command, arguments);
+   }
+
+   /**
+    * Write a response
+    * @param result The result
+    * @return The payload
+    * @exception IOException Thrown if an error occurs
+    */
+   static byte[] writeResponse(Serializable result) throws IOException
+   {
+      ByteArrayOutputStream baos = new ByteArrayOutputStream();
+      DataOutputStream dos = new DataOutputStream(baos);
+
+      writeValue(dos, result, true);
+      dos.flush();
+
+      return baos.toByteArray();
+   }
+
+   /**
+    * Read a response
+    * @param data The payload
+    * @return The result
+    * @exception IOException Thrown if an error occurs
+    * @exception ClassNotFoundException Thrown if a type can't be resolved
+    */
+   static Serializable readResponse(byte[] data) throws IOException, ClassNotFoundException
+   {
+      return readValue(new DataInputStream(new ByteArrayInputStream(data)), true);
+   }
+
+   /**
+    * Write a value
+    * @param dos The output stream
+    * @param value The value
+    * @param serialized Allow Java serialization for other types
+    * @exception IOException Thrown if an error occurs
+    */
+   private static void writeValue(DataOutputStream dos, Serializable value, boolean serialized)
+      throws IOException
+   {
+      if (value == null)
+      {
+         dos.writeByte(TAG_NULL);
+      }
+      else if (value instanceof String)
+      {
+         dos.writeByte(TAG_STRING);
+         writeString(dos, (String)value);
+      }
+      else if (value instanceof URL)
+      {
+         dos.writeByte(TAG_URL);
+         writeString(dos, ((URL)value).toExternalForm());
+      }
+      else if (value instanceof Boolean)
+      {
+         dos.writeByte(TAG_BOOLEAN);
+         dos.writeBoolean(((Boolean)value).booleanValue());
+      }
+      else if (value instanceof Byte)
+      {
+         dos.writeByte(TAG_BYTE);
+         dos.writeByte(((Byte)value).byteValue());
+      }
+      else if (value instanceof Short)
+      {
+         dos.writeByte(TAG_SHORT);
+         dos.writeShort(((Short)value).shortValue());
+      }
+      else if (value instanceof Character)
+      {
+         dos.writeByte(TAG_CHAR);
+         dos.writeChar(((Character)value).charValue());
+      }
+      else if (value instanceof Integer)
+      {
+         dos.writeByte(TAG_INT);
+         dos.writeInt(((Integer)value).intValue());
+      }
+      else if (value instanceof Long)
+      {
+         dos.writeByte(TAG_LONG);
+         dos.writeLong(((Long)value).longValue());
+      }
+      else if (value instanceof Float)
+      {
+         dos.writeByte(TAG_FLOAT);
+         dos.writeFloat(((Float)value).floatValue());
+      }
+      else if (value instanceof Double)
+      {
+         dos.writeByte(TAG_DOUBLE);
+         dos.writeDouble(((Double)value).doubleValue());
+      }
+      else if (value instanceof String[])
+      {
+         String[] array = (String[])value;
+
+         dos.writeByte(TAG_STRING_ARRAY);
+         dos.writeInt(array.length);
+         for (String s : array)
+         {
+            writeNullableString(dos, s);
+         }
+      }
+      else if (value instanceof Class)
+      {
+         dos.writeByte(TAG_CLASS);
+         writeString(dos, ((Class<?>)value).getName());
+      }
+      else if (value instanceof Class[])
+      {
+         Class<?>[] array = (Class<?>[])value;
+
+         dos.writeByte(TAG_CLASS_ARRAY);
+         dos.writeInt(array.length);
+         for (Class<?> c : array)
+         {
+            writeNullableString(dos, c != null ? c.getName() : null);
+         }
+      }
+      else if (value instanceof Invocation[])
+      {
+         Invocation[] array = (Invocation[])value;
+
+         dos.writeByte(TAG_INVOCATION_ARRAY);
+         dos.writeInt(array.length);
+         for (Invocation invocation : array)
+         {
+            writeString(dos, invocation.getCommand());
+            writeArray(dos, invocation.getArguments(), serialized);
+         }
+      }
+      else if (value instanceof RemoteEvent)
+      {
+         RemoteEvent event = (RemoteEvent)value;
+
+         dos.writeByte(TAG_EVENT);
+         writeNullableString(dos, event.getType());
+         writeNullableString(dos, event.getName());
+         writeNullableString(dos, event.getState());
+         dos.writeLong(event.getTimestamp());
+         dos.writeInt(event.getDropped());
+      }
+      else if (value.getClass().equals(Serializable[].class))
+      {
+         dos.writeByte(TAG_ARRAY);
+         writeArray(dos, (Serializable[])value, serialized);
+      }
+      else
+      {
+         if (!serialized)
+            throw new IOException("Unsupported argument type: " + value.getClass().getName());
+
+         ByteArrayOutputStream baos = new ByteArrayOutputStream();
+         ObjectOutputStream oos = new ObjectOutputStream(baos);
+         oos.writeObject(value);
+         oos.flush();
+
+         dos.writeByte(TAG_SERIALIZED);
+         dos.writeInt(baos.size());
+         baos.writeTo(dos);
+      }
+   }
+
+   /**
+    * Read a value
+    * @param dis The input stream
+    * @param serialized Allow Java serialized values
+    * @return The value
+    * @exception IOException Thrown if an error occurs
+    * @exception ClassNotFoundException Thrown if a type can't be resolved
+    */
+   private static Serializable readValue(DataInputStream dis, boolean serialized)
+      throws IOException, ClassNotFoundException
+   {
+      byte tag = dis.readByte();
+
+      switch (tag)
+      {
+         case TAG_NULL:
+            return null;
+         case TAG_STRING:
+            return readString(dis);
+         case TAG_URL:
+            return new URL(readString(dis));
+         case TAG_BOOLEAN:
+            return Boolean.valueOf(dis.readBoolean());
+         case TAG_BYTE:
+            return Byte.valueOf(dis.readByte());
+         case TAG_SHORT:
+            return Short.valueOf(dis.readShort());
+         case TAG_CHAR:
+            return Character.valueOf(dis.readChar());
+         case TAG_INT:
+            return Integer.valueOf(dis.readInt());
+         case TAG_LONG:
+            return Long.valueOf(dis.readLong());
+         case TAG_FLOAT:
+            return Float.valueOf(dis.readFloat());
+         case TAG_DOUBLE:
+            return Double.valueOf(dis.readDouble());
+         case TAG_STRING_ARRAY:
+         {
+            String[] array = new String[readLength(dis)];
+            for (int i = 0; i < array.length; i++)
+            {
+               array[i] = readNullableString(dis);
+            }
+            return array;
+         }
+         case TAG_CLASS:
+            return resolveClass(readString(dis));
+         case TAG_CLASS_ARRAY:
+         {
+            Class<?>[] array = new Class<?>[readLength(dis)];
+            for (int i = 0; i < array.length; i++)
+            {
+               String name = readNullableString(dis);
+               array[i] = name != null ? resolveClass(name) : null;
+            }
+            return array;
+         }
+         case TAG_INVOCATION_ARRAY:
+         {
+            Invocation[] array = new Invocation[readLength(dis)];
+            for (int i = 0; i < array.length; i++)
+            {
+               String command = readString(dis);
+               array[i] = new Invocation(command, readArray(dis, serialized));
+            }
+            return array;
+         }
+         case TAG_ARRAY:
+            return readArray(dis, serialized);
+         case TAG_EVENT:
+         {
+            String type = readNullableString(dis);
+            String name = readNullableString(dis);
+            String state = readNullableString(dis);
+            return new RemoteEvent(type, name, state, dis.readLong(), dis.readInt());
+         }
+         case TAG_SERIALIZED:
+         {
+            if (!serialized)
+               throw new IOException("Java serialized values are not accepted");
+
+            byte[] data = new byte[readLength(dis)];
+            dis.readFully(data);
+
+            ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(data));
+            return (Serializable)ois.readObject();
+         }
+         default:
+            throw new IOException("Unknown type: " + tag);
+      }
+   }
+
+   /**
+    * Write an array of values
+    * @param dos The output stream
+    * @param array The array; may be <code>null</code>
+    * @param serialized Allow Java serialization for other types
+    * @exception IOException Thrown if an error occurs
+    */
+   private static void writeArray(DataOutputStream dos, Serializable[] array, boolean serialized)
+      throws IOException
+   {
+      if (array == null)
+      {
+         dos.writeInt(-1);
+      }
+      else
+      {
+         dos.writeInt(array.length);
+         for (Serializable value : array)
+         {
+            writeValue(dos, value, serialized);
+         }
+      }
+   }
+
+   /**
+    * Read an array of values
+    * @param dis The input stream
+    * @param serialized Allow Java serialized values
+    * @return The array; may be <code>null</code>
+    * @exception IOException Thrown if an error occurs
+    * @exception ClassNotFoundException Thrown if a type can't be resolved
+    */
+   private static Serializable[] readArray(DataInputStream dis, boolean serialized)
+      throws IOException, ClassNotFoundException
+   {
+      dis.mark(4);
+      if (dis.readInt() == -1)
+         return null;
+
+      dis.reset();
+
+      Serializable[] array = new Serializable[readLength(dis)];
+      for (int i = 0; i < array.length; i++)
+      {
+         array[i] = readValue(dis, serialized);
+      }
+      return array;
+   }
+
+   /**
+    * Write a string
+    * @param dos The output stream
+    * @param s The string
+    * @exception IOException Thrown if an error occurs
+    */
+   private static void writeString(DataOutputStream dos, String s) throws IOException
+   {
+      byte[] data = s.getBytes(UTF_8);
+      dos.writeInt(data.length);
+      dos.write(data);
+   }
+
+   /**
+    * Write a string that may be null
+    * @param dos The output stream
+    * @param s The string
+    * @exception IOException Thrown if an error occurs
+    */
+   private static void writeNullableString(DataOutputStream dos, String s) throws IOException
+   {
+      if (s == null)
+      {
+         dos.writeInt(-1);
+      }
+      else
+      {
+         writeString(dos, s);
+      }
+   }
+
+   /**
+    * Read a string
+    * @param dis The input stream
+    * @return The string
+    * @exception IOException Thrown if an error occurs
+    */
+   private static String readString(DataInputStream dis) throws IOException
+   {
+      byte[] data = new byte[readLength(dis)];
+      dis.readFully(data);
+      return new String(data, UTF_8);
+   }
+
+   /**
+    * Read a string that may be null
+    * @param dis The input stream
+    * @return The string
+    * @exception IOException Thrown if an error occurs
+    */
+   private static String readNullableString(DataInputStream dis) throws IOException
+   {
+      dis.mark(4);
+      if (dis.readInt() == -1)
+         return null;
+
+      dis.reset();
+      return readString(dis);
+   }
+
+   /**
+    * Read a length, and verify it against the remaining data
+    * @param dis The input stream
+    * @return The length
+    * @exception IOException Thrown if the length is invalid
+    */
+   private static int readLength(DataInputStream dis) throws IOException
+   {
+      int length = dis.readInt();
+
+      if (length < 0 || length > dis.available())
+         throw new IOException("Invalid length: " + length);
+
+      return length;
+   }
+
+   /**
+    * Resolve a class
+    * @param name The name of the class
+    * @return The class
+    * @exception ClassNotFoundException Thrown if the class can't be resolved
+    */
+   private static Class<?> resolveClass(String name) throws ClassNotFoundException
+   {
+      Class<?> c = PRIMITIVES.get(name);
+      if (c != null)
+         return c;
+
+      ClassLoader cl = SecurityActions.getThreadContextClassLoader();
+      if (cl == null)
+         cl = BinaryCodec.class.getClassLoader();
+
+      return Class.forName(name, false, cl);
+   }
+}
@@ -0,0 +1,592 @@
+/*
+ * The Fungal kernel project
+ * Copyright (C) 2014
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package com.github.fungal.api.remote;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.Serializable;
+import java.net.Socket;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A client for the multiplexed remote protocol.
+ *
+ * The client keeps a single connection open to the kernel and allows several
+ * commands to be in flight at the same time.
+ * @author <a href="mailto:jesper.pedersen@comcast.net">Jesper Pedersen</a>
+ * @see com.github.fungal.api.remote.WireFormat
+ */
+public class Client
+{
+   /** The host */
+   private String host;
+
+   /** The port */
+   private int port;
+
+   /** The encoding */
+   private byte encoding;
+
+   /** The socket */
+   private Socket socket;
+
+   /** The output stream */
+   private DataOutputStream dos;
+
+   /** The input stream */
+   private DataInputStream dis;
+
+   /** The request id sequence */
+   private AtomicLong ids;
+
+   /** The requests in flight */
+   private ConcurrentMap<Long, Result> results;
+
+   /** The event listeners */
+   private ConcurrentMap<Long, RemoteEventListener> listeners;
+
+   /** The failure of the connection */
+   private volatile IOException failure;
+
+   /**
+    * Constructor
+    * @param host The host
+    * @param port The port
+    */
+   public Client(String host, int port)
+   {
+      this(host, port, WireFormat.ENCODING_BINARY);
+   }
+
+   /**
+    * Constructor
+    * @param host The host
+    * @param port The port
+    * @param encoding The preferred encoding
+    */
+   public Client(String host, int port, byte encoding)
+   {
+      if (host == null)
+         host = "localhost";
+
+      if (!WireFormat.isSupported(encoding))
+         throw new IllegalArgumentException("Unsupported encoding: " + encoding);
+
+      this.host = host;
+      this.port = port;
+      this.encoding = encoding;
+      this.socket = null;
+      this.dos = null;
+      this.dis = null;
+      this.ids = new AtomicLong(0);
+      this.results = new ConcurrentHashMap<Long, Result>();
+      this.listeners = new ConcurrentHashMap<Long, RemoteEventListener>();
+      this.failure = null;
+   }
+
+   /**
+    * Connect to the kernel
+    * @exception IOException Thrown if the connection can't be established
+    */
+   public synchronized void connect() throws IOException
+   {
+      if (socket != null)
+         return;
+
+      socket = new Socket(host, port);
+      socket.setTcpNoDelay(true);
+
+      dos = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+      dis = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+
+      dos.writeInt(WireFormat.MAGIC);
+      dos.writeByte(WireFormat.VERSION);
+      dos.writeByte(encoding);
+      dos.flush();
+
+      if (dis.readInt() != WireFormat.MAGIC)
+      {
+         close();
+         throw new IOException("Unsupported protocol");
+      }
+
+      byte version = dis.readByte();
+      if (version != WireFormat.VERSION)
+      {
+         close();
+         throw new IOException("Unsupported protocol version: " + version);
+      }
+
+      byte negotiated = dis.readByte();
+      if (!WireFormat.isSupported(negotiated))
+      {
+         close();
+         throw new IOException("Unsupported encoding: " + negotiated);
+      }
+
+      encoding = negotiated;
+      failure = null;
+
+      Thread reader = new Thread(new Reader(), "Fungal client (" + host + ":" + port + ")");
+      reader.setDaemon(true);
+      reader.start();
+   }
+
+   /**
+    * Is the client connected
+    * @return True if connected; otherwise false
+    */
+   public boolean isConnected()
+   {
+      return socket != null && failure == null;
+   }
+
+   /**
+    * Get the encoding; the negotiated encoding once connected
+    * @return The encoding
+    */
+   public byte getEncoding()
+   {
+      return encoding;
+   }
+
+   /**
+    * Submit a command
+    * @param command The name of the command
+    * @param arguments The arguments
+    * @return The future result of the command
+    * @exception IOException Thrown if the command can't be sent
+    */
+   public Future<Serializable> submit(String command, Serializable... arguments) throws IOException
+   {
+      return submit(new Invocation(command, arguments != null && arguments.length > 0 ? arguments : null));
+   }
+
+   /**
+    * Submit an invocation
+    * @param invocation The invocation
+    * @return The future result of the invocation
+    * @exception IOException Thrown if the invocation can't be sent
+    */
+   public Future<Serializable> submit(Invocation invocation) throws IOException
+   {
+      return send(Long.valueOf(ids.incrementAndGet()), invocation);
+   }
+
+   /**
+    * Send an invocation
+    * @param id The request id
+    * @param invocation The invocation
+    * @return The future result of the invocation
+    * @exception IOException Thrown if the invocation can't be sent
+    */
+   private Future<Serializable> send(Long id, Invocation invocation) throws IOException
+   {
+      if (socket == null)
+         throw new IOException("Not connected");
+
+      if (failure != null)
+         throw failure;
+
+      byte[] payload = WireFormat.writeRequest(invocation, encoding);
+
+      if (payload.length + WireFormat.HEADER_LENGTH > WireFormat.MAX_FRAME_LENGTH)
+         throw new IOException("Request too large: " + invocation.getCommand());
+
+      Result result = new Result();
+      results.put(id, result);
+
+      if (failure != null)
+      {
+         results.remove(id);
+         throw failure;
+      }
+
+      try
+      {
+         synchronized (dos)
+         {
+            dos.writeInt(payload.length + WireFormat.HEADER_LENGTH);
+            dos.writeLong(id.longValue());
+            dos.write(payload);
+            dos.flush();
+         }
+      }
+      catch (IOException ioe)
+      {
+         results.remove(id);
+         throw ioe;
+      }
+
+      return result;
+   }
+
+   /**
+    * Submit a batch of invocations, which are executed by the server in one request.
+    * The result of the batch is a <code>Serializable[]</code> with the result of each invocation.
+    * @param invocations The invocations
+    * @param parallel Should independent invocations be executed in parallel
+    * @return The future result of the batch
+    * @exception IOException Thrown if the batch can't be sent
+    */
+   public Future<Serializable> submitBatch(Invocation[] invocations, boolean parallel) throws IOException
+   {
+      return submit("batch", invocations, Boolean.valueOf(parallel));
+   }
+
+   /**
+    * Subscribe to kernel events. The events are delivered to the listener on the
+    * thread reading from the connection, so the listener should return quickly.
+    * @param types A comma separated list of event types, or <code>null</code> for all types
+    * @param pattern A regular expression matching the name of the kernel, bean or deployment,
+    *                or <code>null</code> for all names
+    * @param listener The listener
+    * @return The subscription id
+    * @exception Throwable Thrown if an error occurs
+    * @see com.github.fungal.api.remote.RemoteEvent
+    */
+   public long subscribe(String types, String pattern, RemoteEventListener listener) throws Throwable
+   {
+      if (listener == null)
+         throw new IllegalArgumentException("Listener is null");
+
+      Long id = Long.valueOf(ids.incrementAndGet());
+      listeners.put(id, listener);
+
+      try
+      {
+         Serializable result = send(id, new Invocation("subscribe", new Serializable[] {types, pattern})).get();
+
+         if (result instanceof Throwable)
+            throw (Throwable)result;
+
+         return id.longValue();
+      }
+      catch (ExecutionException ee)
+      {
+         listeners.remove(id);
+         throw ee.getCause();
+      }
+      catch (Throwable t)
+      {
+         listeners.remove(id);
+         throw t;
+      }
+   }
+
+   /**
+    * Unsubscribe from kernel events
+    * @param id The subscription id
+    * @exception Throwable Thrown if an error occurs
+    */
+   public void unsubscribe(long id) throws Throwable
+   {
+      try
+      {
+         invoke("unsubscribe", Long.valueOf(id));
+      }
+      finally
+      {
+         listeners.remove(Long.valueOf(id));
+      }
+   }
+
+   /**
+    * Invoke a command and wait for the result
+    * @param command The name of the command
+    * @param arguments The arguments
+    * @return The result of the command
+    * @exception Throwable Thrown if an error occurs
+    */
+   public Serializable invoke(String command, Serializable... arguments) throws Throwable
+   {
+      try
+      {
+         return submit(command, arguments).get();
+      }
+      catch (ExecutionException ee)
+      {
+         throw ee.getCause();
+      }
+   }
+
+   /**
+    * Get the time from a request was sent until its result was received
+    * @param future The future result of the request
+    * @return The time in nanoseconds; <code>-1</code> if the request isn't completed
+    */
+   public long getTime(Future<Serializable> future)
+   {
+      if (!(future instanceof Result))
+         return -1L;
+
+      return ((Result)future).getTime();
+   }
+
+   /**
+    * Close the connection
+    */
+   public synchronized void close()
+   {
+      if (socket != null)
+      {
+         try
+         {
+            socket.close();
+         }
+         catch (IOException ignore)
+         {
+            // Ignore
+         }
+
+         fail(new IOException("Connection closed"));
+
+         socket = null;
+      }
+   }
+
+   /**
+    * Fail all requests in flight
+    * @param ioe The failure
+    */
+   private void fail(IOException ioe)
+   {
+      if (failure == null)
+         failure = ioe;
+
+      Iterator<Map.Entry<Long, Result>> it = results.entrySet().iterator();
+      while (it.hasNext())
+      {
+         Result result = it.next().getValue();
+         it.remove();
+
+         result.failed(ioe);
+      }
+   }
+
+   /**
+    * Deliver a pushed event
+    * @param id The subscription id
+    * @param payload The payload
+    */
+   private void event(long id, byte[] payload)
+   {
+      RemoteEventListener listener = listeners.get(Long.valueOf(id));
+      if (listener == null)
+         return;
+
+      try
+      {
+         Serializable value = WireFormat.readResponse(payload, encoding);
+         if (value instanceof RemoteEvent)
+            listener.event((RemoteEvent)value);
+      }
+      catch (Throwable t)
+      {
+         // Ignore, a faulty listener or event must not stop the reader
+      }
+   }
+
+   /**
+    * Reads the responses from the server
+    */
+   class Reader implements Runnable
+   {
+      /**
+       * Run
+       */
+      public void run()
+      {
+         try
+         {
+            while (true)
+            {
+               int length = dis.readInt();
+
+               if (length < WireFormat.HEADER_LENGTH || length > WireFormat.MAX_FRAME_LENGTH)
+                  throw new IOException("Invalid frame length: " + length);
+
+               long id = dis.readLong();
+               byte[] payload = new byte[length - WireFormat.HEADER_LENGTH];
+               dis.readFully(payload);
+
+               if (id < 0)
+               {
+                  event(-id, payload);
+                  continue;
+               }
+
+               Result result = results.remove(Long.valueOf(id));
+               if (result != null)
+               {
+                  try
+                  {
+                     result.completed(payload.length > 0 ? WireFormat.readResponse(payload, encoding) : null);
+                  }
+                  catch (ClassNotFoundException cnfe)
+                  {
+                     result.failed(cnfe);
+                  }
+               }
+            }
+         }
+         catch (IOException ioe)
+         {
+            fail(ioe);
+         }
+      }
+   }
+
+   /**
+    * The result of a request
+    */
+   static class Result implements Future<Serializable>
+   {
+      /** The latch */
+      private CountDownLatch latch;
+
+      /** The value */
+      private Serializable value;
+
+      /** The failure */
+      private Throwable failure;
+
+      /** The time the request was sent */
+      private long start;
+
+      /** The time the result was received */
+      private volatile long end;
+
+      /**
+       * Constructor
+       */
+      Result()
+      {
+         this.latch = new CountDownLatch(1);
+         this.value = null;
+         this.failure = null;
+         this.start = System.nanoTime();
+         this.end = 0L;
+      }
+
+      /**
+       * Completed
+       * @param v The value
+       */
+      void completed(Serializable v)
+      {
+         value = v;
+         end = System.nanoTime();
+         latch.countDown();
+      }
+
+      /**
+       * Failed
+       * @param t The failure
+       */
+      void failed(Throwable t)
+      {
+         failure = t;
+         end = System.nanoTime();
+         latch.countDown();
+      }
+
+      /**
+       * Get the time from the request was sent until the result was received
+       * @return The time in nanoseconds; <code>-1</code> if not completed
+       */
+      long getTime()
+      {
+         return isDone() ? end - start : -1L;
+      }
+
+      /**
+       * {@inheritDoc}
+       */
+      public boolean cancel(boolean mayInterruptIfRunning)
+      {
+         return false;
+      }
+
+      /**
+       * {@inheritDoc}
+       */
+      public boolean isCancelled()
+      {
+         return false;
+      }
+
+      /**
+       * {@inheritDoc}
+       */
+      public boolean isDone()
+      {
+         return latch.getCount() == 0;
+      }
+
+      /**
+       * {@inheritDoc}
+       */
+      public Serializable get() throws InterruptedException, ExecutionException
+      {
+         latch.await();
+
+         return getValue();
+      }
+
+      /**
+       * {@inheritDoc}
+       */
+      public Serializable get(long timeout, TimeUnit unit)
+         throws InterruptedException, ExecutionException, TimeoutException
+      {
+         if (!latch.await(timeout, unit))
+            throw new TimeoutException();
+
+         return getValue();
+      }
+
+      /**
+       * Get the value
+       * @return The value
+       * @exception ExecutionException Thrown if the request failed
+       */
+      private Serializable getValue() throws ExecutionException
+      {
+         if (failure != null)
+            throw new ExecutionException(failure);
+
+         return value;
+      }
+   }
+}
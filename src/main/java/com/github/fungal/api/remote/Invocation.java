@@ -0,0 +1,81 @@
+/*
+ * The Fungal kernel project
+ * Copyright (C) 2014
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package com.github.fungal.api.remote;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * Represents the invocation of a remote command
+ * @author <a href="mailto:jesper.pedersen@comcast.net">Jesper Pedersen</a>
+ */
+public class Invocation implements Serializable
+{
+   /** Serial version uid */
+   private static final long serialVersionUID = 1L;
+
+   /** The command name */
+   private String command;
+
+   /** The arguments */
+   private Serializable[] arguments;
+
+   /**
+    * Constructor
+    * @param command The name of the command
+    * @param arguments The arguments; <code>null</code> if none
+    */
+   public Invocation(String command, Serializable[] arguments)
+   {
+      if (command == null)
+         throw new IllegalArgumentException("Command is null");
+
+      this.command = command;
+      this.arguments = arguments;
+   }
+
+   /**
+    * Get the name of the command
+    * @return The name
+    */
+   public String getCommand()
+   {
+      return command;
+   }
+
+   /**
+    * Get the arguments
+    * @return The arguments; <code>null</code> if none
+    */
+   public Serializable[] getArguments()
+   {
+      return arguments;
+   }
+
+   /**
+    * String representation
+    * @return The string
+    */
+   public String toString()
+   {
+      return command + Arrays.toString(arguments);
+   }
+}
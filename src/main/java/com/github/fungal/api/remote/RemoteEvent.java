@@ -0,0 +1,151 @@
+/*
+ * The Fungal kernel project
+ * Copyright (C) 2014
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package com.github.fungal.api.remote;
+
+import java.io.Serializable;
+
+/**
+ * Represents a kernel event pushed to a remote subscriber
+ * @author <a href="mailto:jesper.pedersen@comcast.net">Jesper Pedersen</a>
+ */
+public class RemoteEvent implements Serializable
+{
+   /** Serial version uid */
+   private static final long serialVersionUID = 1L;
+
+   /** Type: Kernel lifecycle; the state is the name of a <code>com.github.fungal.api.events.Event</code> */
+   public static final String TYPE_KERNEL = "kernel";
+
+   /** Type: Bean lifecycle; the state is the name of the bean status */
+   public static final String TYPE_BEAN = "bean";
+
+   /** Type: Deployment; the state is one of the deployment states */
+   public static final String TYPE_DEPLOYMENT = "deployment";
+
+   /** Deployment state: Deployed */
+   public static final String DEPLOYED = "DEPLOYED";
+
+   /** Deployment state: Deploy failed */
+   public static final String DEPLOY_FAILED = "DEPLOY_FAILED";
+
+   /** Deployment state: Undeployed */
+   public static final String UNDEPLOYED = "UNDEPLOYED";
+
+   /** Deployment state: Undeploy failed */
+   public static final String UNDEPLOY_FAILED = "UNDEPLOY_FAILED";
+
+   /** The type */
+   private String type;
+
+   /** The name */
+   private String name;
+
+   /** The state */
+   private String state;
+
+   /** The timestamp */
+   private long timestamp;
+
+   /** The number of events dropped before this event */
+   private int dropped;
+
+   /**
+    * Constructor
+    * @param type The type
+    * @param name The name of the kernel, bean or deployment
+    * @param state The state
+    * @param timestamp The timestamp
+    * @param dropped The number of events dropped before this event
+    */
+   public RemoteEvent(String type, String name, String state, long timestamp, int dropped)
+   {
+      this.type = type;
+      this.name = name;
+      this.state = state;
+      this.timestamp = timestamp;
+      this.dropped = dropped;
+   }
+
+   /**
+    * Get the type
+    * @return The value
+    */
+   public String getType()
+   {
+      return type;
+   }
+
+   /**
+    * Get the name of the kernel, bean or deployment
+    * @return The value
+    */
+   public String getName()
+   {
+      return name;
+   }
+
+   /**
+    * Get the state
+    * @return The value
+    */
+   public String getState()
+   {
+      return state;
+   }
+
+   /**
+    * Get the timestamp
+    * @return The value
+    */
+   public long getTimestamp()
+   {
+      return timestamp;
+   }
+
+   /**
+    * Get the number of events dropped before this event, because the subscriber
+    * didn't keep up with the server
+    * @return The value
+    */
+   public int getDropped()
+   {
+      return dropped;
+   }
+
+   /**
+    * String representation
+    * @return The string
+    */
+   public String toString()
+   {
+      StringBuilder sb = new StringBuilder();
+
+      sb.append("RemoteEvent@").append(Integer.toHexString(System.identityHashCode(this)));
+      sb.append("[type=").append(type);
+      sb.append(" name=").append(name);
+      sb.append(" state=").append(state);
+      sb.append(" timestamp=").append(timestamp);
+      sb.append(" dropped=").append(dropped);
+      sb.append("]");
+
+      return sb.toString();
+   }
+}
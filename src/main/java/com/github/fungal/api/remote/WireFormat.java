@@ -0,0 +1,183 @@
+/*
+ * The Fungal kernel project
+ * Copyright (C) 2014
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package com.github.fungal.api.remote;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+
+/**
+ * The wire format of the multiplexed remote protocol.
+ *
+ * A multiplexed connection starts with the client sending {@link #MAGIC}, {@link #VERSION}
+ * and the preferred encoding. The server replies with {@link #MAGIC}, {@link #VERSION} and
+ * the encoding that will be used for the connection. After that both sides exchange frames
+ * consisting of the frame length (<code>int</code>), the request id (<code>long</code>)
+ * and the payload. Responses carry the id of the request they belong to, so several
+ * requests can be in flight over the same connection.
+ * @author <a href="mailto:jesper.pedersen@comcast.net">Jesper Pedersen</a>
+ */
+public final class WireFormat
+{
+   /** Magic number for a multiplexed connection ("FUNG") */
+   public static final int MAGIC = 0x46554E47;
+
+   /** Protocol version */
+   public static final byte VERSION = 1;
+
+   /** Encoding: Java serialization */
+   public static final byte ENCODING_SERIALIZATION = 0;
+
+   /** Encoding: Binary; request arguments are limited to the types of the codec */
+   public static final byte ENCODING_BINARY = 1;
+
+   /** The length of the frame header after the length field */
+   public static final int HEADER_LENGTH = 8;
+
+   /** The maximum length of a frame */
+   public static final int MAX_FRAME_LENGTH = 16 * 1024 * 1024;
+
+   /**
+    * Constructor
+    */
+   private WireFormat()
+   {
+   }
+
+   /**
+    * Is the encoding supported
+    * @param encoding The encoding
+    * @return True if supported; otherwise false
+    */
+   public static boolean isSupported(byte encoding)
+   {
+      return encoding == ENCODING_SERIALIZATION || encoding == ENCODING_BINARY;
+   }
+
+   /**
+    * Write the payload of a request
+    * @param invocation The invocation
+    * @param encoding The encoding
+    * @return The payload
+    * @exception IOException Thrown if an error occurs
+    */
+   public static byte[] writeRequest(Invocation invocation, byte encoding) throws IOException
+   {
+      if (encoding == ENCODING_BINARY)
+         return BinaryCodec.writeRequest(invocation);
+
+      ByteArrayOutputStream baos = new ByteArrayOutputStream();
+      ObjectOutputStream oos = new ObjectOutputStream(baos);
+
+      oos.writeUTF(invocation.getCommand());
+
+      Serializable[] arguments = invocation.getArguments();
+      if (arguments != null)
+      {
+         oos.writeInt(arguments.length);
+         for (Serializable argument : arguments)
+         {
+            oos.writeObject(argument);
+         }
+      }
+      else
+      {
+         oos.writeInt(0);
+      }
+
+      oos.flush();
+
+      return baos.toByteArray();
+   }
+
+   /**
+    * Read the payload of a request
+    * @param data The payload
+    * @param encoding The encoding
+    * @return The invocation
+    * @exception IOException Thrown if an error occurs
+    * @exception ClassNotFoundException Thrown if an argument type can't be resolved
+    */
+   public static Invocation readRequest(byte[] data, byte encoding) throws IOException, ClassNotFoundException
+   {
+      if (encoding == ENCODING_BINARY)
+         return BinaryCodec.readRequest(data);
+
+      ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(data));
+
+      String command = ois.readUTF();
+      int length = ois.readInt();
+
+      Serializable[] arguments = null;
+      if (length > 0)
+      {
+         arguments = new Serializable[length];
+         for (int i = 0; i < length; i++)
+         {
+            arguments[i] = (Serializable)ois.readObject();
+         }
+      }
+
+      return new Invocation(command, arguments);
+   }
+
+   /**
+    * Write the payload of a response
+    * @param result The result
+    * @param encoding The encoding
+    * @return The payload
+    * @exception IOException Thrown if an error occurs
+    */
+   public static byte[] writeResponse(Serializable result, byte encoding) throws IOException
+   {
+      if (encoding == ENCODING_BINARY)
+         return BinaryCodec.writeResponse(result);
+
+      ByteArrayOutputStream baos = new ByteArrayOutputStream();
+      ObjectOutputStream oos = new ObjectOutputStream(baos);
+
+      oos.writeObject(result);
+      oos.flush();
+
+      return baos.toByteArray();
+   }
+
+   /**
+    * Read the payload of a response
+    * @param data The payload
+    * @param encoding The encoding
+    * @return The result
+    * @exception IOException Thrown if an error occurs
+    * @exception ClassNotFoundException Thrown if the result type can't be resolved
+    */
+   public static Serializable readResponse(byte[] data, byte encoding) throws IOException, ClassNotFoundException
+   {
+      if (encoding == ENCODING_BINARY)
+         return BinaryCodec.readResponse(data);
+
+      ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(data));
+
+      return (Serializable)ois.readObject();
+   }
+}
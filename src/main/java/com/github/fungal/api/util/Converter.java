@@ -0,0 +1,39 @@
+/*
+ * The Fungal kernel project
+ * Copyright (C) 2014
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package com.github.fungal.api.util;
+
+/**
+ * A converter from the string representation of a value to a type,
+ * which can be registered with {@link Injection#registerConverter(Class, Converter)}
+ * @param <T> The type
+ * @author <a href="mailto:jesper.pedersen@comcast.net">Jesper Pedersen</a>
+ */
+public interface Converter<T>
+{
+   /**
+    * Convert a value
+    * @param value The value after system property substitution
+    * @param cl The class loader
+    * @return The converted value
+    * @exception Exception Thrown if the value can't be converted
+    */
+   public T convert(String value, ClassLoader cl) throws Exception;
+}
@@ -0,0 +1,553 @@
+/*
+ * The Fungal kernel project
+ * Copyright (C) 2014
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package com.github.fungal.api.util;
+
+import com.github.fungal.api.metrics.Metrics;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A cache of extracted archives keyed by the content hash of the archive.
+ *
+ * An archive is extracted once into a temporary directory, which is renamed
+ * into the cache when complete. Extracting an unchanged archive again returns
+ * the existing tree, so a redeploy doesn't touch the extracted files. The trees
+ * are shared, and must be treated as read-only.
+ *
+ * The least recently used trees are evicted when the cache is larger than its
+ * maximum size; a tree returned by this instance is only evicted once a newer
+ * version of the same archive has been extracted.
+ * @author <a href="mailto:jesper.pedersen@comcast.net">Jesper Pedersen</a>
+ */
+public class ExtractionCache
+{
+   /** The logger */
+   private static Logger log = Logger.getLogger(ExtractionCache.class.getName());
+
+   /** The suffix of the file holding the size of a tree */
+   private static final String SIZE = ".size";
+
+   /** The suffix of a tree being extracted */
+   private static final String TMP = ".tmp";
+
+   /** The size of the buffer used to hash the archives */
+   private static final int BUFFER_SIZE = 65536;
+
+   /** The directory */
+   private File directory;
+
+   /** The maximum size in bytes */
+   private long maxSize;
+
+   /** The metrics */
+   private Metrics metrics;
+
+   /** The file utility */
+   private FileUtil fileUtil;
+
+   /** The hashes of the archives: path -> {length, last modified, hash} */
+   private ConcurrentMap<String, Object[]> hashes;
+
+   /** The locks for the trees */
+   private ConcurrentMap<String, Object> locks;
+
+   /** The sizes of the trees */
+   private Map<String, Long> sizes;
+
+   /** The trees in use: archive path -> tree */
+   private Map<String, String> inUse;
+
+   /**
+    * Constructor
+    * @param directory The directory
+    * @param maxSize The maximum size in bytes
+    */
+   public ExtractionCache(File directory, long maxSize)
+   {
+      this(directory, maxSize, new Metrics());
+   }
+
+   /**
+    * Constructor
+    * @param directory The directory
+    * @param maxSize The maximum size in bytes
+    * @param metrics The metrics
+    */
+   public ExtractionCache(File directory, long maxSize, Metrics metrics)
+   {
+      if (directory == null)
+         throw new IllegalArgumentException("Directory is null");
+
+      if (metrics == null)
+         throw new IllegalArgumentException("Metrics is null");
+
+      this.directory = directory;
+      this.maxSize = maxSize;
+      this.metrics = metrics;
+      this.fileUtil = new FileUtil();
+      this.hashes = new ConcurrentHashMap<String, Object[]>();
+      this.locks = new ConcurrentHashMap<String, Object>();
+      this.inUse = new HashMap<String, String>();
+
+      // The directory is scanned before any extraction starts
+      this.sizes = scan();
+   }
+
+   /**
+    * Get the directory
+    * @return The value
+    */
+   public File getDirectory()
+   {
+      return directory;
+   }
+
+   /**
+    * Get the maximum size in bytes
+    * @return The value
+    */
+   public long getMaxSize()
+   {
+      return maxSize;
+   }
+
+   /**
+    * Extract a JAR type file, or reuse the tree of an earlier extraction of the same content
+    * @param file The file
+    * @return The root of the extracted JAR file; its name is the name of the file
+    * @exception IOException Thrown if an error occurs
+    */
+   public File extract(File file) throws IOException
+   {
+      if (file == null)
+         throw new IllegalArgumentException("File is null");
+
+      if (!file.isFile())
+         throw new IOException("File doesn't exist: " + file.getAbsolutePath());
+
+      String name = hash(file) + "-" + file.getName();
+      File entry = new File(directory, name);
+      File root = new File(entry, file.getName());
+
+      while (true)
+      {
+         Object lock = getLock(name);
+
+         synchronized (lock)
+         {
+            // The lock is replaced once its tree has been evicted
+            if (locks.get(name) != lock)
+               continue;
+
+            if (root.isDirectory())
+            {
+               if (!entry.setLastModified(System.currentTimeMillis()))
+                  log.fine("Unable to set last modified on " + entry.getAbsolutePath());
+
+               pin(file, name, null);
+               metrics.getCounter("extract.cache.hits").increment();
+
+               return root;
+            }
+
+            long start = System.nanoTime();
+
+            if (!directory.exists() && !directory.mkdirs() && !directory.exists())
+               throw new IOException("Could not create " + directory.getAbsolutePath());
+
+            File tmp = new File(directory, name + TMP);
+            if (tmp.exists())
+               fileUtil.delete(tmp);
+
+            fileUtil.extract(file, tmp);
+
+            if (entry.exists())
+               fileUtil.delete(entry);
+
+            if (!tmp.renameTo(entry))
+               throw new IOException("Unable to rename " + tmp.getAbsolutePath() + " to " + entry.getAbsolutePath());
+
+            long size = size(entry);
+            writeSize(name, size);
+
+            pin(file, name, Long.valueOf(size));
+            metrics.getCounter("extract.cache.misses").increment();
+            metrics.getHistogram("extract.cache.time").recordSince(start);
+
+            break;
+         }
+      }
+
+      evict();
+
+      return root;
+   }
+
+   /**
+    * Get the size of the cache in bytes
+    * @return The value
+    */
+   public synchronized long getSize()
+   {
+      long total = 0L;
+
+      for (Long size : sizes.values())
+      {
+         total += size.longValue();
+      }
+
+      return total;
+   }
+
+   /**
+    * Mark a tree as in use, which releases the tree of an earlier version of the same archive
+    * @param file The archive
+    * @param name The name of the tree
+    * @param size The size of a new tree; <code>null</code> if the tree was already in the cache
+    */
+   private synchronized void pin(File file, String name, Long size)
+   {
+      if (size != null)
+         sizes.put(name, size);
+
+      inUse.put(file.getAbsolutePath(), name);
+   }
+
+   /**
+    * Evict the least recently used trees until the cache is within its maximum size
+    */
+   private void evict()
+   {
+      Map<String, Long> victims = new LinkedHashMap<String, Long>();
+
+      synchronized (this)
+      {
+         final Map<String, Long> trees = sizes;
+
+         long total = 0L;
+         for (Long size : trees.values())
+         {
+            total += size.longValue();
+         }
+
+         if (total <= maxSize)
+            return;
+
+         final Map<String, Long> used = new HashMap<String, Long>(trees.size());
+         List<String> candidates = new ArrayList<String>(trees.size());
+
+         for (String name : trees.keySet())
+         {
+            if (!inUse.containsValue(name))
+            {
+               used.put(name, Long.valueOf(new File(directory, name).lastModified()));
+               candidates.add(name);
+            }
+         }
+
+         Collections.sort(candidates, new Comparator<String>()
+         {
+            public int compare(String o1, String o2)
+            {
+               return used.get(o1).compareTo(used.get(o2));
+            }
+         });
+
+         for (String name : candidates)
+         {
+            if (total <= maxSize)
+               break;
+
+            Long size = trees.remove(name);
+            total -= size.longValue();
+            victims.put(name, size);
+         }
+      }
+
+      for (Map.Entry<String, Long> victim : victims.entrySet())
+      {
+         String name = victim.getKey();
+
+         Object lock = getLock(name);
+
+         synchronized (lock)
+         {
+            // Evicted by another thread
+            if (locks.get(name) != lock)
+               continue;
+
+            synchronized (this)
+            {
+               // The tree may have been handed out again since it was selected
+               if (inUse.containsValue(name))
+               {
+                  sizes.put(name, victim.getValue());
+                  continue;
+               }
+            }
+
+            try
+            {
+               fileUtil.delete(new File(directory, name));
+               fileUtil.delete(new File(directory, name + SIZE));
+
+               metrics.getCounter("extract.cache.evictions").increment();
+            }
+            catch (IOException ioe)
+            {
+               log.log(Level.WARNING, "Unable to evict " + name + " from " + directory.getAbsolutePath(), ioe);
+            }
+            finally
+            {
+               locks.remove(name, lock);
+            }
+         }
+      }
+   }
+
+   /**
+    * Get the lock of a tree
+    * @param name The name of the tree
+    * @return The lock
+    */
+   private Object getLock(String name)
+   {
+      Object lock = new Object();
+      Object existing = locks.putIfAbsent(name, lock);
+
+      return existing != null ? existing : lock;
+   }
+
+   /**
+    * Scan the directory for the trees, and delete the remains of interrupted extractions
+    * @return The sizes of the trees
+    */
+   private Map<String, Long> scan()
+   {
+      Map<String, Long> result = new HashMap<String, Long>();
+
+      File[] files = directory.listFiles();
+      if (files != null)
+      {
+         for (File f : files)
+         {
+            String name = f.getName();
+
+            try
+            {
+               if (f.isDirectory())
+               {
+                  if (name.endsWith(TMP))
+                  {
+                     // An interrupted extraction; the extraction of a tree deletes its own remains under
+                     // its lock, so a tree which is being extracted isn't touched
+                     String tree = name.substring(0, name.length() - TMP.length());
+                     Object lock = getLock(tree);
+                     synchronized (lock)
+                     {
+                        try
+                        {
+                           fileUtil.delete(f);
+                        }
+                        finally
+                        {
+                           locks.remove(tree, lock);
+                        }
+                     }
+                  }
+                  else
+                  {
+                     Long size = readSize(name);
+
+                     if (size == null)
+                     {
+                        size = Long.valueOf(size(f));
+                        writeSize(name, size.longValue());
+                     }
+
+                     result.put(name, size);
+                  }
+               }
+               else if (name.endsWith(SIZE) && !new File(directory, name.substring(0, name.length() - SIZE.length()))
+                        .isDirectory())
+               {
+                  fileUtil.delete(f);
+               }
+            }
+            catch (IOException ioe)
+            {
+               log.log(Level.WARNING, "Unable to scan " + f.getAbsolutePath(), ioe);
+            }
+         }
+      }
+
+      return result;
+   }
+
+   /**
+    * Get the content hash of an archive; the hash is reused while the archive is unchanged
+    * @param file The archive
+    * @return The SHA-1 hash in hex
+    * @exception IOException Thrown if the archive can't be read
+    */
+   private String hash(File file) throws IOException
+   {
+      String path = file.getAbsolutePath();
+      long length = file.length();
+      long lastModified = file.lastModified();
+
+      Object[] hash = hashes.get(path);
+      if (hash != null && ((Long)hash[0]).longValue() == length && ((Long)hash[1]).longValue() == lastModified)
+         return (String)hash[2];
+
+      InputStream is = null;
+      try
+      {
+         MessageDigest md = MessageDigest.getInstance("SHA-1");
+         is = new FileInputStream(file);
+
+         byte[] buffer = new byte[BUFFER_SIZE];
+         int bytesRead;
+
+         while ((bytesRead = is.read(buffer)) != -1)
+         {
+            md.update(buffer, 0, bytesRead);
+         }
+
+         StringBuilder sb = new StringBuilder();
+         for (byte b : md.digest())
+         {
+            sb.append(Character.forDigit((b >> 4) & 0xF, 16));
+            sb.append(Character.forDigit(b & 0xF, 16));
+         }
+
+         String result = sb.toString();
+         hashes.put(path, new Object[] {Long.valueOf(length), Long.valueOf(lastModified), result});
+
+         return result;
+      }
+      catch (NoSuchAlgorithmException nsae)
+      {
+         throw new IOException(nsae.getMessage(), nsae);
+      }
+      finally
+      {
+         if (is != null)
+         {
+            try
+            {
+               is.close();
+            }
+            catch (IOException ioe)
+            {
+               // Ignore
+            }
+         }
+      }
+   }
+
+   /**
+    * Get the size of a tree
+    * @param f The root of the tree
+    * @return The size in bytes
+    */
+   private static long size(File f)
+   {
+      if (!f.isDirectory())
+         return f.length();
+
+      long total = 0L;
+
+      File[] files = f.listFiles();
+      if (files != null)
+      {
+         for (File file : files)
+         {
+            total += size(file);
+         }
+      }
+
+      return total;
+   }
+
+   /**
+    * Read the size of a tree
+    * @param name The name of the tree
+    * @return The size; <code>null</code> if unknown
+    */
+   private Long readSize(String name)
+   {
+      File f = new File(directory, name + SIZE);
+
+      if (!f.isFile())
+         return null;
+
+      try
+      {
+         byte[] data = java.nio.file.Files.readAllBytes(f.toPath());
+         return Long.valueOf(new String(data, StandardCharsets.US_ASCII).trim());
+      }
+      catch (Exception e)
+      {
+         return null;
+      }
+   }
+
+   /**
+    * Write the size of a tree
+    * @param name The name of the tree
+    * @param size The size
+    * @exception IOException Thrown if an error occurs
+    */
+   private void writeSize(String name, long size) throws IOException
+   {
+      OutputStream os = null;
+      try
+      {
+         os = new FileOutputStream(new File(directory, name + SIZE));
+         os.write(Long.toString(size).getBytes(StandardCharsets.US_ASCII));
+      }
+      finally
+      {
+         if (os != null)
+            os.close();
+      }
+   }
+}
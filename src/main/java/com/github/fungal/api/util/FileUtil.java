@@ -20,21 +20,46 @@
 
 package com.github.fungal.api.util;
 
-import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
 import java.util.Enumeration;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
 import java.util.jar.JarOutputStream;
 import java.util.jar.Manifest;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
 
 /**
  * An utility for JAR type files
@@ -42,6 +67,30 @@ import java.util.jar.Manifest;
  */
 public class FileUtil
 {
+   /** The size of the I/O buffers */
+   private static final int BUFFER_SIZE = 65536;
+
+   /** The number of file entries per thread when extracting in parallel */
+   private static final int ENTRIES_PER_THREAD = 64;
+
+   /** The depth to which a tree deleted in the background is split into parallel tasks */
+   private static final int DELETE_SPLIT_DEPTH = 3;
+
+   /** The infix of the name of a tree renamed aside to be deleted */
+   private static final String DELETED = ".deleted-";
+
+   /** The maximum number of entries in an archive written without ZIP64 extensions */
+   private static final int MAX_ENTRIES = 0xFFFF;
+
+   /** The maximum size of an entry deflated in memory */
+   private static final long MAX_ENTRY_SIZE = Integer.MAX_VALUE / 2;
+
+   /** The maximum size of an archive written without ZIP64 extensions */
+   private static final long MAX_ARCHIVE_SIZE = 0xFFFFFFFFL;
+
+   /** The number of bytes of entries deflated in memory, but not yet written, when compressing in parallel */
+   private static final long WINDOW_SIZE = 64L * 1024L * 1024L;
+
    /**
     * Constructor
     */
@@ -56,6 +105,21 @@ public class FileUtil
     * @exception IOException Thrown if an error occurs
     */
    public void compress(File directory, File target) throws IOException
+   {
+      compress(directory, target, Deflater.DEFAULT_COMPRESSION, 1);
+   }
+
+   /**
+    * Compress a directory in a JAR layout to a file. The entries are deflated in parallel
+    * into independent buffers, and written in order followed by the central directory
+    * @param directory The directory
+    * @param target The JAR file
+    * @param level The compression level from <code>Deflater.NO_COMPRESSION</code>, which stores
+    *        the entries, to <code>Deflater.BEST_COMPRESSION</code>; or <code>Deflater.DEFAULT_COMPRESSION</code>
+    * @param threads The number of threads deflating the entries
+    * @exception IOException Thrown if an error occurs
+    */
+   public void compress(File directory, File target, int level, int threads) throws IOException
    {
       if (directory == null)
          throw new IllegalArgumentException("Directory is null");
@@ -63,6 +127,12 @@ public class FileUtil
       if (target == null)
          throw new IllegalArgumentException("Target is null");
 
+      if (level < Deflater.DEFAULT_COMPRESSION || level > Deflater.BEST_COMPRESSION)
+         throw new IllegalArgumentException("Invalid compression level: " + level);
+
+      if (threads < 1)
+         throw new IllegalArgumentException("Invalid number of threads: " + threads);
+
       if (target.exists())
          delete(target);
 
@@ -96,70 +166,40 @@ public class FileUtil
          manifest = new Manifest();
       }
 
-      JarOutputStream jos = null;
+      List<File> entries = findEntries(directory);
 
-      try
-      {
-         FileOutputStream fos = new FileOutputStream(target);
-         jos = new JarOutputStream(fos, manifest);
+      if (entries == null)
+         entries = new ArrayList<File>(0);
 
-         int bytesRead;
-         byte[] buffer = new byte[4096];
+      entries.remove(new File("META-INF/MANIFEST.MF"));
 
-         List<File> entries = findEntries(directory);
-
-         if (entries != null)
-         {
-            entries.remove(new File("META-INF/MANIFEST.MF"));
+      // The archive is written without ZIP64 extensions, so large archives are written by JarOutputStream.
+      // The headers, and the worst case expansion of deflate, are included in the size of the archive
+      boolean parallel = threads > 1 && entries.size() > 1 && entries.size() < MAX_ENTRIES;
+      long total = 0L;
+      for (int i = 0; parallel && i < entries.size(); i++)
+      {
+         File entry = entries.get(i);
+         long length = new File(directory, entry.getPath()).length();
 
-            for (File file : entries)
-            {
-               File f = new File(directory, file.getPath());
-               JarEntry entry = new JarEntry(file.getPath());
-               jos.putNextEntry(entry);
+         total += length + (length >> 10) + 128 + 2 * entry.getPath().length();
 
-               FileInputStream in = null;
-               try
-               {
-                  in = new FileInputStream(f);
-                  while ((bytesRead = in.read(buffer)) != -1)
-                     jos.write(buffer, 0, bytesRead);
-               }
-               finally
-               {
-                  if (in != null)
-                  {
-                     try
-                     {
-                        in.close(); 
-                     }
-                     catch (IOException ioe)
-                     {
-                        // Ignore
-                     }
-                  }
-               }
-            }
-         }
+         if (length > MAX_ENTRY_SIZE || total > MAX_ARCHIVE_SIZE)
+            parallel = false;
+      }
 
-         jos.flush();
+      if (parallel)
+      {
+         compress(directory, entries, manifest, target, level, Math.min(threads, entries.size()));
       }
-      finally
+      else
       {
-         try
-         {
-            if (jos != null)
-               jos.close();
-         }
-         catch (IOException ignore)
-         {
-            // Ignore
-         }
+         compress(directory, entries, manifest, target, level);
       }
    }
 
    /**
-    * Extract a JAR type file
+    * Extract a JAR type file. The entries of a large JAR file are extracted using multiple threads
     * @param file The file
     * @param directory The directory where the file should be extracted
     * @return The root of the extracted JAR file
@@ -182,80 +222,63 @@ public class FileUtil
          throw new IOException("Could not create " + target);
 
       JarFile jar = new JarFile(file);
-      Enumeration<JarEntry> entries = jar.entries();
-
-      while (entries.hasMoreElements())
+      try
       {
-         JarEntry je = entries.nextElement();
-         File copy = new File(target, je.getName());
+         List<JarEntry> files = new ArrayList<JarEntry>();
+         Enumeration<JarEntry> entries = jar.entries();
 
-         if (!je.isDirectory())
+         while (entries.hasMoreElements())
          {
-            InputStream in = null;
-            OutputStream out = null;
-            
-            // Make sure that the directory is _really_ there
-            if (copy.getParentFile() != null && !copy.getParentFile().exists())
-            {
-               if (!copy.getParentFile().mkdirs())
-                  throw new IOException("Could not create " + copy.getParentFile());
-            }
+            JarEntry je = entries.nextElement();
 
-            try
+            if (!je.isDirectory())
             {
-               in = new BufferedInputStream(jar.getInputStream(je));
-               out = new BufferedOutputStream(new FileOutputStream(copy));
-
-               byte[] buffer = new byte[4096];
-               for (;;)
-               {
-                  int nBytes = in.read(buffer);
-                  if (nBytes <= 0)
-                     break;
-
-                  out.write(buffer, 0, nBytes);
-               }
-               out.flush();
+               files.add(je);
             }
-            finally
+            else
             {
-               try
-               {
-                  if (out != null)
-                     out.close();
-               }
-               catch (IOException ignore)
-               {
-                  // Ignore
-               }
+               File copy = new File(target, je.getName());
 
-               try
+               if (!copy.exists())
                {
-                  if (in != null)
-                     in.close();
+                  if (!copy.mkdirs())
+                     throw new IOException("Could not create " + copy);
                }
-               catch (IOException ignore)
+               else
                {
-                  // Ignore
+                  if (!copy.isDirectory())
+                     throw new IOException(copy + " isn't a directory");
                }
             }
          }
+
+         int threads = Math.min(Runtime.getRuntime().availableProcessors(), files.size() / ENTRIES_PER_THREAD);
+
+         if (threads > 1)
+         {
+            extract(jar, files, target, threads);
+         }
          else
          {
-            if (!copy.exists())
-            {
-               if (!copy.mkdirs())
-                  throw new IOException("Could not create " + copy);
-            }
-            else
+            byte[] buffer = new byte[BUFFER_SIZE];
+
+            for (JarEntry je : files)
             {
-               if (!copy.isDirectory())
-                  throw new IOException(copy + " isn't a directory");
+               extract(jar, je, target, buffer);
             }
          }
       }
-
-      jar.close();
+      finally
+      {
+         try
+         {
+            jar.close();
+         }
+         catch (IOException ignore)
+         {
+            // Ignore
+         }
+      }
 
       return target;
    }
@@ -298,24 +321,30 @@ public class FileUtil
       }
       else
       {
-         InputStream in = null;
-         OutputStream out = null;
-
-         byte[] buffer = new byte[8192];
-
-         int bytesRead;
+         FileInputStream in = null;
+         FileOutputStream out = null;
 
          try
          {
-            in =  new BufferedInputStream(new FileInputStream(src), 8192);
-            out = new BufferedOutputStream(new FileOutputStream(dest), 8192);
+            in = new FileInputStream(src);
+            out = new FileOutputStream(dest);
+
+            FileChannel source = in.getChannel();
+            FileChannel destination = out.getChannel();
 
-            while ((bytesRead = in.read(buffer)) >= 0)
+            long position = 0;
+            long size = source.size();
+
+            while (position < size)
             {
-               out.write(buffer, 0, bytesRead);
-            }
+               long n = source.transferTo(position, size - position, destination);
 
-            out.flush();
+               // The file was truncated while it was copied
+               if (n <= 0)
+                  throw new IOException("Unexpected end of file at " + position + " of " + size + " bytes");
+
+               position += n;
+            }
          }
          catch (IOException e)
          {
@@ -362,28 +391,501 @@ public class FileUtil
    public void delete(File f) throws IOException
    {
       if (f != null && f.exists())
+         delete(f.toPath());
+   }
+
+   /**
+    * Recursive delete in the background. The file is renamed aside, so its name can be
+    * reused as soon as the method returns, and the tree is deleted by parallel tasks
+    * on the executor
+    * @param f The file handler
+    * @param executor The executor
+    * @return The future of the deletion
+    * @exception IOException Thrown if the file couldn't be renamed aside, and could not be deleted
+    */
+   public Future<Void> delete(File f, Executor executor) throws IOException
+   {
+      if (executor == null)
+         throw new IllegalArgumentException("Executor is null");
+
+      final AtomicReference<IOException> failure = new AtomicReference<IOException>();
+      FutureTask<Void> done = new FutureTask<Void>(new Callable<Void>()
       {
-         File[] files = f.listFiles();
-         if (files != null)
+         public Void call() throws Exception
          {
-            for (int i = 0; i < files.length; i++)
+            if (failure.get() != null)
+               throw failure.get();
+
+            return null;
+         }
+      });
+
+      if (f == null || !f.exists())
+      {
+         done.run();
+         return done;
+      }
+
+      File aside = new File(f.getAbsoluteFile().getParentFile(), f.getName() + DELETED + System.nanoTime());
+
+      if (!f.renameTo(aside))
+      {
+         delete(f);
+         done.run();
+         return done;
+      }
+
+      Deletion deletion = new Deletion(aside, null, 0, executor, failure, done);
+      try
+      {
+         executor.execute(deletion);
+      }
+      catch (RejectedExecutionException ree)
+      {
+         deletion.run();
+      }
+
+      return done;
+   }
+
+   /**
+    * Is the file a tree which was renamed aside to be deleted in the background
+    * @param f The file handler
+    * @param original The original file
+    * @return True if the file is the original file renamed aside; otherwise false
+    */
+   public boolean isDeleted(File f, File original)
+   {
+      return f != null && original != null &&
+         f.getAbsoluteFile().getParentFile().equals(original.getAbsoluteFile().getParentFile()) &&
+         f.getName().startsWith(original.getName() + DELETED);
+   }
+
+   /**
+    * Compress the entries using a JarOutputStream
+    * @param directory The directory
+    * @param entries The file entries
+    * @param manifest The manifest
+    * @param target The JAR file
+    * @param level The compression level
+    * @exception IOException Thrown if an error occurs
+    */
+   private void compress(File directory, List<File> entries, Manifest manifest, File target, int level)
+      throws IOException
+   {
+      JarOutputStream jos = null;
+
+      try
+      {
+         FileOutputStream fos = new FileOutputStream(target);
+         jos = new JarOutputStream(new BufferedOutputStream(fos, BUFFER_SIZE), manifest);
+         jos.setLevel(level);
+
+         int bytesRead;
+         byte[] buffer = new byte[BUFFER_SIZE];
+
+         for (File file : entries)
+         {
+            File f = new File(directory, file.getPath());
+            JarEntry entry = new JarEntry(file.getPath().replace(File.separatorChar, '/'));
+            entry.setTime(f.lastModified());
+
+            if (level == Deflater.NO_COMPRESSION)
+            {
+               entry.setMethod(ZipEntry.STORED);
+               entry.setSize(f.length());
+               entry.setCompressedSize(f.length());
+               entry.setCrc(crc(f, buffer));
+            }
+
+            jos.putNextEntry(entry);
+
+            FileInputStream in = null;
+            try
             {
-               if (files[i].isDirectory())
+               in = new FileInputStream(f);
+               while ((bytesRead = in.read(buffer)) != -1)
+                  jos.write(buffer, 0, bytesRead);
+            }
+            finally
+            {
+               if (in != null)
                {
-                  delete(files[i]);
-               } 
-               else
+                  try
+                  {
+                     in.close(); 
+                  }
+                  catch (IOException ioe)
+                  {
+                     // Ignore
+                  }
+               }
+            }
+         }
+
+         jos.flush();
+      }
+      finally
+      {
+         try
+         {
+            if (jos != null)
+               jos.close();
+         }
+         catch (IOException ignore)
+         {
+            // Ignore
+         }
+      }
+   }
+
+   /**
+    * Compress the entries using multiple threads. The size of the entries
+    * waiting to be written is bounded, so the memory used depends on the size of
+    * the largest entry, and not on the size of the archive
+    * @param directory The directory
+    * @param entries The file entries
+    * @param manifest The manifest
+    * @param target The JAR file
+    * @param level The compression level
+    * @param threads The number of threads
+    * @exception IOException Thrown if an error occurs
+    */
+   private void compress(final File directory, List<File> entries, Manifest manifest, File target,
+                         final int level, int threads)
+      throws IOException
+   {
+      ExecutorService executorService = Executors.newFixedThreadPool(threads, new ThreadFactory()
+      {
+         private AtomicInteger counter = new AtomicInteger(0);
+
+         public Thread newThread(Runnable r)
+         {
+            Thread t = new Thread(r, "FileUtil-compress-" + counter.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+         }
+      });
+
+      ZipWriter writer = null;
+      try
+      {
+         writer = new ZipWriter(new BufferedOutputStream(new FileOutputStream(target), BUFFER_SIZE));
+
+         ByteArrayOutputStream mf = new ByteArrayOutputStream();
+         manifest.write(mf);
+         writer.write(deflate("META-INF/MANIFEST.MF", mf.toByteArray(), System.currentTimeMillis(), level));
+
+         int window = threads * 4;
+         List<Future<DeflatedEntry>> futures = new ArrayList<Future<DeflatedEntry>>(entries.size());
+         long[] lengths = new long[entries.size()];
+         long pending = 0L;
+         int next = 0;
+
+         for (int i = 0; i < entries.size(); i++)
+         {
+            final File file = entries.get(i);
+            lengths[i] = new File(directory, file.getPath()).length();
+
+            // Write the oldest entries until there is room for this one
+            while (next < i && (i - next >= window || pending + lengths[i] > WINDOW_SIZE))
+            {
+               writer.write(get(futures, next));
+               pending -= lengths[next];
+               next++;
+            }
+
+            futures.add(executorService.submit(new Callable<DeflatedEntry>()
+            {
+               public DeflatedEntry call() throws Exception
+               {
+                  File f = new File(directory, file.getPath());
+                  byte[] data = Files.readAllBytes(f.toPath());
+
+                  return deflate(file.getPath().replace(File.separatorChar, '/'), data, f.lastModified(), level);
+               }
+            }));
+
+            pending += lengths[i];
+         }
+
+         for (int i = next; i < entries.size(); i++)
+         {
+            writer.write(get(futures, i));
+         }
+
+         writer.finish();
+      }
+      finally
+      {
+         executorService.shutdownNow();
+
+         if (writer != null)
+            writer.close();
+      }
+   }
+
+   /**
+    * Get a deflated entry, and release it from the list
+    * @param futures The deflated entries
+    * @param index The index
+    * @return The entry
+    * @exception IOException Thrown if the entry couldn't be deflated
+    */
+   private DeflatedEntry get(List<Future<DeflatedEntry>> futures, int index) throws IOException
+   {
+      try
+      {
+         return futures.set(index, null).get();
+      }
+      catch (InterruptedException ie)
+      {
+         Thread.currentThread().interrupt();
+         throw new InterruptedIOException("Interrupted while compressing");
+      }
+      catch (ExecutionException ee)
+      {
+         if (ee.getCause() instanceof IOException)
+            throw (IOException)ee.getCause();
+
+         IOException ioe = new IOException("Unable to compress");
+         ioe.initCause(ee.getCause());
+         throw ioe;
+      }
+   }
+
+   /**
+    * Deflate an entry
+    * @param name The name of the entry
+    * @param data The data
+    * @param time The last modified
+    * @param level The compression level; <code>Deflater.NO_COMPRESSION</code> stores the entry
+    * @return The entry
+    */
+   private static DeflatedEntry deflate(String name, byte[] data, long time, int level)
+   {
+      CRC32 crc = new CRC32();
+      crc.update(data, 0, data.length);
+
+      if (level == Deflater.NO_COMPRESSION)
+         return new DeflatedEntry(name, time, ZipEntry.STORED, crc.getValue(), data.length, data, data.length);
+
+      Deflater deflater = new Deflater(level, true);
+      try
+      {
+         deflater.setInput(data);
+         deflater.finish();
+
+         byte[] buffer = new byte[Math.max(64, data.length + (data.length >> 4) + 64)];
+         int length = 0;
+
+         while (!deflater.finished())
+         {
+            if (length == buffer.length)
+               buffer = Arrays.copyOf(buffer, buffer.length * 2);
+
+            length += deflater.deflate(buffer, length, buffer.length - length);
+         }
+
+         return new DeflatedEntry(name, time, ZipEntry.DEFLATED, crc.getValue(), data.length, buffer, length);
+      }
+      finally
+      {
+         deflater.end();
+      }
+   }
+
+   /**
+    * Calculate the CRC-32 of a file
+    * @param f The file
+    * @param buffer The buffer
+    * @return The value
+    * @exception IOException Thrown if an error occurs
+    */
+   private static long crc(File f, byte[] buffer) throws IOException
+   {
+      CRC32 crc = new CRC32();
+      FileInputStream in = null;
+      try
+      {
+         in = new FileInputStream(f);
+
+         int bytesRead;
+         while ((bytesRead = in.read(buffer)) != -1)
+            crc.update(buffer, 0, bytesRead);
+      }
+      finally
+      {
+         if (in != null)
+         {
+            try
+            {
+               in.close();
+            }
+            catch (IOException ioe)
+            {
+               // Ignore
+            }
+         }
+      }
+
+      return crc.getValue();
+   }
+
+   /**
+    * Extract the file entries of a JAR file using multiple threads
+    * @param jar The JAR file
+    * @param files The file entries
+    * @param target The root of the extracted JAR file
+    * @param threads The number of threads
+    * @exception IOException Thrown if an error occurs
+    */
+   private void extract(final JarFile jar, final List<JarEntry> files, final File target, int threads)
+      throws IOException
+   {
+      final AtomicInteger index = new AtomicInteger(0);
+      final AtomicReference<IOException> failure = new AtomicReference<IOException>();
+
+      Runnable worker = new Runnable()
+      {
+         public void run()
+         {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int i = index.getAndIncrement();
+
+            while (failure.get() == null && i < files.size())
+            {
+               try
                {
-                  if (!files[i].delete())
-                     throw new IOException("Could not delete " + files[i]);
+                  extract(jar, files.get(i), target, buffer);
                }
+               catch (IOException ioe)
+               {
+                  failure.compareAndSet(null, ioe);
+               }
+               catch (Throwable t)
+               {
+                  IOException ioe = new IOException("Unable to extract " + files.get(i).getName());
+                  ioe.initCause(t);
+                  failure.compareAndSet(null, ioe);
+               }
+
+               i = index.getAndIncrement();
             }
          }
-         if (!f.delete())
-            throw new IOException("Could not delete " + f);
+      };
+
+      Thread[] workers = new Thread[threads - 1];
+      for (int i = 0; i < workers.length; i++)
+      {
+         workers[i] = new Thread(worker, "FileUtil-extract-" + (i + 1));
+         workers[i].setDaemon(true);
+         workers[i].start();
+      }
+
+      worker.run();
+
+      for (Thread t : workers)
+      {
+         try
+         {
+            t.join();
+         }
+         catch (InterruptedException ie)
+         {
+            failure.compareAndSet(null, new InterruptedIOException("Interrupted while extracting " + jar.getName()));
+            Thread.currentThread().interrupt();
+         }
+      }
+
+      if (failure.get() != null)
+         throw failure.get();
+   }
+
+   /**
+    * Extract a file entry of a JAR file
+    * @param jar The JAR file
+    * @param je The entry
+    * @param target The root of the extracted JAR file
+    * @param buffer The buffer
+    * @exception IOException Thrown if an error occurs
+    */
+   private void extract(JarFile jar, JarEntry je, File target, byte[] buffer) throws IOException
+   {
+      File copy = new File(target, je.getName());
+
+      // Make sure that the directory is _really_ there
+      if (copy.getParentFile() != null && !copy.getParentFile().exists())
+      {
+         if (!copy.getParentFile().mkdirs() && !copy.getParentFile().isDirectory())
+            throw new IOException("Could not create " + copy.getParentFile());
+      }
+
+      InputStream in = null;
+      FileOutputStream out = null;
+      try
+      {
+         in = jar.getInputStream(je);
+         out = new FileOutputStream(copy);
+
+         int nBytes;
+         while ((nBytes = in.read(buffer)) > 0)
+         {
+            out.write(buffer, 0, nBytes);
+         }
+      }
+      finally
+      {
+         try
+         {
+            if (out != null)
+               out.close();
+         }
+         catch (IOException ignore)
+         {
+            // Ignore
+         }
+
+         try
+         {
+            if (in != null)
+               in.close();
+         }
+         catch (IOException ignore)
+         {
+            // Ignore
+         }
       }
    }
 
+   /**
+    * Delete a tree without following symbolic links
+    * @param path The root of the tree
+    * @exception IOException Thrown if a file could not be deleted
+    */
+   private static void delete(Path path) throws IOException
+   {
+      Files.walkFileTree(path, new SimpleFileVisitor<Path>()
+      {
+         @Override
+         public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException
+         {
+            Files.delete(file);
+            return FileVisitResult.CONTINUE;
+         }
+
+         @Override
+         public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException
+         {
+            if (exc != null)
+               throw exc;
+
+            Files.delete(dir);
+            return FileVisitResult.CONTINUE;
+         }
+      });
+   }
+
    /**
     * Find all file entries for a directory
     * @param file The root directory
@@ -426,4 +928,347 @@ public class FileUtil
 
       return result;
    }
+
+   /**
+    * A directory being deleted in the background. The subdirectories near the root are
+    * deleted by their own tasks, and a directory is deleted once all its tasks are done
+    */
+   static class Deletion implements Runnable
+   {
+      /** The file */
+      private File file;
+
+      /** The parent */
+      private Deletion parent;
+
+      /** The depth */
+      private int depth;
+
+      /** The executor */
+      private Executor executor;
+
+      /** The first failure */
+      private AtomicReference<IOException> failure;
+
+      /** The future of the deletion */
+      private FutureTask<Void> done;
+
+      /** The number of tasks in progress for the directory */
+      private AtomicInteger pending;
+
+      /**
+       * Constructor
+       * @param file The file
+       * @param parent The parent; <code>null</code> for the root
+       * @param depth The depth
+       * @param executor The executor
+       * @param failure The first failure
+       * @param done The future of the deletion
+       */
+      Deletion(File file, Deletion parent, int depth, Executor executor,
+               AtomicReference<IOException> failure, FutureTask<Void> done)
+      {
+         this.file = file;
+         this.parent = parent;
+         this.depth = depth;
+         this.executor = executor;
+         this.failure = failure;
+         this.done = done;
+         this.pending = new AtomicInteger(1);
+      }
+
+      /**
+       * Delete the files of the directory, and split off the subdirectories
+       */
+      public void run()
+      {
+         try
+         {
+            File[] files = file.listFiles();
+
+            if (files != null)
+            {
+               for (File f : files)
+               {
+                  Path path = f.toPath();
+
+                  if (depth < DELETE_SPLIT_DEPTH && f.isDirectory() && !Files.isSymbolicLink(path))
+                  {
+                     pending.incrementAndGet();
+                     try
+                     {
+                        executor.execute(new Deletion(f, this, depth + 1, executor, failure, done));
+                     }
+                     catch (RejectedExecutionException ree)
+                     {
+                        pending.decrementAndGet();
+                        delete(path);
+                     }
+                  }
+                  else
+                  {
+                     delete(path);
+                  }
+               }
+            }
+         }
+         catch (IOException ioe)
+         {
+            failure.compareAndSet(null, ioe);
+         }
+         finally
+         {
+            complete();
+         }
+      }
+
+      /**
+       * A task for the directory is done; the directory is deleted when it was the last
+       */
+      private void complete()
+      {
+         if (pending.decrementAndGet() == 0)
+         {
+            try
+            {
+               Files.deleteIfExists(file.toPath());
+            }
+            catch (IOException ioe)
+            {
+               failure.compareAndSet(null, ioe);
+            }
+
+            if (parent != null)
+            {
+               parent.complete();
+            }
+            else
+            {
+               done.run();
+            }
+         }
+      }
+   }
+
+   /**
+    * An entry which has been deflated, or stored
+    */
+   static class DeflatedEntry
+   {
+      /** The name */
+      private byte[] name;
+
+      /** The last modified in MS-DOS format */
+      private long time;
+
+      /** The method */
+      private int method;
+
+      /** The CRC-32 */
+      private long crc;
+
+      /** The uncompressed size */
+      private long size;
+
+      /** The data */
+      private byte[] data;
+
+      /** The length of the data */
+      private int length;
+
+      /**
+       * Constructor
+       * @param name The name
+       * @param time The last modified
+       * @param method The method
+       * @param crc The CRC-32
+       * @param size The uncompressed size
+       * @param data The data
+       * @param length The length of the data
+       */
+      DeflatedEntry(String name, long time, int method, long crc, long size, byte[] data, int length)
+      {
+         this.name = name.getBytes(StandardCharsets.UTF_8);
+         this.time = dosTime(time);
+         this.method = method;
+         this.crc = crc;
+         this.size = size;
+         this.data = data;
+         this.length = length;
+      }
+
+      /**
+       * Convert a time to the MS-DOS format
+       * @param time The time
+       * @return The value
+       */
+      private static long dosTime(long time)
+      {
+         Calendar c = Calendar.getInstance();
+         c.setTimeInMillis(time);
+
+         int year = c.get(Calendar.YEAR);
+         if (year < 1980)
+            return (1 << 21) | (1 << 16);
+
+         return ((long)(year - 1980) << 25) | ((c.get(Calendar.MONTH) + 1) << 21) |
+            (c.get(Calendar.DAY_OF_MONTH) << 16) | (c.get(Calendar.HOUR_OF_DAY) << 11) |
+            (c.get(Calendar.MINUTE) << 5) | (c.get(Calendar.SECOND) >> 1);
+      }
+   }
+
+   /**
+    * Writes the entries of a ZIP file, followed by the central directory
+    */
+   static class ZipWriter
+   {
+      /** The signature of a local file header */
+      private static final long LOCAL_HEADER = 0x04034b50L;
+
+      /** The signature of a central directory header */
+      private static final long CENTRAL_HEADER = 0x02014b50L;
+
+      /** The signature of the end of the central directory */
+      private static final long END_HEADER = 0x06054b50L;
+
+      /** The names are encoded in UTF-8 */
+      private static final int UTF8_FLAG = 0x0800;
+
+      /** The extra field which identifies a JAR file */
+      private static final byte[] JAR_MAGIC = new byte[] {(byte)0xFE, (byte)0xCA, 0, 0};
+
+      /** The output stream */
+      private OutputStream out;
+
+      /** The number of bytes written */
+      private long written;
+
+      /** The central directory */
+      private ByteArrayOutputStream central;
+
+      /** The number of entries */
+      private int entries;
+
+      /**
+       * Constructor
+       * @param out The output stream
+       */
+      ZipWriter(OutputStream out)
+      {
+         this.out = out;
+         this.written = 0;
+         this.central = new ByteArrayOutputStream();
+         this.entries = 0;
+      }
+
+      /**
+       * Write an entry
+       * @param entry The entry
+       * @exception IOException Thrown if an error occurs
+       */
+      void write(DeflatedEntry entry) throws IOException
+      {
+         byte[] extra = entries == 0 ? JAR_MAGIC : new byte[0];
+         int version = entry.method == ZipEntry.STORED ? 10 : 20;
+         long offset = written;
+
+         if (offset + 30 + entry.name.length + extra.length + entry.length > MAX_ARCHIVE_SIZE)
+            throw new ZipException("Archive too large without ZIP64 extensions");
+
+         writeInt(out, LOCAL_HEADER);
+         writeShort(out, version);
+         writeShort(out, UTF8_FLAG);
+         writeShort(out, entry.method);
+         writeInt(out, entry.time);
+         writeInt(out, entry.crc);
+         writeInt(out, entry.length);
+         writeInt(out, entry.size);
+         writeShort(out, entry.name.length);
+         writeShort(out, extra.length);
+         out.write(entry.name);
+         out.write(extra);
+         out.write(entry.data, 0, entry.length);
+
+         written += 30 + entry.name.length + extra.length + entry.length;
+
+         writeInt(central, CENTRAL_HEADER);
+         writeShort(central, version);
+         writeShort(central, version);
+         writeShort(central, UTF8_FLAG);
+         writeShort(central, entry.method);
+         writeInt(central, entry.time);
+         writeInt(central, entry.crc);
+         writeInt(central, entry.length);
+         writeInt(central, entry.size);
+         writeShort(central, entry.name.length);
+         writeShort(central, extra.length);
+         writeShort(central, 0);
+         writeShort(central, 0);
+         writeShort(central, 0);
+         writeInt(central, 0);
+         writeInt(central, offset);
+         central.write(entry.name);
+         central.write(extra);
+
+         entries++;
+      }
+
+      /**
+       * Write the central directory
+       * @exception IOException Thrown if an error occurs
+       */
+      void finish() throws IOException
+      {
+         if (written + central.size() > MAX_ARCHIVE_SIZE)
+            throw new ZipException("Archive too large without ZIP64 extensions");
+
+         central.writeTo(out);
+
+         writeInt(out, END_HEADER);
+         writeShort(out, 0);
+         writeShort(out, 0);
+         writeShort(out, entries);
+         writeShort(out, entries);
+         writeInt(out, central.size());
+         writeInt(out, written);
+         writeShort(out, 0);
+
+         out.flush();
+      }
+
+      /**
+       * Close
+       * @exception IOException Thrown if an error occurs
+       */
+      void close() throws IOException
+      {
+         out.close();
+      }
+
+      /**
+       * Write a 16 bit value in little endian
+       * @param os The output stream
+       * @param v The value
+       * @exception IOException Thrown if an error occurs
+       */
+      private static void writeShort(OutputStream os, int v) throws IOException
+      {
+         os.write(v & 0xFF);
+         os.write((v >>> 8) & 0xFF);
+      }
+
+      /**
+       * Write a 32 bit value in little endian
+       * @param os The output stream
+       * @param v The value
+       * @exception IOException Thrown if an error occurs
+       */
+      private static void writeInt(OutputStream os, long v) throws IOException
+      {
+         os.write((int)(v & 0xFF));
+         os.write((int)((v >>> 8) & 0xFF));
+         os.write((int)((v >>> 16) & 0xFF));
+         os.write((int)((v >>> 24) & 0xFF));
+      }
+   }
 }
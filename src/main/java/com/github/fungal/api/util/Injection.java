@@ -28,13 +28,17 @@ import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 import java.net.InetAddress;
+import java.net.URI;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import java.util.Properties;
 import java.util.StringTokenizer;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * Injection utility which can inject values into objects
@@ -43,6 +47,59 @@ import java.util.StringTokenizer;
  */
 public class Injection
 {
+   /** The marker for a blank value which is kept as is */
+   private static final Object BLANK = new Object();
+
+   /** The built-in converters */
+   private static Map<Class<?>, Converter<?>> builtin = new HashMap<Class<?>, Converter<?>>();
+
+   /** The registered converters - per type, so they don't keep the type from being unloaded */
+   private static ClassValue<AtomicReference<Converter<?>>> converters = new ClassValue<AtomicReference<Converter<?>>>()
+   {
+      @Override
+      protected AtomicReference<Converter<?>> computeValue(Class<?> type)
+      {
+         return new AtomicReference<Converter<?>>();
+      }
+   };
+
+   /** The String constructor / static valueOf converters - per type */
+   private static ClassValue<Converter<?>> reflection = new ClassValue<Converter<?>>()
+   {
+      @Override
+      protected Converter<?> computeValue(Class<?> type)
+      {
+         Constructor<?> constructor = null;
+         Method valueOf = null;
+
+         try
+         {
+            constructor = SecurityActions.getConstructor(type, String.class);
+         }
+         catch (Throwable t)
+         {
+            // No String constructor
+         }
+
+         try
+         {
+            valueOf = SecurityActions.getMethod(type, "valueOf", String.class);
+
+            if (!Modifier.isStatic(valueOf.getModifiers()))
+               valueOf = null;
+         }
+         catch (Throwable t)
+         {
+            // No static valueOf method
+         }
+
+         if (constructor == null && valueOf == null)
+            return null;
+
+         return new ReflectionConverter(constructor, valueOf);
+      }
+   };
+
    /**
     * Constructor
     */
@@ -303,6 +360,44 @@ public class Injection
       return null;
    }
 
+   /**
+    * Register a converter for a type, which replaces the current converter for the type.
+    * The converters of the built-in types can't be replaced. A deployment should unregister
+    * its converters when it is stopped
+    * @param <T> The type
+    * @param type The type
+    * @param converter The converter
+    */
+   public static <T> void registerConverter(Class<T> type, Converter<? extends T> converter)
+   {
+      if (type == null)
+         throw new IllegalArgumentException("Type is null");
+
+      if (converter == null)
+         throw new IllegalArgumentException("Converter is null");
+
+      if (builtin.containsKey(type))
+         throw new IllegalArgumentException("The converter for " + type.getName() + " can't be replaced");
+
+      converters.get(type).set(converter);
+   }
+
+   /**
+    * Unregister the converter for a type
+    * @param type The type
+    * @return The converter; <code>null</code> if none was registered
+    */
+   public static Converter<?> unregisterConverter(Class<?> type)
+   {
+      if (type == null)
+         throw new IllegalArgumentException("Type is null");
+
+      if (builtin.containsKey(type))
+         return null;
+
+      return converters.get(type).getAndSet(null);
+   }
+
    /**
     * Get the value
     * @param name The value name
@@ -317,69 +412,173 @@ public class Injection
       if (v instanceof String)
       {
          String substituredValue = getSubstitutionValue((String)v);
+         Converter<?> converter = builtin.get(clz);
+
+         if (converter == null)
+            converter = converters.get(clz).get();
+
+         if (converter != null)
+         {
+            Object value = converter.convert(substituredValue, cl);
+
+            // Blank values of the primitive types are kept as is
+            if (value != BLANK)
+               v = value;
+         }
+         else
+         {
+            converter = reflection.get(clz);
+
+            if (converter == null)
+               throw new IllegalArgumentException("Unknown property resolution for property " + name);
+
+            try
+            {
+               v = converter.convert(substituredValue, cl);
+            }
+            catch (Throwable t)
+            {
+               throw new IllegalArgumentException("Unknown property resolution for property " + name);
+            }
+         }
+      }
+
+      return v;
+   }
+
+   /**
+    * Is the value blank
+    * @param value The value
+    * @return True if <code>null</code> or only white space
+    */
+   private static boolean isBlank(String value)
+   {
+      return value == null || value.trim().equals("");
+   }
+
+   /**
+    * Register a built-in converter
+    * @param converter The converter
+    * @param types The types
+    */
+   private static void register(Converter<?> converter, Class<?>... types)
+   {
+      for (Class<?> type : types)
+      {
+         builtin.put(type, converter);
+      }
+   }
 
-         if (clz.equals(String.class))
+   static
+   {
+      register(new Converter<String>()
+      {
+         public String convert(String value, ClassLoader cl)
          {
-            v = substituredValue;
+            return value;
          }
-         else if (clz.equals(byte.class) || clz.equals(Byte.class))
+      }, String.class);
+
+      register(new Converter<Object>()
+      {
+         public Object convert(String value, ClassLoader cl)
+         {
+            return isBlank(value) ? BLANK : Byte.valueOf(value);
+         }
+      }, byte.class, Byte.class);
+
+      register(new Converter<Object>()
+      {
+         public Object convert(String value, ClassLoader cl)
          {
-            if (substituredValue != null && !substituredValue.trim().equals(""))
-               v = Byte.valueOf(substituredValue);
+            return isBlank(value) ? BLANK : Short.valueOf(value);
          }
-         else if (clz.equals(short.class) || clz.equals(Short.class))
+      }, short.class, Short.class);
+
+      register(new Converter<Object>()
+      {
+         public Object convert(String value, ClassLoader cl)
          {
-            if (substituredValue != null && !substituredValue.trim().equals(""))
-               v = Short.valueOf(substituredValue);
+            return isBlank(value) ? BLANK : Integer.valueOf(value);
          }
-         else if (clz.equals(int.class) || clz.equals(Integer.class))
+      }, int.class, Integer.class);
+
+      register(new Converter<Object>()
+      {
+         public Object convert(String value, ClassLoader cl)
          {
-            if (substituredValue != null && !substituredValue.trim().equals(""))
-               v = Integer.valueOf(substituredValue);
+            return isBlank(value) ? BLANK : Long.valueOf(value);
          }
-         else if (clz.equals(long.class) || clz.equals(Long.class))
+      }, long.class, Long.class);
+
+      register(new Converter<Object>()
+      {
+         public Object convert(String value, ClassLoader cl)
          {
-            if (substituredValue != null && !substituredValue.trim().equals(""))
-               v = Long.valueOf(substituredValue);
+            return isBlank(value) ? BLANK : Float.valueOf(value);
          }
-         else if (clz.equals(float.class) || clz.equals(Float.class))
+      }, float.class, Float.class);
+
+      register(new Converter<Object>()
+      {
+         public Object convert(String value, ClassLoader cl)
          {
-            if (substituredValue != null && !substituredValue.trim().equals(""))
-               v = Float.valueOf(substituredValue);
+            return isBlank(value) ? BLANK : Double.valueOf(value);
          }
-         else if (clz.equals(double.class) || clz.equals(Double.class))
+      }, double.class, Double.class);
+
+      register(new Converter<Object>()
+      {
+         public Object convert(String value, ClassLoader cl)
          {
-            if (substituredValue != null && !substituredValue.trim().equals(""))
-               v = Double.valueOf(substituredValue);
+            return isBlank(value) ? BLANK : Boolean.valueOf(value);
          }
-         else if (clz.equals(boolean.class) || clz.equals(Boolean.class))
+      }, boolean.class, Boolean.class);
+
+      register(new Converter<Object>()
+      {
+         public Object convert(String value, ClassLoader cl)
          {
-            if (substituredValue != null && !substituredValue.trim().equals(""))
-               v = Boolean.valueOf(substituredValue);
+            return isBlank(value) ? BLANK : Character.valueOf(value.charAt(0));
          }
-         else if (clz.equals(char.class) || clz.equals(Character.class))
+      }, char.class, Character.class);
+
+      register(new Converter<InetAddress>()
+      {
+         public InetAddress convert(String value, ClassLoader cl) throws Exception
          {
-            if (substituredValue != null && !substituredValue.trim().equals(""))
-               v = Character.valueOf(substituredValue.charAt(0));
+            return InetAddress.getByName(value);
          }
-         else if (clz.equals(InetAddress.class))
+      }, InetAddress.class);
+
+      register(new Converter<Class<?>>()
+      {
+         public Class<?> convert(String value, ClassLoader cl) throws Exception
          {
-            v = InetAddress.getByName(substituredValue);
+            return Class.forName(value, true, cl);
          }
-         else if (clz.equals(Class.class))
+      }, Class.class);
+
+      register(new Converter<URI>()
+      {
+         public URI convert(String value, ClassLoader cl) throws Exception
          {
-            v = Class.forName(substituredValue, true, cl);
+            return new URI(value);
          }
-         else if (clz.equals(Properties.class))
+      }, URI.class);
+
+      register(new Converter<Properties>()
+      {
+         public Properties convert(String value, ClassLoader cl)
          {
             Properties prop = new Properties();
 
-            StringTokenizer st = new StringTokenizer(substituredValue, " ,");
+            StringTokenizer st = new StringTokenizer(value, " ,");
             while (st.hasMoreTokens())
             {
                String token = st.nextToken();
                String key = "";
-               String value = "";
+               String v = "";
 
                int index = token.indexOf("=");
                if (index != -1)
@@ -387,7 +586,7 @@ public class Injection
                   key = token.substring(0, index);
 
                   if (token.length() > index + 1)
-                     value = token.substring(index + 1);
+                     v = token.substring(index + 1);
                }
                else
                {
@@ -395,35 +594,12 @@ public class Injection
                }
 
                if (!"".equals(key))
-                  prop.setProperty(key, value);
+                  prop.setProperty(key, v);
             }
 
-            v = prop;
-         }
-         else
-         {
-            try
-            {
-               Constructor<?> constructor = SecurityActions.getConstructor(clz, String.class);
-               v = constructor.newInstance(substituredValue);
-            }
-            catch (Throwable t)
-            {
-               // Try static String valueOf method
-               try
-               {
-                  Method valueOf = SecurityActions.getMethod(clz, "valueOf", String.class);
-                  v = valueOf.invoke((Object)null, substituredValue);
-               }
-               catch (Throwable inner)
-               {
-                  throw new IllegalArgumentException("Unknown property resolution for property " + name);
-               }
-            }
+            return prop;
          }
-      }
-
-      return v;
+      }, Properties.class);
    }
 
    /**
@@ -500,6 +676,50 @@ public class Injection
       return input;
    }
 
+   /**
+    * Converter using the String constructor, and the static valueOf method of a type
+    */
+   static class ReflectionConverter implements Converter<Object>
+   {
+      /** The String constructor */
+      private Constructor<?> constructor;
+
+      /** The static valueOf method */
+      private Method valueOf;
+
+      /**
+       * Constructor
+       * @param constructor The String constructor; can be <code>null</code>
+       * @param valueOf The static valueOf method; can be <code>null</code>
+       */
+      ReflectionConverter(Constructor<?> constructor, Method valueOf)
+      {
+         this.constructor = constructor;
+         this.valueOf = valueOf;
+      }
+
+      /**
+       * {@inheritDoc}
+       */
+      public Object convert(String value, ClassLoader cl) throws Exception
+      {
+         if (constructor != null)
+         {
+            try
+            {
+               return constructor.newInstance(value);
+            }
+            catch (Exception e)
+            {
+               if (valueOf == null)
+                  throw e;
+            }
+         }
+
+         return valueOf.invoke((Object)null, value);
+      }
+   }
+
    /**
     * Method sorter
     */
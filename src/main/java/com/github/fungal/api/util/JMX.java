@@ -34,6 +34,7 @@ import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
+import java.util.WeakHashMap;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.regex.Pattern;
@@ -64,6 +65,13 @@ public class JMX
    /** SET constant */
    private static final String SET = "set";
 
+   /** The metadata by class; the entries are kept while a delegator uses them */
+   private static Map<Class<?>, Map<MetadataKey, WeakReference<Metadata>>> metadataCache =
+      new WeakHashMap<Class<?>, Map<MetadataKey, WeakReference<Metadata>>>();
+
+   /** The compiled patterns */
+   private static ConcurrentMap<String, Pattern> patternCache = new ConcurrentHashMap<String, Pattern>();
+
    /**
     * Constructor
     */
@@ -155,27 +163,124 @@ public class JMX
                                      descriptions, excludeAttributes, excludeOperations);
    }
 
+   /**
+    * Get the management view of a class without creating an instance of it
+    * @param clz The class
+    * @param description The description for the class
+    * @return The MBeanInfo; the same as the one of <code>createMBean(obj, description)</code> for an instance
+    * @exception SecurityException Thrown if there isn't sufficient permissions
+    */
+   public static MBeanInfo getMBeanInfo(Class<?> clz, String description) throws SecurityException
+   {
+      if (clz == null)
+         throw new IllegalArgumentException("Class is null");
+
+      return getMetadata(clz, description, null, null, null, null).getMBeanInfo();
+   }
+
+   /**
+    * Get the metadata for a class
+    * @param clz The class
+    * @param description The description for the object
+    * @param writeableAttributes The set of attributes that are writeable
+    * @param descriptions Descriptions for the attributes and operations on the object
+    * @param excludeAttributes A set of attributes that should be excluded from the management facade
+    * @param excludeOperations A set of operations that should be excluded from the management facade
+    * @return The metadata
+    * @exception SecurityException Thrown if there isn't sufficient permissions
+    */
+   static Metadata getMetadata(Class<?> clz,
+                               String description,
+                               Set<String> writeableAttributes,
+                               Map<String, String> descriptions,
+                               Set<String> excludeAttributes,
+                               Set<String> excludeOperations)
+      throws SecurityException
+   {
+      MetadataKey key = new MetadataKey(description, writeableAttributes, descriptions,
+                                        excludeAttributes, excludeOperations);
+
+      synchronized (metadataCache)
+      {
+         Map<MetadataKey, WeakReference<Metadata>> m = metadataCache.get(clz);
+         if (m != null)
+         {
+            WeakReference<Metadata> ref = m.get(key);
+            if (ref != null)
+            {
+               Metadata metadata = ref.get();
+               if (metadata != null)
+                  return metadata;
+            }
+         }
+      }
+
+      Metadata metadata = new Metadata(clz, description, writeableAttributes, descriptions,
+                                       excludeAttributes, excludeOperations);
+
+      synchronized (metadataCache)
+      {
+         Map<MetadataKey, WeakReference<Metadata>> m = metadataCache.get(clz);
+         if (m == null)
+         {
+            m = new HashMap<MetadataKey, WeakReference<Metadata>>(1);
+            metadataCache.put(clz, m);
+         }
+
+         WeakReference<Metadata> ref = m.get(key);
+         if (ref != null && ref.get() != null)
+            return ref.get();
+
+         m.put(key, new WeakReference<Metadata>(metadata));
+      }
+
+      return metadata;
+   }
+
+   /**
+    * Compile a set of regular expressions
+    * @param patterns The regular expressions; may be <code>null</code>
+    * @return The patterns; <code>null</code> if there are no regular expressions
+    */
+   private static Set<Pattern> compile(Set<String> patterns)
+   {
+      if (patterns == null)
+         return null;
+
+      Set<Pattern> result = new HashSet<Pattern>(patterns.size());
+      for (String pattern : patterns)
+      {
+         Pattern p = patternCache.get(pattern);
+         if (p == null)
+         {
+            p = Pattern.compile(pattern);
+            patternCache.putIfAbsent(pattern, p);
+         }
+         result.add(p);
+      }
+
+      return result;
+   }
+
    /**
     * Management delegator class based on reflection
     */
    static class ManagementDelegator implements DynamicMBean
    {
-      private static ConcurrentMap<String, Class<?>> simpleTypes = new ConcurrentHashMap<String, Class<?>>(9);
       private WeakReference<Object> ref;
       private MBeanInfo info;
 
-      static
-      {
-         simpleTypes.put(void.class.getName(), void.class);
-         simpleTypes.put(byte.class.getName(), byte.class);
-         simpleTypes.put(short.class.getName(), short.class);
-         simpleTypes.put(int.class.getName(), int.class);
-         simpleTypes.put(long.class.getName(), long.class);
-         simpleTypes.put(char.class.getName(), char.class);
-         simpleTypes.put(boolean.class.getName(), boolean.class);
-         simpleTypes.put(float.class.getName(), float.class);
-         simpleTypes.put(double.class.getName(), double.class);
-      }
+      /** The shared metadata; keeps the cache entry alive while the delegator is in use */
+      private Metadata metadata;
+
+      /** The attribute getters by name */
+      private Map<String, Method> getters;
+
+      /** The attribute setters by name */
+      private Map<String, Method> setters;
+
+      /** The operations by signature */
+      private Map<String, Method> operations;
 
       /**
        * Constructor
@@ -194,49 +299,295 @@ public class JMX
                                  Set<String> excludeAttributes,
                                  Set<String> excludeOperations)
          throws SecurityException
+      {
+         this(instance, getMetadata(instance.getClass(), description, writeableAttributes,
+                                    descriptions, excludeAttributes, excludeOperations));
+      }
+
+      /**
+       * Constructor
+       * @param instance The object instance
+       * @param metadata The metadata for the class of the instance
+       */
+      ManagementDelegator(Object instance, Metadata metadata)
       {
          this.ref = new WeakReference<Object>(instance);
+         this.metadata = metadata;
+         this.info = metadata.getMBeanInfo();
+         this.getters = metadata.getGetters();
+         this.setters = metadata.getSetters();
+         this.operations = metadata.getOperations();
+      }
 
-         List<MBeanAttributeInfo> attrs = new ArrayList<MBeanAttributeInfo>();
-         List<MBeanOperationInfo> ops = new ArrayList<MBeanOperationInfo>();
-         Set<Pattern> writeableAttributePatterns = null;
-         Set<Pattern> attributePatterns = null;
-         Set<Pattern> operationPatterns = null;
+      /**
+       * {@inheritDoc}
+       */
+      public Object getAttribute(String attribute) throws AttributeNotFoundException,
+                                                          MBeanException,
+                                                          ReflectionException 
+      {
+         if (attribute == null)
+            throw new AttributeNotFoundException("Invalid attribute name: null");
 
-         Map<String, Map<String, Method>> attributeMap = new HashMap<String, Map<String, Method>>();
-         Map<String, Set<Method>> operationMap = new HashMap<String, Set<Method>>();
+         Object instance = ref.get();
+         if (instance == null)
+            throw new MBeanException(null, "Instance garbaged collected");
 
-         if (writeableAttributes != null)
+         Method method = getters.get(attribute);
+
+         if (method == null && attribute.length() > 0)
+            method = getters.get(attributeName(attribute));
+
+         if (method == null)
+            throw new AttributeNotFoundException("Invalid attribute name: " + attribute);
+
+         try
          {
-            writeableAttributePatterns = new HashSet<Pattern>(writeableAttributes.size());
-            for (String pattern : writeableAttributes)
+            return method.invoke(instance, (Object[])null);
+         }
+         catch (Exception e)
+         {
+            throw new MBeanException(e, "Exception during getAttribute(" + attribute + ")");
+         }
+      }
+
+      /**
+       * {@inheritDoc}
+       */
+      public AttributeList getAttributes(String[] attributes)
+      {
+         if (attributes != null)
+         {
+            AttributeList result = new AttributeList();
+
+            for (String attr : attributes)
             {
-               Pattern p = Pattern.compile(pattern);
-               writeableAttributePatterns.add(p);
+               try
+               {
+                  result.add(getAttribute(attr));
+               }
+               catch (Throwable t)
+               {
+                  // Nothing to do
+               }
             }
+
+            return result;
          }
 
-         if (excludeAttributes != null)
+         return null;
+      }
+
+      /**
+       * {@inheritDoc}
+       */
+      public MBeanInfo getMBeanInfo()
+      {
+         return info;
+      }
+
+      /**
+       * {@inheritDoc}
+       */
+      public Object invoke(String actionName, Object[] params, String[] signature) throws MBeanException,
+                                                                                          ReflectionException
+      {
+         Object instance = ref.get();
+         if (instance == null)
+            throw new MBeanException(null, "Instance garbaged collected");
+
+         Method method = operations.get(signatureKey(actionName, signature));
+         if (method != null)
          {
-            attributePatterns = new HashSet<Pattern>(excludeAttributes.size());
-            for (String pattern : excludeAttributes)
+            try
             {
-               Pattern p = Pattern.compile(pattern);
-               attributePatterns.add(p);
+               return method.invoke(instance, params);
+            }
+            catch (Exception e)
+            {
+               throw new MBeanException(e, "Exception during invoke(" + actionName + ", " +
+                                        Arrays.toString(params) + ", " + Arrays.toString(signature) + ")");
+            }
+         }
+
+         return null;
+      }
+
+      /**
+       * {@inheritDoc}
+       */
+      public void setAttribute(Attribute attribute) throws AttributeNotFoundException,
+                                                           InvalidAttributeValueException,
+                                                           MBeanException,
+                                                           ReflectionException
+      {
+         if (attribute == null)
+            throw new AttributeNotFoundException("Invalid attribute name: null");
+
+         Object instance = ref.get();
+         if (instance == null)
+            throw new MBeanException(null, "Instance garbaged collected");
+
+         String name = attribute.getName();
+         if (!getters.containsKey(name) && !setters.containsKey(name) && name.length() > 0)
+            name = attributeName(name);
+
+         Method method = setters.get(name);
+
+         if (method == null)
+         {
+            if (getters.containsKey(name))
+               throw new MBeanException(null, "Attribute not writeable: " + attribute.getName());
+
+            return;
+         }
+
+         try
+         {
+            method.invoke(instance, new Object[] {attribute.getValue()});
+         }
+         catch (Exception e)
+         {
+            throw new MBeanException(e, "Exception during setAttribute(" + attribute + ")");
+         }
+      }
+
+      /**
+       * {@inheritDoc}
+       */
+      public AttributeList setAttributes(AttributeList attributes)
+      {
+         if (attributes != null)
+         {
+            AttributeList result = new AttributeList();
+
+            for (Attribute attr : attributes.asList())
+            {
+               try
+               {
+                  setAttribute(attr);
+                  result.add(attr);
+               }
+               catch (Throwable t)
+               {
+                  // Nothing to do
+               }
             }
+
+            return result;
          }
 
-         if (excludeOperations != null)
+         return null;
+      }
+
+      /**
+       * Get the attribute name with the first character in upper case
+       * @param attribute The attribute
+       * @return The name
+       */
+      private static String attributeName(String attribute)
+      {
+         String name = attribute.substring(0, 1).toUpperCase(Locale.US);
+         if (attribute.length() > 1)
+            name += attribute.substring(1);
+
+         return name;
+      }
+
+      /**
+       * Get the key of an operation
+       * @param name The name of the operation
+       * @param signature The parameter types; may be <code>null</code>
+       * @return The key
+       */
+      private static String signatureKey(String name, String[] signature)
+      {
+         StringBuilder sb = new StringBuilder(name);
+
+         sb.append('(');
+         if (signature != null)
          {
-            operationPatterns = new HashSet<Pattern>(excludeOperations.size());
-            for (String pattern : excludeOperations)
+            for (int i = 0; i < signature.length; i++)
             {
-               Pattern p = Pattern.compile(pattern);
-               operationPatterns.add(p);
+               if (i > 0)
+                  sb.append(',');
+
+               sb.append(signature[i]);
             }
          }
+         sb.append(')');
+
+         return sb.toString();
+      }
+
+      /**
+       * Make a method accessible, if allowed
+       * @param method The method
+       * @return The method
+       */
+      private static Method accessible(Method method)
+      {
+         try
+         {
+            SecurityActions.setAccessible(method);
+         }
+         catch (SecurityException se)
+         {
+            // The method is public, so it can still be invoked in most cases
+         }
+
+         return method;
+      }
+   }
+
+   /**
+    * The management metadata of a class, which is shared by the delegators
+    * of all instances of the class with the same configuration
+    */
+   static class Metadata
+   {
+      /** The MBeanInfo */
+      private MBeanInfo info;
+
+      /** The attribute getters by name */
+      private Map<String, Method> getters;
+
+      /** The attribute setters by name */
+      private Map<String, Method> setters;
+
+      /** The operations by signature */
+      private Map<String, Method> operations;
+
+      /**
+       * Constructor
+       * @param clz The class
+       * @param description The description for the object
+       * @param writeableAttributes The set of attributes that are writeable
+       * @param descriptions Descriptions for the attributes and operations on the object
+       * @param excludeAttributes A set of attributes that should be excluded from the management facade
+       * @param excludeOperations A set of operations that should be excluded from the management facade
+       * @exception SecurityException Thrown if there isn't sufficient permissions
+       */
+      Metadata(Class<?> clz,
+               String description,
+               Set<String> writeableAttributes,
+               Map<String, String> descriptions,
+               Set<String> excludeAttributes,
+               Set<String> excludeOperations)
+         throws SecurityException
+      {
+         this.getters = new HashMap<String, Method>();
+         this.setters = new HashMap<String, Method>();
+         this.operations = new HashMap<String, Method>();
 
-         Method[] methods = SecurityActions.getMethods(instance.getClass());
+         Set<Pattern> writeableAttributePatterns = compile(writeableAttributes);
+         Set<Pattern> attributePatterns = compile(excludeAttributes);
+         Set<Pattern> operationPatterns = compile(excludeOperations);
+
+         Map<String, Map<String, Method>> attributeMap = new HashMap<String, Map<String, Method>>();
+         Map<String, Set<Method>> operationMap = new HashMap<String, Set<Method>>();
+
+         Method[] methods = SecurityActions.getMethods(clz);
          for (Method method : methods)
          {
             if (!method.getDeclaringClass().getName().startsWith("java."))
@@ -352,6 +703,34 @@ public class JMX
             }
          }
 
+         List<MBeanAttributeInfo> attrs = getAttributes(attributeMap, descriptions);
+         List<MBeanOperationInfo> ops = getOperations(operationMap, descriptions);
+
+         if (attrs.size() > 0)
+            Collections.sort(attrs, new MBeanAttributeComparator());
+
+         if (ops.size() > 0)
+            Collections.sort(ops, new MBeanOperationComparator());
+
+         this.info = new MBeanInfo(clz.getName(),
+                                   description != null ? description : "",
+                                   attrs.size() > 0 ? attrs.toArray(new MBeanAttributeInfo[attrs.size()]) : null,
+                                   null,
+                                   ops.size() > 0 ? ops.toArray(new MBeanOperationInfo[ops.size()]) : null,
+                                   null);
+      }
+
+      /**
+       * Get the attributes, and record their getters and setters
+       * @param attributeMap The getter and setter of each attribute
+       * @param descriptions Descriptions for the attributes and operations on the object
+       * @return The attributes
+       */
+      private List<MBeanAttributeInfo> getAttributes(Map<String, Map<String, Method>> attributeMap,
+                                                     Map<String, String> descriptions)
+      {
+         List<MBeanAttributeInfo> attrs = new ArrayList<MBeanAttributeInfo>();
+
          Iterator<Map.Entry<String, Map<String, Method>>> ait = attributeMap.entrySet().iterator();
          while (ait.hasNext())
          {
@@ -370,6 +749,12 @@ public class JMX
             
                MBeanAttributeInfo mai = new MBeanAttributeInfo(name, desc, getMethod, setMethod);
                attrs.add(mai);
+
+               if (getMethod != null)
+                  getters.put(name, ManagementDelegator.accessible(getMethod));
+
+               if (setMethod != null)
+                  setters.put(name, ManagementDelegator.accessible(setMethod));
             }
             catch (Throwable t)
             {
@@ -377,13 +762,27 @@ public class JMX
             }
          }
 
+         return attrs;
+      }
+
+      /**
+       * Get the operations, and record their methods
+       * @param operationMap The methods of each operation
+       * @param descriptions Descriptions for the attributes and operations on the object
+       * @return The operations
+       */
+      private List<MBeanOperationInfo> getOperations(Map<String, Set<Method>> operationMap,
+                                                     Map<String, String> descriptions)
+      {
+         List<MBeanOperationInfo> ops = new ArrayList<MBeanOperationInfo>();
+
          Iterator<Map.Entry<String, Set<Method>>> oit = operationMap.entrySet().iterator();
          while (oit.hasNext())
          {
             Map.Entry<String, Set<Method>> entry = oit.next();
 
             String name = entry.getKey();
-            Set<Method> operations = entry.getValue();
+            Set<Method> methodSet = entry.getValue();
 
             try
             {
@@ -391,7 +790,7 @@ public class JMX
                if (descriptions != null && descriptions.get(name) != null)
                   desc = descriptions.get(name);
 
-               for (Method operation : operations)
+               for (Method operation : methodSet)
                {
                   MBeanParameterInfo[] signature = null;
 
@@ -415,6 +814,15 @@ public class JMX
                                                                   MBeanOperationInfo.UNKNOWN);
 
                   ops.add(moi);
+
+                  String[] types = new String[operation.getParameterTypes().length];
+                  for (int i = 0; i < types.length; i++)
+                  {
+                     types[i] = operation.getParameterTypes()[i].getName();
+                  }
+
+                  operations.put(ManagementDelegator.signatureKey(name, types),
+                                 ManagementDelegator.accessible(operation));
                }
             }
             catch (Throwable t)
@@ -423,291 +831,138 @@ public class JMX
             }
          }
 
-         if (attrs.size() > 0)
-            Collections.sort(attrs, new MBeanAttributeComparator());
-
-         if (ops.size() > 0)
-            Collections.sort(ops, new MBeanOperationComparator());
-
-         this.info = new MBeanInfo(instance.getClass().getName(),
-                                   description != null ? description : "",
-                                   attrs.size() > 0 ? attrs.toArray(new MBeanAttributeInfo[attrs.size()]) : null,
-                                   null,
-                                   ops.size() > 0 ? ops.toArray(new MBeanOperationInfo[ops.size()]) : null,
-                                   null);
+         return ops;
       }
 
       /**
-       * {@inheritDoc}
+       * Get the MBeanInfo
+       * @return The value
        */
-      public Object getAttribute(String attribute) throws AttributeNotFoundException,
-                                                          MBeanException,
-                                                          ReflectionException 
+      MBeanInfo getMBeanInfo()
       {
-         if (attribute == null)
-            throw new AttributeNotFoundException("Invalid attribute name: null");
-
-         Object instance = ref.get();
-         if (instance == null)
-            throw new MBeanException(null, "Instance garbaged collected");
-
-         String name = attribute.substring(0, 1).toUpperCase(Locale.US);
-         if (attribute.length() > 1)
-            name += attribute.substring(1);
-
-         for (MBeanAttributeInfo mai : info.getAttributes())
-         {
-            if (name.equals(mai.getName()))
-            {
-               try
-               {
-                  Method method = null;
-
-                  if (!mai.isIs())
-                  {
-                     method = SecurityActions.getMethod(instance.getClass(), "get" + name, (Class[])null);
-                  }
-                  else
-                  {
-                     method = SecurityActions.getMethod(instance.getClass(), "is" + name, (Class[])null);
-                  }
-
-                  SecurityActions.setAccessible(method);
-
-                  return method.invoke(instance, (Object[])null);
-               }
-               catch (Exception e)
-               {
-                  throw new MBeanException(e, "Exception during getAttribute(" + attribute + ")");
-               }
-            }
-         }
-
-         throw new AttributeNotFoundException("Invalid attribute name: " + attribute);
+         return info;
       }
 
       /**
-       * {@inheritDoc}
+       * Get the attribute getters
+       * @return The value
        */
-      public AttributeList getAttributes(String[] attributes)
+      Map<String, Method> getGetters()
       {
-         if (attributes != null)
-         {
-            AttributeList result = new AttributeList();
-
-            for (String attr : attributes)
-            {
-               try
-               {
-                  result.add(getAttribute(attr));
-               }
-               catch (Throwable t)
-               {
-                  // Nothing to do
-               }
-            }
-
-            return result;
-         }
-
-         return null;
+         return getters;
       }
 
       /**
-       * {@inheritDoc}
+       * Get the attribute setters
+       * @return The value
        */
-      public MBeanInfo getMBeanInfo()
+      Map<String, Method> getSetters()
       {
-         return info;
+         return setters;
       }
 
       /**
-       * {@inheritDoc}
+       * Get the operations
+       * @return The value
        */
-      public Object invoke(String actionName, Object[] params, String[] signature) throws MBeanException,
-                                                                                          ReflectionException
+      Map<String, Method> getOperations()
       {
-         Object instance = ref.get();
-         if (instance == null)
-            throw new MBeanException(null, "Instance garbaged collected");
-
-         for (MBeanOperationInfo moi : info.getOperations())
-         {
-            if (actionName.equals(moi.getName()))
-            {
-               boolean correct = false;
-               
-               if (signature == null && moi.getSignature() == null)
-               {
-                  correct = true;
-               }
-               else if (signature != null && moi.getSignature() != null)
-               {
-                  if (signature.length == moi.getSignature().length)
-                  {
-                     correct = true;
-
-                     for (int i = 0; correct && i < signature.length; i++)
-                     {
-                        MBeanParameterInfo mpi = moi.getSignature()[i];
-
-                        if (!signature[i].equals(mpi.getType()))
-                           correct = false;
-                     }
-                  }
-               }
-
-               if (correct)
-               {
-                  try
-                  {
-                     Class[] paramTypes = null;
+         return operations;
+      }
+   }
 
-                     if (signature != null && signature.length > 0)
-                     {
-                        List<Class<?>> l = new ArrayList<Class<?>>(signature.length);
+   /**
+    * The key of the metadata for a class
+    */
+   static class MetadataKey
+   {
+      /** The description */
+      private String description;
 
-                        for (String paramType : signature)
-                        {
-                           Class<?> clz = simpleTypes.get(paramType);
-                           if (clz == null)
-                              clz = resolveClass(paramType, SecurityActions.getClassLoader(instance.getClass()));
-                           l.add(clz);
-                        }
+      /** The writeable attributes */
+      private Set<String> writeableAttributes;
 
-                        paramTypes = l.toArray(new Class<?>[l.size()]);
-                     }
+      /** The descriptions */
+      private Map<String, String> descriptions;
 
-                     Method method = SecurityActions.getMethod(instance.getClass(), actionName, paramTypes);
-                     SecurityActions.setAccessible(method);
+      /** The excluded attributes */
+      private Set<String> excludeAttributes;
 
-                     return method.invoke(instance, params);
-                  }
-                  catch (Exception e)
-                  {
-                     throw new MBeanException(e, "Exception during invoke(" + actionName + ", " +
-                                              Arrays.toString(params) + ", " + Arrays.toString(signature) + ")");
-                  }
-               }
-            }
-         }
+      /** The excluded operations */
+      private Set<String> excludeOperations;
 
-         return null;
+      /**
+       * Constructor
+       * @param description The description for the object
+       * @param writeableAttributes The set of attributes that are writeable
+       * @param descriptions Descriptions for the attributes and operations on the object
+       * @param excludeAttributes A set of attributes that should be excluded from the management facade
+       * @param excludeOperations A set of operations that should be excluded from the management facade
+       */
+      MetadataKey(String description,
+                  Set<String> writeableAttributes,
+                  Map<String, String> descriptions,
+                  Set<String> excludeAttributes,
+                  Set<String> excludeOperations)
+      {
+         this.description = description != null ? description : "";
+         this.writeableAttributes = writeableAttributes != null ? new HashSet<String>(writeableAttributes) : null;
+         this.descriptions = descriptions != null ? new HashMap<String, String>(descriptions) : null;
+         this.excludeAttributes = excludeAttributes != null ? new HashSet<String>(excludeAttributes) : null;
+         this.excludeOperations = excludeOperations != null ? new HashSet<String>(excludeOperations) : null;
       }
 
       /**
-       * {@inheritDoc}
+       * Hash code
+       * @return The value
        */
-      public void setAttribute(Attribute attribute) throws AttributeNotFoundException,
-                                                           InvalidAttributeValueException,
-                                                           MBeanException,
-                                                           ReflectionException
+      public int hashCode()
       {
-         if (attribute == null)
-            throw new AttributeNotFoundException("Invalid attribute name: null");
-
-         Object instance = ref.get();
-         if (instance == null)
-            throw new MBeanException(null, "Instance garbaged collected");
-
-         String name = attribute.getName().substring(0, 1).toUpperCase(Locale.US);
-         if (attribute.getName().length() > 1)
-            name += attribute.getName().substring(1);
-
-         for (MBeanAttributeInfo mai : info.getAttributes())
-         {
-            if (name.equals(mai.getName()))
-            {
-               try
-               {
-                  Class<?> type = simpleTypes.get(mai.getType());
-
-                  if (type == null)
-                     type = resolveClass(mai.getType(), SecurityActions.getClassLoader(instance.getClass()));
+         int result = 7;
 
-                  Method method = SecurityActions.getMethod(instance.getClass(), "set" + name, new Class<?>[] {type});
-                  SecurityActions.setAccessible(method);
+         result += 31 * description.hashCode();
+         result += 31 * (writeableAttributes != null ? writeableAttributes.hashCode() : 3);
+         result += 31 * (descriptions != null ? descriptions.hashCode() : 5);
+         result += 31 * (excludeAttributes != null ? excludeAttributes.hashCode() : 7);
+         result += 31 * (excludeOperations != null ? excludeOperations.hashCode() : 11);
 
-                  method.invoke(instance, new Object[] {attribute.getValue()});
-               }
-               catch (Exception e)
-               {
-                  throw new MBeanException(e, "Exception during setAttribute(" + attribute + ")");
-               }
-            }
-         }
+         return result;
       }
 
       /**
-       * {@inheritDoc}
+       * Equals
+       * @param obj The other object
+       * @return True if equal; otherwise false
        */
-      public AttributeList setAttributes(AttributeList attributes)
+      public boolean equals(Object obj)
       {
-         if (attributes != null)
-         {
-            AttributeList result = new AttributeList();
+         if (obj == null)
+            return false;
 
-            for (Attribute attr : attributes.asList())
-            {
-               try
-               {
-                  setAttribute(attr);
-                  result.add(attr);
-               }
-               catch (Throwable t)
-               {
-                  // Nothing to do
-               }
-            }
+         if (obj == this)
+            return true;
 
-            return result;
-         }
+         if (!(obj instanceof MetadataKey))
+            return false;
 
-         return null;
+         MetadataKey other = (MetadataKey)obj;
+
+         return description.equals(other.description) &&
+            equals(writeableAttributes, other.writeableAttributes) &&
+            equals(descriptions, other.descriptions) &&
+            equals(excludeAttributes, other.excludeAttributes) &&
+            equals(excludeOperations, other.excludeOperations);
       }
 
       /**
-       * Resolve the class
-       * @param clzName The class name
-       * @param cl The initial classloader to use
-       * @return The class
-       * @exception MBeanException Thrown if the class can't be resolved
+       * Null safe equals
+       * @param o1 The first object
+       * @param o2 The second object
+       * @return True if equal; otherwise false
        */
-      private Class<?> resolveClass(String clzName, ClassLoader cl) throws MBeanException
+      private static boolean equals(Object o1, Object o2)
       {
-         try
-         {
-            Class<?> c = Class.forName(clzName, true, cl);
-            return c;
-         }
-         catch (Exception e)
-         {
-            try
-            {
-               Class<?> c = Class.forName(clzName, true, SecurityActions.getThreadContextClassLoader());
-               return c;
-            }
-            catch (Exception e2)
-            {
-               try
-               {
-                  Class<?> c = Class.forName(clzName, true, SecurityActions.getClassLoader(JMX.class));
-                  return c;
-               }
-               catch (Exception e3)
-               {
-                  try
-                  {
-                     Class<?> c = Class.forName(clzName, true, SecurityActions.getSystemClassLoader());
-                     return c;
-                  }
-                  catch (Exception e4)
-                  {
-                     throw new MBeanException(e, "Exception during loading class: " + clzName);
-                  }
-               }
-            }
-         }
+         return o1 == null ? o2 == null : o1.equals(o2);
       }
    }
 
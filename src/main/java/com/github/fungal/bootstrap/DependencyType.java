@@ -208,7 +208,7 @@ public class DependencyType
       if (!organisation.equals(dt.getOrganisation()))
          return false;
 
-      if (!module.equals(dt.getModule()))
+      if (!getModule().equals(dt.getModule()))
          return false;
 
       if (!artifact.equals(dt.getArtifact()))
@@ -236,7 +236,7 @@ public class DependencyType
       int hash = 7;
 
       hash += organisation != null ? 7 * organisation.hashCode() : 3;
-      hash += module != null ? 7 * module.hashCode() : 3;
+      hash += getModule() != null ? 7 * getModule().hashCode() : 3;
       hash += artifact != null ? 7 * artifact.hashCode() : 3;
       hash += revision != null ? 7 * revision.hashCode() : 3;
       hash += classifier != null ? 7 * classifier.hashCode() : 3;
@@ -20,27 +20,63 @@
 
 package com.github.fungal.cli;
 
-import java.io.EOFException;
+import com.github.fungal.api.remote.Client;
+
+import java.io.BufferedReader;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
+import java.io.InputStreamReader;
 import java.io.Serializable;
-import java.net.Socket;
 import java.net.URL;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 /**
- * The command line interface for the Fungal kernel
+ * The command line interface for the Fungal kernel.
+ *
+ * A single command is executed from the command line, or a script of commands is
+ * read from a file or standard input and executed over one connection. Only the queries
+ * of a script are pipelined to the kernel; any other command, like a deploy, or a "sync"
+ * line, waits for all commands in flight, so a deployment can depend on an earlier one.
  * @author <a href="mailto:jesper.pedersen@comcast.net">Jesper Pedersen</a>
  */
 public class CLI
 {
+   /** The maximum number of commands in flight */
+   private static final int MAX_PENDING = 64;
+
+   /** The queries, which can run together */
+   private static final Set<String> QUERIES =
+      new HashSet<String>(Arrays.asList("help", "getcommand", "getmetrics"));
+
+   /** The client */
+   private Client client;
+
+   /** The parameter types of the commands */
+   private Map<String, Class[]> parameterTypes;
+
+   /** The commands in flight in the order they were read */
+   private LinkedList<Pending> pending;
+
    /**
     * Constructor
+    * @param client The client
     */
-   private CLI()
+   private CLI(Client client)
    {
+      this.client = client;
+      this.parameterTypes = new HashMap<String, Class[]>();
+      this.pending = new LinkedList<Pending>();
    }
 
    /**
@@ -55,13 +91,14 @@ public class CLI
       }
       else
       {
-         Socket socket = null;
+         Client client = null;
          try
          {
             String host = null;
             int port = 1202;
             int counter = 0;
-            String command = "";
+            boolean shell = false;
+            String script = null;
 
             if ("-h".equals(args[counter]))
             {
@@ -70,52 +107,66 @@ public class CLI
                counter++;
             }
 
-            if ("-p".equals(args[counter]))
+            if (counter < args.length && "-p".equals(args[counter]))
             {
                counter++;
                port = Integer.valueOf(args[counter]).intValue();
                counter++;
             }
 
-            command = args[counter];
-            counter++;
+            if (counter < args.length && "-i".equals(args[counter]))
+            {
+               counter++;
+               shell = true;
+            }
+            else if (counter < args.length && "-f".equals(args[counter]))
+            {
+               counter++;
+               script = args[counter];
+               counter++;
+               shell = true;
+            }
 
-            if (host == null)
-               host = "localhost";
+            if (!shell && counter >= args.length)
+            {
+               usage();
+               return;
+            }
 
-            socket = new Socket(host, port);
+            client = new Client(host, port);
+            client.connect();
 
-            ObjectOutputStream oos = new ObjectOutputStream(socket.getOutputStream());
-            
-            oos.writeUTF("getcommand");
-            oos.writeInt(1);
-            oos.writeObject(command);
-            
-            oos.flush();
-            
-            ObjectInputStream ois = new ObjectInputStream(socket.getInputStream());
-            
-            Serializable result = (Serializable)ois.readObject();
+            CLI cli = new CLI(client);
 
-            if (result == null || result instanceof Class[])
+            if (shell)
             {
-               Class[] parameterTypes = (Class[])result;
-               Serializable[] arguments = null;
-               if (parameterTypes != null)
+               BufferedReader reader = null;
+               try
                {
-                  arguments = new Serializable[parameterTypes.length];
-                  for (int i = 0; i < parameterTypes.length; i++)
+                  if (script != null)
                   {
-                     arguments[i] = getValue(parameterTypes[i], args[counter]);
-                     counter++;
+                     reader = new BufferedReader(new InputStreamReader(new FileInputStream(script), "UTF-8"));
+                  }
+                  else
+                  {
+                     reader = new BufferedReader(new InputStreamReader(System.in));
                   }
-               }
 
-               executeCommand(host, port, command, arguments);
+                  cli.shell(reader, script == null && System.console() != null);
+               }
+               finally
+               {
+                  if (reader != null)
+                     reader.close();
+               }
             }
             else
             {
-               System.err.println(result);
+               String command = args[counter];
+               counter++;
+
+               Serializable result = cli.invoke(command, Arrays.copyOfRange(args, counter, args.length));
+               print(result);
             }
          }
          catch (Throwable t)
@@ -124,86 +175,271 @@ public class CLI
          }
          finally
          {
-            try
+            if (client != null)
+               client.close();
+         }
+      }
+   }
+
+   /**
+    * Execute the commands from a reader. A command is submitted as soon as it is read,
+    * and the results are printed in order together with the time of each command
+    * @param reader The reader
+    * @param interactive Show a prompt
+    * @exception Throwable Thrown if the connection fails
+    */
+   private void shell(BufferedReader reader, boolean interactive) throws Throwable
+   {
+      if (interactive)
+         prompt();
+
+      String line;
+      while ((line = reader.readLine()) != null)
+      {
+         String[] tokens = tokenize(line);
+
+         if (tokens.length > 0)
+         {
+            if ("exit".equals(tokens[0]) || "quit".equals(tokens[0]))
+               break;
+
+            if ("sync".equals(tokens[0]))
             {
-               if (socket != null)
-                  socket.close();
+               drain();
             }
-            catch (IOException ignore)
+            else
             {
-               // Ignore
+               try
+               {
+                  Serializable[] arguments = getArguments(tokens[0], Arrays.copyOfRange(tokens, 1, tokens.length));
+
+                  await(tokens[0]);
+
+                  while (pending.size() >= MAX_PENDING)
+                  {
+                     print(pending.removeFirst());
+                  }
+
+                  pending.add(new Pending(line.trim(), tokens[0], client.submit(tokens[0], arguments)));
+               }
+               catch (IOException ioe)
+               {
+                  throw ioe;
+               }
+               catch (Throwable t)
+               {
+                  drain();
+                  System.err.println(line.trim() + ": " + t.getMessage());
+               }
             }
          }
+
+         // Print the results when there are no more commands ready
+         if (!reader.ready())
+         {
+            drain();
+
+            if (interactive)
+               prompt();
+         }
       }
+
+      drain();
    }
 
    /**
-    * Execute command
-    * @param host The host
-    * @param port The port
+    * Invoke a command, and wait for the result
     * @param command The command
-    * @param arguments The arguments
+    * @param values The string representation of the arguments
+    * @return The result
+    * @exception Throwable Thrown if an error occurs
     */
-   private static void executeCommand(String host, int port, String command, Serializable[] arguments)
-      throws Throwable
+   private Serializable invoke(String command, String[] values) throws Throwable
    {
-      Socket socket = null;
+      return client.invoke(command, getArguments(command, values));
+   }
 
+   /**
+    * Get the arguments of a command; the parameter types are looked up once per command
+    * @param command The command
+    * @param values The string representation of the arguments
+    * @return The arguments
+    * @exception Throwable Thrown if the command isn't supported
+    */
+   private Serializable[] getArguments(String command, String[] values) throws Throwable
+   {
+      Class[] types = null;
+
+      if (parameterTypes.containsKey(command))
+      {
+         types = parameterTypes.get(command);
+      }
+      else
+      {
+         Serializable result = client.invoke("getcommand", command);
+
+         if (result != null && !(result instanceof Class[]))
+         {
+            if (result instanceof Throwable)
+               throw (Throwable)result;
+
+            throw new IllegalArgumentException(result.toString());
+         }
+
+         types = (Class[])result;
+         parameterTypes.put(command, types);
+      }
+
+      if (types == null)
+         return null;
+
+      Serializable[] arguments = new Serializable[types.length];
+      for (int i = 0; i < types.length; i++)
+      {
+         arguments[i] = getValue(types[i], i < values.length ? values[i] : null);
+      }
+
+      return arguments;
+   }
+
+   /**
+    * Wait for the commands in flight which a command depends on; that is all of them,
+    * except queries for a query
+    * @param command The command
+    * @exception Throwable Thrown if the connection fails
+    */
+   private void await(String command) throws Throwable
+   {
+      int last = -1;
+      for (int i = 0; i < pending.size(); i++)
+      {
+         if (!QUERIES.contains(command) || !QUERIES.contains(pending.get(i).getCommand()))
+            last = i;
+      }
+
+      for (int i = 0; i <= last; i++)
+      {
+         print(pending.removeFirst());
+      }
+   }
+
+   /**
+    * Print the results of all commands in flight
+    * @exception Throwable Thrown if the connection fails
+    */
+   private void drain() throws Throwable
+   {
+      while (!pending.isEmpty())
+      {
+         print(pending.removeFirst());
+      }
+   }
+
+   /**
+    * Wait for a command, and print its result and time
+    * @param p The command
+    * @exception Throwable Thrown if the connection fails
+    */
+   private void print(Pending p) throws Throwable
+   {
+      Serializable result = null;
       try
       {
-         socket = new Socket(host, port);
+         result = p.getFuture().get();
+      }
+      catch (ExecutionException ee)
+      {
+         throw ee.getCause();
+      }
 
-         ObjectOutputStream oos = new ObjectOutputStream(socket.getOutputStream());
-         
-         oos.writeUTF(command);
-         
-         if (arguments != null)
+      if (result instanceof Throwable)
+      {
+         System.err.println(p.getLine() + ": " + result);
+      }
+      else
+      {
+         print(result);
+      }
+
+      System.err.println(String.format(Locale.US, "[%s: %.3f ms]", p.getLine(),
+                                       client.getTime(p.getFuture()) / 1000000.0));
+   }
+
+   /**
+    * Print a result
+    * @param result The result
+    */
+   private static void print(Serializable result)
+   {
+      if (result != null)
+      {
+         if (!result.getClass().isArray())
          {
-            oos.writeInt(arguments.length);
-            for (Serializable argument : arguments)
-            {
-               oos.writeObject(argument);
-            }
+            System.out.println(result);
          }
          else
          {
-            oos.writeInt(0);
+            System.out.println(Arrays.toString((Object[])result));               
          }
-         
-         oos.flush();
+      }
+   }
+
+   /**
+    * Split a line into tokens; double quotes group a token, and # starts a comment
+    * @param line The line
+    * @return The tokens
+    */
+   private static String[] tokenize(String line)
+   {
+      List<String> tokens = new ArrayList<String>();
+      StringBuilder token = null;
+      boolean quoted = false;
 
-         ObjectInputStream ois = new ObjectInputStream(socket.getInputStream());
-         
-         Serializable result = (Serializable)ois.readObject();
+      for (int i = 0; i < line.length(); i++)
+      {
+         char c = line.charAt(i);
 
-         if (result != null)
+         if (c == '"')
          {
-            if (!result.getClass().isArray())
-            {
-               System.out.println(result);
-            }
-            else
-            {
-               System.out.println(Arrays.toString((Object[])result));               
-            }
+            quoted = !quoted;
+
+            if (token == null)
+               token = new StringBuilder();
          }
-      }
-      catch (EOFException ee)
-      {
-         // Nothing
-      }
-      finally
-      {
-         try
+         else if (!quoted && c == '#')
+         {
+            break;
+         }
+         else if (!quoted && Character.isWhitespace(c))
          {
-            if (socket != null)
-               socket.close();
+            if (token != null)
+            {
+               tokens.add(token.toString());
+               token = null;
+            }
          }
-         catch (IOException ignore)
+         else
          {
-            // Ignore
+            if (token == null)
+               token = new StringBuilder();
+
+            token.append(c);
          }
       }
+
+      if (token != null)
+         tokens.add(token.toString());
+
+      return tokens.toArray(new String[tokens.size()]);
+   }
+
+   /**
+    * Show the prompt
+    */
+   private static void prompt()
+   {
+      System.out.print("fungal> ");
+      System.out.flush();
    }
 
    /**
@@ -322,6 +558,8 @@ public class CLI
    private static void usage()
    {
       System.out.println("Usage: CLI <common> <command>");
+      System.out.println("       CLI <common> -i");
+      System.out.println("       CLI <common> -f <file>");
 
       System.out.println(" Common:");
       System.out.println(" -------");
@@ -330,8 +568,72 @@ public class CLI
 
       System.out.println("");
 
+      System.out.println(" Scripts:");
+      System.out.println(" --------");
+      System.out.println(" -i        Read the commands from standard input");
+      System.out.println(" -f <file> Read the commands from a file");
+      System.out.println(" One command per line; \"sync\" waits for the commands in flight, \"exit\" ends the script");
+
+      System.out.println("");
+
       System.out.println(" Commands:");
       System.out.println(" ---------");
       System.out.println(" For a list of commands use \"help\"");
    }
+
+   /**
+    * A command in flight
+    */
+   static class Pending
+   {
+      /** The line */
+      private String line;
+
+      /** The command */
+      private String command;
+
+
+      /** The future result */
+      private Future<Serializable> future;
+
+      /**
+       * Constructor
+       * @param line The line
+       * @param command The command
+       * @param future The future result
+       */
+      Pending(String line, String command, Future<Serializable> future)
+      {
+         this.line = line;
+         this.command = command;
+         this.future = future;
+      }
+
+      /**
+       * Get the line
+       * @return The value
+       */
+      String getLine()
+      {
+         return line;
+      }
+
+      /**
+       * Get the command
+       * @return The value
+       */
+      String getCommand()
+      {
+         return command;
+      }
+
+      /**
+       * Get the future result
+       * @return The value
+       */
+      Future<Serializable> getFuture()
+      {
+         return future;
+      }
+   }
 }
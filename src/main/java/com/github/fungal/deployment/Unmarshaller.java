@@ -169,6 +169,7 @@ public class Unmarshaller
       String beanName = null;
       String beanClazz = null;
       String beanInterface = null;
+      Boolean beanLazy = null;
 
       for (int i = 0; i < xmlStreamReader.getAttributeCount(); i++)
       {
@@ -185,6 +186,10 @@ public class Unmarshaller
          {
             beanInterface = xmlStreamReader.getAttributeValue(i);
          }
+         else if ("lazy".equals(name))
+         {
+            beanLazy = Boolean.valueOf(xmlStreamReader.getAttributeValue(i).trim());
+         }
       }
 
       if (beanName == null || beanName.trim().equals(""))
@@ -193,6 +198,7 @@ public class Unmarshaller
       Bean result = new Bean(beanName);
       result.setClazz(beanClazz);
       result.setInterface(beanInterface);
+      result.setLazy(beanLazy);
 
       int eventCode = xmlStreamReader.next();
 
@@ -46,6 +46,7 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Locale;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -94,6 +95,9 @@ class BeanDeployer implements Runnable
    /** DeployException */
    private DeployException deployException;
 
+   /** Activated */
+   private AtomicBoolean activated;
+
    static
    {
       SUPPORTED_TYPES.add(String.class);
@@ -155,6 +159,7 @@ class BeanDeployer implements Runnable
       this.classLoader = classLoader;
       this.log = log;
       this.deployException = null;
+      this.activated = new AtomicBoolean(false);
    }
 
    /**
@@ -165,10 +170,22 @@ class BeanDeployer implements Runnable
       SecurityActions.setThreadContextClassLoader(classLoader);
       
       String beanName = bt.getName();
+      boolean activation = activated.get();
       try
       {
-         if (kernel.getBean(beanName) == null)
+         if (!activation && kernel.getBean(beanName) != null)
+         {
+            log.warning("Warning: A service with name " + beanName + " already exists");
+         }
+         else if (!activation && isLazy())
+         {
+            kernel.addLazyBean(beanName, this);
+            kernel.getMetrics().getCounter("bean.lazy").increment();
+         }
+         else
          {
+            long start = System.nanoTime();
+
             CountDownLatch dependencies = getDependencies(bt);
 
             try
@@ -181,28 +198,107 @@ class BeanDeployer implements Runnable
                Thread.interrupted();
             }
 
+            kernel.getMetrics().getHistogram("bean.wait.time").recordSince(start);
+
             kernel.setBeanStatus(beanName, ServiceLifecycle.STARTING);
             
+            start = System.nanoTime();
             Object bean = createBean(bt, classLoader);
+            kernel.getMetrics().getHistogram("bean.install.time").recordSince(start);
             
             kernel.addBean(beanName, bean); 
             beans.add(beanName);
             
             kernel.setBeanStatus(beanName, ServiceLifecycle.STARTED);
-         }
-         else
-         {
-            log.warning("Warning: A service with name " + beanName + " already exists");
+            kernel.getMetrics().getCounter("bean.started").increment();
          }
       }
       catch (Throwable t)
       {
          deployException = new DeployException("Installing bean " + beanName, t);
          kernel.setBeanStatus(beanName, ServiceLifecycle.ERROR);
+         kernel.getMetrics().getCounter("bean.failures").increment();
          log.log(Level.SEVERE, "Installing bean " + beanName, t);
       }
-      
-      beansLatch.countDown();
+
+      if (activation)
+      {
+         kernel.lazyBeanActivated(beanName);
+      }
+      else
+      {
+         beansLatch.countDown();
+      }
+   }
+
+   /**
+    * Activate a lazy bean; the bean is created and started in the background
+    */
+   void activate()
+   {
+      if (activated.compareAndSet(false, true))
+         kernel.getExecutorService().submit(this);
+   }
+
+   /**
+    * Get the bean
+    * @return The bean definition
+    */
+   Bean getBean()
+   {
+      return bt;
+   }
+
+   /**
+    * Get the class loader
+    * @return The class loader
+    */
+   ClassLoader getClassLoader()
+   {
+      return classLoader;
+   }
+
+   /**
+    * Get the names of the beans started by the deployment
+    * @return The names
+    */
+   java.util.List<String> getBeans()
+   {
+      return beans;
+   }
+
+   /**
+    * Should the bean be created and started on first use
+    * @return True if lazy, otherwise false
+    */
+   boolean isLazy()
+   {
+      if (bt.isLazy() != null)
+         return bt.isLazy().booleanValue();
+
+      if (!kernel.getKernelConfiguration().isLazyBeans())
+         return false;
+
+      // Beans that take part in the deployment of other beans are always started
+      if (bt.getInstall().size() > 0 || bt.getIncallback().size() > 0 || bt.getUncallback().size() > 0)
+         return false;
+
+      if (bt.getClazz() != null)
+      {
+         try
+         {
+            Class<?> clz = Class.forName(bt.getClazz(), false, classLoader);
+
+            if (Deployer.class.isAssignableFrom(clz) || DeployerPhases.class.isAssignableFrom(clz))
+               return false;
+         }
+         catch (Throwable t)
+         {
+            return false;
+         }
+      }
+
+      return true;
    }
 
    /**
@@ -215,12 +311,11 @@ class BeanDeployer implements Runnable
    }
    
    /**
-    * Get the dependencies for a bean
-    * @paran bt The bean type
-    * @return The count down latch for the dependencies; <code>null</code> if no dependencies
-    * @exception DeployException Thrown if an error occurs
+    * Get the names of the beans that a bean depends on
+    * @param bt The bean type
+    * @return The names; <code>null</code> if no dependencies
     */
-   private CountDownLatch getDependencies(Bean bt) throws DeployException
+   static java.util.Set<String> getDependencyNames(Bean bt)
    {
       java.util.Set<String> deps = null;
       
@@ -280,6 +375,19 @@ class BeanDeployer implements Runnable
          }
       }
 
+      return deps;
+   }
+
+   /**
+    * Get the dependencies for a bean
+    * @paran bt The bean type
+    * @return The count down latch for the dependencies; <code>null</code> if no dependencies
+    * @exception DeployException Thrown if an error occurs
+    */
+   private CountDownLatch getDependencies(Bean bt) throws DeployException
+   {
+      java.util.Set<String> deps = getDependencyNames(bt);
+
       if (deps != null && deps.size() > 0)
       {
          CountDownLatch cdl = new CountDownLatch(deps.size());
@@ -292,6 +400,7 @@ class BeanDeployer implements Runnable
                throw new DeployException("Unknown dependency: " + dependency);
 
             kernel.addBeanDependants(bt.getName(), dependency, cdl);
+            kernel.activateBean(dependency);
          }
          
          return cdl;
@@ -403,7 +512,10 @@ class BeanDeployer implements Runnable
 
             Method createMethod = SecurityActions.getMethod(clz, methodName, (Class[])null);
             SecurityActions.setAccessible(createMethod);
+
+            long start = System.nanoTime();
             createMethod.invoke(instance);
+            kernel.getMetrics().getHistogram("bean.create.time").recordSince(start);
          }
          catch (NoSuchMethodException nsme)
          {
@@ -425,7 +537,10 @@ class BeanDeployer implements Runnable
 
             Method startMethod = SecurityActions.getMethod(clz, methodName, (Class[])null);
             SecurityActions.setAccessible(startMethod);
+
+            long start = System.nanoTime();
             startMethod.invoke(instance);
+            kernel.getMetrics().getHistogram("bean.start.time").recordSince(start);
          }
          catch (NoSuchMethodException nsme)
          {
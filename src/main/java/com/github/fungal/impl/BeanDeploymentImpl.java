@@ -266,6 +266,8 @@ public class BeanDeploymentImpl implements BeanDeployment
          }
       }
 
+      kernel.removeLazyBeans(beans);
+
       if (throwable != null)
          throw throwable;
    }
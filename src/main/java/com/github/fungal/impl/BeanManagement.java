@@ -0,0 +1,398 @@
+/*
+ * The Fungal kernel project
+ * Copyright (C) 2014
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package com.github.fungal.impl;
+
+import com.github.fungal.api.util.JMX;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Registers the deployed beans in the MBeanServer.
+ *
+ * The registrations are queued and executed in batches on the kernel thread pool,
+ * such that the startup of a bean doesn't wait for the MBeanServer. In lazy mode
+ * the beans are only registered once the MBeanServer is queried.
+ * @author <a href="mailto:jesper.pedersen@comcast.net">Jesper Pedersen</a>
+ */
+class BeanManagement implements Runnable
+{
+   /** The maximum number of queued operations */
+   private static final int QUEUE_SIZE = 1024;
+
+   /** The maximum number of operations in a batch */
+   private static final int BATCH_SIZE = 64;
+
+   /** The logger */
+   private Logger log = Logger.getLogger(BeanManagement.class.getName());
+
+   /** The MBeanServer */
+   private MBeanServer mbeanServer;
+
+   /** The domain */
+   private String domain;
+
+   /** The executor service */
+   private ExecutorService executorService;
+
+   /** The queued operations */
+   private BlockingQueue<Operation> queue;
+
+   /** Is a batch scheduled */
+   private AtomicBoolean scheduled;
+
+   /** The beans that haven't been exposed yet */
+   private Map<String, Object> pending;
+
+   /** Lazy mode */
+   private volatile boolean lazy;
+
+   /**
+    * Constructor
+    * @param mbeanServer The MBeanServer
+    * @param domain The domain
+    * @param executorService The executor service
+    * @param lazy Only expose the beans once the MBeanServer is queried
+    */
+   BeanManagement(MBeanServer mbeanServer, String domain, ExecutorService executorService, boolean lazy)
+   {
+      this.mbeanServer = mbeanServer;
+      this.domain = domain;
+      this.executorService = executorService;
+      this.queue = new ArrayBlockingQueue<Operation>(QUEUE_SIZE);
+      this.scheduled = new AtomicBoolean(false);
+      this.pending = new LinkedHashMap<String, Object>();
+      this.lazy = lazy;
+   }
+
+   /**
+    * Register a bean
+    * @param name The name of the bean
+    * @param bean The bean
+    */
+   void register(String name, Object bean)
+   {
+      synchronized (pending)
+      {
+         if (lazy)
+         {
+            pending.put(name, bean);
+            return;
+         }
+      }
+
+      enqueue(new Operation(name, bean));
+   }
+
+   /**
+    * Unregister a bean
+    * @param name The name of the bean
+    */
+   void unregister(String name)
+   {
+      synchronized (pending)
+      {
+         if (lazy)
+         {
+            pending.remove(name);
+            return;
+         }
+      }
+
+      enqueue(new Operation(name, null));
+   }
+
+   /**
+    * Expose the beans, and wait for the queued operations to finish.
+    * Called when the MBeanServer is queried
+    */
+   void expose()
+   {
+      if (lazy)
+      {
+         synchronized (pending)
+         {
+            if (lazy)
+            {
+               lazy = false;
+
+               Iterator<Map.Entry<String, Object>> it = pending.entrySet().iterator();
+               while (it.hasNext())
+               {
+                  Map.Entry<String, Object> entry = it.next();
+                  it.remove();
+
+                  enqueue(new Operation(entry.getKey(), entry.getValue()));
+               }
+            }
+         }
+      }
+
+      drain();
+   }
+
+   /**
+    * Stop; the beans that haven't been exposed are discarded, and the
+    * queued operations are executed
+    */
+   void stop()
+   {
+      synchronized (pending)
+      {
+         lazy = false;
+         pending.clear();
+      }
+
+      drain();
+   }
+
+   /**
+    * Create a view of the MBeanServer which exposes the beans on the first query
+    * @param server The MBeanServer
+    * @return The view
+    */
+   MBeanServer wrap(final MBeanServer server)
+   {
+      InvocationHandler handler = new InvocationHandler()
+      {
+         public Object invoke(Object proxy, Method method, Object[] args) throws Throwable
+         {
+            expose();
+
+            try
+            {
+               return method.invoke(server, args);
+            }
+            catch (InvocationTargetException ite)
+            {
+               throw ite.getCause();
+            }
+         }
+      };
+
+      return (MBeanServer)Proxy.newProxyInstance(MBeanServer.class.getClassLoader(),
+                                                 new Class<?>[] {MBeanServer.class}, handler);
+   }
+
+   /**
+    * Execute the queued operations
+    */
+   public void run()
+   {
+      try
+      {
+         drain();
+      }
+      finally
+      {
+         scheduled.set(false);
+      }
+
+      if (!queue.isEmpty())
+         schedule();
+   }
+
+   /**
+    * Queue an operation
+    * @param operation The operation
+    */
+   private void enqueue(Operation operation)
+   {
+      if (!queue.offer(operation))
+      {
+         schedule();
+
+         try
+         {
+            queue.put(operation);
+         }
+         catch (InterruptedException ie)
+         {
+            Thread.currentThread().interrupt();
+            execute(operation);
+            return;
+         }
+      }
+
+      schedule();
+   }
+
+   /**
+    * Schedule the execution of the queued operations
+    */
+   private void schedule()
+   {
+      if (scheduled.compareAndSet(false, true))
+      {
+         try
+         {
+            executorService.submit(this);
+         }
+         catch (RejectedExecutionException ree)
+         {
+            scheduled.set(false);
+            drain();
+         }
+      }
+   }
+
+   /**
+    * Execute the queued operations in batches. A registration followed by an
+    * unregistration of the same bean in a batch cancel each other out
+    */
+   private synchronized void drain()
+   {
+      List<Operation> batch = new ArrayList<Operation>(BATCH_SIZE);
+
+      while (queue.drainTo(batch, BATCH_SIZE) > 0)
+      {
+         Map<String, Integer> registrations = new HashMap<String, Integer>(batch.size());
+
+         for (int i = 0; i < batch.size(); i++)
+         {
+            Operation operation = batch.get(i);
+
+            if (operation.getBean() != null)
+            {
+               registrations.put(operation.getName(), Integer.valueOf(i));
+            }
+            else
+            {
+               Integer index = registrations.remove(operation.getName());
+               if (index != null)
+               {
+                  batch.set(index.intValue(), null);
+                  batch.set(i, null);
+               }
+            }
+         }
+
+         for (Operation operation : batch)
+         {
+            if (operation != null)
+               execute(operation);
+         }
+
+         batch.clear();
+      }
+   }
+
+   /**
+    * Execute an operation
+    * @param operation The operation
+    */
+   private void execute(Operation operation)
+   {
+      if (operation.getBean() != null)
+      {
+         try
+         {
+            ObjectName on = new ObjectName(domain + ":name=" + operation.getName() + ",type=Bean");
+            Object bean = operation.getBean();
+
+            if (bean instanceof LazyBeanDelegator)
+            {
+               mbeanServer.registerMBean(bean, on);
+            }
+            else
+            {
+               mbeanServer.registerMBean(JMX.createMBean(bean), on);
+            }
+         }
+         catch (Throwable t)
+         {
+            log.log(Level.WARNING, "Error during management registering of bean [" + operation.getName() + "]", t);
+         }
+      }
+      else
+      {
+         try
+         {
+            ObjectName on = new ObjectName(domain + ":name=" + operation.getName() + ",type=Bean");
+            if (mbeanServer.isRegistered(on))
+               mbeanServer.unregisterMBean(on);
+         }
+         catch (Throwable t)
+         {
+            log.log(Level.FINER, "Error during management unregistering of bean [" + operation.getName() + "]", t);
+         }
+      }
+   }
+
+   /**
+    * A registration, or an unregistration if there is no bean
+    */
+   static class Operation
+   {
+      /** The name of the bean */
+      private String name;
+
+      /** The bean */
+      private Object bean;
+
+      /**
+       * Constructor
+       * @param name The name of the bean
+       * @param bean The bean; <code>null</code> for an unregistration
+       */
+      Operation(String name, Object bean)
+      {
+         this.name = name;
+         this.bean = bean;
+      }
+
+      /**
+       * Get the name of the bean
+       * @return The value
+       */
+      String getName()
+      {
+         return name;
+      }
+
+      /**
+       * Get the bean
+       * @return The value
+       */
+      Object getBean()
+      {
+         return bean;
+      }
+   }
+}
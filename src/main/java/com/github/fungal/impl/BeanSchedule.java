@@ -0,0 +1,253 @@
+/*
+ * The Fungal kernel project
+ * Copyright (C) 2014
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package com.github.fungal.impl;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * The schedule of the beans of a deployment from a startup snapshot.
+ *
+ * A bean is submitted once the beans of the deployment that it depends on have
+ * been started, and the ready beans are submitted longest running first with at
+ * most one bean per processor running. A bean that depends on a bean of another
+ * deployment doesn't take part in the bound, since it waits for that bean through
+ * the latches like a normal deployment.
+ * @author <a href="mailto:jesper.pedersen@comcast.net">Jesper Pedersen</a>
+ */
+class BeanSchedule
+{
+   /** The executor service */
+   private ExecutorService executorService;
+
+   /** The tasks */
+   private List<Task> tasks;
+
+   /** The ready tasks, longest running first */
+   private PriorityQueue<Task> ready;
+
+   /** The number of tasks that may be submitted */
+   private int permits;
+
+   /**
+    * Constructor
+    * @param plan The bean deployers in plan order
+    * @param snapshot The startup snapshot
+    * @param executorService The executor service
+    */
+   BeanSchedule(List<BeanDeployer> plan, StartupSnapshot snapshot, ExecutorService executorService)
+   {
+      this.executorService = executorService;
+      this.tasks = new ArrayList<Task>(plan.size());
+      this.ready = new PriorityQueue<Task>(plan.size(), new Comparator<Task>()
+      {
+         public int compare(Task o1, Task o2)
+         {
+            if (o1.duration != o2.duration)
+               return o1.duration > o2.duration ? -1 : 1;
+
+            return o1.index < o2.index ? -1 : (o1.index == o2.index ? 0 : 1);
+         }
+      });
+      this.permits = Runtime.getRuntime().availableProcessors();
+
+      Map<String, Task> names = new HashMap<String, Task>(plan.size());
+      for (BeanDeployer deployer : plan)
+      {
+         String name = deployer.getBean().getName();
+         Task task = new Task(deployer, tasks.size(), snapshot.getDuration(name));
+
+         tasks.add(task);
+         names.put(name, task);
+      }
+
+      for (Task task : tasks)
+      {
+         Set<String> deps = BeanDeployer.getDependencyNames(task.deployer.getBean());
+         if (deps != null)
+         {
+            for (String dep : deps)
+            {
+               Task dependency = names.get(dep);
+               if (dependency != null)
+               {
+                  dependency.dependants.add(task);
+                  task.pending++;
+               }
+               else
+               {
+                  task.external = true;
+               }
+            }
+         }
+      }
+   }
+
+   /**
+    * Execute the schedule
+    */
+   void execute()
+   {
+      List<Task> submit = new ArrayList<Task>(tasks.size());
+
+      synchronized (this)
+      {
+         for (Task task : tasks)
+         {
+            if (task.pending == 0)
+               ready(task, submit);
+         }
+
+         next(submit);
+      }
+
+      submit(submit);
+   }
+
+   /**
+    * A task has run
+    * @param task The task
+    */
+   private void done(Task task)
+   {
+      List<Task> submit = new ArrayList<Task>(task.dependants.size() + 1);
+
+      synchronized (this)
+      {
+         if (!task.external)
+            permits++;
+
+         for (Task dependant : task.dependants)
+         {
+            dependant.pending--;
+            if (dependant.pending == 0)
+               ready(dependant, submit);
+         }
+
+         next(submit);
+      }
+
+      submit(submit);
+   }
+
+   /**
+    * A task is ready; a task that waits for another deployment is submitted right away
+    * @param task The task
+    * @param submit The tasks to submit
+    */
+   private void ready(Task task, List<Task> submit)
+   {
+      if (task.external)
+      {
+         submit.add(task);
+      }
+      else
+      {
+         ready.add(task);
+      }
+   }
+
+   /**
+    * Take the ready tasks that may be submitted
+    * @param submit The tasks to submit
+    */
+   private void next(List<Task> submit)
+   {
+      while (permits > 0 && !ready.isEmpty())
+      {
+         permits--;
+         submit.add(ready.poll());
+      }
+   }
+
+   /**
+    * Submit tasks
+    * @param submit The tasks
+    */
+   private void submit(List<Task> submit)
+   {
+      for (Task task : submit)
+      {
+         executorService.submit(task);
+      }
+   }
+
+   /**
+    * A bean of the schedule
+    */
+   private class Task implements Runnable
+   {
+      /** The bean deployer */
+      private BeanDeployer deployer;
+
+      /** The index in the plan */
+      private int index;
+
+      /** The duration from the snapshot */
+      private long duration;
+
+      /** The tasks waiting for this task */
+      private List<Task> dependants;
+
+      /** The number of tasks this task is waiting for */
+      private int pending;
+
+      /** Depends on a bean of another deployment */
+      private boolean external;
+
+      /**
+       * Constructor
+       * @param deployer The bean deployer
+       * @param index The index in the plan
+       * @param duration The duration from the snapshot
+       */
+      Task(BeanDeployer deployer, int index, long duration)
+      {
+         this.deployer = deployer;
+         this.index = index;
+         this.duration = duration;
+         this.dependants = new ArrayList<Task>(1);
+         this.pending = 0;
+         this.external = false;
+      }
+
+      /**
+       * Run
+       */
+      public void run()
+      {
+         try
+         {
+            deployer.run();
+         }
+         finally
+         {
+            done(this);
+         }
+      }
+   }
+}
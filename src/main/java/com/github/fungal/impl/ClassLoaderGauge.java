@@ -0,0 +1,102 @@
+/*
+ * The Fungal kernel project
+ * Copyright (C) 2014
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package com.github.fungal.impl;
+
+import com.github.fungal.api.classloading.KernelClassLoader;
+import com.github.fungal.api.metrics.Gauge;
+import com.github.fungal.api.metrics.Metrics;
+
+/**
+ * A gauge for the statistics of a kernel class loader
+ * @author <a href="mailto:jesper.pedersen@comcast.net">Jesper Pedersen</a>
+ */
+class ClassLoaderGauge implements Gauge
+{
+   /** Type: Load requests */
+   private static final int TYPE_LOAD_REQUESTS = 0;
+
+   /** Type: Defined classes */
+   private static final int TYPE_DEFINED_CLASSES = 1;
+
+   /** Type: Define time */
+   private static final int TYPE_DEFINE_TIME = 2;
+
+   /** The class loader */
+   private KernelClassLoader classLoader;
+
+   /** The type */
+   private int type;
+
+   /**
+    * Constructor
+    * @param classLoader The class loader
+    * @param type The type
+    */
+   private ClassLoaderGauge(KernelClassLoader classLoader, int type)
+   {
+      this.classLoader = classLoader;
+      this.type = type;
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public long getValue()
+   {
+      if (type == TYPE_LOAD_REQUESTS)
+      {
+         return classLoader.getLoadRequests();
+      }
+      else if (type == TYPE_DEFINED_CLASSES)
+      {
+         return classLoader.getDefinedClasses();
+      }
+      else
+      {
+         return classLoader.getDefineTime();
+      }
+   }
+
+   /**
+    * Register the gauges for a class loader
+    * @param metrics The metrics
+    * @param prefix The prefix of the names
+    * @param classLoader The class loader
+    */
+   static void register(Metrics metrics, String prefix, KernelClassLoader classLoader)
+   {
+      metrics.registerGauge(prefix + ".requests", new ClassLoaderGauge(classLoader, TYPE_LOAD_REQUESTS));
+      metrics.registerGauge(prefix + ".classes", new ClassLoaderGauge(classLoader, TYPE_DEFINED_CLASSES));
+      metrics.registerGauge(prefix + ".time", new ClassLoaderGauge(classLoader, TYPE_DEFINE_TIME));
+   }
+
+   /**
+    * Unregister the gauges for a class loader
+    * @param metrics The metrics
+    * @param prefix The prefix of the names
+    */
+   static void unregister(Metrics metrics, String prefix)
+   {
+      metrics.unregisterGauge(prefix + ".requests");
+      metrics.unregisterGauge(prefix + ".classes");
+      metrics.unregisterGauge(prefix + ".time");
+   }
+}
@@ -97,8 +97,21 @@ public final class DeploymentDeployer implements CloneableDeployer
       DeployException deployException = null;
       try
       {
-         Unmarshaller deploymentU = new Unmarshaller();
-         com.github.fungal.deployment.Deployment deployment = deploymentU.unmarshal(url);
+         com.github.fungal.deployment.Deployment deployment = null;
+
+         DeploymentPlan deploymentPlan = kernel.getDeploymentPlan();
+         if (deploymentPlan != null)
+            deployment = deploymentPlan.takeDeployment(url);
+
+         if (deployment == null)
+         {
+            long start = System.nanoTime();
+
+            Unmarshaller deploymentU = new Unmarshaller();
+            deployment = deploymentU.unmarshal(url);
+
+            kernel.getMetrics().getHistogram("deployment.unmarshal.time").recordSince(start);
+         }
 
          if (deployment != null && deployment.getBean().size() > 0)
          {
@@ -128,8 +141,28 @@ public final class DeploymentDeployer implements CloneableDeployer
                                                         stops, destroys, ignoreStops, ignoreDestroys,
                                                         kernel, beansLatch, parent, log);
                deployers.add(deployer);
+            }
+
+            StartupSnapshot snapshot = kernel.getStartupSnapshot();
+            List<BeanDeployer> plan = snapshot != null ? snapshot.plan(url, deployers) : null;
+
+            if (plan != null)
+            {
+               if (log.isLoggable(Level.FINE))
+                  log.fine("Deploying " + url + " from the startup snapshot");
+
+               kernel.getMetrics().getCounter("snapshot.hits").increment();
+               new BeanSchedule(plan, snapshot, kernel.getExecutorService()).execute();
+            }
+            else
+            {
+               if (snapshot != null)
+                  kernel.getMetrics().getCounter("snapshot.misses").increment();
 
-               kernel.getExecutorService().submit(deployer);
+               for (BeanDeployer deployer : deployers)
+               {
+                  kernel.getExecutorService().submit(deployer);
+               }
             }
 
             beansLatch.await();
@@ -0,0 +1,589 @@
+/*
+ * The Fungal kernel project
+ * Copyright (C) 2014
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package com.github.fungal.impl;
+
+import com.github.fungal.api.configuration.DeploymentOrder;
+import com.github.fungal.api.deployment.Bean;
+import com.github.fungal.api.metrics.Histogram;
+import com.github.fungal.api.metrics.Metrics;
+import com.github.fungal.deployment.Deployment;
+import com.github.fungal.deployment.Unmarshaller;
+import com.github.fungal.spi.deployers.Deployer;
+import com.github.fungal.spi.deployers.DeployerPhases;
+
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The deployment plan for the system and deploy directories.
+ *
+ * The units are grouped into buckets by directory and deployment order, but a
+ * unit only waits for the units in the earlier buckets that it actually needs:
+ * the bean deployments that provide the beans it depends on, and the units that
+ * may register deployers - which is any unit that isn't a bean deployment, and
+ * any bean deployment with a bean that is, or may be, a deployer. A unit is
+ * submitted to the executor once all the units it waits for are done, so no
+ * thread is blocked waiting for a bucket.
+ * @author <a href="mailto:jesper.pedersen@comcast.net">Jesper Pedersen</a>
+ */
+class DeploymentPlan
+{
+   /** The units in plan order */
+   private List<Unit> units;
+
+   /** The units by url */
+   private Map<String, Unit> lookup;
+
+   /** The number of buckets */
+   private int buckets;
+
+   /** The number of dependencies between the units */
+   private int dependencies;
+
+   /** The system latch */
+   private CountDownLatch systemLatch;
+
+   /** The latch */
+   private CountDownLatch latch;
+
+   /** The number of running units */
+   private AtomicInteger running;
+
+   /** The maximum number of running units */
+   private AtomicInteger parallelism;
+
+   /** The start time */
+   private long start;
+
+   /** The end time */
+   private long end;
+
+   /**
+    * Constructor
+    * @param system The urls of the system directory
+    * @param deploy The urls of the deploy directory
+    * @param order The deployment order
+    * @param classLoader The kernel class loader
+    * @param executorService The executor service used to read the bean deployments
+    * @param metrics The metrics
+    * @exception InterruptedException Thrown if interrupted
+    */
+   DeploymentPlan(List<URL> system, List<URL> deploy, DeploymentOrder order,
+                  final ClassLoader classLoader, ExecutorService executorService, final Metrics metrics)
+      throws InterruptedException
+   {
+      this.units = new ArrayList<Unit>(system.size() + deploy.size());
+      this.lookup = new HashMap<String, Unit>(system.size() + deploy.size());
+      this.dependencies = 0;
+      this.running = new AtomicInteger(0);
+      this.parallelism = new AtomicInteger(0);
+      this.start = 0L;
+      this.end = 0L;
+
+      // Buckets are ordered by directory, and then by the deployment order
+      TreeMap<Long, Integer> keys = new TreeMap<Long, Integer>();
+      for (URL url : system)
+      {
+         units.add(new Unit(url, true, order.getOrderIndex(url)));
+      }
+      for (URL url : deploy)
+      {
+         units.add(new Unit(url, false, order.getOrderIndex(url)));
+      }
+      for (Unit unit : units)
+      {
+         lookup.put(unit.url.toExternalForm(), unit);
+         keys.put(Long.valueOf(unit.getKey()), null);
+      }
+
+      int index = 0;
+      for (Map.Entry<Long, Integer> e : keys.entrySet())
+      {
+         e.setValue(Integer.valueOf(index++));
+      }
+      this.buckets = keys.size();
+
+      final CountDownLatch analyzed = new CountDownLatch(units.size());
+      for (final Unit unit : units)
+      {
+         unit.bucket = keys.get(Long.valueOf(unit.getKey())).intValue();
+
+         executorService.execute(new Runnable()
+         {
+            public void run()
+            {
+               unit.analyze(classLoader, metrics.getHistogram("deployment.unmarshal.time"));
+               analyzed.countDown();
+            }
+         });
+      }
+      analyzed.await();
+
+      int systemUnits = 0;
+      for (Unit unit : units)
+      {
+         if (unit.system)
+            systemUnits++;
+
+         for (Unit earlier : units)
+         {
+            if (earlier.bucket < unit.bucket && unit.waitsFor(earlier))
+            {
+               earlier.dependants.add(unit);
+               unit.pending.incrementAndGet();
+               dependencies++;
+            }
+         }
+      }
+
+      this.systemLatch = new CountDownLatch(systemUnits);
+      this.latch = new CountDownLatch(units.size());
+   }
+
+   /**
+    * Get the number of bean deployments in the plan
+    * @return The value
+    */
+   int getBeanDeployments()
+   {
+      int result = 0;
+
+      for (Unit unit : units)
+      {
+         if (unit.url.toString().endsWith(".xml"))
+            result++;
+      }
+
+      return result;
+   }
+
+   /**
+    * Get the bean deployment of an url, if it was read by the plan. The deployment
+    * can only be taken once
+    * @param url The url
+    * @return The deployment; <code>null</code> if not read by the plan
+    */
+   Deployment takeDeployment(URL url)
+   {
+      Unit unit = lookup.get(url.toExternalForm());
+
+      if (unit == null)
+         return null;
+
+      synchronized (unit)
+      {
+         Deployment result = unit.deployment;
+         unit.deployment = null;
+         return result;
+      }
+   }
+
+   /**
+    * Execute the plan
+    * @param kernel The kernel
+    * @param mainDeployer The main deployer
+    * @param classLoader The kernel class loader
+    * @param log The logger
+    */
+   void execute(final KernelImpl kernel, final MainDeployerImpl mainDeployer,
+                final ClassLoader classLoader, final Logger log)
+   {
+      start = System.nanoTime();
+
+      for (Unit unit : units)
+      {
+         unit.prepare(this, kernel, mainDeployer, classLoader, log);
+      }
+
+      for (Unit unit : units)
+      {
+         if (unit.pending.get() == 0)
+            kernel.getExecutorService().execute(unit);
+      }
+   }
+
+   /**
+    * Wait for the units of the system directory
+    * @exception InterruptedException Thrown if interrupted
+    */
+   void awaitSystem() throws InterruptedException
+   {
+      systemLatch.await();
+   }
+
+   /**
+    * Wait for all units
+    * @exception InterruptedException Thrown if interrupted
+    */
+   void await() throws InterruptedException
+   {
+      latch.await();
+      end = System.nanoTime();
+   }
+
+   /**
+    * Get the number of units that started before all units in the earlier buckets were done
+    * @return The value
+    */
+   int getOverlapped()
+   {
+      long[] bucketEnd = new long[buckets];
+
+      for (Unit unit : units)
+      {
+         if (unit.finished > bucketEnd[unit.bucket])
+            bucketEnd[unit.bucket] = unit.finished;
+      }
+
+      int result = 0;
+      for (Unit unit : units)
+      {
+         for (int i = 0; i < unit.bucket; i++)
+         {
+            if (unit.started != 0L && unit.started < bucketEnd[i])
+            {
+               result++;
+               break;
+            }
+         }
+      }
+
+      return result;
+   }
+
+   /**
+    * Record the statistics of the plan
+    * @param kernel The kernel
+    */
+   void record(KernelImpl kernel)
+   {
+      kernel.getMetrics().getCounter("plan.units").add(units.size());
+      kernel.getMetrics().getCounter("plan.buckets").add(buckets);
+      kernel.getMetrics().getCounter("plan.dependencies").add(dependencies);
+      kernel.getMetrics().getCounter("plan.overlapped").add(getOverlapped());
+      kernel.getMetrics().getCounter("plan.parallelism").add(parallelism.get());
+      kernel.getMetrics().getHistogram("plan.time").record(end - start);
+   }
+
+   /**
+    * The plan statistics as text
+    * @return The statistics
+    */
+   String toText()
+   {
+      StringBuilder sb = new StringBuilder();
+
+      sb.append("Deployment plan: ").append(units.size()).append(" units, ");
+      sb.append(buckets).append(" buckets, ");
+      sb.append(dependencies).append(" dependencies, ");
+      sb.append(getOverlapped()).append(" overlapped, ");
+      sb.append("parallelism ").append(parallelism.get()).append(", ");
+      sb.append(String.format(Locale.US, "%.3f", Double.valueOf((end - start) / 1000000.0))).append(" ms");
+
+      return sb.toString();
+   }
+
+   /**
+    * A unit is done
+    * @param unit The unit
+    */
+   private void done(Unit unit)
+   {
+      running.decrementAndGet();
+
+      if (unit.system)
+         systemLatch.countDown();
+
+      latch.countDown();
+   }
+
+   /**
+    * A unit is running
+    */
+   private void running()
+   {
+      int current = running.incrementAndGet();
+      int max = parallelism.get();
+
+      while (current > max && !parallelism.compareAndSet(max, current))
+      {
+         max = parallelism.get();
+      }
+   }
+
+   /**
+    * A unit of the plan
+    */
+   static class Unit implements Runnable
+   {
+      /** The url */
+      private URL url;
+
+      /** From the system directory */
+      private boolean system;
+
+      /** The order index */
+      private int orderIndex;
+
+      /** The bucket */
+      private int bucket;
+
+      /** Is a bean deployment */
+      private boolean beans;
+
+      /** The bean deployment; <code>null</code> if not read, or already taken */
+      private Deployment deployment;
+
+      /** The names of the beans provided */
+      private Set<String> provides;
+
+      /** The names of the beans required */
+      private Set<String> requires;
+
+      /** May register a deployer */
+      private boolean deployers;
+
+      /** The units waiting for this unit */
+      private List<Unit> dependants;
+
+      /** The number of units this unit is waiting for */
+      private AtomicInteger pending;
+
+      /** The start time */
+      private long started;
+
+      /** The end time */
+      private long finished;
+
+      /** The plan */
+      private DeploymentPlan plan;
+
+      /** The kernel */
+      private KernelImpl kernel;
+
+      /** The main deployer */
+      private MainDeployerImpl mainDeployer;
+
+      /** The class loader */
+      private ClassLoader classLoader;
+
+      /** The logger */
+      private Logger log;
+
+      /**
+       * Constructor
+       * @param url The url
+       * @param system From the system directory
+       * @param orderIndex The order index
+       */
+      Unit(URL url, boolean system, int orderIndex)
+      {
+         this.url = url;
+         this.system = system;
+         this.orderIndex = orderIndex;
+         this.bucket = 0;
+         this.beans = false;
+         this.deployment = null;
+         this.provides = new HashSet<String>();
+         this.requires = new HashSet<String>();
+         this.deployers = true;
+         this.dependants = new ArrayList<Unit>(1);
+         this.pending = new AtomicInteger(0);
+         this.started = 0L;
+         this.finished = 0L;
+      }
+
+      /**
+       * Get the bucket key
+       * @return The key
+       */
+      long getKey()
+      {
+         return ((system ? 0L : 1L) << 32) + ((long)orderIndex & 0xFFFFFFFFL);
+      }
+
+      /**
+       * Analyze the unit; a bean deployment is read and the beans that it provides and requires
+       * are found. Anything else is treated as a unit that may register deployers
+       * @param cl The kernel class loader
+       * @param unmarshalTime The unmarshal time
+       */
+      void analyze(ClassLoader cl, Histogram unmarshalTime)
+      {
+         if (!url.toString().endsWith(".xml"))
+            return;
+
+         try
+         {
+            long start = System.nanoTime();
+
+            Unmarshaller deploymentU = new Unmarshaller();
+            Deployment d = deploymentU.unmarshal(url);
+
+            unmarshalTime.recordSince(start);
+
+            if (d == null || d.getBean().size() == 0)
+               return;
+
+            boolean deployer = false;
+            for (Bean bt : d.getBean())
+            {
+               provides.add(bt.getName());
+
+               Set<String> deps = BeanDeployer.getDependencyNames(bt);
+               if (deps != null)
+                  requires.addAll(deps);
+
+               if (!deployer)
+                  deployer = isDeployer(bt, cl);
+            }
+
+            synchronized (this)
+            {
+               beans = true;
+               deployment = d;
+               deployers = deployer;
+            }
+         }
+         catch (Throwable t)
+         {
+            // Deployed, and reported, as a unit that may register deployers
+         }
+      }
+
+      /**
+       * Does this unit wait for an earlier unit
+       * @param earlier The unit in an earlier bucket
+       * @return True if this unit waits for the earlier unit; otherwise false
+       */
+      boolean waitsFor(Unit earlier)
+      {
+         // A unit that isn't a bean deployment may depend on anything
+         if (!beans)
+            return true;
+
+         // A bean in the earlier unit depends on a bean in this unit
+         for (String name : earlier.requires)
+         {
+            if (provides.contains(name))
+               return false;
+         }
+
+         if (!earlier.beans || earlier.deployers)
+            return true;
+
+         for (String name : requires)
+         {
+            if (earlier.provides.contains(name))
+               return true;
+         }
+
+         return false;
+      }
+
+      /**
+       * Prepare the unit for execution
+       * @param plan The plan
+       * @param kernel The kernel
+       * @param mainDeployer The main deployer
+       * @param classLoader The class loader
+       * @param log The logger
+       */
+      void prepare(DeploymentPlan plan, KernelImpl kernel, MainDeployerImpl mainDeployer,
+                   ClassLoader classLoader, Logger log)
+      {
+         this.plan = plan;
+         this.kernel = kernel;
+         this.mainDeployer = mainDeployer;
+         this.classLoader = classLoader;
+         this.log = log;
+      }
+
+      /**
+       * Run
+       */
+      public void run()
+      {
+         SecurityActions.setThreadContextClassLoader(classLoader);
+
+         plan.running();
+         started = System.nanoTime();
+
+         try
+         {
+            if (log.isLoggable(Level.FINE))
+               log.fine("URL=" + url.toString());
+
+            MainDeployerImpl deployer = (MainDeployerImpl)mainDeployer.clone();
+            deployer.deploy(url, false, classLoader);
+         }
+         catch (Throwable t)
+         {
+            log.log(Level.SEVERE, t.getMessage(), t);
+         }
+
+         finished = System.nanoTime();
+
+         for (Unit dependant : dependants)
+         {
+            if (dependant.pending.decrementAndGet() == 0)
+               kernel.getExecutorService().execute(dependant);
+         }
+
+         plan.done(this);
+      }
+
+      /**
+       * Is the bean a deployer, or can't it be determined
+       * @param bt The bean
+       * @param cl The class loader
+       * @return True if the bean is, or may be, a deployer; otherwise false
+       */
+      private static boolean isDeployer(Bean bt, ClassLoader cl)
+      {
+         if (bt.getClazz() == null)
+            return true;
+
+         try
+         {
+            Class<?> clz = Class.forName(bt.getClazz(), false, cl);
+
+            return Deployer.class.isAssignableFrom(clz) || DeployerPhases.class.isAssignableFrom(clz);
+         }
+         catch (Throwable t)
+         {
+            return true;
+         }
+      }
+   }
+}
@@ -182,6 +182,7 @@ public final class HotDeployer implements HotDeployerMBean, Runnable
       while (running.get())
       {
          long start = System.currentTimeMillis();
+         long scan = System.nanoTime();
          try
          {
             List<URL> removeDeployments = null;
@@ -231,6 +232,7 @@ public final class HotDeployer implements HotDeployerMBean, Runnable
                   {
                      unregister(url);
                      kernel.getMainDeployer().undeploy(url);
+                     kernel.getMetrics().getCounter("hotdeployer.undeploy").increment();
                   }
                   catch (Throwable undeploy)
                   {
@@ -252,6 +254,7 @@ public final class HotDeployer implements HotDeployerMBean, Runnable
 
                      register(url);
                      kernel.getMainDeployer().deploy(url);
+                     kernel.getMetrics().getCounter("hotdeployer.redeploy").increment();
                   }
                   catch (Throwable deploy)
                   {
@@ -270,6 +273,7 @@ public final class HotDeployer implements HotDeployerMBean, Runnable
                   {
                      register(url);
                      kernel.getMainDeployer().deploy(url);
+                     kernel.getMetrics().getCounter("hotdeployer.deploy").increment();
                   }
                   catch (Throwable deploy)
                   {
@@ -280,6 +284,8 @@ public final class HotDeployer implements HotDeployerMBean, Runnable
 
             if (postDeploy)
                kernel.postDeploy(true);
+
+            kernel.getMetrics().getHistogram("hotdeployer.scan.time").recordSince(scan);
             
             long took = System.currentTimeMillis() - start;
             long sleep = interval * 1000L - took;
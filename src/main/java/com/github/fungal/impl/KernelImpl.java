@@ -21,6 +21,7 @@
 package com.github.fungal.impl;
 
 import com.github.fungal.api.Kernel;
+import com.github.fungal.api.StartupStage;
 import com.github.fungal.api.classloading.ClassLoaderFactory;
 import com.github.fungal.api.classloading.KernelClassLoader;
 import com.github.fungal.api.configuration.KernelConfiguration;
@@ -29,14 +30,19 @@ import com.github.fungal.api.deployment.Bean;
 import com.github.fungal.api.deployment.BeanDeployment;
 import com.github.fungal.api.events.Event;
 import com.github.fungal.api.events.EventListener;
+import com.github.fungal.api.metrics.Metrics;
 import com.github.fungal.api.remote.Command;
-import com.github.fungal.api.util.JMX;
+import com.github.fungal.api.remote.RemoteEvent;
+import com.github.fungal.api.util.ExtractionCache;
+import com.github.fungal.api.util.FileUtil;
 import com.github.fungal.bootstrap.Bootstrap;
 import com.github.fungal.impl.netboot.Netboot;
 import com.github.fungal.impl.remote.CommunicationServer;
 import com.github.fungal.impl.remote.CommunicatorImpl;
+import com.github.fungal.impl.remote.commands.Batch;
 import com.github.fungal.impl.remote.commands.Deploy;
 import com.github.fungal.impl.remote.commands.GetCommand;
+import com.github.fungal.impl.remote.commands.GetMetrics;
 import com.github.fungal.impl.remote.commands.Help;
 import com.github.fungal.impl.remote.commands.Undeploy;
 import com.github.fungal.spi.deployers.DeployException;
@@ -55,6 +61,7 @@ import java.net.URL;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.EnumMap;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -69,7 +76,9 @@ import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import java.util.concurrent.SynchronousQueue;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
@@ -112,6 +121,12 @@ public class KernelImpl implements Kernel, KernelImplMBean
    /** Bean dependants */
    private ConcurrentMap<String, Set<String>> beanDependants = new ConcurrentHashMap<String, Set<String>>(1);
 
+   /** Lazy beans */
+   private ConcurrentMap<String, BeanDeployer> lazyBeans = new ConcurrentHashMap<String, BeanDeployer>(1);
+
+   /** Bean timestamps */
+   private ConcurrentMap<String, long[]> beanTimestamps = new ConcurrentHashMap<String, long[]>(1);
+
    /** Bean latches */
    private Map<String, List<CountDownLatch>> beanLatches =
       Collections.synchronizedMap(new HashMap<String, List<CountDownLatch>>(1));
@@ -134,6 +149,15 @@ public class KernelImpl implements Kernel, KernelImplMBean
    /** MBeanServer */
    private MBeanServer mbeanServer;
 
+   /** Bean management */
+   private BeanManagement beanManagement;
+
+   /** Metrics */
+   private Metrics metrics;
+
+   /** Extraction cache */
+   private ExtractionCache extractionCache;
+
    /** Communition server */
    private CommunicationServer remote;
 
@@ -164,6 +188,25 @@ public class KernelImpl implements Kernel, KernelImplMBean
    /** Started */
    private boolean started;
 
+   /** Startup time */
+   private long startupTime;
+
+   /** Startup report */
+   private StartupReport startupReport;
+
+   /** Startup snapshot */
+   private StartupSnapshot startupSnapshot;
+
+   /** Deployment plan */
+   private DeploymentPlan deploymentPlan;
+
+   /** Startup stages */
+   private Map<StartupStage, StartupFuture> startupStages =
+      new EnumMap<StartupStage, StartupFuture>(StartupStage.class);
+
+   /** Ready */
+   private StartupFuture ready;
+
    /**
     * Constructor
     * @param kc The kernel configuration
@@ -186,6 +229,8 @@ public class KernelImpl implements Kernel, KernelImplMBean
       this.beans.clear();
       this.beanStatus.clear();
       this.beanDependants.clear();
+      this.beanTimestamps.clear();
+      this.lazyBeans.clear();
       this.beanLatches.clear();
       this.beanDeployments = new AtomicInteger(0);
 
@@ -195,6 +240,9 @@ public class KernelImpl implements Kernel, KernelImplMBean
       this.kernelClassLoader = null;
       this.mainDeployer = null;
       this.mbeanServer = null;
+      this.beanManagement = null;
+      this.metrics = new Metrics();
+      this.extractionCache = null;
       this.remote = null;
       this.temporaryEnvironment = false;
       this.incallbacks.clear();
@@ -205,6 +253,16 @@ public class KernelImpl implements Kernel, KernelImplMBean
       this.hotDeployer = null;
       this.jmxRemote = null;
       this.started = false;
+      this.startupTime = 0L;
+      this.startupReport = null;
+      this.startupSnapshot = null;
+      this.deploymentPlan = null;
+
+      for (StartupStage stage : StartupStage.values())
+      {
+         this.startupStages.put(stage, new StartupFuture());
+      }
+      this.ready = new StartupFuture();
    }
 
    /**
@@ -226,12 +284,31 @@ public class KernelImpl implements Kernel, KernelImplMBean
       return VERSION;
    }
 
+   /**
+    * {@inheritDoc}
+    */
+   public Metrics getMetrics()
+   {
+      return metrics;
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public ExtractionCache getExtractionCache()
+   {
+      return extractionCache;
+   }
+
    /**
     * Get the MBeanServer for the kernel
     * @return The MBeanServer instance
     */
    public MBeanServer getMBeanServer()
    {
+      if (beanManagement != null)
+         beanManagement.expose();
+
       return mbeanServer;
    }
 
@@ -317,6 +394,78 @@ public class KernelImpl implements Kernel, KernelImplMBean
     */
    public void startup() throws Throwable
    {
+      startup(false);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public Future<Void> startupAsync()
+   {
+      final StartupFuture result = ready;
+
+      Runnable r = new Runnable()
+      {
+         public void run()
+         {
+            try
+            {
+               startup(true);
+            }
+            catch (Throwable t)
+            {
+               if (log != null)
+                  log.log(Level.SEVERE, "Startup failed: " + t.getMessage(), t);
+            }
+         }
+      };
+
+      Thread t = new Thread(kernelConfiguration.getThreadGroup(), r, kernelConfiguration.getName() + "-startup");
+      t.start();
+
+      return result;
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public Future<Void> getStartupStage(StartupStage stage)
+   {
+      return startupStages.get(stage);
+   }
+
+   /**
+    * Startup
+    * @param async Is the startup asynchronous
+    * @exception Throwable Thrown if an error occurs
+    */
+   private void startup(boolean async) throws Throwable
+   {
+      try
+      {
+         doStartup(async);
+      }
+      catch (Throwable t)
+      {
+         for (StartupFuture stage : startupStages.values())
+         {
+            stage.failed(t);
+         }
+         ready.failed(t);
+
+         throw t;
+      }
+   }
+
+   /**
+    * Startup the kernel, and complete the startup stages
+    * @param async Is the startup asynchronous; if so remote access is started in parallel with the deployments
+    * @exception Throwable Thrown if an error occurs
+    */
+   private void doStartup(boolean async) throws Throwable
+   {
+      startupTime = System.nanoTime();
+
       List<EventListener> els = kernelConfiguration.getEventListeners();
       // STARTING
       if (els != null && els.size() > 0)
@@ -356,11 +505,24 @@ public class KernelImpl implements Kernel, KernelImplMBean
          File tmp = new File(SecurityActions.getSystemProperty("java.io.tmpdir"));
          root = new File(tmp, kernelConfiguration.getName());
 
-         if (root.exists())
+         FileUtil fileUtil = new FileUtil();
+
+         // Environments of earlier runs which weren't completely deleted; scanned before the
+         // old environment is renamed aside, so it isn't picked up while it is being deleted
+         File[] leftovers = tmp.listFiles();
+         if (leftovers != null)
          {
-            recursiveDelete(root);
+            for (File leftover : leftovers)
+            {
+               if (fileUtil.isDeleted(leftover, root))
+                  fileUtil.delete(leftover, getExecutorService());
+            }
          }
 
+         // The old environment is renamed aside, and deleted in the background
+         if (root.exists())
+            fileUtil.delete(root, getExecutorService());
+
          if (!root.mkdirs())
             throw new IOException("Could not create directory " + root.getAbsolutePath());
 
@@ -386,6 +548,10 @@ public class KernelImpl implements Kernel, KernelImplMBean
          if (kernelConfiguration.getRepository() != null)
             repositoryDirectory = new File(root, File.separator + kernelConfiguration.getRepository() + File.separator);
 
+         if (kernelConfiguration.getExtractionCache() != null)
+            extractionCache = new ExtractionCache(new File(root, kernelConfiguration.getExtractionCache()),
+                                                  kernelConfiguration.getExtractionCacheSize(), metrics);
+
          if (kernelConfiguration.getSystem() != null)
             systemDirectory = new File(root, File.separator + kernelConfiguration.getSystem() + File.separator);
 
@@ -426,13 +592,16 @@ public class KernelImpl implements Kernel, KernelImplMBean
 
       kernelClassLoader = ClassLoaderFactory.create(kernelConfiguration.getClassLoader(), urls, oldClassLoader);
       SecurityActions.setThreadContextClassLoader(kernelClassLoader);
+      ClassLoaderGauge.register(metrics, "classloader.kernel", kernelClassLoader);
 
       initKernelLogging();
 
       // Netboot
       boolean netbooted = false;
       if (bootstrap != null)
-         netbooted = Netboot.resolve(getExecutorService(), bootstrap, repositoryDirectory, root);
+         netbooted = Netboot.resolve(getExecutorService(), bootstrap, repositoryDirectory, root, metrics,
+                                     kernelConfiguration.getNetbootConnections(),
+                                     kernelConfiguration.getNetbootPlacement());
 
       if (netbooted)
       {
@@ -443,6 +612,7 @@ public class KernelImpl implements Kernel, KernelImplMBean
 
          kernelClassLoader = ClassLoaderFactory.create(kernelConfiguration.getClassLoader(), urls, kernelClassLoader);
          SecurityActions.setThreadContextClassLoader(kernelClassLoader);
+         ClassLoaderGauge.register(metrics, "classloader.kernel", kernelClassLoader);
       }
 
       // POST_CLASSLOADER
@@ -454,6 +624,8 @@ public class KernelImpl implements Kernel, KernelImplMBean
          }
       }
 
+      startupStages.get(StartupStage.CLASSLOADER).completed();
+
       if (kernelConfiguration.getBindAddress() != null)
       {
          SecurityActions.setSystemProperty(kernelConfiguration.getName() + ".bindaddress", 
@@ -471,6 +643,14 @@ public class KernelImpl implements Kernel, KernelImplMBean
          {
             mbeanServer = ManagementFactory.getPlatformMBeanServer();
          }
+
+         if (kernelConfiguration.isBeanManagement())
+         {
+            beanManagement = new BeanManagement(mbeanServer,
+                                                kernelConfiguration.getName(),
+                                                getExecutorService(),
+                                                kernelConfiguration.isLazyBeanManagement());
+         }
       }
 
       // Main deployer
@@ -479,6 +659,9 @@ public class KernelImpl implements Kernel, KernelImplMBean
       {
          ObjectName mainDeployerObjectName = new ObjectName(kernelConfiguration.getName() + ":name=MainDeployer");
          mbeanServer.registerMBean(mainDeployer, mainDeployerObjectName);
+
+         ObjectName metricsObjectName = new ObjectName(kernelConfiguration.getName() + ":name=Metrics");
+         mbeanServer.registerMBean(metrics, metricsObjectName);
       }
 
       // Add the deployment deployer
@@ -518,6 +701,8 @@ public class KernelImpl implements Kernel, KernelImplMBean
 
          remote.registerCommand(new Help(remote));
          remote.registerCommand(new GetCommand(remote));
+         remote.registerCommand(new Batch(remote, getExecutorService()));
+         remote.registerCommand(new GetMetrics(metrics));
          remote.registerCommand(new Deploy(getMainDeployer(), getHotDeployer()));
          remote.registerCommand(new Undeploy(getMainDeployer(), getHotDeployer()));
 
@@ -575,6 +760,41 @@ public class KernelImpl implements Kernel, KernelImplMBean
          log.fine("VM arguments: " + vmArgs.toString());
       }
 
+      // Startup snapshot
+      if (kernelConfiguration.isStartupSnapshot() && !temporaryEnvironment)
+      {
+         try
+         {
+            startupSnapshot = StartupSnapshot.load(new File(root, StartupSnapshot.FILE));
+
+            if (startupSnapshot != null && log.isLoggable(Level.FINE))
+               log.fine("Startup snapshot: " + startupSnapshot.getBeans() + " beans");
+         }
+         catch (IOException ioe)
+         {
+            log.log(Level.WARNING, "Unable to read startup snapshot: " + ioe.getMessage(), ioe);
+         }
+      }
+
+      // Start remote access in parallel with the deployments
+      if (async)
+      {
+         getExecutorService().submit(new Runnable()
+         {
+            public void run()
+            {
+               try
+               {
+                  startupRemote();
+               }
+               catch (Throwable t)
+               {
+                  startupStages.get(StartupStage.REMOTE).failed(t);
+               }
+            }
+         });
+      }
+
       // Start all URLs defined in bootstrap.xml
       if (bootstrap != null)
       {
@@ -595,120 +815,150 @@ public class KernelImpl implements Kernel, KernelImplMBean
       // PreDeploy
       preDeploy(false);
 
-      // Deploy all files in system/
+      // Find all files in system/
+      List<URL> systemUnits = new ArrayList<URL>();
       if (systemDirectory != null && systemDirectory.exists() && systemDirectory.isDirectory())
       {
          File[] files = systemDirectory.listFiles();
 
          if (files != null)
          {
-            List<URL> l = new ArrayList<URL>(files.length);
-            int counter = 0;
-
             for (File f : files)
             {
-               URL u = f.toURI().toURL();
-               
-               l.add(u);
-
-               if (u.toString().endsWith(".xml"))
-                  counter++;
+               systemUnits.add(f.toURI().toURL());
             }
 
-            Collections.sort(l, kernelConfiguration.getDeploymentOrder());
-
-            log.log(Level.FINE, "System deployments: " + l);
-
-            beanDeployments = new AtomicInteger(counter);
+            Collections.sort(systemUnits, kernelConfiguration.getDeploymentOrder());
 
-            if (kernelConfiguration.isParallelDeploy())
-            {
-               deployUrls(l.toArray(new URL[l.size()]));
-            }
-            else
-            {
-               for (URL u : l)
-               {
-                  deployUrls(new URL[] {u});
-               }
-            }
-
-            if (counter > 0)
-               incallback();
+            log.log(Level.FINE, "System deployments: " + systemUnits);
          }
       }
 
-      // Deploy all files in deploy/
+      // Find all files in deploy/
+      List<URL> deployUnits = new ArrayList<URL>();
       if (deployDirectory != null && deployDirectory.exists() && deployDirectory.isDirectory())
       {
          File[] files = deployDirectory.listFiles();
 
          if (files != null)
          {
-            List<URL> l = new ArrayList<URL>(files.length);
-            int counter = 0;
-
             for (File f : files)
             {
                URL u = f.toURI().toURL();
                
-               l.add(u);
-
-               if (u.toString().endsWith(".xml"))
-                  counter++;
+               deployUnits.add(u);
 
                if (hotDeployer != null)
                   hotDeployer.register(u);
             }
 
-            Collections.sort(l, kernelConfiguration.getDeploymentOrder());
+            Collections.sort(deployUnits, kernelConfiguration.getDeploymentOrder());
 
-            log.log(Level.FINE, "Deploy deployments: " + l);
+            log.log(Level.FINE, "Deploy deployments: " + deployUnits);
+         }
+      }
 
-            beanDeployments = new AtomicInteger(counter);
+      if (kernelConfiguration.isParallelDeploy())
+      {
+         // Deploy system/ and deploy/ from a global plan
+         deploymentPlan = new DeploymentPlan(systemUnits, deployUnits, kernelConfiguration.getDeploymentOrder(),
+                                             kernelClassLoader, getExecutorService(), metrics);
 
-            if (kernelConfiguration.isParallelDeploy())
-            {
-               deployUrls(l.toArray(new URL[l.size()]));
-            }
-            else
-            {
-               for (URL u : l)
-               {
-                  deployUrls(new URL[] {u});
-               }
-            }
+         beanDeployments = new AtomicInteger(deploymentPlan.getBeanDeployments());
 
-            if (counter > 0)
-               incallback();
-         }
+         deploymentPlan.execute(this, mainDeployer, kernelClassLoader, log);
+
+         deploymentPlan.awaitSystem();
+         incallback();
+
+         startupStages.get(StartupStage.SYSTEM).completed();
+
+         deploymentPlan.await();
+         incallback();
+
+         deploymentPlan.record(this);
+
+         if (log.isLoggable(Level.FINE))
+            log.fine(deploymentPlan.toText());
+      }
+      else
+      {
+         // Deploy all files in system/
+         deploySequential(systemUnits);
+
+         startupStages.get(StartupStage.SYSTEM).completed();
+
+         // Deploy all files in deploy/
+         deploySequential(deployUnits);
       }
 
       // PostDeploy
       postDeploy(false);
 
+      startupStages.get(StartupStage.DEPLOY).completed();
+
+      // Startup report
+      startupReport = new StartupReport(startupTime, new HashMap<String, long[]>(beanTimestamps), beanDependants);
+
+      if (log.isLoggable(Level.FINE))
+         log.fine(startupReport.toText());
+
+      if (kernelConfiguration.isStartupReport())
+      {
+         try
+         {
+            startupReport.write(root);
+         }
+         catch (IOException ioe)
+         {
+            log.log(Level.WARNING, "Unable to write startup report: " + ioe.getMessage(), ioe);
+         }
+      }
+
+      // Startup snapshot
+      startupSnapshot = null;
+      if (kernelConfiguration.isStartupSnapshot() && !temporaryEnvironment)
+      {
+         List<URL> deployed = new ArrayList<URL>(deployments.size());
+         synchronized (deployments)
+         {
+            for (Deployment deployment : deployments)
+            {
+               if (deployment.getURL() != null)
+                  deployed.add(deployment.getURL());
+            }
+         }
+
+         try
+         {
+            StartupSnapshot.create(new HashMap<String, long[]>(beanTimestamps), beanDependants, deployed)
+               .write(new File(root, StartupSnapshot.FILE));
+         }
+         catch (IOException ioe)
+         {
+            log.log(Level.WARNING, "Unable to write startup snapshot: " + ioe.getMessage(), ioe);
+         }
+      }
+
       // Start hot deployer
       if (hotDeployer != null)
          hotDeployer.start();
 
       // Start remote access
-      if (kernelConfiguration.isRemoteAccess())
+      if (!async)
       {
-         remote.start();
-         getExecutorService().submit(remote);
+         startupRemote();
       }
-
-      // JMX Remote
-      if (kernelConfiguration.isManagement() &&
-          kernelConfiguration.isRemoteJmxAccess() &&
-          kernelConfiguration.getBindAddress() != null)
+      else
       {
-         jmxRemote = new JmxRemote(mbeanServer,
-                                   kernelConfiguration.getBindAddress(),
-                                   kernelConfiguration.getRmiRegistryPort(),
-                                   kernelConfiguration.getRmiServerPort());
-
-         jmxRemote.start();
+         try
+         {
+            startupStages.get(StartupStage.REMOTE).get();
+         }
+         catch (ExecutionException ee)
+         {
+            throw ee.getCause();
+         }
       }
 
       // Memory information
@@ -728,7 +978,40 @@ public class KernelImpl implements Kernel, KernelImplMBean
          }
       }
 
+      publish(RemoteEvent.TYPE_KERNEL, kernelConfiguration.getName(), Event.STARTED.name());
+
       started = true;
+
+      ready.completed();
+   }
+
+   /**
+    * Start remote access and remote JMX access
+    * @exception Throwable Thrown if an error occurs
+    */
+   private void startupRemote() throws Throwable
+   {
+      // Start remote access
+      if (kernelConfiguration.isRemoteAccess())
+      {
+         remote.start();
+         getExecutorService().submit(remote);
+      }
+
+      // JMX Remote
+      if (kernelConfiguration.isManagement() &&
+          kernelConfiguration.isRemoteJmxAccess() &&
+          kernelConfiguration.getBindAddress() != null)
+      {
+         jmxRemote = new JmxRemote(beanManagement != null ? beanManagement.wrap(mbeanServer) : mbeanServer,
+                                   kernelConfiguration.getBindAddress(),
+                                   kernelConfiguration.getRmiRegistryPort(),
+                                   kernelConfiguration.getRmiServerPort());
+
+         jmxRemote.start();
+      }
+
+      startupStages.get(StartupStage.REMOTE).completed();
    }
 
    /**
@@ -740,6 +1023,31 @@ public class KernelImpl implements Kernel, KernelImplMBean
       trace = log.isLoggable(Level.FINER);
    }
 
+   /**
+    * Deploy URLs one by one
+    * @param urls The URLs
+    */
+   private void deploySequential(List<URL> urls)
+   {
+      int counter = 0;
+
+      for (URL u : urls)
+      {
+         if (u.toString().endsWith(".xml"))
+            counter++;
+      }
+
+      beanDeployments = new AtomicInteger(counter);
+
+      for (URL u : urls)
+      {
+         deployUrls(new URL[] {u});
+      }
+
+      if (counter > 0)
+         incallback();
+   }
+
    /**
     * Deploy URLs
     * @param urls The URLs
@@ -828,6 +1136,8 @@ public class KernelImpl implements Kernel, KernelImplMBean
          }
       }
 
+      publish(RemoteEvent.TYPE_KERNEL, kernelConfiguration.getName(), Event.STOPPING.name());
+
       SecurityActions.setThreadContextClassLoader(kernelClassLoader);
 
       // Stop hot deployer
@@ -895,12 +1205,19 @@ public class KernelImpl implements Kernel, KernelImplMBean
       }
 
       // Unregister MBeans
+      if (beanManagement != null)
+         beanManagement.stop();
+
       if (mbeanServer != null)
       {
          ObjectName mainDeployerObjectName = new ObjectName(kernelConfiguration.getName() + ":name=MainDeployer");
          if (mbeanServer.isRegistered(mainDeployerObjectName))
             mbeanServer.unregisterMBean(mainDeployerObjectName);
 
+         ObjectName metricsObjectName = new ObjectName(kernelConfiguration.getName() + ":name=Metrics");
+         if (mbeanServer.isRegistered(metricsObjectName))
+            mbeanServer.unregisterMBean(metricsObjectName);
+
          ObjectName hotDeployerObjectName = new ObjectName(kernelConfiguration.getName() + ":name=HotDeployer");
          if (mbeanServer.isRegistered(hotDeployerObjectName))
             mbeanServer.unregisterMBean(hotDeployerObjectName);
@@ -914,19 +1231,26 @@ public class KernelImpl implements Kernel, KernelImplMBean
             MBeanServerFactory.releaseMBeanServer(mbeanServer);
       }
 
-      // Shutdown thread pool
-      if (getExecutorService() != null)
-         getExecutorService().shutdown();
-
-      // Cleanup temporary environment
+      // Cleanup temporary environment; the pool completes the deletion after it is shutdown
       if (temporaryEnvironment)
       {
          File tmp = new File(SecurityActions.getSystemProperty("java.io.tmpdir"));
          File root = new File(tmp, kernelConfiguration.getName());
 
-         recursiveDelete(root);
+         if (getExecutorService() != null)
+         {
+            new FileUtil().delete(root, getExecutorService());
+         }
+         else
+         {
+            new FileUtil().delete(root);
+         }
       }
 
+      // Shutdown thread pool
+      if (getExecutorService() != null)
+         getExecutorService().shutdown();
+
       SecurityActions.setSystemProperty(kernelConfiguration.getName() + ".home", "");
       SecurityActions.setSystemProperty(kernelConfiguration.getName() + ".bindaddress", "");
 
@@ -1083,6 +1407,35 @@ public class KernelImpl implements Kernel, KernelImplMBean
    {
       beanStatus.put(name, status);
 
+      if (status == ServiceLifecycle.NOT_STARTED ||
+          status == ServiceLifecycle.STARTING ||
+          status == ServiceLifecycle.STARTED)
+      {
+         long[] ts = beanTimestamps.get(name);
+         if (ts == null)
+         {
+            ts = new long[3];
+            long[] existing = beanTimestamps.putIfAbsent(name, ts);
+            if (existing != null)
+               ts = existing;
+         }
+
+         if (status == ServiceLifecycle.NOT_STARTED)
+         {
+            ts[StartupReport.REGISTERED] = System.nanoTime();
+         }
+         else if (status == ServiceLifecycle.STARTING)
+         {
+            ts[StartupReport.STARTING] = System.nanoTime();
+         }
+         else
+         {
+            ts[StartupReport.STARTED] = System.nanoTime();
+         }
+      }
+
+      publish(RemoteEvent.TYPE_BEAN, name, status.name());
+
       if (trace)
          log.log(Level.FINER, "Bean: " + name + ", Status: " + status);
 
@@ -1111,6 +1464,18 @@ public class KernelImpl implements Kernel, KernelImplMBean
       }
    }
 
+   /**
+    * Publish an event to the remote subscribers
+    * @param type The type of the event
+    * @param name The name of the kernel, bean or deployment
+    * @param state The state
+    */
+   void publish(String type, String name, String state)
+   {
+      if (remote != null)
+         remote.publish(type, name, state);
+   }
+
    /**
     * Add a bean
     * @param name The name of the bean
@@ -1133,17 +1498,12 @@ public class KernelImpl implements Kernel, KernelImplMBean
       {
          beans.put(name, bean);
 
-         if (mgt && kernelConfiguration.isManagement() && kernelConfiguration.isBeanManagement())
+         if (mgt && beanManagement != null)
          {
-            try
-            {
-               ObjectName on = new ObjectName(kernelConfiguration.getName() + ":name=" + name + ",type=Bean");
-               mbeanServer.registerMBean(JMX.createMBean(bean), on);
-            }
-            catch (Throwable t)
-            {
-               log.log(Level.WARNING, "Error during management registering of bean [" + name + "]", t);
-            }
+            if (lazyBeans.containsKey(name))
+               beanManagement.unregister(name);
+
+            beanManagement.register(name, bean);
          }
       }
       else
@@ -1190,7 +1550,7 @@ public class KernelImpl implements Kernel, KernelImplMBean
             
                   if (type.isInstance(bean))
                   {
-                     for (Callback cb : callbacks)
+                     for (Callback cb : snapshot(callbacks))
                      {
                         try
                         {
@@ -1217,21 +1577,11 @@ public class KernelImpl implements Kernel, KernelImplMBean
       deployerPhasesBeans.remove(name);
       beans.remove(name);
       beanStatus.remove(name);
+      beanTimestamps.remove(name);
       beanLatches.remove(name);
 
-      if (mgt && kernelConfiguration.isManagement() && kernelConfiguration.isBeanManagement())
-      {
-         try
-         {
-            ObjectName on = new ObjectName(kernelConfiguration.getName() + ":name=" + name + ",type=Bean");
-            if (mbeanServer.isRegistered(on))
-               mbeanServer.unregisterMBean(on);
-         }
-         catch (Throwable t)
-         {
-            log.log(Level.FINER, "Error during management unregistering of bean [" + name + "]", t);
-         }
-      }
+      if (mgt && beanManagement != null)
+         beanManagement.unregister(name);
    }
 
    /**
@@ -1249,10 +1599,12 @@ public class KernelImpl implements Kernel, KernelImplMBean
       if (expectedType == null)
          throw new IllegalArgumentException("ExpectedType is null");
 
-      if (!beans.containsKey(name))
+      Object bean = getBean(name);
+
+      if (bean == null)
          throw new IllegalArgumentException("Bean '" + name + "' doesn't exist");
 
-      return expectedType.cast(getBean(name));
+      return expectedType.cast(bean);
    }
 
    /**
@@ -1348,7 +1700,155 @@ public class KernelImpl implements Kernel, KernelImplMBean
     */
    public Object getBean(String name)
    {
-      return beans.get(name);
+      Object bean = beans.get(name);
+
+      if (bean == null && lazyBeans.containsKey(name))
+      {
+         activateBean(name);
+
+         CountDownLatch cdl = new CountDownLatch(1);
+         addBeanLatch(name, cdl);
+
+         try
+         {
+            cdl.await();
+         }
+         catch (InterruptedException ie)
+         {
+            Thread.currentThread().interrupt();
+         }
+
+         bean = beans.get(name);
+      }
+
+      return bean;
+   }
+
+   /**
+    * Add a lazy bean, which is created and started on first use
+    * @param name The name of the bean
+    * @param deployer The deployer for the bean
+    */
+   void addLazyBean(String name, BeanDeployer deployer)
+   {
+      lazyBeans.put(name, deployer);
+
+      if (beanManagement != null)
+         beanManagement.register(name, new LazyBeanDelegator(this, name, deployer.getBean().getClazz(),
+                                                                deployer.getClassLoader()));
+
+      // Activate if a bean is already waiting for it
+      List<CountDownLatch> l = beanLatches.get(name);
+      if (l != null && l.size() > 0)
+         deployer.activate();
+   }
+
+   /**
+    * Activate a lazy bean; the bean is started in the background
+    * @param name The name of the bean
+    */
+   void activateBean(String name)
+   {
+      BeanDeployer deployer = lazyBeans.get(name);
+
+      if (deployer != null)
+         deployer.activate();
+   }
+
+   /**
+    * A lazy bean has been activated
+    * @param name The name of the bean
+    */
+   void lazyBeanActivated(String name)
+   {
+      lazyBeans.remove(name);
+
+      if (started && beans.containsKey(name))
+         incallback();
+   }
+
+   /**
+    * Remove the lazy beans of a deployment which haven't been activated
+    * @param deploymentBeans The names of the beans started by the deployment
+    */
+   void removeLazyBeans(List<String> deploymentBeans)
+   {
+      Iterator<Map.Entry<String, BeanDeployer>> it = lazyBeans.entrySet().iterator();
+      while (it.hasNext())
+      {
+         Map.Entry<String, BeanDeployer> entry = it.next();
+
+         if (entry.getValue().getBeans() == deploymentBeans && !beans.containsKey(entry.getKey()))
+         {
+            String name = entry.getKey();
+            it.remove();
+
+            synchronized (beanLatches)
+            {
+               List<CountDownLatch> l = beanLatches.get(name);
+               if (l != null)
+               {
+                  for (CountDownLatch cdl : l)
+                  {
+                     if (cdl.getCount() > 0)
+                        cdl.countDown();
+                  }
+               }
+            }
+
+            removeBean(name);
+         }
+      }
+   }
+
+   /**
+    * Register a count down latch for a bean, which is notified when the bean has started
+    * @param name The name of the bean
+    * @param cdl The count down latch
+    */
+   private void addBeanLatch(String name, CountDownLatch cdl)
+   {
+      ServiceLifecycle slc = getBeanStatus(name);
+
+      if (slc != null && slc != ServiceLifecycle.STARTED && slc != ServiceLifecycle.ERROR)
+      {
+         synchronized (beanLatches)
+         {
+            slc = getBeanStatus(name);
+            if (slc != null && slc != ServiceLifecycle.STARTED && slc != ServiceLifecycle.ERROR)
+            {
+               List<CountDownLatch> l = beanLatches.get(name);
+               if (l == null)
+               {
+                  l = Collections.synchronizedList(new ArrayList<CountDownLatch>(1));
+                  beanLatches.put(name, l);
+               }
+
+               l.add(cdl);
+               return;
+            }
+         }
+      }
+
+      cdl.countDown();
+   }
+
+   /**
+    * Get the deployment plan
+    * @return The plan; <code>null</code> if the system and deploy directories weren't deployed in parallel
+    */
+   DeploymentPlan getDeploymentPlan()
+   {
+      return deploymentPlan;
+   }
+
+   /**
+    * Get the startup snapshot
+    * @return The snapshot; <code>null</code> if there is no snapshot or the kernel has started
+    */
+   StartupSnapshot getStartupSnapshot()
+   {
+      return startupSnapshot;
    }
 
    /**
@@ -1499,6 +1999,28 @@ public class KernelImpl implements Kernel, KernelImplMBean
       return sb.toString();
    }
 
+   /**
+    * {@inheritDoc}
+    */
+   public String startupReport()
+   {
+      if (startupReport == null)
+         return "";
+
+      return startupReport.toText();
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public String deploymentPlan()
+   {
+      if (deploymentPlan == null)
+         return "";
+
+      return deploymentPlan.toText();
+   }
+
    /**
     * Dump a bean
     * @param sb The string builder
@@ -1597,30 +2119,41 @@ public class KernelImpl implements Kernel, KernelImplMBean
 
                if (type.isInstance(bean))
                {
-                  for (Callback cb : callbacks)
+                  for (Callback cb : snapshot(callbacks))
                   {
-                     List<Callback> registeredCallbacks = callbackBeans.get(bean);
-                     if (registeredCallbacks == null || !registeredCallbacks.contains(cb))
+                     List<Callback> newCallbacks = Collections.synchronizedList(new ArrayList<Callback>(1));
+                     List<Callback> registeredCallbacks = callbackBeans.putIfAbsent(bean, newCallbacks);
+                     if (registeredCallbacks == null)
+                        registeredCallbacks = newCallbacks;
+
+                     // Claim the callback for the bean, so it is only invoked once
+                     synchronized (registeredCallbacks)
                      {
-                        if (registeredCallbacks == null)
-                           registeredCallbacks = new ArrayList<Callback>(1);
+                        if (registeredCallbacks.contains(cb))
+                           continue;
 
-                        try
-                        {
-                           Method m = cb.getMethod();
-                           Object instance = cb.getInstance();
-                           
-                           SecurityActions.setAccessible(m);
-                           m.invoke(instance, new Object[] {bean});
+                        registeredCallbacks.add(cb);
+                     }
 
-                           registeredCallbacks.add(cb);
-                           callbackBeans.put(bean, registeredCallbacks);
-                        }
-                        catch (Throwable t)
+                     try
+                     {
+                        Method m = cb.getMethod();
+                        Object instance = cb.getInstance();
+
+                        SecurityActions.setAccessible(m);
+                        m.invoke(instance, new Object[] {bean});
+                     }
+                     catch (Throwable t)
+                     {
+                        synchronized (registeredCallbacks)
                         {
-                           if (log.isLoggable(Level.FINE))
-                              log.fine(cb.toString());
+                           registeredCallbacks.remove(cb);
+                           if (registeredCallbacks.isEmpty())
+                              callbackBeans.remove(bean, registeredCallbacks);
                         }
+
+                        if (log.isLoggable(Level.FINE))
+                           log.fine(cb.toString());
                      }
                   }
                }
@@ -1629,6 +2162,19 @@ public class KernelImpl implements Kernel, KernelImplMBean
       }
    }
 
+   /**
+    * Get a copy of callbacks which are registered concurrently
+    * @param callbacks The callbacks
+    * @return The copy
+    */
+   private List<Callback> snapshot(List<Callback> callbacks)
+   {
+      synchronized (callbacks)
+      {
+         return new ArrayList<Callback>(callbacks);
+      }
+   }
+
    /**
     * Get the URLs for the directory and all libraries located in the directory
     * @param directrory The directory
@@ -1715,36 +2261,6 @@ public class KernelImpl implements Kernel, KernelImplMBean
       return new URL[0];
    }
 
-   /**
-    * Recursive delete
-    * @param f The file handler
-    * @exception IOException Thrown if a file could not be deleted
-    */
-   private void recursiveDelete(File f) throws IOException
-   {
-      if (f != null && f.exists())
-      {
-         File[] files = f.listFiles();
-         if (files != null)
-         {
-            for (int i = 0; i < files.length; i++)
-            {
-               if (files[i].isDirectory())
-               {
-                  recursiveDelete(files[i]);
-               } 
-               else
-               {
-                  if (!files[i].delete())
-                     throw new IOException("Could not delete " + files[i]);
-               }
-            }
-         }
-         if (!f.delete())
-            throw new IOException("Could not delete " + f);
-      }
-   }
-
    /**
     * Add a bean as a DeployerPhases
     * @param bean The bean name
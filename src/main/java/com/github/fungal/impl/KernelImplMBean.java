@@ -50,4 +50,16 @@ public interface KernelImplMBean
     * @return The information
     */
    public String dump(String name);
+
+   /**
+    * Get the startup report, which includes the critical path through the bean dependencies
+    * @return The report
+    */
+   public String startupReport();
+
+   /**
+    * Get the statistics of the deployment plan for the system and deploy directories
+    * @return The statistics
+    */
+   public String deploymentPlan();
 }
@@ -0,0 +1,179 @@
+/*
+ * The Fungal kernel project
+ * Copyright (C) 2014
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package com.github.fungal.impl;
+
+import com.github.fungal.api.util.JMX;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.InvalidAttributeValueException;
+import javax.management.MBeanException;
+import javax.management.MBeanInfo;
+import javax.management.ReflectionException;
+
+/**
+ * The management view of a lazy bean. The bean is started on the first
+ * attribute or operation access, which are then delegated to the management
+ * view of the bean
+ * @author <a href="mailto:jesper.pedersen@comcast.net">Jesper Pedersen</a>
+ */
+class LazyBeanDelegator implements DynamicMBean
+{
+   /** The kernel */
+   private KernelImpl kernel;
+
+   /** The name of the bean */
+   private String name;
+
+   /** The class name of the bean */
+   private String className;
+
+   /** The management view of the bean class */
+   private MBeanInfo info;
+
+   /** The delegate */
+   private volatile DynamicMBean delegate;
+
+   /**
+    * Constructor
+    * @param kernel The kernel
+    * @param name The name of the bean
+    * @param className The class name of the bean; may be <code>null</code>
+    * @param classLoader The class loader of the bean
+    */
+   LazyBeanDelegator(KernelImpl kernel, String name, String className, ClassLoader classLoader)
+   {
+      this.kernel = kernel;
+      this.name = name;
+      this.className = className != null ? className : Object.class.getName();
+      this.info = null;
+      this.delegate = null;
+
+      if (className != null)
+      {
+         try
+         {
+            // The class isn't initialized, so the bean is only started by an access
+            Class<?> clz = Class.forName(className, false, classLoader);
+
+            if (!DynamicMBean.class.isAssignableFrom(clz))
+               info = JMX.getMBeanInfo(clz, "");
+         }
+         catch (Throwable t)
+         {
+            // The attributes and operations are known once the bean is started
+         }
+      }
+   }
+
+   /**
+    * Get the delegate, and start the bean if needed
+    * @return The delegate
+    * @exception MBeanException Thrown if the bean couldn't be started
+    */
+   private DynamicMBean getDelegate() throws MBeanException
+   {
+      if (delegate == null)
+      {
+         Object bean = kernel.getBean(name);
+
+         if (bean == null)
+            throw new MBeanException(null, "Bean '" + name + "' couldn't be started");
+
+         delegate = JMX.createMBean(bean);
+      }
+
+      return delegate;
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public Object getAttribute(String attribute)
+      throws AttributeNotFoundException, MBeanException, ReflectionException
+   {
+      return getDelegate().getAttribute(attribute);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public AttributeList getAttributes(String[] attributes)
+   {
+      try
+      {
+         return getDelegate().getAttributes(attributes);
+      }
+      catch (MBeanException me)
+      {
+         return new AttributeList();
+      }
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public void setAttribute(Attribute attribute)
+      throws AttributeNotFoundException, InvalidAttributeValueException, MBeanException, ReflectionException
+   {
+      getDelegate().setAttribute(attribute);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public AttributeList setAttributes(AttributeList attributes)
+   {
+      try
+      {
+         return getDelegate().setAttributes(attributes);
+      }
+      catch (MBeanException me)
+      {
+         return new AttributeList();
+      }
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public Object invoke(String actionName, Object[] params, String[] signature)
+      throws MBeanException, ReflectionException
+   {
+      return getDelegate().invoke(actionName, params, signature);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public MBeanInfo getMBeanInfo()
+   {
+      if (delegate != null)
+         return delegate.getMBeanInfo();
+
+      if (info != null)
+         return info;
+
+      return new MBeanInfo(className, "Lazy bean (not started): " + name, null, null, null, null);
+   }
+}
@@ -20,6 +20,10 @@
 
 package com.github.fungal.impl;
 
+import com.github.fungal.api.classloading.KernelClassLoader;
+import com.github.fungal.api.metrics.Counter;
+import com.github.fungal.api.metrics.Histogram;
+import com.github.fungal.api.remote.RemoteEvent;
 import com.github.fungal.spi.deployers.CloneableDeployer;
 import com.github.fungal.spi.deployers.Deployer;
 import com.github.fungal.spi.deployers.Deployment;
@@ -46,6 +50,18 @@ public final class MainDeployerImpl implements Cloneable, MainDeployerImplMBean
    private KernelImpl kernel;
    private Deployers deployers;
 
+   /** The deploy time */
+   private Histogram deployTime;
+
+   /** The failed deployments */
+   private Counter deployFailures;
+
+   /** The undeploy time */
+   private Histogram undeployTime;
+
+   /** The failed undeployments */
+   private Counter undeployFailures;
+
    /**
     * Constructor
     * @param kernel The kernel
@@ -61,6 +77,10 @@ public final class MainDeployerImpl implements Cloneable, MainDeployerImplMBean
 
       this.kernel = kernel;
       this.deployers = deployers;
+      this.deployTime = kernel.getMetrics().getHistogram("deployer.deploy.time");
+      this.deployFailures = kernel.getMetrics().getCounter("deployer.deploy.failures");
+      this.undeployTime = kernel.getMetrics().getHistogram("deployer.undeploy.time");
+      this.undeployFailures = kernel.getMetrics().getCounter("deployer.undeploy.failures");
    }
 
    /**
@@ -98,6 +118,8 @@ public final class MainDeployerImpl implements Cloneable, MainDeployerImplMBean
       if (classLoader == null)
          throw new IllegalArgumentException("ClassLoader is null");
 
+      long start = System.nanoTime();
+
       if (trace)
          log.log(Level.FINER, "Deploy: " + url.toExternalForm());
 
@@ -158,6 +180,13 @@ public final class MainDeployerImpl implements Cloneable, MainDeployerImplMBean
       if (deployerPhases && throwable == null)
          kernel.postDeploy(true);
 
+      deployTime.recordSince(start);
+      if (throwable != null)
+         deployFailures.increment();
+
+      kernel.publish(RemoteEvent.TYPE_DEPLOYMENT, url.toExternalForm(),
+                     throwable == null ? RemoteEvent.DEPLOYED : RemoteEvent.DEPLOY_FAILED);
+
       if (throwable != null)
          throw throwable;
    }
@@ -186,6 +215,8 @@ public final class MainDeployerImpl implements Cloneable, MainDeployerImplMBean
       if (trace)
          log.log(Level.FINER, "Undeploy: " + url.toExternalForm());
 
+      long start = System.nanoTime();
+
       List<Deployment> deployments = kernel.getDeployments(url, false);
       if (deployments != null)
       {
@@ -211,6 +242,13 @@ public final class MainDeployerImpl implements Cloneable, MainDeployerImplMBean
          if (deployerPhases && throwable == null)
             kernel.postUndeploy(true);
 
+         undeployTime.recordSince(start);
+         if (throwable != null)
+            undeployFailures.increment();
+
+         kernel.publish(RemoteEvent.TYPE_DEPLOYMENT, url.toExternalForm(),
+                        throwable == null ? RemoteEvent.UNDEPLOYED : RemoteEvent.UNDEPLOY_FAILED);
+
          if (throwable != null)
             throw throwable;
       }
@@ -229,6 +267,14 @@ public final class MainDeployerImpl implements Cloneable, MainDeployerImplMBean
          log.log(Level.FINER, "RegisterDeployment: " + deployment);
 
       kernel.registerDeployment(deployment);
+
+      if (deployment.getClassLoader() instanceof KernelClassLoader &&
+          deployment.getClassLoader() != kernel.getKernelClassLoader() &&
+          deployment.getURL() != null)
+      {
+         ClassLoaderGauge.register(kernel.getMetrics(), "classloader." + deployment.getURL().toExternalForm(),
+                                   (KernelClassLoader)deployment.getClassLoader());
+      }
    }
 
    /**
@@ -244,6 +290,9 @@ public final class MainDeployerImpl implements Cloneable, MainDeployerImplMBean
       if (trace)
          log.log(Level.FINER, "UnregisterDeployment: " + deployment);
 
+      if (deployment.getURL() != null)
+         ClassLoaderGauge.unregister(kernel.getMetrics(), "classloader." + deployment.getURL().toExternalForm());
+
       kernel.shutdownDeployment(deployment);
    }
 
@@ -0,0 +1,128 @@
+/*
+ * The Fungal kernel project
+ * Copyright (C) 2014
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package com.github.fungal.impl;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * The future of a stage of the kernel startup
+ * @author <a href="mailto:jesper.pedersen@comcast.net">Jesper Pedersen</a>
+ */
+class StartupFuture implements Future<Void>
+{
+   /** The latch */
+   private CountDownLatch latch;
+
+   /** The failure */
+   private Throwable failure;
+
+   /**
+    * Constructor
+    */
+   StartupFuture()
+   {
+      this.latch = new CountDownLatch(1);
+      this.failure = null;
+   }
+
+   /**
+    * Completed
+    */
+   synchronized void completed()
+   {
+      latch.countDown();
+   }
+
+   /**
+    * Failed; a future that has already completed keeps its result
+    * @param t The failure
+    */
+   synchronized void failed(Throwable t)
+   {
+      if (latch.getCount() > 0)
+      {
+         failure = t;
+         latch.countDown();
+      }
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public boolean cancel(boolean mayInterruptIfRunning)
+   {
+      return false;
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public boolean isCancelled()
+   {
+      return false;
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public boolean isDone()
+   {
+      return latch.getCount() == 0;
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public Void get() throws InterruptedException, ExecutionException
+   {
+      latch.await();
+
+      return getValue();
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public Void get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException
+   {
+      if (!latch.await(timeout, unit))
+         throw new TimeoutException();
+
+      return getValue();
+   }
+
+   /**
+    * Get the value
+    * @return The value
+    * @exception ExecutionException Thrown if the stage failed
+    */
+   private synchronized Void getValue() throws ExecutionException
+   {
+      if (failure != null)
+         throw new ExecutionException(failure);
+
+      return null;
+   }
+}
@@ -0,0 +1,434 @@
+/*
+ * The Fungal kernel project
+ * Copyright (C) 2014
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package com.github.fungal.impl;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A report of the kernel startup based on the timestamps of the bean
+ * life cycle and the dependencies between the beans.
+ *
+ * For each bean the wait time (NOT_STARTED to STARTING) and the work time
+ * (STARTING to STARTED) is reported, together with the critical path, which
+ * is the chain of dependencies that ended with the last bean being started.
+ * @author <a href="mailto:jesper.pedersen@comcast.net">Jesper Pedersen</a>
+ */
+class StartupReport
+{
+   /** Index of the NOT_STARTED timestamp */
+   static final int REGISTERED = 0;
+
+   /** Index of the STARTING timestamp */
+   static final int STARTING = 1;
+
+   /** Index of the STARTED timestamp */
+   static final int STARTED = 2;
+
+   /** Number of slowest beans in the text report */
+   private static final int TOP = 10;
+
+   /** The start time of the kernel */
+   private long base;
+
+   /** The entries sorted by start time */
+   private List<Entry> entries;
+
+   /** The critical path */
+   private List<Entry> criticalPath;
+
+   /** The end time of the last bean */
+   private long end;
+
+   /**
+    * Constructor
+    * @param base The start time of the kernel in nanoseconds
+    * @param timestamps The bean timestamps in nanoseconds
+    * @param dependencies The bean dependencies
+    */
+   StartupReport(long base, Map<String, long[]> timestamps, Map<String, Set<String>> dependencies)
+   {
+      this.base = base;
+      this.entries = new ArrayList<Entry>(timestamps.size());
+      this.criticalPath = new ArrayList<Entry>();
+      this.end = base;
+
+      Map<String, Entry> lookup = new HashMap<String, Entry>(timestamps.size());
+
+      for (Map.Entry<String, long[]> e : timestamps.entrySet())
+      {
+         long[] ts = e.getValue();
+
+         if (ts[STARTED] != 0L)
+         {
+            long starting = ts[STARTING] != 0L ? ts[STARTING] : ts[STARTED];
+            long registered = ts[REGISTERED] != 0L ? ts[REGISTERED] : starting;
+
+            Entry entry = new Entry(e.getKey(), registered, starting, ts[STARTED]);
+            entries.add(entry);
+            lookup.put(entry.name, entry);
+
+            if (entry.started > end)
+               end = entry.started;
+         }
+      }
+
+      Collections.sort(entries, new Comparator<Entry>()
+      {
+         public int compare(Entry o1, Entry o2)
+         {
+            if (o1.starting != o2.starting)
+               return o1.starting < o2.starting ? -1 : 1;
+
+            return o1.name.compareTo(o2.name);
+         }
+      });
+
+      Entry current = null;
+      for (Entry entry : entries)
+      {
+         if (current == null || entry.started > current.started)
+            current = entry;
+      }
+
+      Set<String> visited = new HashSet<String>();
+      while (current != null && visited.add(current.name))
+      {
+         current.critical = true;
+         criticalPath.add(0, current);
+
+         Entry next = null;
+         Set<String> deps = dependencies.get(current.name);
+         if (deps != null)
+         {
+            for (String dep : deps)
+            {
+               Entry candidate = lookup.get(dep);
+               if (candidate != null && !visited.contains(dep) &&
+                   (next == null || candidate.started > next.started))
+                  next = candidate;
+            }
+         }
+         current = next;
+      }
+   }
+
+   /**
+    * Get the critical path
+    * @return The bean names from the first to the last bean
+    */
+   List<String> getCriticalPath()
+   {
+      List<String> result = new ArrayList<String>(criticalPath.size());
+
+      for (Entry entry : criticalPath)
+      {
+         result.add(entry.name);
+      }
+
+      return result;
+   }
+
+   /**
+    * The report as text
+    * @return The report
+    */
+   String toText()
+   {
+      StringBuilder sb = new StringBuilder();
+
+      sb.append("Startup: ").append(millis(end - base)).append(" ms, ");
+      sb.append(entries.size()).append(" beans\n");
+
+      sb.append("Critical path (start / wait / work in ms):\n");
+      for (Entry entry : criticalPath)
+      {
+         sb.append("  ").append(entry.name);
+         sb.append(" (").append(millis(entry.starting - base));
+         sb.append(" / ").append(millis(entry.getWait()));
+         sb.append(" / ").append(millis(entry.getWork())).append(")\n");
+      }
+
+      List<Entry> slowest = new ArrayList<Entry>(entries);
+      Collections.sort(slowest, new Comparator<Entry>()
+      {
+         public int compare(Entry o1, Entry o2)
+         {
+            if (o1.getWork() != o2.getWork())
+               return o1.getWork() > o2.getWork() ? -1 : 1;
+
+            return o1.name.compareTo(o2.name);
+         }
+      });
+
+      sb.append("Slowest beans (wait / work in ms):\n");
+      for (int i = 0; i < slowest.size() && i < TOP; i++)
+      {
+         Entry entry = slowest.get(i);
+         sb.append("  ").append(entry.name);
+         sb.append(" (").append(millis(entry.getWait()));
+         sb.append(" / ").append(millis(entry.getWork())).append(")");
+
+         if (entry.critical)
+            sb.append(" *");
+
+         sb.append("\n");
+      }
+
+      return sb.toString();
+   }
+
+   /**
+    * The report as JSON
+    * @return The report
+    */
+   String toJSON()
+   {
+      StringBuilder sb = new StringBuilder();
+
+      sb.append("{\"total\":").append(millis(end - base));
+
+      sb.append(",\"criticalPath\":[");
+      for (int i = 0; i < criticalPath.size(); i++)
+      {
+         if (i > 0)
+            sb.append(",");
+
+         quote(sb, criticalPath.get(i).name);
+      }
+      sb.append("]");
+
+      sb.append(",\"beans\":[");
+      for (int i = 0; i < entries.size(); i++)
+      {
+         Entry entry = entries.get(i);
+
+         if (i > 0)
+            sb.append(",");
+
+         sb.append("\n{\"name\":");
+         quote(sb, entry.name);
+         sb.append(",\"registered\":").append(millis(entry.registered - base));
+         sb.append(",\"starting\":").append(millis(entry.starting - base));
+         sb.append(",\"started\":").append(millis(entry.started - base));
+         sb.append(",\"wait\":").append(millis(entry.getWait()));
+         sb.append(",\"work\":").append(millis(entry.getWork()));
+         sb.append(",\"critical\":").append(entry.critical);
+         sb.append("}");
+      }
+      sb.append("]}\n");
+
+      return sb.toString();
+   }
+
+   /**
+    * The report in the Chrome trace event format
+    * @return The report
+    */
+   String toChromeTrace()
+   {
+      StringBuilder sb = new StringBuilder();
+      List<Long> lanes = new ArrayList<Long>();
+
+      sb.append("{\"traceEvents\":[");
+      for (int i = 0; i < entries.size(); i++)
+      {
+         Entry entry = entries.get(i);
+
+         int lane = 0;
+         while (lane < lanes.size() && lanes.get(lane).longValue() > entry.starting)
+         {
+            lane++;
+         }
+
+         if (lane < lanes.size())
+         {
+            lanes.set(lane, Long.valueOf(entry.started));
+         }
+         else
+         {
+            lanes.add(Long.valueOf(entry.started));
+         }
+
+         if (i > 0)
+            sb.append(",");
+
+         sb.append("\n{\"name\":");
+         quote(sb, entry.name);
+         sb.append(",\"cat\":\"").append(entry.critical ? "bean,critical" : "bean").append("\"");
+         sb.append(",\"ph\":\"X\"");
+         sb.append(",\"ts\":").append((entry.starting - base) / 1000L);
+         sb.append(",\"dur\":").append(entry.getWork() / 1000L);
+         sb.append(",\"pid\":1,\"tid\":").append(lane + 1);
+         sb.append(",\"args\":{\"wait\":").append(entry.getWait() / 1000L).append("}}");
+      }
+      sb.append("],\"displayTimeUnit\":\"ms\"}\n");
+
+      return sb.toString();
+   }
+
+   /**
+    * Write the report to a directory
+    * @param directory The directory
+    * @exception IOException Thrown if the report can't be written
+    */
+   void write(File directory) throws IOException
+   {
+      write(new File(directory, "startup-report.txt"), toText());
+      write(new File(directory, "startup-report.json"), toJSON());
+      write(new File(directory, "startup-trace.json"), toChromeTrace());
+   }
+
+   /**
+    * Write a file
+    * @param file The file
+    * @param content The content
+    * @exception IOException Thrown if the file can't be written
+    */
+   private static void write(File file, String content) throws IOException
+   {
+      Writer w = null;
+      try
+      {
+         w = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+         w.write(content);
+         w.flush();
+      }
+      finally
+      {
+         if (w != null)
+         {
+            try
+            {
+               w.close();
+            }
+            catch (IOException ioe)
+            {
+               // Ignore
+            }
+         }
+      }
+   }
+
+   /**
+    * Format nanoseconds as milliseconds
+    * @param nanos The value
+    * @return The formatted value
+    */
+   private static String millis(long nanos)
+   {
+      return String.format(Locale.US, "%.3f", Double.valueOf(nanos / 1000000.0));
+   }
+
+   /**
+    * Append a JSON string
+    * @param sb The string builder
+    * @param s The string
+    */
+   private static void quote(StringBuilder sb, String s)
+   {
+      sb.append('"');
+      for (int i = 0; i < s.length(); i++)
+      {
+         char c = s.charAt(i);
+         if (c == '"' || c == '\\')
+         {
+            sb.append('\\').append(c);
+         }
+         else if (c < 0x20)
+         {
+            sb.append(String.format("\\u%04x", Integer.valueOf(c)));
+         }
+         else
+         {
+            sb.append(c);
+         }
+      }
+      sb.append('"');
+   }
+
+   /**
+    * A bean entry
+    */
+   static class Entry
+   {
+      /** The name */
+      private String name;
+
+      /** NOT_STARTED */
+      private long registered;
+
+      /** STARTING */
+      private long starting;
+
+      /** STARTED */
+      private long started;
+
+      /** On the critical path */
+      private boolean critical;
+
+      /**
+       * Constructor
+       * @param name The name
+       * @param registered The NOT_STARTED timestamp
+       * @param starting The STARTING timestamp
+       * @param started The STARTED timestamp
+       */
+      Entry(String name, long registered, long starting, long started)
+      {
+         this.name = name;
+         this.registered = registered;
+         this.starting = starting;
+         this.started = started;
+         this.critical = false;
+      }
+
+      /**
+       * Get the wait time
+       * @return The value
+       */
+      long getWait()
+      {
+         return starting - registered;
+      }
+
+      /**
+       * Get the work time
+       * @return The value
+       */
+      long getWork()
+      {
+         return started - starting;
+      }
+   }
+}
@@ -0,0 +1,398 @@
+/*
+ * The Fungal kernel project
+ * Copyright (C) 2014
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package com.github.fungal.impl;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A snapshot of the bean graph from a previous startup of the kernel.
+ *
+ * The snapshot contains the fingerprint of each deployment together with
+ * the level of each bean in the dependency graph and the time it took to
+ * start it. A deployment that hasn't changed since the snapshot was taken
+ * can be started from the plan, each bean once its dependencies have started
+ * and the longest running beans first, instead of discovering the order
+ * through the latches.
+ * @author <a href="mailto:jesper.pedersen@comcast.net">Jesper Pedersen</a>
+ */
+class StartupSnapshot
+{
+   /** The name of the snapshot file */
+   static final String FILE = "startup.snapshot";
+
+   /** The header */
+   private static final String HEADER = "# Fungal startup snapshot";
+
+   /** Deployment fingerprints (last modified, length) */
+   private Map<String, long[]> deployments;
+
+   /** Beans (level, duration) */
+   private Map<String, long[]> beans;
+
+   /**
+    * Constructor
+    */
+   private StartupSnapshot()
+   {
+      this.deployments = new HashMap<String, long[]>();
+      this.beans = new HashMap<String, long[]>();
+   }
+
+   /**
+    * Create a snapshot from a startup
+    * @param timestamps The bean timestamps in nanoseconds
+    * @param dependencies The bean dependencies
+    * @param urls The deployment urls
+    * @return The snapshot
+    */
+   static StartupSnapshot create(Map<String, long[]> timestamps, Map<String, Set<String>> dependencies, List<URL> urls)
+   {
+      StartupSnapshot snapshot = new StartupSnapshot();
+
+      for (URL url : urls)
+      {
+         long[] fingerprint = fingerprint(url);
+         if (fingerprint != null)
+            snapshot.deployments.put(url.toExternalForm(), fingerprint);
+      }
+
+      // A bean is started after its dependencies, so the start order is a topological order
+      List<Map.Entry<String, long[]>> started = new ArrayList<Map.Entry<String, long[]>>(timestamps.size());
+      for (Map.Entry<String, long[]> e : timestamps.entrySet())
+      {
+         if (e.getValue()[StartupReport.STARTED] != 0L)
+            started.add(e);
+      }
+
+      Collections.sort(started, new Comparator<Map.Entry<String, long[]>>()
+      {
+         public int compare(Map.Entry<String, long[]> o1, Map.Entry<String, long[]> o2)
+         {
+            long s1 = o1.getValue()[StartupReport.STARTED];
+            long s2 = o2.getValue()[StartupReport.STARTED];
+
+            if (s1 != s2)
+               return s1 < s2 ? -1 : 1;
+
+            return o1.getKey().compareTo(o2.getKey());
+         }
+      });
+
+      for (Map.Entry<String, long[]> e : started)
+      {
+         long[] ts = e.getValue();
+         long level = 0L;
+
+         Set<String> deps = dependencies.get(e.getKey());
+         if (deps != null)
+         {
+            for (String dep : deps)
+            {
+               long[] d = snapshot.beans.get(dep);
+               if (d != null && d[0] + 1 > level)
+                  level = d[0] + 1;
+            }
+         }
+
+         long duration = ts[StartupReport.STARTING] != 0L ? ts[StartupReport.STARTED] - ts[StartupReport.STARTING] : 0L;
+
+         snapshot.beans.put(e.getKey(), new long[] {level, duration});
+      }
+
+      return snapshot;
+   }
+
+   /**
+    * Load a snapshot
+    * @param file The file
+    * @return The snapshot; <code>null</code> if there is no snapshot
+    * @exception IOException Thrown if the snapshot can't be read
+    */
+   static StartupSnapshot load(File file) throws IOException
+   {
+      if (!file.exists())
+         return null;
+
+      StartupSnapshot snapshot = new StartupSnapshot();
+      BufferedReader r = null;
+      try
+      {
+         r = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+
+         String line = r.readLine();
+         if (!HEADER.equals(line))
+            return null;
+
+         while ((line = r.readLine()) != null)
+         {
+            String[] parts = line.split(" ", 4);
+            if (parts.length != 4)
+               return null;
+
+            long[] values = new long[] {Long.parseLong(parts[1]), Long.parseLong(parts[2])};
+
+            if ("D".equals(parts[0]))
+            {
+               snapshot.deployments.put(parts[3], values);
+            }
+            else if ("B".equals(parts[0]))
+            {
+               snapshot.beans.put(parts[3], values);
+            }
+            else
+            {
+               return null;
+            }
+         }
+      }
+      catch (NumberFormatException nfe)
+      {
+         return null;
+      }
+      finally
+      {
+         if (r != null)
+         {
+            try
+            {
+               r.close();
+            }
+            catch (IOException ioe)
+            {
+               // Ignore
+            }
+         }
+      }
+
+      return snapshot;
+   }
+
+   /**
+    * Write the snapshot
+    * @param file The file
+    * @exception IOException Thrown if the snapshot can't be written
+    */
+   void write(File file) throws IOException
+   {
+      File tmp = new File(file.getParentFile(), file.getName() + ".tmp");
+      Writer w = null;
+      try
+      {
+         w = new OutputStreamWriter(new FileOutputStream(tmp), "UTF-8");
+         w.write(HEADER);
+         w.write('\n');
+
+         for (Map.Entry<String, long[]> e : deployments.entrySet())
+         {
+            w.write("D " + e.getValue()[0] + " " + e.getValue()[1] + " " + e.getKey() + "\n");
+         }
+
+         for (Map.Entry<String, long[]> e : beans.entrySet())
+         {
+            w.write("B " + e.getValue()[0] + " " + e.getValue()[1] + " " + e.getKey() + "\n");
+         }
+
+         w.flush();
+      }
+      finally
+      {
+         if (w != null)
+         {
+            try
+            {
+               w.close();
+            }
+            catch (IOException ioe)
+            {
+               // Ignore
+            }
+         }
+      }
+
+      if (file.exists() && !file.delete())
+         throw new IOException("Unable to delete " + file.getAbsolutePath());
+
+      if (!tmp.renameTo(file))
+         throw new IOException("Unable to rename " + tmp.getAbsolutePath() + " to " + file.getAbsolutePath());
+   }
+
+   /**
+    * Get the plan for a deployment
+    * @param url The url of the deployment
+    * @param deployers The bean deployers of the deployment
+    * @return The bean deployers sorted by level and longest duration first; <code>null</code>
+    *         if the deployment has changed since the snapshot was taken, or its beans can't
+    *         be scheduled
+    */
+   List<BeanDeployer> plan(URL url, List<BeanDeployer> deployers)
+   {
+      if (url == null)
+         return null;
+
+      long[] recorded = deployments.get(url.toExternalForm());
+      long[] current = fingerprint(url);
+
+      if (recorded == null || current == null || recorded[0] != current[0] || recorded[1] != current[1])
+         return null;
+
+      // A lazy bean is only in the snapshot if it was activated
+      for (BeanDeployer deployer : deployers)
+      {
+         if (!beans.containsKey(deployer.getBean().getName()) && !deployer.isLazy())
+            return null;
+      }
+
+      if (!isAcyclic(deployers))
+         return null;
+
+      List<BeanDeployer> result = new ArrayList<BeanDeployer>(deployers);
+      Collections.sort(result, new Comparator<BeanDeployer>()
+      {
+         public int compare(BeanDeployer o1, BeanDeployer o2)
+         {
+            long[] b1 = get(o1.getBean().getName());
+            long[] b2 = get(o2.getBean().getName());
+
+            if (b1[0] != b2[0])
+               return b1[0] < b2[0] ? -1 : 1;
+
+            if (b1[1] != b2[1])
+               return b1[1] > b2[1] ? -1 : 1;
+
+            return o1.getBean().getName().compareTo(o2.getBean().getName());
+         }
+      });
+
+      return result;
+   }
+
+   /**
+    * Get the duration of a bean
+    * @param name The name of the bean
+    * @return The duration in nanoseconds; <code>0</code> if the bean isn't in the snapshot
+    */
+   long getDuration(String name)
+   {
+      return get(name)[1];
+   }
+
+   /**
+    * Get the number of beans in the snapshot
+    * @return The value
+    */
+   int getBeans()
+   {
+      return beans.size();
+   }
+
+   /**
+    * Get the level and duration of a bean
+    * @param name The name of the bean
+    * @return The values; zero if the bean isn't in the snapshot
+    */
+   private long[] get(String name)
+   {
+      long[] values = beans.get(name);
+
+      return values != null ? values : new long[] {0L, 0L};
+   }
+
+   /**
+    * Can the beans of a deployment be started in the order of their dependencies
+    * @param deployers The bean deployers of the deployment
+    * @return True if the dependencies within the deployment don't form a cycle; otherwise false
+    */
+   private static boolean isAcyclic(List<BeanDeployer> deployers)
+   {
+      Map<String, Set<String>> remaining = new HashMap<String, Set<String>>(deployers.size());
+      for (BeanDeployer deployer : deployers)
+      {
+         Set<String> deps = BeanDeployer.getDependencyNames(deployer.getBean());
+         remaining.put(deployer.getBean().getName(), deps != null ? deps : Collections.<String>emptySet());
+      }
+
+      boolean progress = true;
+      while (progress && !remaining.isEmpty())
+      {
+         progress = false;
+
+         Iterator<Map.Entry<String, Set<String>>> it = remaining.entrySet().iterator();
+         while (it.hasNext())
+         {
+            boolean started = true;
+            for (String dep : it.next().getValue())
+            {
+               if (remaining.containsKey(dep))
+                  started = false;
+            }
+
+            if (started)
+            {
+               it.remove();
+               progress = true;
+            }
+         }
+      }
+
+      return remaining.isEmpty();
+   }
+
+   /**
+    * Get the fingerprint of a deployment
+    * @param url The url
+    * @return The last modified and length; <code>null</code> if the deployment isn't a file
+    */
+   private static long[] fingerprint(URL url)
+   {
+      if (!"file".equals(url.getProtocol()))
+         return null;
+
+      try
+      {
+         File f = new File(url.toURI());
+
+         if (!f.isFile())
+            return null;
+
+         return new long[] {f.lastModified(), f.length()};
+      }
+      catch (Throwable t)
+      {
+         return null;
+      }
+   }
+}
@@ -53,7 +53,8 @@ class ArchiveClassLoader extends KernelClassLoader
     */
    ArchiveClassLoader(Integer id, URL url, Set<String> exportPackages, ExportClassLoaderRepository eclr)
    {
-      super(new URL[] {url}, SecurityActions.getSystemClassLoader());
+      super(new URL[] {url}, SecurityActions.getSystemClassLoader(),
+            eclr != null ? eclr.getExportClassLoader() : null);
 
       if (id == null)
          throw new IllegalArgumentException("Id is null");
@@ -98,6 +99,19 @@ class ArchiveClassLoader extends KernelClassLoader
     */
    @Override
    public Class<?> loadClass(String name) throws ClassNotFoundException
+   {
+      loadRequest();
+
+      return load(name);
+   }
+
+   /**
+    * Load a class without counting the request, which is done by the class loader it entered
+    * @param name The fully qualified class name
+    * @return The class
+    * @throws ClassNotFoundException If the class could not be found
+    */
+   Class<?> load(String name) throws ClassNotFoundException
    {
       // Don't call super.loadClass(String) as it is done in ExportClassLoader
 
@@ -52,7 +52,7 @@ public class ExportClassLoader extends KernelClassLoader
    {
       super(new URL[0], parent);
 
-      this.eclr = new ExportClassLoaderRepository();
+      this.eclr = new ExportClassLoaderRepository(this);
 
       if (urls != null)
       {
@@ -81,7 +81,7 @@ public class ExportClassLoader extends KernelClassLoader
             {
                try
                {
-                  result = acl.loadClass(name);
+                  result = acl.load(name);
 
                   if (result != null)
                      return result;
@@ -96,7 +96,7 @@ public class ExportClassLoader extends KernelClassLoader
 
       try
       {
-         result = eclr.getNonExportClassLoader().loadClass(name);
+         result = eclr.getNonExportClassLoader().load(name);
 
          if (result != null)
             return result;
@@ -47,6 +47,9 @@ import java.util.jar.Manifest;
  */
 class ExportClassLoaderRepository
 {
+   /** The export class loader */
+   private ExportClassLoader exportClassLoader;
+
    /** Non export class loader */
    private NonExportClassLoader nonExportClassLoader;
 
@@ -61,15 +64,26 @@ class ExportClassLoaderRepository
 
    /**
     * Constructor
+    * @param exportClassLoader The export class loader, which holds the statistics of the class loaders
     */
-   ExportClassLoaderRepository()
+   ExportClassLoaderRepository(ExportClassLoader exportClassLoader)
    {
+      this.exportClassLoader = exportClassLoader;
       nonExportClassLoader = SecurityActions.createNonExportClassLoader(this);
       idCounter = new AtomicInteger(0);
       classLoaders = new ConcurrentHashMap<Integer, ArchiveClassLoader>();
       packages = new ConcurrentHashMap<String, SortedMap<String, Set<Integer>>>();
    }
 
+   /**
+    * Get the export class loader
+    * @return The class loader
+    */
+   ExportClassLoader getExportClassLoader()
+   {
+      return exportClassLoader;
+   }
+
    /**
     * Get the non export class loader
     * @return The class loader
@@ -51,7 +51,7 @@ class NonExportClassLoader extends KernelClassLoader
     */
    private NonExportClassLoader(URL[] urls, ClassLoader cl, ExportClassLoaderRepository eclr)
    {
-      super(urls, cl);
+      super(urls, cl, eclr != null ? eclr.getExportClassLoader() : null);
 
       if (eclr == null)
          throw new IllegalArgumentException("ECLR is null");
@@ -67,6 +67,19 @@ class NonExportClassLoader extends KernelClassLoader
     */
    @Override
    public Class<?> loadClass(String name) throws ClassNotFoundException
+   {
+      loadRequest();
+
+      return load(name);
+   }
+
+   /**
+    * Load a class without counting the request, which is done by the class loader it entered
+    * @param name The fully qualified class name
+    * @return The class
+    * @throws ClassNotFoundException If the class could not be found
+    */
+   Class<?> load(String name) throws ClassNotFoundException
    {
       // Don't call super.loadClass(String) as it is done in ExportClassLoader
 
@@ -83,7 +96,7 @@ class NonExportClassLoader extends KernelClassLoader
             try
             {
                ArchiveClassLoader acl = eclr.getClassLoader(id);
-               return acl.loadClass(name);
+               return acl.load(name);
             }
             catch (ClassNotFoundException ignore)
             {
@@ -118,7 +131,7 @@ class NonExportClassLoader extends KernelClassLoader
                try
                {
                   ArchiveClassLoader acl = eclr.getClassLoader(id);
-                  return acl.loadClass(name);
+                  return acl.load(name);
                }
                catch (ClassNotFoundException ignore)
                {
@@ -28,7 +28,6 @@ import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 
@@ -84,61 +83,126 @@ public abstract class AbstractRepository implements Repository
       if (!tracker.track(dependency))
          return Collections.emptyList();
 
-      List<DependencyType> result = getArtifact(repository, dependency);
+      fetch(servers, protocolMap, dependency, repository, null);
 
-      if (result != null)
-         return result;
+      List<DependencyType> result = new ArrayList<DependencyType>(1);
+      result.add(dependency);
 
-      result = new ArrayList<DependencyType>(1);
+      return result;
+   }
 
+   /**
+    * Fetch an artifact into the repository, unless it is already there
+    * @param servers The servers
+    * @param protocolMap The protocols
+    * @param dependency The dependency
+    * @param repository The repository
+    * @param mirrors The mirrors used to order the servers and bound the connections;
+    *        <code>null</code> if the servers should be tried in their configured order
+    * @return The file in the repository
+    * @exception ResolveException Thrown in case of an error
+    */
+   public File fetch(List<ServerType> servers,
+                     Map<String, Protocol> protocolMap,
+                     DependencyType dependency,
+                     File repository,
+                     Mirrors mirrors)
+      throws ResolveException
+   {
       File f = new File(repository, getPath(dependency));
 
-      if (!f.getParentFile().exists() && !f.getParentFile().mkdirs())
+      if (f.exists())
+         return f;
+
+      if (!f.getParentFile().exists() && !f.getParentFile().mkdirs() && !f.getParentFile().exists())
          throw new ResolveException(f.getParent() + " couldn't be created");
 
-      Iterator<ServerType> it = servers.iterator();
-      while (result.isEmpty() && it.hasNext())
+      List<ServerType> order = mirrors != null ? mirrors.order(servers) : servers;
+
+      for (ServerType server : order)
       {
-         try
-         {
-            ServerType server = it.next();
-            String path = server.getValue();
+         String path = server.getValue();
 
-            if (!path.endsWith("/"))
-               path = path + "/";
+         if (!path.endsWith("/"))
+            path = path + "/";
 
-            path += Pattern.resolve(server.getPattern(), dependency.getOrganisation(), dependency.getModule(),
-                                    dependency.getRevision(), dependency.getArtifact(), dependency.getClassifier(),
-                                    dependency.getExt());
+         path += Pattern.resolve(server.getPattern(), dependency.getOrganisation(), dependency.getModule(),
+                                 dependency.getRevision(), dependency.getArtifact(), dependency.getClassifier(),
+                                 dependency.getExt());
             
-            String protocolKey = server.getProtocol();
+         String protocolKey = server.getProtocol();
+
+         if (protocolKey == null || protocolKey.trim().equals(""))
+            protocolKey = "http";
+
+         Protocol protocol = protocolMap.get(protocolKey);
 
-            if (protocolKey == null || protocolKey.trim().equals(""))
-               protocolKey = "http";
+         if (protocol == null)
+            throw new ResolveException("Protocol (" + protocolKey + ") not defined for server " + server.getValue());
+
+         boolean downloaded = false;
+         Protocol copy = null;
+         long start = 0L;
+         try
+         {
+            copy = protocol.clone();
 
-            Protocol protocol = protocolMap.get(protocolKey);
+            if (mirrors != null)
+               mirrors.acquire(server);
 
-            if (protocol != null)
+            try
             {
-               Protocol copy = protocol.clone();
-               if (copy.download(path, f))
-                  result.add(dependency);
+               start = System.nanoTime();
+               downloaded = copy.download(path, f);
             }
-            else
+            finally
             {
-               throw new ResolveException("Protocol (" + protocolKey + ") not defined for server " + server.getValue());
+               if (mirrors != null)
+                  mirrors.release(server);
             }
          }
          catch (CloneNotSupportedException cnse)
          {
             // Shouldn't happen
          }
-      }
+         catch (InterruptedException ie)
+         {
+            Thread.interrupted();
+            throw new ResolveException("Interrupted while downloading", dependency);
+         }
 
-      if (result.isEmpty())
-         throw new ResolveException("The dependency couldn't be resolved", dependency);
+         if (mirrors != null && copy != null)
+         {
+            // The latency of a server is the time to its response, which doesn't depend on the size
+            // of the artifact; a server which doesn't have the artifact responded, so it isn't penalized
+            long latency = System.nanoTime() - start;
+            boolean missing = false;
 
-      return result;
+            if (copy instanceof Http)
+            {
+               Http http = (Http)copy;
+
+               if (http.getResponseTime() > 0L)
+                  latency = http.getResponseTime();
+
+               missing = http.isMissing();
+            }
+
+            if (downloaded || missing)
+            {
+               mirrors.completed(server, latency);
+            }
+            else
+            {
+               mirrors.failed(server, latency);
+            }
+         }
+
+         if (downloaded)
+            return f;
+      }
+
+      throw new ResolveException("The dependency couldn't be resolved", dependency);
    }
 
    /**
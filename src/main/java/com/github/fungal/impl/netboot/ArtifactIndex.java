@@ -0,0 +1,367 @@
+/*
+ * The Fungal kernel project
+ * Copyright (C) 2014
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package com.github.fungal.impl.netboot;
+
+import com.github.fungal.bootstrap.DependencyType;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * An index of the artifacts installed by a netboot sequence.
+ *
+ * The index records the root dependencies of the sequence together with the
+ * coordinates, size, last modified and checksum, if known, of each artifact in the repository,
+ * and where it was installed. If the root dependencies are the same, and all files
+ * are unchanged, the index can be verified in a single pass over the files and both
+ * the resolution and the installation of the artifacts can be skipped
+ */
+class ArtifactIndex
+{
+   /** The name of the index file */
+   static final String FILE = "netboot.index";
+
+   /** The header */
+   private static final String HEADER = "# Fungal netboot index";
+
+   /** The separator */
+   private static final String SEPARATOR = "\t";
+
+   /** An unknown checksum */
+   private static final String UNKNOWN = "-";
+
+   /** The root dependencies */
+   private List<String> roots;
+
+   /** The artifacts */
+   private Map<String, Entry> artifacts;
+
+   /**
+    * Constructor
+    * @param dependencies The root dependencies
+    */
+   ArtifactIndex(List<DependencyType> dependencies)
+   {
+      this.roots = new ArrayList<String>(dependencies.size());
+      this.artifacts = new ConcurrentHashMap<String, Entry>();
+
+      for (DependencyType dependency : dependencies)
+      {
+         roots.add(getKey(dependency));
+      }
+   }
+
+   /**
+    * Constructor
+    */
+   private ArtifactIndex()
+   {
+      this.roots = new ArrayList<String>();
+      this.artifacts = new ConcurrentHashMap<String, Entry>();
+   }
+
+   /**
+    * Load an index
+    * @param file The file
+    * @return The index; <code>null</code> if there is no index, or it can't be read
+    */
+   static ArtifactIndex load(File file)
+   {
+      if (!file.exists())
+         return null;
+
+      ArtifactIndex index = new ArtifactIndex();
+      BufferedReader r = null;
+      try
+      {
+         r = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+
+         String line = r.readLine();
+         if (!HEADER.equals(line))
+            return null;
+
+         while ((line = r.readLine()) != null)
+         {
+            String[] parts = line.split(SEPARATOR);
+
+            if ("R".equals(parts[0]) && parts.length == 2)
+            {
+               index.roots.add(parts[1]);
+            }
+            else if ("A".equals(parts[0]) && parts.length == 9)
+            {
+               Entry entry = new Entry(parts[7], Long.parseLong(parts[1]), Long.parseLong(parts[2]), parts[3],
+                                       parts[8], Long.parseLong(parts[4]), Long.parseLong(parts[5]));
+
+               index.artifacts.put(parts[6], entry);
+            }
+            else
+            {
+               return null;
+            }
+         }
+      }
+      catch (NumberFormatException nfe)
+      {
+         return null;
+      }
+      catch (IOException ioe)
+      {
+         return null;
+      }
+      finally
+      {
+         if (r != null)
+         {
+            try
+            {
+               r.close();
+            }
+            catch (IOException ioe)
+            {
+               // Ignore
+            }
+         }
+      }
+
+      return index;
+   }
+
+   /**
+    * Write the index
+    * @param file The file
+    * @exception IOException Thrown if the index can't be written
+    */
+   void write(File file) throws IOException
+   {
+      File tmp = new File(file.getParentFile(), file.getName() + ".tmp");
+      Writer w = null;
+      try
+      {
+         w = new OutputStreamWriter(new FileOutputStream(tmp), "UTF-8");
+         w.write(HEADER);
+         w.write('\n');
+
+         for (String root : roots)
+         {
+            w.write("R" + SEPARATOR + root + "\n");
+         }
+
+         for (Map.Entry<String, Entry> e : artifacts.entrySet())
+         {
+            Entry entry = e.getValue();
+
+            w.write("A" + SEPARATOR + entry.length + SEPARATOR + entry.lastModified + SEPARATOR + entry.checksum +
+                    SEPARATOR + entry.targetLength + SEPARATOR + entry.targetLastModified + SEPARATOR + e.getKey() +
+                    SEPARATOR + entry.path + SEPARATOR + entry.target + "\n");
+         }
+
+         w.flush();
+      }
+      finally
+      {
+         if (w != null)
+         {
+            try
+            {
+               w.close();
+            }
+            catch (IOException ioe)
+            {
+               // Ignore
+            }
+         }
+      }
+
+      if (file.exists() && !file.delete())
+         throw new IOException("Unable to delete " + file.getAbsolutePath());
+
+      if (!tmp.renameTo(file))
+         throw new IOException("Unable to rename " + tmp.getAbsolutePath() + " to " + file.getAbsolutePath());
+   }
+
+   /**
+    * Verify the index against the root dependencies and the installed artifacts
+    * @param dependencies The root dependencies
+    * @param repositoryDirectory The repository directory
+    * @param rootDirectory The root directory
+    * @return True if the dependencies are the same, and all artifacts are unchanged; otherwise false
+    */
+   boolean verify(List<DependencyType> dependencies, File repositoryDirectory, File rootDirectory)
+   {
+      if (dependencies.size() != roots.size() || artifacts.size() == 0)
+         return false;
+
+      for (int i = 0; i < dependencies.size(); i++)
+      {
+         if (!roots.get(i).equals(getKey(dependencies.get(i))))
+            return false;
+      }
+
+      for (Entry entry : artifacts.values())
+      {
+         if (!entry.isCurrent(new File(repositoryDirectory, entry.path), new File(rootDirectory, entry.target)))
+            return false;
+      }
+
+      return true;
+   }
+
+   /**
+    * Is an artifact installed, and unchanged since the index was written
+    * @param dependency The dependency
+    * @param source The artifact in the repository
+    * @param target The installed artifact
+    * @return True if the artifact is unchanged; otherwise false
+    */
+   boolean isCurrent(DependencyType dependency, File source, File target)
+   {
+      Entry entry = artifacts.get(getKey(dependency));
+
+      return entry != null && entry.isCurrent(source, target);
+   }
+
+   /**
+    * Record an installed artifact
+    * @param dependency The dependency
+    * @param path The path of the artifact in the repository
+    * @param source The artifact in the repository
+    * @param target The path of the installed artifact
+    * @param dest The installed artifact
+    * @param previous The previous index used to reuse the checksum of an unchanged artifact; may be <code>null</code>
+    */
+   void record(DependencyType dependency, String path, File source, String target, File dest, ArtifactIndex previous)
+   {
+      String key = getKey(dependency);
+      String checksum = null;
+
+      if (previous != null)
+      {
+         Entry old = previous.artifacts.get(key);
+
+         if (old != null && old.length == source.length() && old.lastModified == source.lastModified() &&
+             !UNKNOWN.equals(old.checksum))
+            checksum = old.checksum;
+      }
+
+      // The artifact isn't read again; the checksum is the one verified by the download, if any
+      if (checksum == null)
+         checksum = Http.readChecksum(source);
+
+      if (checksum == null)
+         checksum = UNKNOWN;
+
+      artifacts.put(key, new Entry(path, source.length(), source.lastModified(), checksum,
+                                   target, dest.length(), dest.lastModified()));
+   }
+
+   /**
+    * Get the number of artifacts in the index
+    * @return The value
+    */
+   int getArtifacts()
+   {
+      return artifacts.size();
+   }
+
+   /**
+    * Get the key of a dependency
+    * @param dependency The dependency
+    * @return The coordinates and target of the dependency
+    */
+   private static String getKey(DependencyType dependency)
+   {
+      return dependency.getOrganisation() + ":" + dependency.getModule() + ":" + dependency.getArtifact() + ":" +
+         dependency.getRevision() + ":" + dependency.getClassifier() + ":" + dependency.getExt() + "@" +
+         dependency.getTarget();
+   }
+
+   /**
+    * An artifact in the index
+    */
+   static class Entry
+   {
+      /** The path in the repository */
+      private String path;
+
+      /** The length */
+      private long length;
+
+      /** The last modified */
+      private long lastModified;
+
+      /** The SHA-1 checksum */
+      private String checksum;
+
+      /** The path of the installed artifact */
+      private String target;
+
+      /** The length of the installed artifact */
+      private long targetLength;
+
+      /** The last modified of the installed artifact */
+      private long targetLastModified;
+
+      /**
+       * Constructor
+       * @param path The path in the repository
+       * @param length The length
+       * @param lastModified The last modified
+       * @param checksum The SHA-1 checksum
+       * @param target The path of the installed artifact
+       * @param targetLength The length of the installed artifact
+       * @param targetLastModified The last modified of the installed artifact
+       */
+      Entry(String path, long length, long lastModified, String checksum,
+            String target, long targetLength, long targetLastModified)
+      {
+         this.path = path;
+         this.length = length;
+         this.lastModified = lastModified;
+         this.checksum = checksum;
+         this.target = target;
+         this.targetLength = targetLength;
+         this.targetLastModified = targetLastModified;
+      }
+
+      /**
+       * Are the files unchanged
+       * @param source The artifact in the repository
+       * @param dest The installed artifact
+       * @return True if unchanged; otherwise false
+       */
+      boolean isCurrent(File source, File dest)
+      {
+         return source.length() == length && source.lastModified() == lastModified && source.isFile() &&
+            dest.length() == targetLength && dest.lastModified() == targetLastModified && dest.isFile();
+      }
+   }
+}
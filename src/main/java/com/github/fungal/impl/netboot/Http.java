@@ -22,27 +22,211 @@ package com.github.fungal.impl.netboot;
 
 import com.github.fungal.spi.netboot.Protocol;
 
-import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.net.HttpURLConnection;
 import java.net.URL;
 import java.net.URLConnection;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.security.MessageDigest;
+import java.util.Locale;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 /**
  * Support the http:// protocol
+ *
+ * The artifact is transferred into a <code>.part</code> file next to the target, which
+ * is renamed to the target once the transfer is complete and verified against the
+ * <code>.sha1</code> or <code>.md5</code> checksum published by the server. A verified
+ * SHA-1 checksum is kept in a <code>.sha1</code> file next to the target. A partial
+ * transfer is resumed with a range request, which is conditional on the ETag or last
+ * modified of the first response, so a resource changed on the server is transferred again.
  */
 public class Http implements Protocol
 {
+   /** The logger */
+   private static Logger log = Logger.getLogger(Http.class.getName());
+
+   /** The suffix of the temporary file */
+   private static final String PART = ".part";
+
+   /** The suffix of the SHA-1 checksum file */
+   private static final String SHA1 = ".sha1";
+
+   /** The suffix of the file with the validator of a partial transfer */
+   private static final String VALIDATOR = ".validator";
+
+   /** The size of a transfer */
+   private static final long CHUNK = 1024L * 1024L;
+
+   /** Checksum: verify if published by the server */
+   private static final String CHECKSUM_AUTO = "auto";
+
+   /** Checksum: the server must publish a checksum */
+   private static final String CHECKSUM_REQUIRED = "required";
+
+   /** Checksum: don't verify */
+   private static final String CHECKSUM_NONE = "none";
+
+   /** Checksum policy */
+   private String checksum;
+
+   /** Resume partial transfers */
+   private boolean resume;
+
+   /** Follow redirects */
+   private boolean followRedirects;
+
+   /** Connect timeout in milliseconds */
+   private int connectTimeout;
+
+   /** Read timeout in milliseconds */
+   private int readTimeout;
+
+   /** The time to the response of the last download in nanoseconds */
+   private long responseTime;
+
+   /** The resource of the last download doesn't exist on the server */
+   private boolean missing;
+
    /**
     * Constructor
     */
    public Http()
    {
+      this.checksum = CHECKSUM_AUTO;
+      this.resume = true;
+      this.followRedirects = true;
+      this.connectTimeout = 10000;
+      this.readTimeout = 30000;
+   }
+
+   /**
+    * Set the checksum policy; <code>auto</code>, <code>required</code> or <code>none</code>.
+    * Default <code>auto</code>
+    * @param v The value
+    */
+   public void setChecksum(String v)
+   {
+      if (v == null)
+         throw new IllegalArgumentException("Checksum is null");
+
+      String value = v.trim().toLowerCase(Locale.US);
+
+      if (!CHECKSUM_AUTO.equals(value) && !CHECKSUM_REQUIRED.equals(value) && !CHECKSUM_NONE.equals(value))
+         throw new IllegalArgumentException("Unsupported checksum policy: " + v);
+
+      this.checksum = value;
+   }
+
+   /**
+    * Get the checksum policy
+    * @return The value
+    */
+   public String getChecksum()
+   {
+      return checksum;
+   }
+
+   /**
+    * Set if partial transfers should be resumed; default <code>true</code>
+    * @param v The value
+    */
+   public void setResume(boolean v)
+   {
+      this.resume = v;
+   }
+
+   /**
+    * Are partial transfers resumed
+    * @return The value
+    */
+   public boolean isResume()
+   {
+      return resume;
+   }
+
+   /**
+    * Set if redirects should be followed; default <code>true</code>
+    * @param v The value
+    */
+   public void setFollowRedirects(boolean v)
+   {
+      this.followRedirects = v;
+   }
+
+   /**
+    * Are redirects followed
+    * @return The value
+    */
+   public boolean isFollowRedirects()
+   {
+      return followRedirects;
+   }
+
+   /**
+    * Set the connect timeout in milliseconds; default <code>10000</code>
+    * @param v The value
+    */
+   public void setConnectTimeout(int v)
+   {
+      this.connectTimeout = v;
+   }
+
+   /**
+    * Get the connect timeout
+    * @return The value
+    */
+   public int getConnectTimeout()
+   {
+      return connectTimeout;
+   }
+
+   /**
+    * Set the read timeout in milliseconds; default <code>30000</code>
+    * @param v The value
+    */
+   public void setReadTimeout(int v)
+   {
+      this.readTimeout = v;
+   }
+
+   /**
+    * Get the read timeout
+    * @return The value
+    */
+   public int getReadTimeout()
+   {
+      return readTimeout;
+   }
+
+   /**
+    * Get the time from the request to the response of the last download
+    * @return The value in nanoseconds; <code>0</code> if there was no response
+    */
+   public long getResponseTime()
+   {
+      return responseTime;
+   }
+
+   /**
+    * Didn't the resource of the last download exist on the server
+    * @return True if the server responded that it doesn't exist; otherwise false
+    */
+   public boolean isMissing()
+   {
+      return missing;
    }
 
    /**
@@ -50,64 +234,486 @@ public class Http implements Protocol
     */
    public boolean download(String path, File target)
    {
-      boolean redirect = HttpURLConnection.getFollowRedirects();
-      HttpURLConnection.setFollowRedirects(true);
+      File part = new File(target.getParentFile(), target.getName() + PART);
+
+      responseTime = 0L;
+      missing = false;
 
-      InputStream is = null;
-      OutputStream os = null;
       try
       {
-         URL u = new URL(path);
-         URLConnection connection = u.openConnection();
-
-         connection.connect();
-
-         is = new BufferedInputStream(connection.getInputStream(), 8192);
-         os = new BufferedOutputStream(new FileOutputStream(target), 8192);
+         if (!transfer(path, part))
+            return false;
 
-         int b;
-         while ((b = is.read()) != -1)
+         if (!verify(path, part, target))
          {
-            os.write(b);
+            delete(part);
+            delete(new File(part.getPath() + VALIDATOR));
+            return false;
          }
 
-         os.flush();
+         delete(new File(part.getPath() + VALIDATOR));
+
+         if (target.exists() && !target.delete())
+            throw new IOException("Unable to delete " + target.getAbsolutePath());
+
+         if (!part.renameTo(target))
+            throw new IOException("Unable to rename " + part.getAbsolutePath() + " to " + target.getAbsolutePath());
 
          return true;
       }
       catch (Throwable t)
       {
-         // Nothing to do
+         log.log(Level.WARNING, "Download of " + path + " failed: " + t.getMessage(), t);
+
+         if (!resume)
+         {
+            delete(part);
+            delete(new File(part.getPath() + VALIDATOR));
+         }
       }
-      finally
+
+      return false;
+   }
+
+   /**
+    * Transfer a resource into a file, resuming from the current length of the file
+    * @param path The path
+    * @param file The file
+    * @return True if the resource was transferred; false if it doesn't exist on the server
+    * @exception IOException Thrown if the transfer fails
+    */
+   private boolean transfer(String path, File file) throws IOException
+   {
+      File validatorFile = new File(file.getPath() + VALIDATOR);
+      long offset = resume && file.exists() ? file.length() : 0L;
+      String validator = offset > 0L ? readLine(validatorFile) : null;
+
+      // A part which can't be validated against the resource is transferred again
+      if (validator == null)
+         offset = 0L;
+
+      long start = System.nanoTime();
+      URLConnection connection = open(path);
+      HttpURLConnection http = connection instanceof HttpURLConnection ? (HttpURLConnection)connection : null;
+
+      if (offset > 0L && http != null)
+      {
+         http.setRequestProperty("Range", "bytes=" + offset + "-");
+         http.setRequestProperty("If-Range", validator);
+      }
+
+      connection.connect();
+
+      InputStream is = null;
+      FileOutputStream os = null;
+      boolean complete = false;
+      try
       {
-         if (is != null)
+         if (http != null)
          {
-            try
+            int code = http.getResponseCode();
+            responseTime = System.nanoTime() - start;
+
+            if (code == HttpURLConnection.HTTP_PARTIAL)
             {
-               is.close();
+               if (offset == 0L || offset != getRangeStart(http.getHeaderField("Content-Range")))
+               {
+                  // Not the range that was asked for; start over
+                  http.disconnect();
+                  delete(file);
+                  delete(validatorFile);
+                  return transfer(path, file);
+               }
+
+               if (log.isLoggable(Level.FINE))
+                  log.fine("Resuming " + path + " at " + offset);
             }
-            catch (IOException ignore)
+            else if (code == 416)
             {
-               // Ignore
+               // The part is larger than the resource; start over
+               http.disconnect();
+               delete(file);
+               delete(validatorFile);
+               return transfer(path, file);
             }
-         }
-         if (os != null)
-         {
-            try
+            else if (code >= 200 && code < 300)
             {
-               os.close();
+               // The whole resource, also when it changed since the part was transferred
+               offset = 0L;
+               writeValidator(validatorFile, http);
             }
-            catch (IOException ignore)
+            else
             {
-               // Ignore
+               if (log.isLoggable(Level.FINE))
+                  log.fine("Download of " + path + ": HTTP " + code);
+
+               missing = code == HttpURLConnection.HTTP_NOT_FOUND || code == HttpURLConnection.HTTP_GONE;
+               return false;
             }
          }
+         else
+         {
+            responseTime = System.nanoTime() - start;
+            offset = 0L;
+         }
+
+         long length = connection.getContentLength();
+         if (length >= 0L)
+            length += offset;
+
+         is = connection.getInputStream();
+         os = new FileOutputStream(file, offset > 0L);
+
+         ReadableByteChannel in = Channels.newChannel(is);
+         FileChannel out = os.getChannel();
+
+         long position = offset;
+         long n;
+         while ((n = out.transferFrom(in, position, CHUNK)) > 0L)
+         {
+            position += n;
+         }
+
+         out.force(false);
+
+         if (length >= 0L && position != length)
+            throw new IOException("Incomplete transfer of " + path + ": " + position + " of " + length + " bytes");
 
-         HttpURLConnection.setFollowRedirects(redirect);
+         complete = true;
+         return true;
       }
+      finally
+      {
+         close(is);
+         close(os);
 
-      return false;
+         // A connection where the response was read completely is kept alive for the next download
+         if (http != null && !complete)
+            http.disconnect();
+      }
+   }
+
+   /**
+    * Get the start of a Content-Range header
+    * @param contentRange The header; may be <code>null</code>
+    * @return The start; <code>-1</code> if the header isn't a byte range
+    */
+   private static long getRangeStart(String contentRange)
+   {
+      if (contentRange == null)
+         return -1L;
+
+      String value = contentRange.trim();
+      if (!value.startsWith("bytes "))
+         return -1L;
+
+      int dash = value.indexOf('-');
+      if (dash == -1)
+         return -1L;
+
+      try
+      {
+         return Long.parseLong(value.substring(6, dash).trim());
+      }
+      catch (NumberFormatException nfe)
+      {
+         return -1L;
+      }
+   }
+
+   /**
+    * Keep the validator of a response, which a range request of a later resume is conditional on.
+    * A strong ETag is used, otherwise the last modified; a weak ETag can't be used for a range request
+    * @param file The file of the validator
+    * @param http The response
+    */
+   private void writeValidator(File file, HttpURLConnection http)
+   {
+      String validator = http.getHeaderField("ETag");
+
+      if (validator == null || validator.startsWith("W/"))
+         validator = http.getHeaderField("Last-Modified");
+
+      delete(file);
+
+      if (!resume || validator == null)
+         return;
+
+      Writer w = null;
+      try
+      {
+         w = new OutputStreamWriter(new FileOutputStream(file), "US-ASCII");
+         w.write(validator);
+         w.flush();
+      }
+      catch (IOException ioe)
+      {
+         log.fine("Unable to write the validator " + file.getAbsolutePath());
+      }
+      finally
+      {
+         close(w);
+      }
+   }
+
+   /**
+    * Read the first line of a file
+    * @param file The file
+    * @return The line; <code>null</code> if the file doesn't exist, or is empty
+    */
+   private static String readLine(File file)
+   {
+      if (!file.isFile())
+         return null;
+
+      BufferedReader r = null;
+      try
+      {
+         r = new BufferedReader(new InputStreamReader(new FileInputStream(file), "US-ASCII"));
+
+         String line = r.readLine();
+
+         return line != null && line.trim().length() > 0 ? line.trim() : null;
+      }
+      catch (IOException ioe)
+      {
+         return null;
+      }
+      finally
+      {
+         close(r);
+      }
+   }
+
+   /**
+    * Verify a file against the checksum published by the server
+    * @param path The path of the resource
+    * @param file The file
+    * @param target The target the file is installed as
+    * @return True if the file is verified, or there is nothing to verify; otherwise false
+    * @exception IOException Thrown if the file can't be read
+    */
+   private boolean verify(String path, File file, File target) throws IOException
+   {
+      if (CHECKSUM_NONE.equals(checksum))
+         return true;
+
+      String algorithm = "SHA-1";
+      String expected = fetchChecksum(path + SHA1);
+
+      if (expected == null)
+      {
+         algorithm = "MD5";
+         expected = fetchChecksum(path + ".md5");
+      }
+
+      if (expected == null)
+      {
+         if (CHECKSUM_REQUIRED.equals(checksum))
+         {
+            log.warning("No checksum published for " + path);
+            return false;
+         }
+
+         return true;
+      }
+
+      String actual = digest(file, algorithm);
+
+      if (!expected.equalsIgnoreCase(actual))
+      {
+         log.warning("Checksum mismatch for " + path + " (" + algorithm + "): expected " + expected +
+                     ", was " + actual);
+         return false;
+      }
+
+      if ("SHA-1".equals(algorithm))
+         writeChecksum(target, actual);
+
+      return true;
+   }
+
+   /**
+    * Keep the SHA-1 checksum of a file next to it
+    * @param file The file
+    * @param sha1 The checksum
+    */
+   private static void writeChecksum(File file, String sha1)
+   {
+      Writer w = null;
+      try
+      {
+         w = new OutputStreamWriter(new FileOutputStream(new File(file.getPath() + SHA1)), "US-ASCII");
+         w.write(sha1);
+         w.flush();
+      }
+      catch (IOException ioe)
+      {
+         log.fine("Unable to write the checksum of " + file.getAbsolutePath());
+      }
+      finally
+      {
+         close(w);
+      }
+   }
+
+   /**
+    * Get the SHA-1 checksum kept next to a file by a verified download
+    * @param file The file
+    * @return The checksum; <code>null</code> if there is none, or it is older than the file
+    */
+   static String readChecksum(File file)
+   {
+      File f = new File(file.getPath() + SHA1);
+
+      if (f.lastModified() < file.lastModified())
+         return null;
+
+      return readLine(f);
+   }
+
+   /**
+    * Fetch a checksum
+    * @param path The path of the checksum
+    * @return The checksum; <code>null</code> if not published
+    */
+   private String fetchChecksum(String path)
+   {
+      BufferedReader r = null;
+      HttpURLConnection http = null;
+      boolean complete = false;
+      try
+      {
+         URLConnection connection = open(path);
+
+         if (connection instanceof HttpURLConnection)
+         {
+            http = (HttpURLConnection)connection;
+
+            if (http.getResponseCode() != HttpURLConnection.HTTP_OK)
+               return null;
+         }
+
+         r = new BufferedReader(new InputStreamReader(connection.getInputStream(), "US-ASCII"));
+
+         String line = r.readLine();
+         complete = true;
+
+         if (line == null)
+            return null;
+
+         // The checksum may be followed by the name of the file
+         line = line.trim();
+         int space = line.indexOf(' ');
+         if (space != -1)
+            line = line.substring(0, space);
+
+         return line.length() > 0 ? line : null;
+      }
+      catch (IOException ioe)
+      {
+         return null;
+      }
+      finally
+      {
+         close(r);
+
+         if (http != null && !complete)
+            http.disconnect();
+      }
+   }
+
+   /**
+    * Open a connection
+    * @param path The path
+    * @return The connection
+    * @exception IOException Thrown if the connection can't be opened
+    */
+   private URLConnection open(String path) throws IOException
+   {
+      URLConnection connection = new URL(path).openConnection();
+
+      connection.setConnectTimeout(connectTimeout);
+      connection.setReadTimeout(readTimeout);
+      connection.setUseCaches(false);
+
+      if (connection instanceof HttpURLConnection)
+         ((HttpURLConnection)connection).setInstanceFollowRedirects(followRedirects);
+
+      return connection;
+   }
+
+   /**
+    * Get the digest of a file
+    * @param file The file
+    * @param algorithm The algorithm
+    * @return The digest in hex
+    * @exception IOException Thrown if the file can't be read
+    */
+   static String digest(File file, String algorithm) throws IOException
+   {
+      FileInputStream fis = null;
+      try
+      {
+         MessageDigest md = MessageDigest.getInstance(algorithm);
+
+         fis = new FileInputStream(file);
+         FileChannel fc = fis.getChannel();
+         ByteBuffer buffer = ByteBuffer.allocate(65536);
+
+         while (fc.read(buffer) != -1)
+         {
+            buffer.flip();
+            md.update(buffer);
+            buffer.clear();
+         }
+
+         StringBuilder sb = new StringBuilder();
+         for (byte b : md.digest())
+         {
+            sb.append(Character.forDigit((b >> 4) & 0xF, 16));
+            sb.append(Character.forDigit(b & 0xF, 16));
+         }
+
+         return sb.toString();
+      }
+      catch (java.security.NoSuchAlgorithmException nsae)
+      {
+         throw new IOException(nsae.getMessage(), nsae);
+      }
+      finally
+      {
+         close(fis);
+      }
+   }
+
+   /**
+    * Delete a file
+    * @param file The file
+    */
+   private static void delete(File file)
+   {
+      if (file.exists() && !file.delete())
+         log.fine("Unable to delete " + file.getAbsolutePath());
+   }
+
+   /**
+    * Close a resource
+    * @param c The resource
+    */
+   private static void close(java.io.Closeable c)
+   {
+      if (c != null)
+      {
+         try
+         {
+            c.close();
+         }
+         catch (IOException ignore)
+         {
+            // Ignore
+         }
+      }
    }
 
    /**
@@ -25,6 +25,7 @@ import com.github.fungal.bootstrap.ServerType;
 import com.github.fungal.spi.netboot.Protocol;
 
 import java.io.File;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
@@ -81,28 +82,42 @@ public class Maven extends AbstractRepository
       if (result.size() == 0)
          return result;
 
+      List<DependencyType> dependencies = getDependencies(dependency, repository);
+
+      Iterator<DependencyType> dit = dependencies.iterator();
+      while (dit.hasNext())
+      {
+         DependencyType dep = dit.next();
+         List<DependencyType> l = downloadArtifact(servers, protocolMap, dep, repository, tracker);
+         result.addAll(l);
+      }
+
+      return result;
+   }
+
+   /**
+    * Get the dependencies of a pom in the repository
+    * @param pom The pom
+    * @param repository The repository
+    * @return The dependencies
+    * @exception ResolveException Thrown if the pom can't be parsed
+    */
+   public List<DependencyType> getDependencies(DependencyType pom, File repository) throws ResolveException
+   {
       try
       {
          MavenUnmarshaller unmarshaller = new MavenUnmarshaller();
-         File f = new File(repository, getPath(dependency));
+         File f = new File(repository, getPath(pom));
          List<DependencyType> dependencies = unmarshaller.unmarshal(f.toURI().toURL());         
 
-         if (dependencies != null && dependencies.size() > 0)
-         {
-            Iterator<DependencyType> dit = dependencies.iterator();
-            while (dit.hasNext())
-            {
-               DependencyType dep = dit.next();
-               List<DependencyType> l = downloadArtifact(servers, protocolMap, dep, repository, tracker);
-               result.addAll(l);
-            }
-         }
+         if (dependencies == null)
+            return Collections.emptyList();
 
-         return result;
+         return dependencies;
       }
       catch (Throwable t)
       {
-         throw new ResolveException("The dependency couldn't be parsed", dependency);
+         throw new ResolveException("The dependency couldn't be parsed", pom);
       }
    }
 }
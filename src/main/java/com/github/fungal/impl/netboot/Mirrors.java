@@ -0,0 +1,202 @@
+/*
+ * The Fungal kernel project
+ * Copyright (C) 2014
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package com.github.fungal.impl.netboot;
+
+import com.github.fungal.bootstrap.ServerType;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The servers of a netboot sequence. The number of concurrent downloads from a
+ * server is bounded, so the connections are kept alive and reused, and the servers
+ * are ordered by their observed latency, so the mirror that responds the fastest
+ * is tried first and the others are fallen over to. Only a failed connection or
+ * transfer moves a server back; a server which doesn't have an artifact has responded
+ */
+public class Mirrors
+{
+   /** The minimum penalty of a failed download in nanoseconds */
+   private static final long FAILURE_PENALTY = 1000000L;
+
+   /** The number of connections per server */
+   private int connections;
+
+   /** The state of the servers */
+   private ConcurrentMap<String, State> states;
+
+   /**
+    * Constructor
+    * @param connections The number of connections per server
+    */
+   public Mirrors(int connections)
+   {
+      if (connections <= 0)
+         throw new IllegalArgumentException("Connections must be positive");
+
+      this.connections = connections;
+      this.states = new ConcurrentHashMap<String, State>();
+   }
+
+   /**
+    * Order the servers by latency; servers that haven't been used yet are first, in their configured order
+    * @param servers The servers
+    * @return The ordered servers
+    */
+   public List<ServerType> order(final List<ServerType> servers)
+   {
+      List<ServerType> result = new ArrayList<ServerType>(servers);
+
+      Collections.sort(result, new Comparator<ServerType>()
+      {
+         public int compare(ServerType o1, ServerType o2)
+         {
+            long l1 = getState(o1).latency.get();
+            long l2 = getState(o2).latency.get();
+
+            if (l1 != l2)
+               return l1 < l2 ? -1 : 1;
+
+            return servers.indexOf(o1) - servers.indexOf(o2);
+         }
+      });
+
+      return result;
+   }
+
+   /**
+    * Acquire a connection to a server
+    * @param server The server
+    * @exception InterruptedException Thrown if interrupted
+    */
+   public void acquire(ServerType server) throws InterruptedException
+   {
+      getState(server).permits.acquire();
+   }
+
+   /**
+    * Release a connection to a server
+    * @param server The server
+    */
+   public void release(ServerType server)
+   {
+      getState(server).permits.release();
+   }
+
+   /**
+    * A server responded to a download, whether or not it had the artifact
+    * @param server The server
+    * @param nanos The time to the response in nanoseconds
+    */
+   public void completed(ServerType server, long nanos)
+   {
+      record(server, nanos);
+   }
+
+   /**
+    * A connection or transfer from a server failed, which moves the server back in the order
+    * @param server The server
+    * @param nanos The time to the failure in nanoseconds
+    */
+   public void failed(ServerType server, long nanos)
+   {
+      long penalty = Math.max(Math.max(nanos, getLatency(server)), FAILURE_PENALTY) * 2L;
+
+      record(server, penalty);
+   }
+
+   /**
+    * Get the latency of a server
+    * @param server The server
+    * @return The moving average of the response time in nanoseconds; <code>0</code> if unknown
+    */
+   public long getLatency(ServerType server)
+   {
+      return getState(server).latency.get();
+   }
+
+   /**
+    * Record a sample in the moving average of a server
+    * @param server The server
+    * @param nanos The sample in nanoseconds
+    */
+   private void record(ServerType server, long nanos)
+   {
+      AtomicLong latency = getState(server).latency;
+
+      long current = latency.get();
+      long value = current == 0L ? nanos : (current * 3L + nanos) / 4L;
+
+      while (!latency.compareAndSet(current, value))
+      {
+         current = latency.get();
+         value = current == 0L ? nanos : (current * 3L + nanos) / 4L;
+      }
+   }
+
+   /**
+    * Get the state of a server
+    * @param server The server
+    * @return The state
+    */
+   private State getState(ServerType server)
+   {
+      State state = states.get(server.getValue());
+
+      if (state == null)
+      {
+         State newState = new State(connections);
+         state = states.putIfAbsent(server.getValue(), newState);
+         if (state == null)
+            state = newState;
+      }
+
+      return state;
+   }
+
+   /**
+    * The state of a server
+    */
+   static class State
+   {
+      /** The connections */
+      private Semaphore permits;
+
+      /** The moving average of the response time */
+      private AtomicLong latency;
+
+      /**
+       * Constructor
+       * @param connections The number of connections
+       */
+      State(int connections)
+      {
+         this.permits = new Semaphore(connections, true);
+         this.latency = new AtomicLong(0L);
+      }
+   }
+}
@@ -20,6 +20,8 @@
 
 package com.github.fungal.impl.netboot;
 
+import com.github.fungal.api.configuration.ArtifactPlacement;
+import com.github.fungal.api.metrics.Metrics;
 import com.github.fungal.api.util.FileUtil;
 import com.github.fungal.api.util.Injection;
 import com.github.fungal.bootstrap.Bootstrap;
@@ -31,19 +33,25 @@ import com.github.fungal.spi.netboot.Protocol;
 
 import java.io.File;
 import java.io.IOException;
-import java.util.ArrayList;
+import java.nio.file.Files;
+import java.util.Collections;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 /**
  * Netboot functionality
  */
 public class Netboot
 {
+   /** The logger */
+   private static Logger log = Logger.getLogger(Netboot.class.getName());
+
    /**
     * Constructor
     */
@@ -57,13 +65,19 @@ public class Netboot
     * @param bootstrap The bootstrap descriptor
     * @param repositoryDirectory The repository directory
     * @param rootDirectory The root directory
+    * @param metrics The metrics
+    * @param connections The number of connections per server
+    * @param placement How the artifacts are installed
     * @return True if netboot was active; otherwise false
     * @exception ResolveException Thrown if an artifact can't be resolved
     */
    public static boolean resolve(ExecutorService executorService,
                                  Bootstrap bootstrap, 
                                  File repositoryDirectory,
-                                 File rootDirectory)
+                                 File rootDirectory,
+                                 Metrics metrics,
+                                 int connections,
+                                 ArtifactPlacement placement)
       throws ResolveException
    {
       if (bootstrap != null &&
@@ -83,11 +97,29 @@ public class Netboot
                                        " doesn't exist");
          }
 
+         long start = System.nanoTime();
          try
          {
-            DependencyTracker tracker = new DependencyTracker();
             List<DependencyType> dependencies = bootstrap.getDependencies().getDependency();
-            List<ProtocolType> protocols = bootstrap.getProtocols().getProtocol();
+
+            // A warm boot only has to verify the index
+            File indexFile = new File(repositoryDirectory, ArtifactIndex.FILE);
+            ArtifactIndex previous = ArtifactIndex.load(indexFile);
+
+            if (previous != null)
+            {
+               if (previous.verify(dependencies, repositoryDirectory, rootDirectory))
+               {
+                  metrics.getCounter("netboot.index.hits").increment();
+                  return true;
+               }
+
+               metrics.getCounter("netboot.index.misses").increment();
+            }
+
+            DependencyTracker tracker = new DependencyTracker();
+            List<ProtocolType> protocols = bootstrap.getProtocols() != null ?
+               bootstrap.getProtocols().getProtocol() : Collections.<ProtocolType>emptyList();
             List<ServerType> servers = bootstrap.getServers().getServer();
 
             Map<String, Protocol> protocolMap = 
@@ -129,30 +161,21 @@ public class Netboot
                protocolMap.put("http", new Http());
             }
 
-            List<DependencyResolver> dependencyResolvers = new ArrayList<DependencyResolver>(dependencies.size());
-            final CountDownLatch dependencyLatch = new CountDownLatch(dependencies.size());
+            ArtifactIndex index = new ArtifactIndex(dependencies);
 
-            for (DependencyType dependency : dependencies)
-            {
-               DependencyResolver dependencyResolver = 
-                  new DependencyResolver(servers, protocolMap, dependency, repositoryDirectory, 
-                                         rootDirectory, tracker, dependencyLatch);
+            Resolver resolver = new Resolver(executorService, servers, protocolMap, repositoryDirectory,
+                                             rootDirectory, tracker, new Mirrors(connections), metrics,
+                                             previous, index, placement);
 
-               dependencyResolvers.add(dependencyResolver);
+            resolver.resolve(dependencies);
 
-               executorService.execute(dependencyResolver);
+            try
+            {
+               index.write(indexFile);
             }
-
-            dependencyLatch.await();
-
-            Iterator<DependencyResolver> it = dependencyResolvers.iterator();
-            while (it.hasNext())
+            catch (IOException ioe)
             {
-               DependencyResolver resolver = it.next();
-               if (resolver.getResolveException() != null)
-               {
-                  throw resolver.getResolveException();
-               }
+               log.log(Level.WARNING, "Unable to write the netboot index: " + ioe.getMessage(), ioe);
             }
 
             return true;
@@ -166,25 +189,33 @@ public class Netboot
          {
             throw new ResolveException("Exception while resolving dependencies", t);
          }
+         finally
+         {
+            metrics.getHistogram("netboot.resolve.time").recordSince(start);
+         }
       }
 
       return false;
    }
 
    /**
-    * Dependency resolver
+    * Resolver for the dependency graph. Each artifact is a task on the executor service,
+    * and the dependencies of a pom are added to the graph once the pom is downloaded,
+    * so all artifacts of the graph are fetched concurrently. The tracker makes sure
+    * that an artifact is only fetched once, and the mirrors bound the number of
+    * connections to each server
     */
-   static class DependencyResolver implements Runnable
+   static class Resolver
    {
+      /** The executor service */
+      private ExecutorService executorService;
+
       /** The servers */
       private List<ServerType> servers;
 
       /** The supported protocols */
       private Map<String, Protocol> protocolMap;
 
-      /** The dependency */
-      private DependencyType dependency;
-
       /** The repository directory */
       private File repositoryDirectory;
 
@@ -194,95 +225,271 @@ public class Netboot
       /** The tracker */
       private DependencyTracker tracker;
 
+      /** The mirrors */
+      private Mirrors mirrors;
+
+      /** The metrics */
+      private Metrics metrics;
+
+      /** The index of the previous netboot sequence */
+      private ArtifactIndex previous;
+
+      /** The index */
+      private ArtifactIndex index;
+
+      /** The placement */
+      private ArtifactPlacement placement;
+
+      /** Are links supported */
+      private volatile boolean links;
+
+      /** The repository */
+      private Maven repository;
+
+      /** The number of artifacts in progress */
+      private AtomicInteger pending;
+
       /** The latch */
       private CountDownLatch latch;
 
       /** ResolveException */
-      private ResolveException resolveException;
+      private volatile ResolveException resolveException;
 
       /**
        * Constructor
+       * @param executorService The executor service
        * @param servers The servers
        * @param protocolMap The protocols
-       * @param dependency The dependency
        * @param repositoryDirectory The repository directory
        * @param rootDirectory The root directory
        * @param tracker The dependency tracker
-       * @param latch The latch
+       * @param mirrors The mirrors
+       * @param metrics The metrics
+       * @param previous The index of the previous netboot sequence; may be <code>null</code>
+       * @param index The index
+       * @param placement How the artifacts are installed
        */
-      public DependencyResolver(final List<ServerType> servers,
-                                final Map<String, Protocol> protocolMap,
-                                final DependencyType dependency,
-                                final File repositoryDirectory,
-                                final File rootDirectory,
-                                final DependencyTracker tracker,
-                                final CountDownLatch latch)
+      Resolver(ExecutorService executorService,
+               List<ServerType> servers,
+               Map<String, Protocol> protocolMap,
+               File repositoryDirectory,
+               File rootDirectory,
+               DependencyTracker tracker,
+               Mirrors mirrors,
+               Metrics metrics,
+               ArtifactIndex previous,
+               ArtifactIndex index,
+               ArtifactPlacement placement)
       {
+         this.executorService = executorService;
          this.servers = servers;
          this.protocolMap = protocolMap;
-         this.dependency = dependency;
          this.repositoryDirectory = repositoryDirectory;
          this.rootDirectory = rootDirectory;
          this.tracker = tracker;
-         this.latch = latch;
+         this.mirrors = mirrors;
+         this.metrics = metrics;
+         this.previous = previous;
+         this.index = index;
+         this.placement = placement != null ? placement : ArtifactPlacement.COPY;
+         this.links = this.placement != ArtifactPlacement.COPY;
+         this.repository = new Maven();
+         this.pending = new AtomicInteger(1);
+         this.latch = new CountDownLatch(1);
          this.resolveException = null;
       }
 
       /**
-       * Run
+       * Resolve the dependencies, and all their transitive dependencies
+       * @param dependencies The dependencies
+       * @exception ResolveException Thrown if an artifact can't be resolved
+       * @exception InterruptedException Thrown if interrupted
        */
-      public void run()
+      void resolve(List<DependencyType> dependencies) throws ResolveException, InterruptedException
       {
-         try
+         for (DependencyType dependency : dependencies)
+         {
+            submit(dependency);
+         }
+
+         done();
+         latch.await();
+
+         if (resolveException != null)
+            throw resolveException;
+      }
+
+      /**
+       * Add an artifact to the graph, unless it is already there
+       * @param dependency The dependency
+       */
+      private void submit(final DependencyType dependency)
+      {
+         if (!tracker.track(dependency))
+            return;
+
+         pending.incrementAndGet();
+
+         executorService.execute(new Runnable()
          {
-            Repository repository = new Maven();
-            List<DependencyType> artifacts = repository.resolve(servers, 
-                                                                protocolMap, 
-                                                                dependency, 
-                                                                repositoryDirectory, 
-                                                                tracker);
-
-            if (artifacts != null)
+            public void run()
             {
-               FileUtil fileUtil = new FileUtil();
+               try
+               {
+                  fetch(dependency);
+               }
+               finally
+               {
+                  done();
+               }
+            }
+         });
+      }
+
+      /**
+       * An artifact is done
+       */
+      private void done()
+      {
+         if (pending.decrementAndGet() == 0)
+            latch.countDown();
+      }
+
+      /**
+       * Fetch an artifact, add the dependencies of a pom to the graph, and install the artifact
+       * @param dependency The dependency
+       */
+      private void fetch(DependencyType dependency)
+      {
+         long start = System.nanoTime();
+         try
+         {
+            File src = repository.fetch(servers, protocolMap, dependency, repositoryDirectory, mirrors);
 
-               for (DependencyType dependency : artifacts)
+            if ("pom".equals(dependency.getExt()))
+            {
+               for (DependencyType dep : repository.getDependencies(dependency, repositoryDirectory))
                {
-                  File src = repository.getFile(dependency, repositoryDirectory);
-                  File dest = new File(rootDirectory, 
-                                       dependency.getTarget().replace('/', File.separatorChar) + File.separatorChar +
-                                       dependency.getArtifact() + "." + dependency.getExt());
+                  submit(dep);
+               }
+            }
 
-                  if (dest.getParentFile() != null && !dest.getParentFile().exists())
-                  {
-                     if (!dest.getParentFile().mkdirs())
-                        throw new ResolveException("Directory " + dest.getParentFile().getAbsolutePath() + 
-                                                   " couldn't be created");
-                  }
-                  
-                  fileUtil.copy(src, dest);
+            String target = dependency.getTarget().replace('/', File.separatorChar) + File.separatorChar +
+               dependency.getArtifact() + "." + dependency.getExt();
+            File dest = new File(rootDirectory, target);
+
+            if (previous != null && previous.isCurrent(dependency, src, dest))
+            {
+               metrics.getCounter("netboot.index.skipped").increment();
+            }
+            else
+            {
+               if (dest.getParentFile() != null && !dest.getParentFile().exists())
+               {
+                  if (!dest.getParentFile().mkdirs() && !dest.getParentFile().exists())
+                     throw new ResolveException("Directory " + dest.getParentFile().getAbsolutePath() + 
+                                                " couldn't be created");
                }
+
+               place(src, dest);
             }
+
+            index.record(dependency, repository.getPath(dependency), src, target, dest, previous);
+
+            metrics.getCounter("netboot.artifacts").increment();
          }
          catch (IOException ioe)
          {
-            resolveException = new ResolveException("IOException while resolving", ioe);
+            failed(new ResolveException("IOException while resolving", ioe));
          }
          catch (ResolveException re)
          {
-            resolveException = re;
+            failed(re);
+         }
+         catch (Throwable t)
+         {
+            failed(new ResolveException("Error while resolving " + dependency.getArtifact(), t));
          }
 
-         latch.countDown();
+         metrics.getHistogram("netboot.dependency.time").recordSince(start);
       }
 
       /**
-       * Get resolve exception
-       * @return null if no error; otherwise the exception
+       * Install an artifact. A link is created if requested, and supported; otherwise the artifact is copied
+       * @param src The artifact in the repository
+       * @param dest The destination
+       * @exception IOException Thrown if the artifact can't be installed
        */
-      public ResolveException getResolveException()
+      private void place(File src, File dest) throws IOException
       {
-         return resolveException;
+         // The destination may be a link to the repository
+         Files.deleteIfExists(dest.toPath());
+
+         if (links)
+         {
+            try
+            {
+               if (placement == ArtifactPlacement.HARD_LINK)
+               {
+                  Files.createLink(dest.toPath(), src.toPath());
+               }
+               else
+               {
+                  Files.createSymbolicLink(dest.toPath(), src.getAbsoluteFile().toPath());
+               }
+
+               metrics.getCounter("netboot.placement.links").increment();
+               return;
+            }
+            catch (UnsupportedOperationException uoe)
+            {
+               fallback(uoe);
+            }
+            catch (SecurityException se)
+            {
+               fallback(se);
+            }
+            catch (IOException ioe)
+            {
+               fallback(ioe);
+            }
+         }
+
+         FileUtil fileUtil = new FileUtil();
+         fileUtil.copy(src, dest);
+
+         if (!dest.setLastModified(src.lastModified()))
+            log.fine("Unable to set last modified on " + dest.getAbsolutePath());
+
+         metrics.getCounter("netboot.placement.copies").increment();
+      }
+
+      /**
+       * Links aren't supported; fall back to copies for the rest of the netboot sequence
+       * @param t The cause
+       */
+      private void fallback(Throwable t)
+      {
+         if (links)
+         {
+            links = false;
+            log.log(Level.WARNING, "Unable to create " + placement + " in " + rootDirectory.getAbsolutePath() +
+                    ", copying the artifacts instead: " + t.getMessage());
+         }
+
+         metrics.getCounter("netboot.placement.fallbacks").increment();
+      }
+
+      /**
+       * An artifact failed
+       * @param re The exception
+       */
+      private void failed(ResolveException re)
+      {
+         metrics.getCounter("netboot.failures").increment();
+
+         if (resolveException == null)
+            resolveException = re;
       }
    }
 }
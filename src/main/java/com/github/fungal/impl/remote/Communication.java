@@ -22,10 +22,13 @@ package com.github.fungal.impl.remote;
 
 import com.github.fungal.api.remote.Command;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.PrintWriter;
+import java.io.SequenceInputStream;
 import java.io.Serializable;
 import java.io.StringWriter;
 import java.net.Socket;
@@ -50,15 +53,30 @@ public class Communication implements Runnable
    /** The socket */
    private Socket socket;
 
+   /** The data already read from the socket */
+   private byte[] header;
+
    /**
     * Constructor
     * @param cs The communication server
     * @param socket The socket
     */
    public Communication(CommunicationServer cs, Socket socket)
+   {
+      this(cs, socket, null);
+   }
+
+   /**
+    * Constructor
+    * @param cs The communication server
+    * @param socket The socket
+    * @param header The data already read from the socket; <code>null</code> if none
+    */
+   public Communication(CommunicationServer cs, Socket socket, byte[] header)
    {
       this.cs = cs;
       this.socket = socket;
+      this.header = header;
    }
 
    /**
@@ -68,7 +86,12 @@ public class Communication implements Runnable
    {
       try
       {
-         ObjectInputStream ois = new ObjectInputStream(socket.getInputStream());
+         InputStream is = socket.getInputStream();
+
+         if (header != null)
+            is = new SequenceInputStream(new ByteArrayInputStream(header), is);
+
+         ObjectInputStream ois = new ObjectInputStream(is);
 
          String commandName = ois.readUTF();
          int length = ois.readInt();
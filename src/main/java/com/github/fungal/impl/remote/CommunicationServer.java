@@ -21,25 +21,49 @@
 package com.github.fungal.impl.remote;
 
 import com.github.fungal.api.remote.Command;
+import com.github.fungal.api.remote.Invocation;
 import com.github.fungal.impl.KernelImpl;
 
 import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Serializable;
+import java.io.StringWriter;
 import java.net.InetSocketAddress;
-import java.net.ServerSocket;
-import java.net.Socket;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
- * The communication server
+ * The communication server.
+ *
+ * The server is driven by a selector, and supports both the legacy protocol with one
+ * command per connection, and the multiplexed protocol with persistent connections
+ * and several commands in flight.
  * @author <a href="mailto:jesper.pedersen@comcast.net">Jesper Pedersen</a>
  */
 public class CommunicationServer implements Runnable
 {
+   /** The subscribe operation */
+   public static final String SUBSCRIBE = "subscribe";
+
+   /** The unsubscribe operation */
+   public static final String UNSUBSCRIBE = "unsubscribe";
+
    /** The logger */
    private Logger log = Logger.getLogger(CommunicationServer.class.getName());
 
@@ -58,12 +82,21 @@ public class CommunicationServer implements Runnable
    /** Is the server running ? */
    private AtomicBoolean running;
 
-   /** The server socket */
-   private ServerSocket ss;
+   /** The server socket channel */
+   private ServerSocketChannel ssc;
+
+   /** The selector */
+   private Selector selector;
+
+   /** Connections that needs their interest set updated */
+   private Queue<Connection> pending;
 
    /** The available commands */
    private ConcurrentMap<String, Command> commands;
 
+   /** The event subscriptions */
+   private List<Subscription> subscriptions;
+
    /**
     * Constructor
     * @param kernel The kernel
@@ -80,8 +113,11 @@ public class CommunicationServer implements Runnable
       this.bindAddress = bindAddress;
       this.bindPort = bindPort;
       this.running = new AtomicBoolean(false);
-      this.ss = null;
+      this.ssc = null;
+      this.selector = null;
+      this.pending = new ConcurrentLinkedQueue<Connection>();
       this.commands = new ConcurrentHashMap<String, Command>();
+      this.subscriptions = new CopyOnWriteArrayList<Subscription>();
    }
 
    /**
@@ -143,8 +179,12 @@ public class CommunicationServer implements Runnable
       {
          InetSocketAddress address = new InetSocketAddress(bindAddress, bindPort); 
 
-         ss = new ServerSocket();
-         ss.bind(address);
+         selector = Selector.open();
+
+         ssc = ServerSocketChannel.open();
+         ssc.configureBlocking(false);
+         ssc.socket().bind(address);
+         ssc.register(selector, SelectionKey.OP_ACCEPT);
 
          running.set(true);
       }
@@ -158,11 +198,14 @@ public class CommunicationServer implements Runnable
    {
       running.set(false);
 
-      if (ss != null)
+      if (selector != null)
+         selector.wakeup();
+
+      if (ssc != null)
       {
          try
          {
-            ss.close();
+            ssc.close();
          }
          catch (IOException ioe)
          {
@@ -172,25 +215,314 @@ public class CommunicationServer implements Runnable
       }
    }
 
+   /**
+    * Invoke a command
+    * @param invocation The invocation
+    * @return The result
+    */
+   public Serializable invoke(Invocation invocation)
+   {
+      if (SUBSCRIBE.equals(invocation.getCommand()) || UNSUBSCRIBE.equals(invocation.getCommand()))
+         return new IOException("Command requires a multiplexed connection: " + invocation.getCommand());
+
+      Command command = getCommand(invocation.getCommand());
+
+      if (command == null)
+         return new IOException("Unknown command: " + invocation.getCommand());
+
+      try
+      {
+         return command.invoke(invocation.getArguments());
+      }
+      catch (Throwable t)
+      {
+         StringWriter sw = new StringWriter();
+         if (t.getMessage() != null)
+         {
+            sw.write(t.getMessage());
+            sw.write('\n');
+         }
+
+         t.printStackTrace(new PrintWriter(sw));
+
+         return sw.toString();
+      }
+   }
+
+   /**
+    * Invoke a command from a multiplexed connection
+    * @param invocation The invocation
+    * @param connection The connection
+    * @param id The request id
+    * @return The result
+    */
+   Serializable invoke(Invocation invocation, Connection connection, long id)
+   {
+      Serializable[] args = invocation.getArguments();
+
+      if (SUBSCRIBE.equals(invocation.getCommand()))
+      {
+         if (args != null && (args.length > 2 ||
+                              (args.length > 0 && args[0] != null && !(args[0] instanceof String)) ||
+                              (args.length > 1 && args[1] != null && !(args[1] instanceof String))))
+            return new IllegalArgumentException("Unsupported argument list: " + Arrays.toString(args));
+
+         String types = args != null && args.length > 0 ? (String)args[0] : null;
+         String pattern = args != null && args.length > 1 ? (String)args[1] : null;
+
+         try
+         {
+            subscriptions.add(new Subscription(id, connection, types, pattern));
+         }
+         catch (Throwable t)
+         {
+            return new IllegalArgumentException("Invalid subscription: " + t.getMessage());
+         }
+
+         return Long.valueOf(id);
+      }
+      else if (UNSUBSCRIBE.equals(invocation.getCommand()))
+      {
+         if (args == null || args.length != 1 || !(args[0] instanceof Long))
+            return new IllegalArgumentException("Unsupported argument list: " + Arrays.toString(args));
+
+         long subscription = ((Long)args[0]).longValue();
+
+         for (Subscription s : subscriptions)
+         {
+            if (s.getConnection() == connection && s.getId() == subscription)
+            {
+               subscriptions.remove(s);
+               return Boolean.TRUE;
+            }
+         }
+
+         return Boolean.FALSE;
+      }
+
+      return invoke(invocation);
+   }
+
+   /**
+    * Remove all subscriptions for a connection
+    * @param connection The connection
+    */
+   void unsubscribe(Connection connection)
+   {
+      for (Subscription s : subscriptions)
+      {
+         if (s.getConnection() == connection)
+            subscriptions.remove(s);
+      }
+   }
+
+   /**
+    * Are there any event subscriptions
+    * @return True if there are subscriptions; otherwise false
+    */
+   public boolean hasSubscriptions()
+   {
+      return !subscriptions.isEmpty();
+   }
+
+   /**
+    * Publish an event to the subscribers
+    * @param type The type of the event
+    * @param name The name of the kernel, bean or deployment
+    * @param state The state
+    * @see com.github.fungal.api.remote.RemoteEvent
+    */
+   public void publish(String type, String name, String state)
+   {
+      if (subscriptions.isEmpty())
+         return;
+
+      long timestamp = System.currentTimeMillis();
+
+      for (Subscription s : subscriptions)
+      {
+         if (s.accepts(type, name))
+            s.deliver(type, name, state, timestamp);
+      }
+   }
+
+   /**
+    * Dispatch a request from a connection
+    * @param request The request
+    */
+   void dispatch(Runnable request)
+   {
+      kernel.getExecutorService().submit(request);
+   }
+
+   /**
+    * Wake up the selector in order to update the interest set of a connection
+    * @param connection The connection
+    */
+   void wakeup(Connection connection)
+   {
+      pending.add(connection);
+
+      Selector s = selector;
+      if (s != null)
+         s.wakeup();
+   }
+
    /**
     * Run
     */
    public void run()
    {
+      Map<Connection, byte[]> legacy = new HashMap<Connection, byte[]>(1);
+
       while (running.get())
       {
          try
          {
-            Socket socket = ss.accept();
+            selector.select();
+
+            Connection connection = pending.poll();
+            while (connection != null)
+            {
+               connection.updateInterest();
+               connection = pending.poll();
+            }
+
+            Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+            while (it.hasNext())
+            {
+               SelectionKey key = it.next();
+               it.remove();
+
+               if (key.isValid() && key.isAcceptable())
+               {
+                  accept();
+               }
+               else if (key.isValid())
+               {
+                  connection = (Connection)key.attachment();
+                  try
+                  {
+                     if (key.isReadable())
+                     {
+                        byte[] header = connection.read();
+                        if (header != null)
+                        {
+                           key.cancel();
+                           legacy.put(connection, header);
+                        }
+                     }
+
+                     if (key.isValid() && key.isWritable())
+                        connection.write();
+                  }
+                  catch (Throwable t)
+                  {
+                     if (trace)
+                        log.log(Level.FINEST, t.getMessage(), t);
 
-            Runnable r = new Communication(this, socket);
-            kernel.getExecutorService().submit(r);
+                     connection.close();
+                  }
+               }
+            }
+
+            if (legacy.size() > 0)
+            {
+               // Flush the cancelled keys, such that the channels can be switched to blocking mode
+               selector.selectNow();
+
+               for (Map.Entry<Connection, byte[]> entry : legacy.entrySet())
+               {
+                  connection = entry.getKey();
+                  try
+                  {
+                     SocketChannel channel = connection.getChannel();
+                     channel.configureBlocking(true);
+
+                     Runnable r = new Communication(this, channel.socket(), entry.getValue());
+                     kernel.getExecutorService().submit(r);
+                  }
+                  catch (Throwable t)
+                  {
+                     if (log.isLoggable(Level.FINE))
+                        log.fine(t.getMessage());
+
+                     connection.close();
+                  }
+               }
+
+               legacy.clear();
+            }
          }
-         catch (IOException ioe)
+         catch (Throwable t)
          {
             if (log.isLoggable(Level.FINE))
-               log.fine(ioe.getMessage());
+               log.fine(t.getMessage());
          }
       }
+
+      closeConnections();
+   }
+
+   /**
+    * Accept a new connection
+    */
+   private void accept()
+   {
+      SocketChannel channel = null;
+      try
+      {
+         channel = ssc.accept();
+
+         if (channel != null)
+         {
+            channel.configureBlocking(false);
+            channel.socket().setTcpNoDelay(true);
+
+            Connection connection = new Connection(this, channel);
+            connection.setKey(channel.register(selector, SelectionKey.OP_READ, connection));
+         }
+      }
+      catch (IOException ioe)
+      {
+         if (log.isLoggable(Level.FINE))
+            log.fine(ioe.getMessage());
+
+         if (channel != null)
+         {
+            try
+            {
+               channel.close();
+            }
+            catch (IOException ignore)
+            {
+               // Ignore
+            }
+         }
+      }
+   }
+
+   /**
+    * Close all connections and the selector
+    */
+   private void closeConnections()
+   {
+      try
+      {
+         for (SelectionKey key : selector.keys())
+         {
+            if (key.attachment() instanceof Connection)
+               ((Connection)key.attachment()).close();
+         }
+
+         selector.close();
+      }
+      catch (Throwable t)
+      {
+         if (log.isLoggable(Level.FINE))
+            log.fine(t.getMessage());
+      }
+
+      pending.clear();
    }
 }
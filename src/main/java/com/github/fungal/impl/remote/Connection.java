@@ -0,0 +1,402 @@
+/*
+ * The Fungal kernel project
+ * Copyright (C) 2014
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package com.github.fungal.impl.remote;
+
+import com.github.fungal.api.remote.Invocation;
+import com.github.fungal.api.remote.RemoteEvent;
+import com.github.fungal.api.remote.WireFormat;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Serializable;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A multiplexed connection between a client and the server
+ * @author <a href="mailto:jesper.pedersen@comcast.net">Jesper Pedersen</a>
+ */
+class Connection
+{
+   /** The maximum number of requests in flight before reading is suspended */
+   private static final int MAX_IN_FLIGHT = 64;
+
+   /** The maximum number of queued frames before pushed events are dropped */
+   private static final int MAX_QUEUED = 1024;
+
+   /** The initial size of the input buffer */
+   private static final int BUFFER_SIZE = 8192;
+
+   /** The logger */
+   private static Logger log = Logger.getLogger(Connection.class.getName());
+
+   /** The communication server */
+   private CommunicationServer cs;
+
+   /** The channel */
+   private SocketChannel channel;
+
+   /** The selection key */
+   private SelectionKey key;
+
+   /** The input buffer */
+   private ByteBuffer input;
+
+   /** The pending output */
+   private Queue<ByteBuffer> output;
+
+   /** The number of queued frames */
+   private AtomicInteger queued;
+
+   /** The number of requests in flight */
+   private AtomicInteger inFlight;
+
+   /** Has the handshake been performed */
+   private boolean handshake;
+
+   /** The encoding */
+   private byte encoding;
+
+   /**
+    * Constructor
+    * @param cs The communication server
+    * @param channel The channel
+    */
+   Connection(CommunicationServer cs, SocketChannel channel)
+   {
+      this.cs = cs;
+      this.channel = channel;
+      this.key = null;
+      this.input = ByteBuffer.allocate(BUFFER_SIZE);
+      this.output = new ConcurrentLinkedQueue<ByteBuffer>();
+      this.queued = new AtomicInteger(0);
+      this.inFlight = new AtomicInteger(0);
+      this.handshake = false;
+      this.encoding = WireFormat.ENCODING_SERIALIZATION;
+   }
+
+   /**
+    * Get the channel
+    * @return The channel
+    */
+   SocketChannel getChannel()
+   {
+      return channel;
+   }
+
+   /**
+    * Set the selection key
+    * @param key The key
+    */
+   void setKey(SelectionKey key)
+   {
+      this.key = key;
+   }
+
+   /**
+    * Read from the channel. Must be called by the selector thread.
+    * @return The data read so far if the client uses the legacy protocol; otherwise <code>null</code>
+    * @exception IOException Thrown if an error occurs
+    */
+   byte[] read() throws IOException
+   {
+      if (channel.read(input) < 0)
+         throw new EOFException();
+
+      input.flip();
+
+      if (!handshake)
+      {
+         if (input.remaining() < 2)
+         {
+            input.compact();
+            return null;
+         }
+
+         if (input.get(0) == (byte)0xAC && input.get(1) == (byte)0xED)
+         {
+            byte[] header = new byte[input.remaining()];
+            input.get(header);
+            return header;
+         }
+
+         if (input.remaining() < 6)
+         {
+            input.compact();
+            return null;
+         }
+
+         if (input.getInt() != WireFormat.MAGIC)
+            throw new IOException("Unsupported protocol");
+
+         byte version = input.get();
+         if (version != WireFormat.VERSION)
+            throw new IOException("Unsupported protocol version: " + version);
+
+         byte requested = input.get();
+         if (WireFormat.isSupported(requested))
+            encoding = requested;
+
+         ByteBuffer ack = ByteBuffer.allocate(6);
+         ack.putInt(WireFormat.MAGIC);
+         ack.put(WireFormat.VERSION);
+         ack.put(encoding);
+         ack.flip();
+         output.add(ack);
+         queued.incrementAndGet();
+
+         handshake = true;
+      }
+
+      int needed = 0;
+
+      while (needed == 0 && input.remaining() >= 4)
+      {
+         int length = input.getInt(input.position());
+
+         if (length < WireFormat.HEADER_LENGTH || length > WireFormat.MAX_FRAME_LENGTH)
+            throw new IOException("Invalid frame length: " + length);
+
+         if (input.remaining() >= 4 + length)
+         {
+            input.getInt();
+            long id = input.getLong();
+            byte[] payload = new byte[length - WireFormat.HEADER_LENGTH];
+            input.get(payload);
+
+            inFlight.incrementAndGet();
+            cs.dispatch(new Request(id, payload));
+         }
+         else
+         {
+            needed = 4 + length;
+         }
+      }
+
+      input.compact();
+
+      if (needed > input.capacity())
+      {
+         ByteBuffer bb = ByteBuffer.allocate(needed);
+         input.flip();
+         bb.put(input);
+         input = bb;
+      }
+
+      updateInterest();
+
+      return null;
+   }
+
+   /**
+    * Write the pending output to the channel. Must be called by the selector thread.
+    * @exception IOException Thrown if an error occurs
+    */
+   void write() throws IOException
+   {
+      ByteBuffer bb = output.peek();
+      while (bb != null)
+      {
+         channel.write(bb);
+
+         if (bb.hasRemaining())
+         {
+            bb = null;
+         }
+         else
+         {
+            output.poll();
+            queued.decrementAndGet();
+            bb = output.peek();
+         }
+      }
+
+      updateInterest();
+   }
+
+   /**
+    * Update the interest set of the connection. Must be called by the selector thread.
+    */
+   void updateInterest()
+   {
+      if (key != null && key.isValid())
+      {
+         int ops = 0;
+
+         if (inFlight.get() < MAX_IN_FLIGHT)
+            ops |= SelectionKey.OP_READ;
+
+         if (!output.isEmpty())
+            ops |= SelectionKey.OP_WRITE;
+
+         key.interestOps(ops);
+      }
+   }
+
+   /**
+    * Send a response
+    * @param id The request id
+    * @param payload The payload
+    */
+   void send(long id, byte[] payload)
+   {
+      enqueue(id, payload);
+      inFlight.decrementAndGet();
+
+      cs.wakeup(this);
+   }
+
+   /**
+    * Push an event for a subscription. The event is sent with the negated id of the subscription.
+    * @param id The subscription id
+    * @param event The event
+    * @return True if the event was queued; false if it was dropped
+    */
+   boolean push(long id, RemoteEvent event)
+   {
+      if (queued.get() >= MAX_QUEUED || !channel.isOpen())
+         return false;
+
+      try
+      {
+         enqueue(-id, WireFormat.writeResponse(event, encoding));
+      }
+      catch (IOException ioe)
+      {
+         log.log(Level.FINE, ioe.getMessage(), ioe);
+         return false;
+      }
+
+      cs.wakeup(this);
+
+      return true;
+   }
+
+   /**
+    * Queue a frame
+    * @param id The id
+    * @param payload The payload
+    */
+   private void enqueue(long id, byte[] payload)
+   {
+      ByteBuffer bb = ByteBuffer.allocate(4 + WireFormat.HEADER_LENGTH + payload.length);
+      bb.putInt(WireFormat.HEADER_LENGTH + payload.length);
+      bb.putLong(id);
+      bb.put(payload);
+      bb.flip();
+
+      output.add(bb);
+      queued.incrementAndGet();
+   }
+
+   /**
+    * Close the connection
+    */
+   void close()
+   {
+      cs.unsubscribe(this);
+
+      if (key != null)
+         key.cancel();
+
+      try
+      {
+         channel.close();
+      }
+      catch (IOException ioe)
+      {
+         if (log.isLoggable(Level.FINE))
+            log.fine(ioe.getMessage());
+      }
+
+      output.clear();
+      queued.set(0);
+   }
+
+   /**
+    * A request received on the connection
+    */
+   class Request implements Runnable
+   {
+      /** The request id */
+      private long id;
+
+      /** The payload */
+      private byte[] payload;
+
+      /**
+       * Constructor
+       * @param id The request id
+       * @param payload The payload
+       */
+      Request(long id, byte[] payload)
+      {
+         this.id = id;
+         this.payload = payload;
+      }
+
+      /**
+       * Run
+       */
+      public void run()
+      {
+         byte[] response = null;
+         try
+         {
+            Invocation invocation = WireFormat.readRequest(payload, encoding);
+            Serializable result = cs.invoke(invocation, Connection.this, id);
+
+            response = WireFormat.writeResponse(result, encoding);
+         }
+         catch (Throwable t)
+         {
+            try
+            {
+               StringWriter sw = new StringWriter();
+               if (t.getMessage() != null)
+               {
+                  sw.write(t.getMessage());
+                  sw.write('\n');
+               }
+
+               t.printStackTrace(new PrintWriter(sw));
+
+               response = WireFormat.writeResponse(sw.toString(), encoding);
+            }
+            catch (IOException ioe)
+            {
+               log.log(Level.SEVERE, ioe.getMessage(), ioe);
+               response = new byte[0];
+            }
+         }
+
+         send(id, response);
+      }
+   }
+}
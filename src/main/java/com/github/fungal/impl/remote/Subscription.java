@@ -0,0 +1,132 @@
+/*
+ * The Fungal kernel project
+ * Copyright (C) 2014
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package com.github.fungal.impl.remote;
+
+import com.github.fungal.api.remote.RemoteEvent;
+
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.StringTokenizer;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+
+/**
+ * A subscription to kernel events from a connection
+ * @author <a href="mailto:jesper.pedersen@comcast.net">Jesper Pedersen</a>
+ */
+class Subscription
+{
+   /** The id */
+   private long id;
+
+   /** The connection */
+   private Connection connection;
+
+   /** The event types; <code>null</code> if all */
+   private Set<String> types;
+
+   /** The name pattern; <code>null</code> if all */
+   private Pattern pattern;
+
+   /** The number of events dropped */
+   private AtomicInteger dropped;
+
+   /**
+    * Constructor
+    * @param id The id
+    * @param connection The connection
+    * @param types The comma separated list of event types; <code>null</code> if all
+    * @param pattern The regular expression for the names; <code>null</code> if all
+    */
+   Subscription(long id, Connection connection, String types, String pattern)
+   {
+      this.id = id;
+      this.connection = connection;
+      this.types = null;
+      this.pattern = null;
+      this.dropped = new AtomicInteger(0);
+
+      if (types != null && !types.trim().equals(""))
+      {
+         this.types = new HashSet<String>(3);
+
+         StringTokenizer st = new StringTokenizer(types, ",");
+         while (st.hasMoreTokens())
+         {
+            this.types.add(st.nextToken().trim().toLowerCase(Locale.US));
+         }
+      }
+
+      if (pattern != null && !pattern.trim().equals(""))
+         this.pattern = Pattern.compile(pattern);
+   }
+
+   /**
+    * Get the id
+    * @return The value
+    */
+   long getId()
+   {
+      return id;
+   }
+
+   /**
+    * Get the connection
+    * @return The value
+    */
+   Connection getConnection()
+   {
+      return connection;
+   }
+
+   /**
+    * Does the subscription accept the event
+    * @param type The type
+    * @param name The name
+    * @return True if accepted; otherwise false
+    */
+   boolean accepts(String type, String name)
+   {
+      if (types != null && !types.contains(type))
+         return false;
+
+      if (pattern != null && (name == null || !pattern.matcher(name).matches()))
+         return false;
+
+      return true;
+   }
+
+   /**
+    * Deliver an event
+    * @param type The type
+    * @param name The name
+    * @param state The state
+    * @param timestamp The timestamp
+    */
+   void deliver(String type, String name, String state, long timestamp)
+   {
+      int d = dropped.getAndSet(0);
+
+      if (!connection.push(id, new RemoteEvent(type, name, state, timestamp, d)))
+         dropped.addAndGet(d + 1);
+   }
+}
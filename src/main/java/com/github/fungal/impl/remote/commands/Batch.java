@@ -0,0 +1,315 @@
+/*
+ * The Fungal kernel project
+ * Copyright (C) 2014
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package com.github.fungal.impl.remote.commands;
+
+import com.github.fungal.api.remote.Command;
+import com.github.fungal.api.remote.Invocation;
+import com.github.fungal.impl.remote.CommunicationServer;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Represents the batch command, which executes a list of invocations in one request.
+ *
+ * When executed in parallel the invocations that share an argument, like a deploy and
+ * an undeploy of the same URL, are executed in order while the other invocations are
+ * executed concurrently.
+ * @author <a href="mailto:jesper.pedersen@comcast.net">Jesper Pedersen</a>
+ */
+public class Batch implements Command
+{
+   /** Command name */
+   private static final String NAME = "batch";
+
+   /** The logger */
+   private Logger log = Logger.getLogger(Batch.class.getName());
+
+   /** Trace logging enabled */
+   private boolean trace = log.isLoggable(Level.FINEST);
+
+   /** The communication server */
+   private CommunicationServer cs;
+
+   /** The executor service */
+   private ExecutorService executorService;
+
+   /**
+    * Batch
+    * @param cs The communication server
+    * @param executorService The executor service
+    */
+   public Batch(CommunicationServer cs, ExecutorService executorService)
+   {
+      this.cs = cs;
+      this.executorService = executorService;
+   }
+
+   /**
+    * Get the name of the command
+    * @return The name
+    */
+   public String getName()
+   {
+      return NAME;
+   }
+
+   /**
+    * Get the parameter types of the command; <code>null</code> if none
+    * @return The types
+    */
+   public Class[] getParameterTypes()
+   {
+      return new Class<?>[] {Invocation[].class, Boolean.class};
+   }
+
+   /**
+    * Invoke
+    * @param args The arguments
+    * @return The return value
+    */
+   public Serializable invoke(Serializable[] args)
+   {
+      if (args == null || args.length < 1 || args.length > 2 || !(args[0] instanceof Invocation[]) ||
+          (args.length == 2 && args[1] != null && !(args[1] instanceof Boolean)))
+         return new IllegalArgumentException("Unsupported argument list: " + Arrays.toString(args));
+
+      Invocation[] invocations = (Invocation[])args[0];
+      boolean parallel = args.length == 2 && args[1] != null && ((Boolean)args[1]).booleanValue();
+
+      Serializable[] results = new Serializable[invocations.length];
+
+      if (!parallel || invocations.length <= 1)
+      {
+         for (int i = 0; i < invocations.length; i++)
+         {
+            results[i] = execute(invocations[i]);
+         }
+      }
+      else
+      {
+         List<List<Integer>> chains = getChains(invocations);
+
+         if (trace)
+            log.finest("Batch: " + invocations.length + " invocations in " + chains.size() + " chains");
+
+         CountDownLatch latch = new CountDownLatch(chains.size());
+
+         for (List<Integer> chain : chains)
+         {
+            executorService.execute(new Chain(invocations, chain, results, latch));
+         }
+
+         try
+         {
+            latch.await();
+         }
+         catch (InterruptedException ie)
+         {
+            Thread.currentThread().interrupt();
+            return ie;
+         }
+      }
+
+      return results;
+   }
+
+   /**
+    * Is it a public command
+    * @return True if system-wide; false if internal
+    */
+   public boolean isPublic()
+   {
+      return false;
+   }
+
+   /**
+    * Execute an invocation
+    * @param invocation The invocation
+    * @return The result
+    */
+   private Serializable execute(Invocation invocation)
+   {
+      if (invocation == null)
+         return new IllegalArgumentException("Invocation is null");
+
+      return cs.invoke(invocation);
+   }
+
+   /**
+    * Split the invocations into chains, such that invocations sharing an argument
+    * are part of the same chain
+    * @param invocations The invocations
+    * @return The chains with the indexes of the invocations in order
+    */
+   private List<List<Integer>> getChains(Invocation[] invocations)
+   {
+      List<List<Integer>> chains = new ArrayList<List<Integer>>(invocations.length);
+      Map<Serializable, List<Integer>> owners = new HashMap<Serializable, List<Integer>>(invocations.length);
+
+      for (int i = 0; i < invocations.length; i++)
+      {
+         List<Integer> chain = null;
+
+         if (invocations[i] != null && invocations[i].getArguments() != null)
+         {
+            for (Serializable argument : invocations[i].getArguments())
+            {
+               if (argument != null)
+               {
+                  List<Integer> owner = owners.get(argument);
+
+                  if (owner != null && owner != chain)
+                  {
+                     if (chain == null)
+                     {
+                        chain = owner;
+                     }
+                     else
+                     {
+                        // Merge the chains, keeping the order of the invocations
+                        chain = merge(chain, owner, chains, owners);
+                     }
+                  }
+               }
+            }
+         }
+
+         if (chain == null)
+         {
+            chain = new ArrayList<Integer>(1);
+            chains.add(chain);
+         }
+
+         chain.add(Integer.valueOf(i));
+
+         if (invocations[i] != null && invocations[i].getArguments() != null)
+         {
+            for (Serializable argument : invocations[i].getArguments())
+            {
+               if (argument != null)
+                  owners.put(argument, chain);
+            }
+         }
+      }
+
+      return chains;
+   }
+
+   /**
+    * Merge two chains
+    * @param c1 The first chain
+    * @param c2 The second chain
+    * @param chains All chains
+    * @param owners The argument owners
+    * @return The merged chain
+    */
+   private List<Integer> merge(List<Integer> c1, List<Integer> c2,
+                               List<List<Integer>> chains, Map<Serializable, List<Integer>> owners)
+   {
+      List<Integer> result = new ArrayList<Integer>(c1.size() + c2.size());
+      int i = 0;
+      int j = 0;
+
+      while (i < c1.size() || j < c2.size())
+      {
+         if (j >= c2.size() || (i < c1.size() && c1.get(i).intValue() < c2.get(j).intValue()))
+         {
+            result.add(c1.get(i++));
+         }
+         else
+         {
+            result.add(c2.get(j++));
+         }
+      }
+
+      c1.clear();
+      c1.addAll(result);
+      chains.remove(c2);
+
+      for (Map.Entry<Serializable, List<Integer>> entry : owners.entrySet())
+      {
+         if (entry.getValue() == c2)
+            entry.setValue(c1);
+      }
+
+      return c1;
+   }
+
+   /**
+    * Executes a chain of invocations in order
+    */
+   class Chain implements Runnable
+   {
+      /** The invocations */
+      private Invocation[] invocations;
+
+      /** The indexes of the chain */
+      private List<Integer> chain;
+
+      /** The results */
+      private Serializable[] results;
+
+      /** The latch */
+      private CountDownLatch latch;
+
+      /**
+       * Constructor
+       * @param invocations The invocations
+       * @param chain The indexes of the chain
+       * @param results The results
+       * @param latch The latch
+       */
+      Chain(Invocation[] invocations, List<Integer> chain, Serializable[] results, CountDownLatch latch)
+      {
+         this.invocations = invocations;
+         this.chain = chain;
+         this.results = results;
+         this.latch = latch;
+      }
+
+      /**
+       * Run
+       */
+      public void run()
+      {
+         try
+         {
+            for (Integer index : chain)
+            {
+               results[index.intValue()] = execute(invocations[index.intValue()]);
+            }
+         }
+         finally
+         {
+            latch.countDown();
+         }
+      }
+   }
+}
@@ -0,0 +1,93 @@
+/*
+ * The Fungal kernel project
+ * Copyright (C) 2014
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package com.github.fungal.impl.remote.commands;
+
+import com.github.fungal.api.metrics.Metrics;
+import com.github.fungal.api.remote.Command;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * Represents the get metrics command, which reports the metrics of the kernel.
+ * An optional prefix selects the metrics to report
+ * @author <a href="mailto:jesper.pedersen@comcast.net">Jesper Pedersen</a>
+ */
+public class GetMetrics implements Command
+{
+   /** Command name */
+   private static final String NAME = "getmetrics";
+
+   /** The metrics */
+   private Metrics metrics;
+
+   /**
+    * Constructor
+    * @param metrics The metrics
+    */
+   public GetMetrics(Metrics metrics)
+   {
+      this.metrics = metrics;
+   }
+
+   /**
+    * Get the name of the command
+    * @return The name
+    */
+   public String getName()
+   {
+      return NAME;
+   }
+
+   /**
+    * Get the parameter types of the command; <code>null</code> if none
+    * @return The types
+    */
+   public Class[] getParameterTypes()
+   {
+      return null;
+   }
+
+   /**
+    * Invoke
+    * @param args The arguments
+    * @return The return value
+    */
+   public Serializable invoke(Serializable[] args)
+   {
+      if (args == null || args.length == 0)
+         return metrics.getReport();
+
+      if (args.length == 1 && args[0] instanceof String)
+         return metrics.report((String)args[0]);
+
+      return new IllegalArgumentException("Unsupported argument list: " + Arrays.toString(args));
+   }
+
+   /**
+    * Is it a public command
+    * @return True if system-wide; false if internal
+    */
+   public boolean isPublic()
+   {
+      return true;
+   }
+}